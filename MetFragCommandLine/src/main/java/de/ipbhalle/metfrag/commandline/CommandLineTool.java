@@ -140,6 +140,11 @@ public class CommandLineTool {
 				IImageGenerator imageGenerator = (IImageGenerator) Class.forName((String)settings.get(VariableNames.METFRAG_FRAGMENT_IMAGE_GENERATOR_NAME)).getConstructor().newInstance();
 				for(int i = 0; i < scoredCandidateList.getNumberElements(); i++) {
 					MatchList matchList = scoredCandidateList.getElement(i).getMatchList();
+					//released during processing (MetFragRetainedMatchLists)
+					if(matchList == null) {
+						logger.warn("No fragment images of " + scoredCandidateList.getElement(i).getIdentifier() + ", its match list was released during processing");
+						continue;
+					}
 					for(int j = 0; j < matchList.getNumberElements(); j++) {
 						try {
 							RenderedImage renderedImage = imageGenerator.generateImage((DefaultBitArrayFragment)matchList.getElement(j).getBestMatchedFragment());
@@ -1,17 +1,37 @@
 package de.ipbhalle.metfraglib;
 
+/**
+ * fixed size bit set backed by 64 bit words
+ * bit n is stored in word n >> 6 at position n & 63
+ * bits beyond the size of the BitArray are always kept zero so that word-wise
+ * operations (cardinality, equals, hashCode, subset checks) can run on complete words
+ *
+ */
 public class BitArray {
 
+	private static final int ADDRESS_BITS_PER_WORD = 6;
+	private static final int BITS_PER_WORD = 1 << ADDRESS_BITS_PER_WORD;
+	private static final long WORD_MASK = 0xffffffffffffffffL;
+
 	/**
 	 * array to store bits
 	 */
-	private boolean[] bitArray;
+	private long[] words;
+	/**
+	 * number of bits
+	 */
+	private int size;
+	/**
+	 * cached hash code, 0 if not calculated
+	 */
+	private int hash;
 	
 	/**
 	 * 
 	 */
 	public BitArray() {
-		this.bitArray = new boolean[0];
+		this.words = new long[0];
+		this.size = 0;
 	}
 	
 	/**
@@ -20,9 +40,9 @@ public class BitArray {
 	 * @param array
 	 */
 	public BitArray(boolean[] array) {
-		this.bitArray = new boolean[array.length];
-		for(int i = 0; i < this.bitArray.length; i++)
-			this.bitArray[i] = array[i];
+		this(array.length);
+		for(int i = 0; i < array.length; i++)
+			if(array[i]) this.words[i >> ADDRESS_BITS_PER_WORD] |= 1L << i;
 	}
 	
 	/**
@@ -31,7 +51,8 @@ public class BitArray {
 	 * @param nbits
 	 */
 	public BitArray(int nbits) {
-		this.bitArray = new boolean[nbits];
+		this.size = nbits;
+		this.words = new long[numberOfWords(nbits)];
 	}
 
 	/**
@@ -41,9 +62,52 @@ public class BitArray {
 	 * @param value
 	 */
 	public BitArray(int nbits, boolean value) {
-		this.bitArray = new boolean[nbits];
-		for(int i = 0; i < this.bitArray.length; i++)
-			this.bitArray[i] = value;
+		this(nbits);
+		if(value) this.setAll(true);
+	}
+
+	/**
+	 * initialises BitArray with the given words
+	 * the words array is used directly and not copied
+	 *
+	 * @param nbits
+	 * @param words
+	 */
+	protected BitArray(int nbits, long[] words) {
+		this.size = nbits;
+		this.words = words;
+	}
+
+	/**
+	 * initialises BitArray with specified number of bits copied from the given words
+	 * starting at offset
+	 *
+	 * @param nbits
+	 * @param words
+	 * @param offset
+	 */
+	public BitArray(int nbits, long[] words, int offset) {
+		this(nbits);
+		System.arraycopy(words, offset, this.words, 0, this.words.length);
+	}
+
+	/**
+	 * number of 64 bit words needed to store nbits
+	 *
+	 * @param nbits
+	 * @return
+	 */
+	public static int numberOfWords(int nbits) {
+		return (nbits + BITS_PER_WORD - 1) >> ADDRESS_BITS_PER_WORD;
+	}
+
+	/**
+	 * mask of valid bits of the last word
+	 *
+	 * @return
+	 */
+	private long lastWordMask() {
+		return WORD_MASK >>> -this.size;
 	}
 	
 	/**
@@ -54,9 +118,16 @@ public class BitArray {
 	 * @return
 	 */
 	public int nextSetBit(int n) {
-		for(int i = n + 1; i < this.bitArray.length; i++)
-			if(this.bitArray[i]) return i;
-		return -1;
+		int from = n + 1;
+		if(from < 0) from = 0;
+		if(from >= this.size) return -1;
+		int wordIndex = from >> ADDRESS_BITS_PER_WORD;
+		long word = this.words[wordIndex] & (WORD_MASK << from);
+		while(true) {
+			if(word != 0) return (wordIndex << ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+			if(++wordIndex == this.words.length) return -1;
+			word = this.words[wordIndex];
+		}
 	}
 
 	/**
@@ -67,19 +138,33 @@ public class BitArray {
 	 * @return
 	 */
 	public int nextClearBit(int n) {
-		for(int i = n + 1; i < this.bitArray.length; i++)
-			if(!this.bitArray[i]) return i;
-		return -1;
+		int from = n + 1;
+		if(from < 0) from = 0;
+		if(from >= this.size) return -1;
+		int wordIndex = from >> ADDRESS_BITS_PER_WORD;
+		long word = ~this.words[wordIndex] & (WORD_MASK << from);
+		while(true) {
+			if(word != 0) {
+				int index = (wordIndex << ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+				return index < this.size ? index : -1;
+			}
+			if(++wordIndex == this.words.length) return -1;
+			word = ~this.words[wordIndex];
+		}
 	}
 	
+	/**
+	 * returns a new BitArray containing all bits of the current one that are not set in subtrahend
+	 *
+	 * @param subtrahend
+	 * @return
+	 */
 	public BitArray getDiff(BitArray subtrahend) {
-		BitArray result = this.clone();
-		for(int i = 0; i < subtrahend.getSize(); i++) {
-			if(subtrahend.get(i)) {
-				result.set(i, false);
-			}
-		}
-		return result;
+		long[] result = this.words.clone();
+		int commonWords = Math.min(result.length, subtrahend.words.length);
+		for(int i = 0; i < commonWords; i++)
+			result[i] &= ~subtrahend.words[i];
+		return new BitArray(this.size, result);
 	}
 	
 	/**
@@ -91,40 +176,88 @@ public class BitArray {
 	 */
 	public BitArray merge(BitArray toMergeWith) {
 		BitArray mergedArray = new BitArray(toMergeWith.getSize());
-		for(int i = 0; i < this.bitArray.length; i++) {
-			mergedArray.set(i, this.bitArray[i] || toMergeWith.get(i));
-		}
+		int commonWords = Math.min(mergedArray.words.length, this.words.length);
+		for(int i = 0; i < mergedArray.words.length; i++)
+			mergedArray.words[i] = toMergeWith.words[i];
+		for(int i = 0; i < commonWords; i++)
+			mergedArray.words[i] |= this.words[i];
+		if(mergedArray.words.length != 0)
+			mergedArray.words[mergedArray.words.length - 1] &= mergedArray.lastWordMask();
 		return mergedArray;
 	}
+
+	/**
+	 * sets all bits of the current BitArray that are set in the given one
+	 * in place variant of merge for BitArrays of the same size
+	 *
+	 * @param ar
+	 */
+	public void or(BitArray ar) {
+		if(this.size != ar.getSize()) throw new ArrayIndexOutOfBoundsException("Error: BitArrays not of the same length");
+		for(int i = 0; i < this.words.length; i++)
+			this.words[i] |= ar.words[i];
+		this.hash = 0;
+	}
+
+	/**
+	 * clears all bits of the current BitArray that are set in the given one
+	 * in place variant of getDiff for BitArrays of the same size
+	 *
+	 * @param ar
+	 */
+	public void andNot(BitArray ar) {
+		if(this.size != ar.getSize()) throw new ArrayIndexOutOfBoundsException("Error: BitArrays not of the same length");
+		for(int i = 0; i < this.words.length; i++)
+			this.words[i] &= ~ar.words[i];
+		this.hash = 0;
+	}
+
+	/**
+	 * returns true if at least one bit is set in both BitArrays
+	 *
+	 * @param ar
+	 * @return
+	 */
+	public boolean intersects(BitArray ar) {
+		int commonWords = Math.min(this.words.length, ar.words.length);
+		for(int i = 0; i < commonWords; i++)
+			if((this.words[i] & ar.words[i]) != 0) return true;
+		return false;
+	}
 	
 	/**
 	 * set bit at position n to true
-	 * Warning: function does not check for IndexOutOfBounds
+	 * throws an ArrayIndexOutOfBoundsException if n < 0 or n >= size of BitArray
 	 * 
 	 * @param index
 	 */
 	public void set(int n) {
-		this.bitArray[n] = true;
+		if(n < 0 || n >= this.size) throw new ArrayIndexOutOfBoundsException(n);
+		this.words[n >> ADDRESS_BITS_PER_WORD] |= 1L << n;
+		this.hash = 0;
 	}
 
 	/**
 	 * set bit at position n to given value val
-	 * Warning: function does not check for IndexOutOfBounds
+	 * throws an ArrayIndexOutOfBoundsException if n < 0 or n >= size of BitArray
 	 * 
 	 * @param index
 	 */
 	public void set(int n, boolean val) {
-		this.bitArray[n] = val;
+		if(val) this.set(n);
+		else this.clear(n);
 	}
 	
 	/**
 	 * set bit at position n to false
-	 * Warning: function does not check for IndexOutOfBounds
+	 * throws an ArrayIndexOutOfBoundsException if n < 0 or n >= size of BitArray
 	 * 
 	 * @param index
 	 */
 	public void clear(int n) {
-		this.bitArray[n] = false;
+		if(n < 0 || n >= this.size) throw new ArrayIndexOutOfBoundsException(n);
+		this.words[n >> ADDRESS_BITS_PER_WORD] &= ~(1L << n);
+		this.hash = 0;
 	}
 	
 	/**
@@ -135,8 +268,8 @@ public class BitArray {
 	 * @return
 	 */
 	public boolean get(int n) {
-		if(n < 0 || n >= this.bitArray.length) return false;
-		return this.bitArray[n];
+		if(n < 0 || n >= this.size) return false;
+		return (this.words[n >> ADDRESS_BITS_PER_WORD] & (1L << n)) != 0;
 	}
 	
 	/**
@@ -145,7 +278,7 @@ public class BitArray {
 	 * @return
 	 */
 	public int getSize() {
-		return this.bitArray.length;
+		return this.size;
 	}
 	
 	/**
@@ -155,8 +288,8 @@ public class BitArray {
 	 */
 	public int cardinality() {
 		int num = 0;
-		for(int i = 0; i < this.bitArray.length; i++) 
-			if(this.bitArray[i]) num++;
+		for(int i = 0; i < this.words.length; i++)
+			num += Long.bitCount(this.words[i]);
 		return num;
 	}
 	
@@ -168,12 +301,11 @@ public class BitArray {
 	 * @return
 	 */
 	public BitArray and(BitArray ar) {
-		if(this.bitArray.length != ar.getSize()) throw new ArrayIndexOutOfBoundsException("Error: BitArrays not of the same length");
-		BitArray newAr = new BitArray(this.bitArray.length);
-		for(int i = 0; i < newAr.getSize(); i++) {
-			newAr.set(i, ar.get(i) && this.bitArray[i]);
-		}
-		return newAr;
+		if(this.size != ar.getSize()) throw new ArrayIndexOutOfBoundsException("Error: BitArrays not of the same length");
+		long[] result = new long[this.words.length];
+		for(int i = 0; i < result.length; i++)
+			result[i] = this.words[i] & ar.words[i];
+		return new BitArray(this.size, result);
 	}
 	
 	/**
@@ -184,10 +316,11 @@ public class BitArray {
 	public int[] getSetIndeces() {
 		int[] setIndeces = new int[this.cardinality()];
 		int index = 0;
-		for(int i = 0; i < this.bitArray.length; i++) {
-			if(this.bitArray[i]) {
-				setIndeces[index] = i;
-				index++;
+		for(int i = 0; i < this.words.length; i++) {
+			long word = this.words[i];
+			while(word != 0) {
+				setIndeces[index++] = (i << ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
 			}
 		}
 		return setIndeces;
@@ -201,11 +334,51 @@ public class BitArray {
 	 * @return
 	 */
 	public boolean equals(BitArray bitArray) {
-		if(this.bitArray.length != bitArray.getSize()) return false;
-		for(int i = 0; i < this.bitArray.length; i++) 
-			if(this.bitArray[i] != bitArray.get(i)) return false;
+		if(bitArray == this) return true;
+		if(bitArray == null || this.size != bitArray.getSize()) return false;
+		if(this.hash != 0 && bitArray.hash != 0 && this.hash != bitArray.hash) return false;
+		for(int i = 0; i < this.words.length; i++)
+			if(this.words[i] != bitArray.words[i]) return false;
 		return true;
 	}
+
+	@Override
+	public boolean equals(Object object) {
+		if(!(object instanceof BitArray)) return false;
+		return this.equals((BitArray)object);
+	}
+
+	/**
+	 * hash code calculated over the words
+	 * cached until the next modification
+	 */
+	@Override
+	public int hashCode() {
+		int h = this.hash;
+		if(h == 0) {
+			long value = this.longHashCode();
+			h = (int)(value ^ (value >>> 32));
+			if(h == 0) h = 1;
+			this.hash = h;
+		}
+		return h;
+	}
+
+	/**
+	 * 64 bit hash over the words of the BitArray
+	 *
+	 * @return
+	 */
+	public long longHashCode() {
+		long h = 0x9E3779B97F4A7C15L ^ this.size;
+		for(int i = 0; i < this.words.length; i++) {
+			long word = this.words[i] * 0xC2B2AE3D27D4EB4FL;
+			word ^= word >>> 31;
+			h = (h ^ word) * 0x9E3779B97F4A7C15L;
+			h ^= h >>> 29;
+		}
+		return h;
+	}
 	
 	/**
 	 * sets all bits of the BitArray to val
@@ -213,8 +386,12 @@ public class BitArray {
 	 * @param val
 	 */
 	public void setAll(boolean val) {
-		for(int i = 0; i < this.bitArray.length; i++)
-			this.bitArray[i] = val;
+		long fill = val ? WORD_MASK : 0L;
+		for(int i = 0; i < this.words.length; i++)
+			this.words[i] = fill;
+		if(val && this.words.length != 0)
+			this.words[this.words.length - 1] &= this.lastWordMask();
+		this.hash = 0;
 	}
 	
 	/**
@@ -224,10 +401,7 @@ public class BitArray {
 	 */
 	public boolean isRealSubset(BitArray toCheck) {
 		if(toCheck.cardinality() >= this.cardinality()) return false;
-		for(int i = 0; i < this.bitArray.length; i++) {
-			if(!this.bitArray[i] && toCheck.get(i)) return false;
-		}
-		return true;
+		return this.isSubset(toCheck);
 	}
 
 	/**
@@ -239,8 +413,8 @@ public class BitArray {
 	 */
 	public boolean isSubset(BitArray toCheck) {
 		if(toCheck.getSize() > this.getSize()) return false;
-		for(int i = 0; i < this.bitArray.length; i++) {
-			if(!this.bitArray[i] && toCheck.get(i)) return false;
+		for(int i = 0; i < toCheck.words.length; i++) {
+			if((toCheck.words[i] & ~this.words[i]) != 0) return false;
 		}
 		return true;
 	}
@@ -249,12 +423,11 @@ public class BitArray {
 	 * returns string with with true positions '1' and false positions '0' 
 	 */
 	public String toString() {
-		String val = "";
-		for(int i = 0; i < this.bitArray.length; i++) {
-			if(this.bitArray[i]) val += "1";
-			else val += "0";
+		StringBuilder val = new StringBuilder(this.size);
+		for(int i = 0; i < this.size; i++) {
+			val.append(this.get(i) ? '1' : '0');
 		}
-		return val;
+		return val.toString();
 	}
 	
 	/**
@@ -262,16 +435,12 @@ public class BitArray {
 	 * @return
 	 */
 	public String toStringIDs() {
-		String val = "";
-		boolean added = false;
-		for(int i = 0; i < this.bitArray.length; i++) {
-			if(this.bitArray[i]) {
-				if(added) val += "-";
-				val += (i + 1);
-				added = true;
-			}
+		StringBuilder val = new StringBuilder();
+		for(int i = this.nextSetBit(-1); i != -1; i = this.nextSetBit(i)) {
+			if(val.length() != 0) val.append('-');
+			val.append(i + 1);
 		}
-		return val;
+		return val.toString();
 	}
 	
 	/**
@@ -281,9 +450,7 @@ public class BitArray {
 	 * @return
 	 */
 	public int getFirstSetBit() {
-		for(int i = 0; i < this.bitArray.length; i++)
-			if(this.bitArray[i]) return i;
-		return -1;
+		return this.nextSetBit(-1);
 	}
 	
 	/**
@@ -292,15 +459,16 @@ public class BitArray {
 	 * 
 	 */
 	public int getLastSetBit() {
-		for(int i = this.bitArray.length - 1; i >= 0; i--)
-			if(this.bitArray[i]) return i;
+		for(int i = this.words.length - 1; i >= 0; i--)
+			if(this.words[i] != 0)
+				return (i << ADDRESS_BITS_PER_WORD) + BITS_PER_WORD - 1 - Long.numberOfLeadingZeros(this.words[i]);
 		return -1;
 	}
 	/**
-	 * sets boolean array to null
+	 * sets word array to null
 	 */
 	public void nullify() {
-		this.bitArray = null;
+		this.words = null;
 	}
 	
 	/**
@@ -310,24 +478,43 @@ public class BitArray {
 	 */
 	public void setBits(int[] bitIndexes) {
 		for(int i = 0; i < bitIndexes.length; i++) {
-			if(bitIndexes[i] < this.bitArray.length && bitIndexes[i] >= 0)
-				this.bitArray[bitIndexes[i]] = true;
+			if(bitIndexes[i] < this.size && bitIndexes[i] >= 0)
+				this.words[bitIndexes[i] >> ADDRESS_BITS_PER_WORD] |= 1L << bitIndexes[i];
 			else
 				System.err.println("Warning: Could not set bit at position " + bitIndexes[i] + " to true. Out of range!");
 		}
+		this.hash = 0;
 	}
 	
+	/**
+	 * returns the bits as boolean array
+	 * the array is a copy, changes are not reflected in the BitArray
+	 *
+	 * @return
+	 */
 	public boolean[] getArray() {
-		return this.bitArray;
+		boolean[] array = new boolean[this.size];
+		for(int i = this.nextSetBit(-1); i != -1; i = this.nextSetBit(i))
+			array[i] = true;
+		return array;
+	}
+
+	/**
+	 * returns the underlying words
+	 * must not be modified
+	 *
+	 * @return
+	 */
+	public long[] getWords() {
+		return this.words;
 	}
 	
 	/**
 	 * 
 	 */
 	public BitArray clone() {
-		BitArray clone = new BitArray(this.bitArray.length);
-		for(int i = 0; i < this.bitArray.length; i++)
-			if(this.bitArray[i]) clone.set(i);
+		BitArray clone = new BitArray(this.size, this.words.clone());
+		clone.hash = this.hash;
 		return clone;
 	}
 }
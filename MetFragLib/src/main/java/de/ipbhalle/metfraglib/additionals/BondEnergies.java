@@ -11,7 +11,22 @@ import de.ipbhalle.metfraglib.parameter.Constants;
 
 public class BondEnergies {
 
+	/*
+	 * bond classes used as index of the compiled energy table
+	 * aromatic bonds are treated as double bonds
+	 */
+	public static final byte SINGLE_BOND = 0;
+	public static final byte DOUBLE_BOND = 1;
+	public static final byte TRIPLE_BOND = 2;
+	public static final char[] BOND_TYPES = {'-', '=', '~'};
+	
 	private Map<Bond, Double> bondEnergies;
+	/*
+	 * energies indexed by (element index, element index, bond class) of the elements in Constants.ELEMENTS
+	 * bonds not contained in bondEnergies are set to the default bond energy
+	 */
+	private double[] compiledBondEnergies;
+	private int numberElements;
 	
 	public BondEnergies() {
 		this.bondEnergies = new HashMap<Bond, Double>();                                                                                                                                                                                                            
@@ -91,10 +106,42 @@ public class BondEnergies {
 		this.bondEnergies.put(new Bond("F","N",'-'), 272.0);
 		this.bondEnergies.put(new Bond("F","O",'-'), 184.0);
 		this.bondEnergies.put(new Bond("F","S",'-'), 226.0);
+		this.compileBondEnergies();
 	}
 	
 	public BondEnergies(String filename) {
 		this.readBondEnergies(filename);
+		this.compileBondEnergies();
+	}
+	
+	/**
+	 * fills the dense energy table for all element pairs and bond classes
+	 * so that bond energies of precursors can be retrieved without string comparison and hashing
+	 */
+	protected void compileBondEnergies() {
+		this.numberElements = Constants.ELEMENTS.size();
+		this.compiledBondEnergies = new double[this.numberElements * this.numberElements * BOND_TYPES.length];
+		java.util.Arrays.fill(this.compiledBondEnergies, Constants.DEFAULT_BOND_ENERGY);
+		java.util.Iterator<Bond> it = this.bondEnergies.keySet().iterator();
+		while(it.hasNext()) {
+			Bond bond = it.next();
+			int elementIndex1 = Constants.ELEMENTS.indexOf(bond.getAtom1());
+			int elementIndex2 = Constants.ELEMENTS.indexOf(bond.getAtom2());
+			byte bondClass = -1;
+			for(byte i = 0; i < BOND_TYPES.length; i++)
+				if(BOND_TYPES[i] == bond.getBondType()) bondClass = i;
+			/*
+			 * bonds of unknown elements or types are only retrievable by get(Bond)
+			 */
+			if(elementIndex1 == -1 || elementIndex2 == -1 || bondClass == -1) continue;
+			double energy = this.bondEnergies.get(bond);
+			this.compiledBondEnergies[this.getTableIndex(elementIndex1, elementIndex2, bondClass)] = energy;
+			this.compiledBondEnergies[this.getTableIndex(elementIndex2, elementIndex1, bondClass)] = energy;
+		}
+	}
+	
+	private int getTableIndex(int elementIndex1, int elementIndex2, byte bondClass) {
+		return (elementIndex1 * this.numberElements + elementIndex2) * BOND_TYPES.length + bondClass;
 	}
 	
 	protected void readBondEnergies(String filename) {
@@ -141,6 +188,18 @@ public class BondEnergies {
 		return Constants.DEFAULT_BOND_ENERGY;
 	}
 	
+	/**
+	 * energy of the bond between the given elements
+	 * 
+	 * @param elementIndex1 index in Constants.ELEMENTS
+	 * @param elementIndex2 index in Constants.ELEMENTS
+	 * @param bondClass SINGLE_BOND, DOUBLE_BOND or TRIPLE_BOND
+	 * @return
+	 */
+	public double get(int elementIndex1, int elementIndex2, byte bondClass) {
+		return this.compiledBondEnergies[this.getTableIndex(elementIndex1, elementIndex2, bondClass)];
+	}
+	
 	public static void main(String[] args) {
 		BondEnergies be = new BondEnergies("/home/cruttkie/metfrag/michaelwitting/21_05_14/processing/10th/bondEnergiesLipids.txt");
 		//BondEnergies be = new BondEnergies();
@@ -0,0 +1,158 @@
+package de.ipbhalle.metfraglib.collection;
+
+import de.ipbhalle.metfraglib.BitArray;
+
+/**
+ * set of fragment atom BitArrays used to detect fragments that have been generated before
+ * the words of the BitArrays are copied into one slab and looked up by open addressing (linear probing)
+ * on their 64 bit hash, equality is confirmed on the words
+ * for each atom set the tree depth of its first occurrence is stored
+ *
+ */
+public class FragmentIdentitySet {
+
+	private static final float MAXIMUM_LOAD = 0.5f;
+
+	private final int numberBits;
+	private final int numberWords;
+	/*
+	 * slot i occupies keys[i * numberWords] to keys[(i + 1) * numberWords - 1]
+	 */
+	private long[] keys;
+	/*
+	 * 0 marks an empty slot
+	 */
+	private long[] hashes;
+	private byte[] treeDepths;
+	private int mask;
+	private int size;
+
+	private long numberHits;
+	private long numberMisses;
+
+	/**
+	 *
+	 * @param numberBits size of the BitArrays to store
+	 */
+	public FragmentIdentitySet(int numberBits) {
+		this(numberBits, 256);
+	}
+
+	/**
+	 *
+	 * @param numberBits size of the BitArrays to store
+	 * @param expectedSize
+	 */
+	public FragmentIdentitySet(int numberBits, int expectedSize) {
+		this.numberBits = numberBits;
+		this.numberWords = Math.max(1, BitArray.numberOfWords(numberBits));
+		int capacity = 16;
+		while(capacity * MAXIMUM_LOAD < expectedSize) capacity <<= 1;
+		this.allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new long[capacity * this.numberWords];
+		this.hashes = new long[capacity];
+		this.treeDepths = new byte[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * adds the atom set with the given tree depth if it is not contained yet
+	 * returns -1 if the atom set was added otherwise the stored tree depth of its first occurrence
+	 *
+	 * @param atomsBitArray
+	 * @param treeDepth
+	 * @return
+	 */
+	public byte putIfAbsent(BitArray atomsBitArray, byte treeDepth) {
+		if(atomsBitArray.getSize() != this.numberBits) throw new IllegalArgumentException("Error: BitArray size " + atomsBitArray.getSize() + " differs from " + this.numberBits);
+		long[] words = atomsBitArray.getWords();
+		long hash = atomsBitArray.longHashCode();
+		if(hash == 0) hash = 1;
+		int slot = (int)(hash ^ (hash >>> 32)) & this.mask;
+		while(this.hashes[slot] != 0) {
+			if(this.hashes[slot] == hash && this.equalWords(slot, words)) {
+				this.numberHits++;
+				return this.treeDepths[slot];
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		this.numberMisses++;
+		this.hashes[slot] = hash;
+		this.treeDepths[slot] = treeDepth;
+		System.arraycopy(words, 0, this.keys, slot * this.numberWords, words.length);
+		if(++this.size > this.hashes.length * MAXIMUM_LOAD) this.rehash();
+		return -1;
+	}
+
+	/**
+	 * returns true if the atom set has been added before
+	 *
+	 * @param atomsBitArray
+	 * @return
+	 */
+	public boolean contains(BitArray atomsBitArray) {
+		if(atomsBitArray.getSize() != this.numberBits) return false;
+		long[] words = atomsBitArray.getWords();
+		long hash = atomsBitArray.longHashCode();
+		if(hash == 0) hash = 1;
+		int slot = (int)(hash ^ (hash >>> 32)) & this.mask;
+		while(this.hashes[slot] != 0) {
+			if(this.hashes[slot] == hash && this.equalWords(slot, words)) return true;
+			slot = (slot + 1) & this.mask;
+		}
+		return false;
+	}
+
+	private boolean equalWords(int slot, long[] words) {
+		int offset = slot * this.numberWords;
+		for(int i = 0; i < words.length; i++)
+			if(this.keys[offset + i] != words[i]) return false;
+		return true;
+	}
+
+	private void rehash() {
+		long[] oldKeys = this.keys;
+		long[] oldHashes = this.hashes;
+		byte[] oldTreeDepths = this.treeDepths;
+		this.allocate(oldHashes.length << 1);
+		for(int i = 0; i < oldHashes.length; i++) {
+			if(oldHashes[i] == 0) continue;
+			int slot = (int)(oldHashes[i] ^ (oldHashes[i] >>> 32)) & this.mask;
+			while(this.hashes[slot] != 0) slot = (slot + 1) & this.mask;
+			this.hashes[slot] = oldHashes[i];
+			this.treeDepths[slot] = oldTreeDepths[i];
+			System.arraycopy(oldKeys, i * this.numberWords, this.keys, slot * this.numberWords, this.numberWords);
+		}
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * number of lookups that found an already stored atom set
+	 *
+	 * @return
+	 */
+	public long getNumberHits() {
+		return this.numberHits;
+	}
+
+	/**
+	 * number of lookups that added a new atom set
+	 *
+	 * @return
+	 */
+	public long getNumberMisses() {
+		return this.numberMisses;
+	}
+
+	public void nullify() {
+		this.keys = null;
+		this.hashes = null;
+		this.treeDepths = null;
+	}
+}
@@ -0,0 +1,142 @@
+package de.ipbhalle.metfraglib.collection;
+
+/**
+ * map from int keys to objects without boxing of the keys
+ * entries are stored by open addressing (linear probing), removed entries are closed by shifting back
+ * the following entries of the probe sequence so that no deleted markers are needed
+ * null values are not allowed, a slot with null value is empty
+ *
+ * @param <V>
+ */
+public class IntObjectHashMap<V> {
+
+	private static final float MAXIMUM_LOAD = 0.5f;
+
+	private int[] keys;
+	private Object[] values;
+	private int mask;
+	private int size;
+
+	public IntObjectHashMap() {
+		this(16);
+	}
+
+	/**
+	 *
+	 * @param expectedSize
+	 */
+	public IntObjectHashMap(int expectedSize) {
+		int capacity = 16;
+		while(capacity * MAXIMUM_LOAD < expectedSize) capacity <<= 1;
+		this.keys = new int[capacity];
+		this.values = new Object[capacity];
+		this.mask = capacity - 1;
+		this.size = 0;
+	}
+
+	private int slot(int key) {
+		int hash = key * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & this.mask;
+	}
+
+	private int find(int key) {
+		int slot = this.slot(key);
+		while(this.values[slot] != null) {
+			if(this.keys[slot] == key) return slot;
+			slot = (slot + 1) & this.mask;
+		}
+		return -1;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int slot = this.find(key);
+		return slot == -1 ? null : (V)this.values[slot];
+	}
+
+	public boolean containsKey(int key) {
+		return this.find(key) != -1;
+	}
+
+	/**
+	 * stores the value for the given key, an existing value is replaced
+	 *
+	 * @param key
+	 * @param value not null
+	 */
+	public void put(int key, V value) {
+		int slot = this.slot(key);
+		while(this.values[slot] != null) {
+			if(this.keys[slot] == key) {
+				this.values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		this.keys[slot] = key;
+		this.values[slot] = value;
+		this.size++;
+		if(this.size > this.keys.length * MAXIMUM_LOAD) this.resize();
+	}
+
+	/**
+	 * removes the entry of the given key if contained
+	 *
+	 * @param key
+	 */
+	public void remove(int key) {
+		int slot = this.find(key);
+		if(slot == -1) return;
+		this.values[slot] = null;
+		this.size--;
+		/*
+		 * shift back entries whose probe sequence passes the freed slot
+		 */
+		int freeSlot = slot;
+		slot = (slot + 1) & this.mask;
+		while(this.values[slot] != null) {
+			int homeSlot = this.slot(this.keys[slot]);
+			if(((slot - homeSlot) & this.mask) >= ((slot - freeSlot) & this.mask)) {
+				this.keys[freeSlot] = this.keys[slot];
+				this.values[freeSlot] = this.values[slot];
+				this.values[slot] = null;
+				freeSlot = slot;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+	}
+
+	private void resize() {
+		int[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		this.keys = new int[oldKeys.length << 1];
+		this.values = new Object[oldValues.length << 1];
+		this.mask = this.keys.length - 1;
+		for(int i = 0; i < oldKeys.length; i++) {
+			if(oldValues[i] == null) continue;
+			int slot = this.slot(oldKeys[i]);
+			while(this.values[slot] != null) slot = (slot + 1) & this.mask;
+			this.keys[slot] = oldKeys[i];
+			this.values[slot] = oldValues[i];
+		}
+	}
+
+	/**
+	 * returns the contained keys in ascending order
+	 *
+	 * @return
+	 */
+	public int[] getKeys() {
+		int[] containedKeys = new int[this.size];
+		int index = 0;
+		for(int i = 0; i < this.keys.length; i++)
+			if(this.values[i] != null) containedKeys[index++] = this.keys[i];
+		java.util.Arrays.sort(containedKeys);
+		return containedKeys;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+}
@@ -17,6 +17,12 @@ public abstract class AbstractTopDownBitArrayFragment extends DefaultBitArrayFra
 	protected byte addedToQueueCounts;
 	protected short lastSkippedBond;
 	protected boolean hasMatchedChild;
+	/*
+	 * summed energy of the broken bonds
+	 * accumulated by the fragmenter as energy of the fragmented fragment plus the energy of the cleaved bond
+	 * NaN if not known
+	 */
+	protected double brokenBondsEnergy;
 	
 	public AbstractTopDownBitArrayFragment(AbstractTopDownBitArrayPrecursor precursor) {
 		super(precursor);
@@ -24,6 +30,7 @@ public abstract class AbstractTopDownBitArrayFragment extends DefaultBitArrayFra
 		this.addedToQueueCounts = 0;
 		this.lastSkippedBond = -1;
 		this.hasMatchedChild = false;
+		this.brokenBondsEnergy = 0.0;
 	}
 	
 	public AbstractTopDownBitArrayFragment(AbstractTopDownBitArrayPrecursor precursorMolecule,
@@ -31,6 +38,7 @@ public abstract class AbstractTopDownBitArrayFragment extends DefaultBitArrayFra
 			BitArray brokenBondsBitArray) {
 		super(precursorMolecule, atomsBitArray, bondsBitArray, brokenBondsBitArray);
 		this.lastSkippedBond = -1;
+		this.brokenBondsEnergy = Double.NaN;
 	}
 
 	public abstract AbstractTopDownBitArrayFragment[] traverseMolecule(short bondIndexToRemove, short[] indecesOfBondConnectedAtoms);
@@ -55,6 +63,30 @@ public abstract class AbstractTopDownBitArrayFragment extends DefaultBitArrayFra
 		this.lastSkippedBond = lastSkippedBond;
 	}
 
+	public double getBrokenBondsEnergy() {
+		return this.brokenBondsEnergy;
+	}
+
+	/**
+	 * returns the summed energy of the broken bonds
+	 * the given bond energies are only used if the energy wasn't set during fragment generation
+	 * 
+	 * @param bondEnergies energies indexed by bond index
+	 * @return
+	 */
+	public double getBrokenBondsEnergy(double[] bondEnergies) {
+		if(!Double.isNaN(this.brokenBondsEnergy)) return this.brokenBondsEnergy;
+		double energy = 0.0;
+		int[] brokenBondIndeces = this.brokenBondsBitArray.getSetIndeces();
+		for(int bondIndex : brokenBondIndeces)
+			energy += bondEnergies[bondIndex];
+		return energy;
+	}
+
+	public void setBrokenBondsEnergy(double brokenBondsEnergy) {
+		this.brokenBondsEnergy = brokenBondsEnergy;
+	}
+
 	public void shallowNullify() {
 		super.shallowNullify();
 		this.children = null;
@@ -92,6 +124,13 @@ public abstract class AbstractTopDownBitArrayFragment extends DefaultBitArrayFra
 	public java.util.Vector<AbstractTopDownBitArrayFragment> getChildren() {
 		return this.children;
 	}
+
+	/**
+	 * releases the references to the generated child fragments
+	 */
+	public void removeChildren() {
+		this.children = null;
+	}
 	
 	public int getNumberOfChildren() {
 		if(this.children == null) return 0;
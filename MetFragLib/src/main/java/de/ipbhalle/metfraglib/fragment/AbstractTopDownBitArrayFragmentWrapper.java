@@ -4,6 +4,10 @@ public class AbstractTopDownBitArrayFragmentWrapper {
 
 	protected Integer currentPeakIndexPointer;
 	protected AbstractTopDownBitArrayFragment wrappedFragment;
+	/*
+	 * true if no fragment below the wrapped fragment can improve a peak match
+	 */
+	protected boolean subtreePruned;
 	
 	public AbstractTopDownBitArrayFragmentWrapper(
 			AbstractTopDownBitArrayFragment wrappedFragment) {
@@ -32,6 +36,14 @@ public class AbstractTopDownBitArrayFragmentWrapper {
 		this.wrappedFragment = wrappedFragment;
 	}
 	
+	public boolean isSubtreePruned() {
+		return this.subtreePruned;
+	}
+	
+	public void setSubtreePruned(boolean subtreePruned) {
+		this.subtreePruned = subtreePruned;
+	}
+	
 	public void shallowNullify() {
 		this.currentPeakIndexPointer = null;
 	}
@@ -71,22 +71,17 @@ public class DefaultBitArrayFragment extends AbstractFragment {
 		this.atomsBitArray = atomsBitArray;
 		this.bondsBitArray = new BitArray(precursorMolecule.getNonHydrogenBondCount(), false);
 		this.brokenBondsBitArray = new BitArray(precursorMolecule.getNonHydrogenBondCount(), false);
-		for(int i = 0; i < this.atomsBitArray.getSize(); i++) {
-			short[] atomIndeces = precursorMolecule.getConnectedAtomIndecesOfAtomIndex((byte)i);
-			if(this.atomsBitArray.get(i)) {
-				for(int k = 0; k < atomIndeces.length; k++) {
-					if(this.atomsBitArray.get(atomIndeces[k])) 
-						this.bondsBitArray.set(precursorMolecule.getBondIndexFromAtomAdjacencyList((short)i, atomIndeces[k]) - 1);
-					else 
-						this.brokenBondsBitArray.set(precursorMolecule.getBondIndexFromAtomAdjacencyList((short)i, atomIndeces[k]) - 1);
-				}
-			}
-			else {
-				for(int k = 0; k < atomIndeces.length; k++) {
-					if(this.atomsBitArray.get(atomIndeces[k])) 
-						this.brokenBondsBitArray.set(precursorMolecule.getBondIndexFromAtomAdjacencyList((short)i, atomIndeces[k]) - 1);
-				}
+		/*
+		 * a bond is part of the fragment if both connected atoms are set
+		 * it is broken if exactly one of them is set
+		 */
+		for(int i = 0; i < this.bondsBitArray.getSize(); i++) {
+			short[] atomIndeces = precursorMolecule.getConnectedAtomIndecesOfBondIndex((short)i);
+			boolean firstAtomSet = this.atomsBitArray.get(atomIndeces[0]);
+			if(firstAtomSet == this.atomsBitArray.get(atomIndeces[1])) {
+				if(firstAtomSet) this.bondsBitArray.set(i);
 			}
+			else this.brokenBondsBitArray.set(i);
 		}
 		
 		this.treeDepth = 0;
@@ -254,12 +249,7 @@ public class DefaultBitArrayFragment extends AbstractFragment {
 	}
 	
 	public IMolecularFormula getMolecularFormula() {
-		try {
-			return new BitArrayFragmentMolecularFormula((BitArrayPrecursor)this.precursorMolecule, this.atomsBitArray);
-		} catch (AtomTypeNotKnownFromInputListException e) {
-			e.printStackTrace();
-		}
-		return null;
+		return new BitArrayFragmentMolecularFormula((BitArrayPrecursor)this.precursorMolecule, this.atomsBitArray);
 	}
 
 	public String getSmiles() {
@@ -294,8 +284,7 @@ public class DefaultBitArrayFragment extends AbstractFragment {
 		IChemObjectBuilder builder = DefaultChemObjectBuilder.getInstance();
 		IAtomContainer fragmentStructure = builder.newInstance(IAtomContainer.class);
 		
-		for(int i = 0; i < this.bondsBitArray.getSize(); i++) {
-			if(this.bondsBitArray.get(i)) {
+		for(int i = this.bondsBitArray.nextSetBit(-1); i != -1; i = this.bondsBitArray.nextSetBit(i)) {
 				IBond curBond = this.precursorMolecule.getStructureAsIAtomContainer().getBond(i);
 				if(this.precursorMolecule.isAromaticBond(i)) curBond.setIsAromatic(true);
 				for(IAtom atom : curBond.atoms()) {
@@ -304,7 +293,6 @@ public class DefaultBitArrayFragment extends AbstractFragment {
 					fragmentStructure.addAtom(atom);
 				}
 				fragmentStructure.addBond(curBond);
-			}
 		}
 	//	loss of hydrogens
 	//	MoleculeFunctions.prepareAtomContainer(fragmentStructure);
@@ -316,14 +304,12 @@ public class DefaultBitArrayFragment extends AbstractFragment {
 		IChemObjectBuilder builder = DefaultChemObjectBuilder.getInstance();
 		IAtomContainer fragmentStructure = builder.newInstance(IAtomContainer.class);
 		
-		for(int i = 0; i < this.bondsBitArray.getSize(); i++) {
-			if(this.bondsBitArray.get(i)) {
+		for(int i = this.bondsBitArray.nextSetBit(-1); i != -1; i = this.bondsBitArray.nextSetBit(i)) {
 				IBond curBond = this.precursorMolecule.getStructureAsIAtomContainer().getBond(i);
 				for(IAtom atom : curBond.atoms()) {
 					fragmentStructure.addAtom(atom);
 				}
 				fragmentStructure.addBond(curBond);
-			}
 		}
 	//	loss of hydrogens
 	//	MoleculeFunctions.prepareAtomContainer(fragmentStructure);
@@ -393,45 +379,18 @@ public class DefaultBitArrayFragment extends AbstractFragment {
 	public boolean isRealSubStructure(IFragment molecularStructure) {
 		BitArray currentAtomsBitArray = ((DefaultBitArrayFragment)molecularStructure).getAtomsBitArray();
 		if(currentAtomsBitArray.getSize() != this.atomsBitArray.getSize()) return false; 
-		int currentAtomsBitArrayCardinality = 0;
-		int thisAtomsBitArrayCardinality = 0;
-		for(int i = 0; i < this.atomsBitArray.getSize(); i++) {
-			boolean currentAtomsBitArrayValue = currentAtomsBitArray.get(i);
-			boolean thisAtomsBitArrayValue = this.atomsBitArray.get(i);
-			if(thisAtomsBitArrayValue) thisAtomsBitArrayCardinality++;
-			if(currentAtomsBitArrayValue) currentAtomsBitArrayCardinality++;
-			if(!thisAtomsBitArrayValue && currentAtomsBitArrayValue) return false;
-		}
-		if(thisAtomsBitArrayCardinality == currentAtomsBitArrayCardinality) return false;
-		return true;
+		return this.atomsBitArray.isRealSubset(currentAtomsBitArray);
 	}
 
 	public boolean isSubStructure(IFragment molecularStructure) {
 		BitArray currentAtomsBitArray = ((DefaultBitArrayFragment)molecularStructure).getAtomsBitArray();
 		if(currentAtomsBitArray.getSize() != this.atomsBitArray.getSize()) return false; 
-		for(int i = 0; i < this.atomsBitArray.getSize(); i++) {
-			boolean currentAtomsBitArrayValue = currentAtomsBitArray.get(i);
-			boolean thisAtomsBitArrayValue = this.atomsBitArray.get(i);
-			if(!thisAtomsBitArrayValue && currentAtomsBitArrayValue) return false;
-		}
-		return true;
+		return this.atomsBitArray.isSubset(currentAtomsBitArray);
 	}
 	
 	public int[] getUniqueBrokenBondIndeces(IFragment molecularStructure) {
 		BitArray currentBrokenBondBitArray = ((DefaultBitArrayFragment)molecularStructure).getBrokenBondsBitArray();
-		int numUniqueBondsSet = 0;
-		for(int i = 0; i < currentBrokenBondBitArray.getSize(); i++) {
-			if(currentBrokenBondBitArray.get(i) && !this.brokenBondsBitArray.get(i))
-				numUniqueBondsSet++;
-		}
-		int[] uniqueBrokenBondIndeces = new int[numUniqueBondsSet];
-		for(int i = 0; i < currentBrokenBondBitArray.getSize(); i++) {
-			int index = 0;
-			if(currentBrokenBondBitArray.get(i) && !this.brokenBondsBitArray.get(i)) {
-				uniqueBrokenBondIndeces[index] = i;
-			}	
-		}
-		return uniqueBrokenBondIndeces;
+		return currentBrokenBondBitArray.getDiff(this.brokenBondsBitArray).getSetIndeces();
 	}
 
 	@Override
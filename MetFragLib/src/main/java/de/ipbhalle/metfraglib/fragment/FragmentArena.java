@@ -0,0 +1,267 @@
+package de.ipbhalle.metfraglib.fragment;
+
+import de.ipbhalle.metfraglib.BitArray;
+import de.ipbhalle.metfraglib.molecularformula.ByteMolecularFormula;
+import de.ipbhalle.metfraglib.precursor.TopDownBitArrayPrecursor;
+
+/**
+ * stores the fragments of the top down fragment tree of one candidate in primitive arrays
+ * indexed by an arena id (0 is the first added fragment, usually the root)
+ *
+ * atoms, bonds and broken bonds are kept as word slabs, the formula as element count slab
+ * fragment objects are only created on demand by getFragment(id) including their precursor fragment chain
+ * so fragments that are expanded but never matched don't need to stay alive as objects
+ * a created fragment object is only referenced weakly and returned again as long as it is alive, e.g. as precursor 
+ * fragment of a matched fragment, so that precursor fragments are shared instead of created once per descendant
+ *
+ */
+public class FragmentArena {
+
+	private static final byte IS_VALID_FRAGMENT = 1;
+	private static final byte IS_DISCARDED_FOR_FRAGMENTATION = 2;
+	private static final byte HAS_MATCHED = 4;
+	private static final byte HAS_MATCHED_CHILD = 8;
+	private static final byte WAS_RING_CLEAVED_FRAGMENT = 16;
+	private static final byte HAS_ID = 32;
+	private static final byte IS_SUBTREE_PRUNED = 64;
+
+	private final TopDownBitArrayPrecursor precursor;
+	private final int numberAtoms;
+	private final int numberBonds;
+	private final int numberAtomWords;
+	private final int numberBondWords;
+	private final int numberElements;
+
+	private long[] atomWords;
+	private long[] bondWords;
+	private long[] brokenBondWords;
+	private short[] elementCounts;
+	private short[] formulaNumberHydrogens;
+	private int[] numberHydrogens;
+	private double[] masses;
+	private double[] brokenBondsEnergies;
+	private byte[] treeDepths;
+	private int[] parentIds;
+	private byte[] flags;
+	private byte[] addedToQueueCounts;
+	private short[] lastSkippedBonds;
+	private int[] fragmentIds;
+	private int[] peakIndexPointers;
+	private java.lang.ref.WeakReference<TopDownBitArrayFragment>[] fragments;
+	private int size;
+
+	/**
+	 *
+	 * @param precursor
+	 * @param expectedSize
+	 */
+	public FragmentArena(TopDownBitArrayPrecursor precursor, int expectedSize) {
+		this.precursor = precursor;
+		this.numberAtoms = precursor.getNonHydrogenAtomCount();
+		this.numberBonds = precursor.getNonHydrogenBondCount();
+		this.numberAtomWords = BitArray.numberOfWords(this.numberAtoms);
+		this.numberBondWords = BitArray.numberOfWords(this.numberBonds);
+		this.numberElements = precursor.getFormulaElementIndeces().length;
+		this.allocate(Math.max(16, expectedSize));
+	}
+
+	private void allocate(int capacity) {
+		this.atomWords = new long[capacity * this.numberAtomWords];
+		this.bondWords = new long[capacity * this.numberBondWords];
+		this.brokenBondWords = new long[capacity * this.numberBondWords];
+		this.elementCounts = new short[capacity * this.numberElements];
+		this.formulaNumberHydrogens = new short[capacity];
+		this.numberHydrogens = new int[capacity];
+		this.masses = new double[capacity];
+		this.brokenBondsEnergies = new double[capacity];
+		this.treeDepths = new byte[capacity];
+		this.parentIds = new int[capacity];
+		this.flags = new byte[capacity];
+		this.addedToQueueCounts = new byte[capacity];
+		this.lastSkippedBonds = new short[capacity];
+		this.fragmentIds = new int[capacity];
+		this.peakIndexPointers = new int[capacity];
+		this.fragments = this.createFragmentReferences(capacity);
+	}
+
+	@SuppressWarnings("unchecked")
+	private java.lang.ref.WeakReference<TopDownBitArrayFragment>[] createFragmentReferences(int capacity) {
+		return new java.lang.ref.WeakReference[capacity];
+	}
+
+	private void grow() {
+		int capacity = this.masses.length << 1;
+		this.atomWords = java.util.Arrays.copyOf(this.atomWords, capacity * this.numberAtomWords);
+		this.bondWords = java.util.Arrays.copyOf(this.bondWords, capacity * this.numberBondWords);
+		this.brokenBondWords = java.util.Arrays.copyOf(this.brokenBondWords, capacity * this.numberBondWords);
+		this.elementCounts = java.util.Arrays.copyOf(this.elementCounts, capacity * this.numberElements);
+		this.formulaNumberHydrogens = java.util.Arrays.copyOf(this.formulaNumberHydrogens, capacity);
+		this.numberHydrogens = java.util.Arrays.copyOf(this.numberHydrogens, capacity);
+		this.masses = java.util.Arrays.copyOf(this.masses, capacity);
+		this.brokenBondsEnergies = java.util.Arrays.copyOf(this.brokenBondsEnergies, capacity);
+		this.treeDepths = java.util.Arrays.copyOf(this.treeDepths, capacity);
+		this.parentIds = java.util.Arrays.copyOf(this.parentIds, capacity);
+		this.flags = java.util.Arrays.copyOf(this.flags, capacity);
+		this.addedToQueueCounts = java.util.Arrays.copyOf(this.addedToQueueCounts, capacity);
+		this.lastSkippedBonds = java.util.Arrays.copyOf(this.lastSkippedBonds, capacity);
+		this.fragmentIds = java.util.Arrays.copyOf(this.fragmentIds, capacity);
+		this.peakIndexPointers = java.util.Arrays.copyOf(this.peakIndexPointers, capacity);
+		java.lang.ref.WeakReference<TopDownBitArrayFragment>[] fragments = this.createFragmentReferences(capacity);
+		System.arraycopy(this.fragments, 0, fragments, 0, this.size);
+		this.fragments = fragments;
+	}
+
+	/**
+	 * copies the state of the given fragment into the arena and returns its arena id
+	 * the fragment object itself is returned by getFragment(id) as long as it is alive
+	 *
+	 * @param fragment
+	 * @param parentId arena id of the precursor fragment, -1 if there is none
+	 * @param peakIndexPointer index of the peak the fragment's children start matching at
+	 * @return
+	 */
+	public int add(TopDownBitArrayFragment fragment, int parentId, int peakIndexPointer) {
+		if(this.size == this.masses.length) this.grow();
+		int id = this.size;
+		System.arraycopy(fragment.getAtomsBitArray().getWords(), 0, this.atomWords, id * this.numberAtomWords, this.numberAtomWords);
+		System.arraycopy(fragment.getBondsBitArray().getWords(), 0, this.bondWords, id * this.numberBondWords, this.numberBondWords);
+		System.arraycopy(fragment.getBrokenBondsBitArray().getWords(), 0, this.brokenBondWords, id * this.numberBondWords, this.numberBondWords);
+		ByteMolecularFormula formula = (ByteMolecularFormula)fragment.getMolecularFormula();
+		System.arraycopy(formula.getNumberOfAtoms(), 0, this.elementCounts, id * this.numberElements, this.numberElements);
+		this.formulaNumberHydrogens[id] = formula.getNumberHydrogens();
+		this.numberHydrogens[id] = fragment.getNumberHydrogens();
+		this.masses[id] = fragment.getMonoisotopicMass();
+		this.brokenBondsEnergies[id] = fragment.getBrokenBondsEnergy();
+		this.treeDepths[id] = fragment.getTreeDepth();
+		this.parentIds[id] = parentId;
+		byte flag = 0;
+		if(fragment.isValidFragment()) flag |= IS_VALID_FRAGMENT;
+		if(fragment.isDiscardedForFragmentation()) flag |= IS_DISCARDED_FOR_FRAGMENTATION;
+		if(fragment.hasMatched()) flag |= HAS_MATCHED;
+		if(fragment.hasMatchedChild()) flag |= HAS_MATCHED_CHILD;
+		if(fragment.isWasRingCleavedFragment()) flag |= WAS_RING_CLEAVED_FRAGMENT;
+		if(fragment.ID != null) {
+			flag |= HAS_ID;
+			this.fragmentIds[id] = fragment.ID;
+		}
+		this.flags[id] = flag;
+		this.addedToQueueCounts[id] = fragment.getAddedToQueueCounts();
+		this.lastSkippedBonds[id] = fragment.getLastSkippedBond();
+		this.peakIndexPointers[id] = peakIndexPointer;
+		this.fragments[id] = new java.lang.ref.WeakReference<TopDownBitArrayFragment>(fragment);
+		this.size++;
+		return id;
+	}
+
+	/**
+	 * returns the fragment object of the given arena id, it is created if it isn't alive anymore
+	 * the precursor fragments are resolved along the stored parent ids in the same way
+	 *
+	 * @param id
+	 * @return
+	 */
+	public TopDownBitArrayFragment getFragment(int id) {
+		TopDownBitArrayFragment fragment = this.fragments[id] == null ? null : this.fragments[id].get();
+		if(fragment != null) {
+			/*
+			 * the flag may have been set by setHasMatchedChild(id) after the object was created
+			 */
+			if((this.flags[id] & HAS_MATCHED_CHILD) != 0) fragment.setHasMatchedChild(true);
+			return fragment;
+		}
+		fragment = new TopDownBitArrayFragment(this.precursor,
+				new BitArray(this.numberAtoms, this.atomWords, id * this.numberAtomWords),
+				new BitArray(this.numberBonds, this.bondWords, id * this.numberBondWords),
+				new BitArray(this.numberBonds, this.brokenBondWords, id * this.numberBondWords),
+				this.numberHydrogens[id]);
+		short[] numberOfAtoms = new short[this.numberElements];
+		System.arraycopy(this.elementCounts, id * this.numberElements, numberOfAtoms, 0, this.numberElements);
+		fragment.initialiseMolecularFormula(numberOfAtoms, this.formulaNumberHydrogens[id]);
+		fragment.setTreeDepth(this.treeDepths[id]);
+		fragment.setBrokenBondsEnergy(this.brokenBondsEnergies[id]);
+		byte flag = this.flags[id];
+		if((flag & HAS_ID) != 0) fragment.setID(this.fragmentIds[id]);
+		if((flag & IS_VALID_FRAGMENT) != 0) fragment.setAsValidFragment();
+		if((flag & IS_DISCARDED_FOR_FRAGMENTATION) != 0) fragment.setAsDiscardedForFragmentation();
+		if((flag & HAS_MATCHED) != 0) fragment.setHasMatched();
+		fragment.setHasMatchedChild((flag & HAS_MATCHED_CHILD) != 0);
+		fragment.setWasRingCleavedFragment((flag & WAS_RING_CLEAVED_FRAGMENT) != 0);
+		fragment.setAddedToQueueCounts(this.addedToQueueCounts[id]);
+		fragment.setLastSkippedBond(this.lastSkippedBonds[id]);
+		if(this.parentIds[id] != -1) fragment.setPrecursorFragment(this.getFragment(this.parentIds[id]));
+		this.fragments[id] = new java.lang.ref.WeakReference<TopDownBitArrayFragment>(fragment);
+		return fragment;
+	}
+
+	/**
+	 * marks all precursor fragments starting from the given arena id as having a matched child
+	 *
+	 * @param id
+	 */
+	public void setHasMatchedChild(int id) {
+		while(id != -1) {
+			this.flags[id] |= HAS_MATCHED_CHILD;
+			id = this.parentIds[id];
+		}
+	}
+
+	/**
+	 * marks the fragment as not to be matched as no fragment below its precursor can improve a peak match
+	 *
+	 * @param id
+	 */
+	public void setSubtreePruned(int id) {
+		this.flags[id] |= IS_SUBTREE_PRUNED;
+	}
+
+	public boolean isSubtreePruned(int id) {
+		return (this.flags[id] & IS_SUBTREE_PRUNED) != 0;
+	}
+
+	public int getParentId(int id) {
+		return this.parentIds[id];
+	}
+
+	public int getPeakIndexPointer(int id) {
+		return this.peakIndexPointers[id];
+	}
+
+	public double getMonoisotopicMass(int id) {
+		return this.masses[id];
+	}
+
+	public byte getTreeDepth(int id) {
+		return this.treeDepths[id];
+	}
+
+	public boolean isValidFragment(int id) {
+		return (this.flags[id] & IS_VALID_FRAGMENT) != 0;
+	}
+
+	public boolean hasMatched(int id) {
+		return (this.flags[id] & HAS_MATCHED) != 0;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public void nullify() {
+		this.atomWords = null;
+		this.bondWords = null;
+		this.brokenBondWords = null;
+		this.elementCounts = null;
+		this.formulaNumberHydrogens = null;
+		this.numberHydrogens = null;
+		this.masses = null;
+		this.brokenBondsEnergies = null;
+		this.treeDepths = null;
+		this.parentIds = null;
+		this.flags = null;
+		this.addedToQueueCounts = null;
+		this.lastSkippedBonds = null;
+		this.fragmentIds = null;
+		this.peakIndexPointers = null;
+		this.fragments = null;
+	}
+}
@@ -19,6 +19,7 @@ public class TopDownBitArrayFragment extends de.ipbhalle.metfraglib.fragment.Abs
 	 */
 	public TopDownBitArrayFragment(TopDownBitArrayPrecursor precursor) {
 		super(precursor);
+		this.numberHydrogens = precursor.getNumberHydrogens();
 	}
 
 	public TopDownBitArrayFragment clone() {
@@ -31,6 +32,7 @@ public class TopDownBitArrayFragment extends de.ipbhalle.metfraglib.fragment.Abs
 				this.numberHydrogens);
 		clone.setID(this.ID);
 		clone.setTreeDepth(this.treeDepth);
+		clone.setBrokenBondsEnergy(this.brokenBondsEnergy);
 		if(clone.hasMatched) clone.setHasMatched();
 		try {
 			clone.initialiseMolecularFormula();
@@ -65,6 +67,16 @@ public class TopDownBitArrayFragment extends de.ipbhalle.metfraglib.fragment.Abs
 		this.molecularFormula = new BitArrayFragmentMolecularFormula((BitArrayPrecursor)this.precursorMolecule, this.atomsBitArray);
 	}
 	
+	/**
+	 * initialises the molecular formula by given element counts
+	 * 
+	 * @param numberOfAtoms element counts related to the precursor's molecular formula
+	 * @param numberHydrogens
+	 */
+	protected void initialiseMolecularFormula(short[] numberOfAtoms, int numberHydrogens) {
+		this.molecularFormula = new BitArrayFragmentMolecularFormula((BitArrayPrecursor)this.precursorMolecule, numberOfAtoms, (short)numberHydrogens);
+	}
+	
 	public double getMonoisotopicMass() {
 		return this.molecularFormula.getMonoisotopicMass();
 	}
@@ -81,6 +93,8 @@ public class TopDownBitArrayFragment extends de.ipbhalle.metfraglib.fragment.Abs
 	/**
 	 * main function of fragment generation
 	 * traverse the given fragment and return two new fragments by removing bond with bondIndexToRemove
+	 * the traversal itself runs on the thread local workspace, BitArrays of the new fragments are only
+	 * created once the result of the traversal is known
 	 * 
 	 * @param fragment
 	 * @param bondNumber
@@ -88,140 +102,145 @@ public class TopDownBitArrayFragment extends de.ipbhalle.metfraglib.fragment.Abs
 	 * @return
 	 */
 	public AbstractTopDownBitArrayFragment[] traverseMolecule(short bondIndexToRemove, short[] indecesOfBondConnectedAtoms) {
-
+		TraversalWorkspace workspace = WORKSPACE.get();
 		/*
-		 * generate first fragment
+		 * all fragments except a precursor consisting of several disconnected parts are connected
+		 * only then the traversal can stop at the second atom of the removed bond and the second
+		 * fragment can be derived from the atoms and bonds not visited
 		 */
-		de.ipbhalle.metfraglib.BitArray atomArrayOfNewFragment_1 = new de.ipbhalle.metfraglib.BitArray(this.precursorMolecule.getNonHydrogenAtomCount());
-		de.ipbhalle.metfraglib.BitArray bondArrayOfNewFragment_1 = new de.ipbhalle.metfraglib.BitArray(this.precursorMolecule.getNonHydrogenBondCount());
-		de.ipbhalle.metfraglib.BitArray brokenBondArrayOfNewFragment_1 = this.getBrokenBondsBitArray().clone();
-		int[] numberHydrogensOfNewFragment = new int[1];
-		
+		boolean isConnected = ((BitArrayPrecursor)this.precursorMolecule).isConnected() 
+				|| this.atomsBitArray.cardinality() != this.precursorMolecule.getNonHydrogenAtomCount();
+		/*
+		 * element counts of the current fragment derived from its atoms
+		 * hydrogen numbers of the molecular formula might have been changed by neutral losses so these are taken from the fragment
+		 */
+		short[] numberOfAtomsOfCurrentFragment = ((BitArrayFragmentMolecularFormula)this.molecularFormula).getNumberOfAtoms();
 		/*
 		 * traverse to first direction from atomIndex connected by broken bond
 		 */
-		boolean stillOneFragment = this.traverseSingleDirection(indecesOfBondConnectedAtoms[0], indecesOfBondConnectedAtoms[1], bondIndexToRemove, 
-				atomArrayOfNewFragment_1, bondArrayOfNewFragment_1, brokenBondArrayOfNewFragment_1, numberHydrogensOfNewFragment);
-		
-		TopDownBitArrayFragment firstNewGeneratedFragment = new TopDownBitArrayFragment((TopDownBitArrayPrecursor)this.precursorMolecule, atomArrayOfNewFragment_1, bondArrayOfNewFragment_1, 
-			brokenBondArrayOfNewFragment_1, numberHydrogensOfNewFragment[0]);
-		try {
-			firstNewGeneratedFragment.initialiseMolecularFormula();
-		} catch (AtomTypeNotKnownFromInputListException e1) {
-			e1.printStackTrace();
-		}
+		boolean stillOneFragment = this.traverseSingleDirection(indecesOfBondConnectedAtoms[0], indecesOfBondConnectedAtoms[1], bondIndexToRemove, isConnected, workspace);
 		
+		de.ipbhalle.metfraglib.BitArray brokenBondArrayOfNewFragment_1 = this.brokenBondsBitArray.clone();
+		brokenBondArrayOfNewFragment_1.set(bondIndexToRemove);
 		/*
 		 * only one fragment is generated when a ring bond was broken
+		 * it contains all atoms and all bonds except the removed one of the current fragment
 		 */
 		if (stillOneFragment) {
-			firstNewGeneratedFragment.setTreeDepth(this.getTreeDepth());
-			firstNewGeneratedFragment.setAddedToQueueCounts((byte)(this.getAddedToQueueCounts() + 1));
-			TopDownBitArrayFragment[] newFrags = { firstNewGeneratedFragment };
+			TopDownBitArrayFragment newGeneratedFragment = null;
+			if(isConnected) {
+				de.ipbhalle.metfraglib.BitArray bondArrayOfNewFragment = this.bondsBitArray.clone();
+				bondArrayOfNewFragment.clear(bondIndexToRemove);
+				newGeneratedFragment = new TopDownBitArrayFragment((TopDownBitArrayPrecursor)this.precursorMolecule, this.atomsBitArray.clone(), bondArrayOfNewFragment, 
+					brokenBondArrayOfNewFragment_1, this.numberHydrogens);
+				newGeneratedFragment.initialiseMolecularFormula(numberOfAtomsOfCurrentFragment.clone(), this.numberHydrogens);
+			}
+			else newGeneratedFragment = this.createFragmentFromWorkspace(workspace, brokenBondArrayOfNewFragment_1);
+			newGeneratedFragment.setTreeDepth(this.getTreeDepth());
+			newGeneratedFragment.setAddedToQueueCounts((byte)(this.getAddedToQueueCounts() + 1));
+			TopDownBitArrayFragment[] newFrags = { newGeneratedFragment };
 			return newFrags;
 		}
 		/*
-		 * generate second fragment
-		 */
-		de.ipbhalle.metfraglib.BitArray atomArrayOfNewFragment_2 = new de.ipbhalle.metfraglib.BitArray(this.precursorMolecule.getNonHydrogenAtomCount());
-		de.ipbhalle.metfraglib.BitArray bondArrayOfNewFragment_2 = new de.ipbhalle.metfraglib.BitArray(this.precursorMolecule.getNonHydrogenBondCount());
-		de.ipbhalle.metfraglib.BitArray brokenBondArrayOfNewFragment_2 = this.getBrokenBondsBitArray().clone();
-		numberHydrogensOfNewFragment[0] = 0;
-
-		/*
-		 * traverse the second direction from atomIndex connected by broken bond
+		 * generate first fragment from the atoms and bonds visited during traversal
 		 */
-		this.traverseSingleDirection(indecesOfBondConnectedAtoms[1], indecesOfBondConnectedAtoms[0], bondIndexToRemove, 
-				atomArrayOfNewFragment_2, bondArrayOfNewFragment_2, brokenBondArrayOfNewFragment_2, numberHydrogensOfNewFragment);
-
-		TopDownBitArrayFragment secondNewGeneratedFragment = new TopDownBitArrayFragment((TopDownBitArrayPrecursor)this.precursorMolecule, atomArrayOfNewFragment_2, 
-			bondArrayOfNewFragment_2, brokenBondArrayOfNewFragment_2, numberHydrogensOfNewFragment[0]);
-		
-		try {
-			secondNewGeneratedFragment.initialiseMolecularFormula();
-		} catch (AtomTypeNotKnownFromInputListException e) {
-			e.printStackTrace();
+		TopDownBitArrayFragment firstNewGeneratedFragment = this.createFragmentFromWorkspace(workspace, brokenBondArrayOfNewFragment_1);
+		TopDownBitArrayFragment secondNewGeneratedFragment = null;
+		if(isConnected) {
+			/*
+			 * the second fragment contains the remaining atoms and bonds of the current fragment
+			 * bondIndexToRemove is never part of the first fragment's bonds so it has to be removed explicitly
+			 */
+			de.ipbhalle.metfraglib.BitArray atomArrayOfNewFragment_2 = this.atomsBitArray.getDiff(firstNewGeneratedFragment.getAtomsBitArray());
+			de.ipbhalle.metfraglib.BitArray bondArrayOfNewFragment_2 = this.bondsBitArray.getDiff(firstNewGeneratedFragment.getBondsBitArray());
+			bondArrayOfNewFragment_2.clear(bondIndexToRemove);
+			int numberHydrogensOfNewFragment_2 = this.numberHydrogens - workspace.numberHydrogens;
+			secondNewGeneratedFragment = new TopDownBitArrayFragment((TopDownBitArrayPrecursor)this.precursorMolecule, atomArrayOfNewFragment_2, 
+				bondArrayOfNewFragment_2, brokenBondArrayOfNewFragment_1.clone(), numberHydrogensOfNewFragment_2);
+			/*
+			 * formula of the second fragment is the formula of the current one minus the formula of the first one
+			 */
+			short[] numberOfAtomsOfNewFragment_2 = new short[numberOfAtomsOfCurrentFragment.length];
+			for(int i = 0; i < numberOfAtomsOfNewFragment_2.length; i++)
+				numberOfAtomsOfNewFragment_2[i] = (short)(numberOfAtomsOfCurrentFragment[i] - workspace.numberOfAtoms[i]);
+			secondNewGeneratedFragment.initialiseMolecularFormula(numberOfAtomsOfNewFragment_2, numberHydrogensOfNewFragment_2);
+		}
+		else {
+			/*
+			 * traverse the second direction from atomIndex connected by broken bond
+			 */
+			this.traverseSingleDirection(indecesOfBondConnectedAtoms[1], indecesOfBondConnectedAtoms[0], bondIndexToRemove, false, workspace);
+			secondNewGeneratedFragment = this.createFragmentFromWorkspace(workspace, brokenBondArrayOfNewFragment_1.clone());
 		}
 		
 		firstNewGeneratedFragment.setTreeDepth((byte)(this.getTreeDepth() + 1));
-	//	firstNewGeneratedFragment.setAddedToQueueCounts((byte)1);
-		
 		secondNewGeneratedFragment.setTreeDepth((byte)(this.getTreeDepth() + 1));
-	//	secondNewGeneratedFragment.setAddedToQueueCounts((byte)1);
 
 		TopDownBitArrayFragment[] newFrags = { firstNewGeneratedFragment, secondNewGeneratedFragment };
 		
-		/*
-		newFrags[0].setPrecursorFragment(this);
-		newFrags[1].setPrecursorFragment(this);
-		
-		this.addChild(newFrags[0]);
-		this.addChild(newFrags[1]);
-		*/
-		
 		return newFrags;
 
 	}
 	
 	/**
-	 * traverse the fragment to one direction starting from startAtomIndex to set BitArrays of new fragment
+	 * creates a new fragment of the atoms and bonds visited during the last traversal
+	 * 
+	 * @param workspace
+	 * @param brokenBondArrayOfNewFragment
+	 * @return
+	 */
+	protected TopDownBitArrayFragment createFragmentFromWorkspace(TraversalWorkspace workspace, de.ipbhalle.metfraglib.BitArray brokenBondArrayOfNewFragment) {
+		de.ipbhalle.metfraglib.BitArray atomArrayOfNewFragment = new de.ipbhalle.metfraglib.BitArray(this.precursorMolecule.getNonHydrogenAtomCount());
+		de.ipbhalle.metfraglib.BitArray bondArrayOfNewFragment = new de.ipbhalle.metfraglib.BitArray(this.precursorMolecule.getNonHydrogenBondCount());
+		for(int i = 0; i < workspace.numberVisitedAtoms; i++)
+			atomArrayOfNewFragment.set(workspace.visitedAtoms[i]);
+		for(int i = 0; i < workspace.numberVisitedBonds; i++)
+			bondArrayOfNewFragment.set(workspace.visitedBonds[i]);
+		TopDownBitArrayFragment newGeneratedFragment = new TopDownBitArrayFragment((TopDownBitArrayPrecursor)this.precursorMolecule, atomArrayOfNewFragment, bondArrayOfNewFragment, 
+				brokenBondArrayOfNewFragment, workspace.numberHydrogens);
+		newGeneratedFragment.initialiseMolecularFormula(workspace.numberOfAtoms.clone(), workspace.numberHydrogens);
+		return newGeneratedFragment;
+	}
+	
+	/**
+	 * traverse the fragment to one direction starting from startAtomIndex
+	 * visited atoms, traversed bonds and the element counts are stored in the given workspace
+	 * returns true if endAtomIndex is reached, i.e. the removal of bondIndexToRemove did not split the fragment
+	 * if stopAtEndAtom is set the traversal is aborted as soon as endAtomIndex is reached
 	 * 
 	 * @param startAtomIndex
-	 * @param fragment
+	 * @param endAtomIndex
 	 * @param bondIndexToRemove
-	 * @param atomArrayOfNewFragment
-	 * @param bondArrayOfNewFragment
-	 * @param brokenBondArrayOfNewFragment
-	 * @param numberHydrogensOfNewFragment
+	 * @param stopAtEndAtom
+	 * @param workspace
 	 * @return
 	 */
-	protected boolean traverseSingleDirection(short startAtomIndex, short endAtomIndex, short bondIndexToRemove, 
-		de.ipbhalle.metfraglib.BitArray atomArrayOfNewFragment, de.ipbhalle.metfraglib.BitArray bondArrayOfNewFragment, 
-		de.ipbhalle.metfraglib.BitArray brokenBondArrayOfNewFragment, int[] numberHydrogensOfNewFragment) 
+	protected boolean traverseSingleDirection(short startAtomIndex, short endAtomIndex, short bondIndexToRemove, boolean stopAtEndAtom, TraversalWorkspace workspace) 
 	{
+		BitArrayPrecursor precursor = (BitArrayPrecursor)this.precursorMolecule;
 		de.ipbhalle.metfraglib.BitArray bondBitArrayOfCurrentFragment = this.getBondsBitArray();
-		/* when traversing the fragment graph then we want to know if we already
-		 * visited a node (atom)
-		 * need to be done for checking of ringed structures
-		 * if traversed an already visited atom, then no new fragment was
-		 * generated
-		 */
-		de.ipbhalle.metfraglib.BitArray visited = new de.ipbhalle.metfraglib.BitArray(this.precursorMolecule.getNonHydrogenAtomCount());
-		numberHydrogensOfNewFragment[0] = 0;
-
-		/*
-		 *  traverse molecule in the first direction
-		 */
-		java.util.Stack<short[]> toProcessConnectedAtoms = new java.util.Stack<short[]>();
-		java.util.Stack<Short> toProcessAtom = new java.util.Stack<Short>();
-		toProcessConnectedAtoms.push(((BitArrayPrecursor)this.precursorMolecule).getConnectedAtomIndecesOfAtomIndex(startAtomIndex));
-		toProcessAtom.push(startAtomIndex);
-		visited.set(startAtomIndex);
+		workspace.reset(precursor.getNonHydrogenAtomCount(), precursor.getNonHydrogenBondCount(), precursor.getFormulaElementIndeces().length);
 		boolean stillOneFragment = false;
 		/*
 		 *  set the first atom of possible new fragment
 		 * atom is of the one direction of cutted bond
 		 */
-		atomArrayOfNewFragment.set(startAtomIndex);
-		numberHydrogensOfNewFragment[0] += ((BitArrayPrecursor)this.precursorMolecule).getNumberHydrogensConnectedToAtomIndex(startAtomIndex);
-		while (!toProcessConnectedAtoms.isEmpty()) {
-			short[] nextAtoms = toProcessConnectedAtoms.pop();
-			short midAtom = toProcessAtom.pop();
+		workspace.visitAtom(startAtomIndex, precursor.getFormulaElementIndexOfAtomIndex(startAtomIndex), precursor.getNumberHydrogensOfAtomIndex(startAtomIndex));
+		while (workspace.stackSize != 0) {
+			short midAtom = (short)workspace.stack[--workspace.stackSize];
+			short[] nextAtoms = precursor.getConnectedAtomIndecesOfAtomIndex(midAtom);
 			for (int i = 0; i < nextAtoms.length; i++) {
-				/*
-				 *  did we visit the current atom already?
-				 */
-				short currentBondNumber = (short)(((BitArrayPrecursor)this.precursorMolecule).getBondIndexFromAtomAdjacencyList(nextAtoms[i], midAtom) - 1);
+				short currentBondNumber = (short)(precursor.getBondIndexFromAtomAdjacencyList(nextAtoms[i], midAtom) - 1);
 				
-				if (!bondBitArrayOfCurrentFragment.get(currentBondNumber) || currentBondNumber == bondIndexToRemove) {
+				if (currentBondNumber == bondIndexToRemove || !bondBitArrayOfCurrentFragment.get(currentBondNumber)) {
 					continue;
 				}
 				/*
 				 * if we visited the current atom already then we do not have to
 				 * check it again
 				 */
-				if (visited.get(nextAtoms[i])) {
-					bondArrayOfNewFragment.set(currentBondNumber);
+				if (workspace.isVisited(nextAtoms[i])) {
+					workspace.visitBond(currentBondNumber);
 					continue;
 				}
 				/*
@@ -229,27 +248,80 @@ public class TopDownBitArrayFragment extends de.ipbhalle.metfraglib.fragment.Abs
 				 * fragment is present
 				 */
 				if (nextAtoms[i] == endAtomIndex) {
+					if(stopAtEndAtom) return true;
 					stillOneFragment = true;
 				}
-				
-				visited.set(nextAtoms[i]);
-				atomArrayOfNewFragment.set(nextAtoms[i]);
-				/*
-				 * add number of hydrogens of current atom
-				 */
-				numberHydrogensOfNewFragment[0] += ((BitArrayPrecursor)this.precursorMolecule).getNumberHydrogensConnectedToAtomIndex(nextAtoms[i]);
-				bondArrayOfNewFragment.set(((BitArrayPrecursor)this.precursorMolecule).getBondIndexFromAtomAdjacencyList(midAtom, nextAtoms[i]) - 1);
-				toProcessConnectedAtoms.push(((BitArrayPrecursor)this.precursorMolecule).getConnectedAtomIndecesOfAtomIndex(nextAtoms[i]));
-				toProcessAtom.push(nextAtoms[i]);
+				workspace.visitAtom(nextAtoms[i], precursor.getFormulaElementIndexOfAtomIndex(nextAtoms[i]), precursor.getNumberHydrogensOfAtomIndex(nextAtoms[i]));
+				workspace.visitBond(currentBondNumber);
 			}
-
 		}
-
-		brokenBondArrayOfNewFragment.set(bondIndexToRemove);
-		bondArrayOfNewFragment.set(bondIndexToRemove, false);
-		
 		return stillOneFragment;
 	}
 	
+	private static final ThreadLocal<TraversalWorkspace> WORKSPACE = new ThreadLocal<TraversalWorkspace>() {
+		@Override
+		protected TraversalWorkspace initialValue() {
+			return new TraversalWorkspace();
+		}
+	};
+	
+	/**
+	 * reusable scratch state of the traversal, one instance per thread
+	 * atoms are marked as visited by the current generation so the marks never have to be cleared
+	 */
+	protected static class TraversalWorkspace {
+		protected int[] stack = new int[0];
+		protected int stackSize;
+		protected int[] visitedAtoms = new int[0];
+		protected int numberVisitedAtoms;
+		protected int[] visitedBonds = new int[0];
+		protected int numberVisitedBonds;
+		protected short[] numberOfAtoms = new short[0];
+		protected int numberHydrogens;
+		private int[] atomGeneration = new int[0];
+		private int generation;
+		
+		protected void reset(int numberAtoms, int numberBonds, int numberElements) {
+			if(this.atomGeneration.length < numberAtoms) {
+				this.atomGeneration = new int[numberAtoms];
+				this.stack = new int[numberAtoms];
+				this.visitedAtoms = new int[numberAtoms];
+				this.generation = 0;
+			}
+			/*
+			 * each bond can be reached from both of its atoms
+			 */
+			if(this.visitedBonds.length < 2 * numberBonds)
+				this.visitedBonds = new int[2 * numberBonds];
+			if(this.numberOfAtoms.length != numberElements)
+				this.numberOfAtoms = new short[numberElements];
+			else 
+				java.util.Arrays.fill(this.numberOfAtoms, (short)0);
+			if(++this.generation == Integer.MAX_VALUE) {
+				java.util.Arrays.fill(this.atomGeneration, 0);
+				this.generation = 1;
+			}
+			this.stackSize = 0;
+			this.numberVisitedAtoms = 0;
+			this.numberVisitedBonds = 0;
+			this.numberHydrogens = 0;
+		}
+		
+		protected boolean isVisited(int atomIndex) {
+			return this.atomGeneration[atomIndex] == this.generation;
+		}
+		
+		protected void visitAtom(int atomIndex, int elementIndex, int numberHydrogens) {
+			this.atomGeneration[atomIndex] = this.generation;
+			this.visitedAtoms[this.numberVisitedAtoms++] = atomIndex;
+			this.stack[this.stackSize++] = atomIndex;
+			this.numberOfAtoms[elementIndex]++;
+			this.numberHydrogens += numberHydrogens;
+		}
+		
+		protected void visitBond(int bondIndex) {
+			this.visitedBonds[this.numberVisitedBonds++] = bondIndex;
+		}
+	}
 	
 }
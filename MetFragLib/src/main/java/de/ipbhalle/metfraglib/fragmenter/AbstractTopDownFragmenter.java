@@ -1,11 +1,13 @@
 package de.ipbhalle.metfraglib.fragmenter;
 
+import de.ipbhalle.metfraglib.additionals.BondEnergies;
 import de.ipbhalle.metfraglib.fragment.AbstractTopDownBitArrayFragment;
 import de.ipbhalle.metfraglib.interfaces.ICandidate;
 import de.ipbhalle.metfraglib.interfaces.IFragmenter;
 import de.ipbhalle.metfraglib.interfaces.IMolecularStructure;
 import de.ipbhalle.metfraglib.list.FragmentList;
 import de.ipbhalle.metfraglib.parameter.VariableNames;
+import de.ipbhalle.metfraglib.precursor.BitArrayPrecursor;
 import de.ipbhalle.metfraglib.settings.Settings;
 
 public abstract class AbstractTopDownFragmenter implements IFragmenter {
@@ -14,11 +16,18 @@ public abstract class AbstractTopDownFragmenter implements IFragmenter {
 	protected ICandidate scoredCandidate;
 	protected Byte maximumTreeDepth;
 	protected Double minimumFragmentMassLimit;
+	/*
+	 * energies of the precursor bonds used to accumulate the broken bonds energy of the generated fragments
+	 */
+	protected double[] bondEnergies;
 	
 	public AbstractTopDownFragmenter(Settings settings) {
 		this.settings = settings;
 		this.scoredCandidate = (ICandidate)settings.get(VariableNames.CANDIDATE_NAME);
 		this.maximumTreeDepth = (Byte)settings.get(VariableNames.MAXIMUM_TREE_DEPTH_NAME);
+		BondEnergies bondEnergies = (BondEnergies)settings.get(VariableNames.BOND_ENERGY_OBJECT_NAME);
+		if(bondEnergies == null) bondEnergies = new BondEnergies();
+		this.bondEnergies = ((BitArrayPrecursor)this.scoredCandidate.getPrecursorMolecule()).getBondEnergies(bondEnergies);
 	}
 
 	public abstract FragmentList generateFragments();
@@ -37,9 +46,27 @@ public abstract class AbstractTopDownFragmenter implements IFragmenter {
 
 	public abstract java.util.Vector<AbstractTopDownBitArrayFragment> getFragmentsOfNextTreeDepth(AbstractTopDownBitArrayFragment precursorFragment);
 	
+	/**
+	 * removes the given bond from the fragment and sets the broken bonds energy of the generated fragment(s)
+	 * to the energy of the fragment plus the energy of the removed bond
+	 * 
+	 * @param fragment
+	 * @param bondIndexToRemove
+	 * @param indecesOfBondConnectedAtoms
+	 * @return
+	 */
+	protected AbstractTopDownBitArrayFragment[] traverseMolecule(AbstractTopDownBitArrayFragment fragment, short bondIndexToRemove, short[] indecesOfBondConnectedAtoms) {
+		AbstractTopDownBitArrayFragment[] newGeneratedTopDownFragments = fragment.traverseMolecule(bondIndexToRemove, indecesOfBondConnectedAtoms);
+		double brokenBondsEnergy = fragment.getBrokenBondsEnergy(this.bondEnergies) + this.bondEnergies[bondIndexToRemove];
+		for(int i = 0; i < newGeneratedTopDownFragments.length; i++)
+			newGeneratedTopDownFragments[i].setBrokenBondsEnergy(brokenBondsEnergy);
+		return newGeneratedTopDownFragments;
+	}
+	
 	public void nullify() {
 		this.maximumTreeDepth = null;
 		this.minimumFragmentMassLimit = null;
+		this.bondEnergies = null;
 	}
 
 
@@ -0,0 +1,47 @@
+package de.ipbhalle.metfraglib.fragmenter;
+
+/**
+ * processing time per fragment calibrated by the candidates processed so far in one run (CombinedMetFragProcess)
+ * used by the TreeDepthCostModel to estimate the processing time of a tree depth
+ * the recorded times are shared by all candidate threads of the run
+ *
+ */
+public class ProcessingTimeCalibration {
+
+	/*
+	 * processing time per fragment used until processing times have been recorded
+	 */
+	public static final double DEFAULT_NANOS_PER_FRAGMENT = 20000.0;
+
+	private final java.util.concurrent.atomic.AtomicLong recordedNumberFragments;
+	private final java.util.concurrent.atomic.AtomicLong recordedNanos;
+
+	public ProcessingTimeCalibration() {
+		this.recordedNumberFragments = new java.util.concurrent.atomic.AtomicLong();
+		this.recordedNanos = new java.util.concurrent.atomic.AtomicLong();
+	}
+
+	/**
+	 * records the processing time of a candidate to calibrate the time per fragment
+	 *
+	 * @param numberFragments
+	 * @param nanos
+	 */
+	public void recordProcessingTime(long numberFragments, long nanos) {
+		if(numberFragments <= 0 || nanos <= 0) return;
+		this.recordedNumberFragments.addAndGet(numberFragments);
+		this.recordedNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * average processing time per fragment of the recorded candidates
+	 *
+	 * @return
+	 */
+	public double getNanosPerFragment() {
+		long numberFragments = this.recordedNumberFragments.get();
+		if(numberFragments == 0) return DEFAULT_NANOS_PER_FRAGMENT;
+		return (double)this.recordedNanos.get() / (double)numberFragments;
+	}
+
+}
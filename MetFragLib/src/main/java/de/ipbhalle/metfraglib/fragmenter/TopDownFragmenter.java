@@ -52,6 +52,10 @@ public class TopDownFragmenter extends AbstractTopDownFragmenter {
 			java.util.Queue<de.ipbhalle.metfraglib.BitArray> newNextBondIndecesToRemove = new java.util.LinkedList<de.ipbhalle.metfraglib.BitArray>();
 			
 			while (!temporaryFragments.isEmpty()) {
+				/*
+				 * stop the generation if the processing thread was interrupted
+				 */
+				if(Thread.currentThread().isInterrupted()) break;
 				AbstractTopDownBitArrayFragment nextTopDownFragmentForFragmentation = temporaryFragments.poll();
 				byte numberOfNextTopDownFragmentForFragmentationAddedToQueue = numberOfFragmentAddedToQueue.poll();
 				int[] indecesOfSetBondsOfNextTopDownFragment = nextBondIndecesToRemove.poll().getSetIndeces();
@@ -72,7 +76,7 @@ public class TopDownFragmenter extends AbstractTopDownFragmenter {
 					* getting fragment generated by cleavage of the current bond "nextBondIndexToRemove"
 					*/
 					AbstractTopDownBitArrayFragment[] newGeneratedTopDownFragments = 
-						nextTopDownFragmentForFragmentation.traverseMolecule(nextBondIndexToRemove, indecesOfBondConnectedAtoms);
+						this.traverseMolecule(nextTopDownFragmentForFragmentation, nextBondIndexToRemove, indecesOfBondConnectedAtoms);
 					
 					/* 
 					 * if we got two fragments then save these as valid ones
@@ -175,7 +179,7 @@ public class TopDownFragmenter extends AbstractTopDownFragmenter {
 			/*
 			 * try to generate at most two fragments by the removal of the given bond
 			 */
-			AbstractTopDownBitArrayFragment[] newGeneratedTopDownFragments = precursorFragment.traverseMolecule(i, indecesOfBondConnectedAtoms);
+			AbstractTopDownBitArrayFragment[] newGeneratedTopDownFragments = this.traverseMolecule(precursorFragment, i, indecesOfBondConnectedAtoms);
 			/*
 			 * in case the precursor wasn't splitted try to cleave an additional bond until 
 			 * 
@@ -253,7 +257,7 @@ public class TopDownFragmenter extends AbstractTopDownFragmenter {
 				if(currentFragment.getBrokenBondsBitArray().get(currentBond)) continue;
 				AbstractTopDownBitArrayFragment[] newFragments = {currentFragment}; 
 				short[] connectedAtomIndeces = ((BitArrayPrecursor)this.scoredCandidate.getPrecursorMolecule()).getConnectedAtomIndecesOfBondIndex((short)currentBond);
-				newFragments = currentFragment.traverseMolecule((short)currentBond, connectedAtomIndeces);
+				newFragments = this.traverseMolecule(currentFragment, (short)currentBond, connectedAtomIndeces);
 				
 				//
 				// pre-processing of the generated fragment/s
@@ -310,7 +314,7 @@ public class TopDownFragmenter extends AbstractTopDownFragmenter {
 		 	if(!this.ringBondBitArray.get(currentBond)) continue;
 		 	if(!precursorFragment.getBondsBitArray().get(currentBond)) continue;
 			short[] connectedAtomIndeces = ((BitArrayPrecursor)this.scoredCandidate.getPrecursorMolecule()).getConnectedAtomIndecesOfBondIndex((short)currentBond);
-			AbstractTopDownBitArrayFragment[] newFragments = precursorFragment.traverseMolecule((short)currentBond, connectedAtomIndeces);
+			AbstractTopDownBitArrayFragment[] newFragments = this.traverseMolecule(precursorFragment, (short)currentBond, connectedAtomIndeces);
 			this.processGeneratedFragments(newFragments);
 			if(newFragments.length == 2) {
 				newFragments[0].setAsValidFragment();
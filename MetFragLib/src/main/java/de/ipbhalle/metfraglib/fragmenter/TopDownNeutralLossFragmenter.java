@@ -72,7 +72,7 @@ public class TopDownNeutralLossFragmenter extends TopDownFragmenter {
 					* getting fragment generated by cleavage of the current bond "nextBondIndexToRemove"
 					*/
 					AbstractTopDownBitArrayFragment[] newGeneratedTopDownFragments = 
-						nextTopDownFragmentForFragmentation.traverseMolecule(nextBondIndexToRemove, indecesOfBondConnectedAtoms);
+						this.traverseMolecule(nextTopDownFragmentForFragmentation, nextBondIndexToRemove, indecesOfBondConnectedAtoms);
 					
 					/* 
 					 * if we got two fragments then save these as valid ones
@@ -219,7 +219,7 @@ public class TopDownNeutralLossFragmenter extends TopDownFragmenter {
 			/*
 			 * try to generate at most two fragments by the removal of the given bond
 			 */
-			AbstractTopDownBitArrayFragment[] newGeneratedTopDownFragments = precursorFragment.traverseMolecule(i, indecesOfBondConnectedAtoms);
+			AbstractTopDownBitArrayFragment[] newGeneratedTopDownFragments = this.traverseMolecule(precursorFragment, i, indecesOfBondConnectedAtoms);
 			/*
 			 * in case the precursor wasn't splitted try to cleave an additional bond until 
 			 * 
@@ -292,7 +292,7 @@ public class TopDownNeutralLossFragmenter extends TopDownFragmenter {
 			 	
 		 	short[] connectedAtomIndeces = ((BitArrayPrecursor)this.scoredCandidate.getPrecursorMolecule()).getConnectedAtomIndecesOfBondIndex((short)currentBond);
 			
-		 	AbstractTopDownBitArrayFragment[] newFragments = precursorFragment.traverseMolecule((short)currentBond, connectedAtomIndeces);
+		 	AbstractTopDownBitArrayFragment[] newFragments = this.traverseMolecule(precursorFragment, (short)currentBond, connectedAtomIndeces);
 			
 			this.processGeneratedFragments(newFragments);
 			if(newFragments.length == 2) 
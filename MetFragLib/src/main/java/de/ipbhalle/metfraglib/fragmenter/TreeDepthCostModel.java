@@ -0,0 +1,164 @@
+package de.ipbhalle.metfraglib.fragmenter;
+
+import de.ipbhalle.metfraglib.molecularformula.ByteMolecularFormula;
+import de.ipbhalle.metfraglib.parameter.Constants;
+import de.ipbhalle.metfraglib.precursor.BitArrayPrecursor;
+
+/**
+ * estimates the number of fragments the top down fragmentation generates up to a tree depth from the bond graph of the precursor
+ * used to choose the maximum tree depth of a candidate within a fragment or time budget
+ *
+ * each expanded fragment yields two fragments per chain bond and, if at least two bonds of a ring may be cleaved
+ * (MaximumNumberOfAFragmentAddedToQueue), two fragments per pair of bonds in the same ring system
+ * with a single cleavage per ring the opened ring is passed on to the next tree depth instead
+ * the bonds of the fragments decrease with each tree depth, cleavages of terminal bonds only remove one bond
+ * while other cleavages split the bonds in halves on average
+ *
+ * the time per fragment is calibrated by the processing times of the candidates processed so far (ProcessingTimeCalibration)
+ *
+ */
+public class TreeDepthCostModel {
+
+	/*
+	 * greatest tree depth chosen by the cost model
+	 */
+	public static final byte MAXIMUM_ADAPTIVE_TREE_DEPTH = 5;
+
+	private final double numberChainBonds;
+	private final double numberRingBonds;
+	private final double averageRingSystemSize;
+	private final double terminalBondFraction;
+	private final int maximumNumberOfAFragmentAddedToQueue;
+
+	/**
+	 *
+	 * @param precursor
+	 * @param maximumNumberOfAFragmentAddedToQueue number of bonds of a ring cleaved at most to split a fragment
+	 */
+	public TreeDepthCostModel(BitArrayPrecursor precursor, int maximumNumberOfAFragmentAddedToQueue) {
+		int numberBonds = precursor.getNonHydrogenBondCount();
+		int numberRingBonds = 0;
+		double summedRingSystemSizes = 0.0;
+		for(short i = 0; i < numberBonds; i++) {
+			if(!precursor.isRingBond(i)) continue;
+			numberRingBonds++;
+			summedRingSystemSizes += precursor.getBitArrayOfBondsBelongingtoRingLikeBondIndex(i).cardinality();
+		}
+		this.numberRingBonds = numberRingBonds;
+		this.numberChainBonds = numberBonds - numberRingBonds;
+		this.averageRingSystemSize = numberRingBonds == 0 ? 0.0 : summedRingSystemSizes / numberRingBonds;
+		this.terminalBondFraction = numberBonds == 0 ? 0.0 : Math.min(1.0, (double)precursor.getNumNodeDegreeOne() / (double)numberBonds);
+		this.maximumNumberOfAFragmentAddedToQueue = maximumNumberOfAFragmentAddedToQueue;
+	}
+
+	/**
+	 * estimates the bond graph by the molecular formula only, e.g. before the structure of a candidate is initialised
+	 * half of the double bond equivalents are taken as rings of six bonds each, atoms with a valence of one 
+	 * and half of the atoms with a valence of two are taken as terminal atoms
+	 *
+	 * @param formula
+	 * @param maximumNumberOfAFragmentAddedToQueue number of bonds of a ring cleaved at most to split a fragment
+	 */
+	public TreeDepthCostModel(ByteMolecularFormula formula, int maximumNumberOfAFragmentAddedToQueue) {
+		byte[] atomsAsIndeces = formula.getAtomsAsIndeces();
+		short[] numberOfAtoms = formula.getNumberOfAtoms();
+		int numberAtoms = 0;
+		double numberTerminalAtoms = 0.0;
+		double doubleBondEquivalents = 1.0 - formula.getNumberHydrogens() / 2.0;
+		for(int i = 0; i < atomsAsIndeces.length; i++) {
+			int valence = getValence(Constants.ELEMENTS.get(atomsAsIndeces[i]));
+			numberAtoms += numberOfAtoms[i];
+			doubleBondEquivalents += numberOfAtoms[i] * (valence - 2) / 2.0;
+			if(valence == 1) numberTerminalAtoms += numberOfAtoms[i];
+			else if(valence == 2) numberTerminalAtoms += numberOfAtoms[i] / 2.0;
+		}
+		double numberRings = Math.floor(Math.max(0.0, doubleBondEquivalents) / 2.0);
+		double numberBonds = Math.max(0.0, numberAtoms - 1.0 + numberRings);
+		this.numberRingBonds = Math.min(numberBonds, 6.0 * numberRings);
+		this.numberChainBonds = numberBonds - this.numberRingBonds;
+		this.averageRingSystemSize = this.numberRingBonds == 0.0 ? 0.0 : Math.min(6.0, this.numberRingBonds);
+		this.terminalBondFraction = numberBonds == 0.0 ? 0.0 : Math.min(1.0, numberTerminalAtoms / numberBonds);
+		this.maximumNumberOfAFragmentAddedToQueue = maximumNumberOfAFragmentAddedToQueue;
+	}
+
+	/**
+	 * common valence of an element, two for elements not listed
+	 *
+	 * @param element
+	 * @return
+	 */
+	protected static int getValence(String element) {
+		/*
+		 * isotopes like [13C]
+		 */
+		element = element.replaceAll("[\\[\\]0-9]", "");
+		if(element.equals("C") || element.equals("Si")) return 4;
+		if(element.equals("N") || element.equals("P") || element.equals("B")) return 3;
+		if(element.equals("F") || element.equals("Cl") || element.equals("Br") || element.equals("I")) return 1;
+		return 2;
+	}
+
+	/**
+	 * estimated number of fragments generated up to each tree depth
+	 * the value at index k - 1 relates to tree depth k
+	 *
+	 * @param maximumTreeDepth
+	 * @return
+	 */
+	public double[] estimateNumberFragments(int maximumTreeDepth) {
+		double[] numberFragments = new double[maximumTreeDepth];
+		double chainBonds = this.numberChainBonds;
+		double ringBonds = this.numberRingBonds;
+		double ringSystemSize = this.averageRingSystemSize;
+		double expandedFragments = 1.0;
+		double summedFragments = 0.0;
+		for(int k = 0; k < maximumTreeDepth; k++) {
+			double ringCleavages = ringBonds;
+			if(this.maximumNumberOfAFragmentAddedToQueue >= 2) ringCleavages = ringBonds * Math.max(0.0, ringSystemSize - 1.0);
+			double generatedFragments = expandedFragments * (2.0 * chainBonds + ringCleavages);
+			summedFragments += generatedFragments;
+			numberFragments[k] = summedFragments;
+			expandedFragments = generatedFragments;
+			/*
+			 * fraction of bonds kept by the generated fragments
+			 */
+			double numberBonds = chainBonds + ringBonds;
+			if(numberBonds <= 1.0) {
+				chainBonds = 0.0;
+				ringBonds = 0.0;
+				continue;
+			}
+			double keptBonds = this.terminalBondFraction * (numberBonds - 1.0) + (1.0 - this.terminalBondFraction) * (numberBonds - 1.0) / 2.0;
+			double keptFraction = keptBonds / numberBonds;
+			chainBonds *= keptFraction;
+			ringBonds *= keptFraction;
+			ringSystemSize = Math.min(ringSystemSize, ringBonds);
+		}
+		return numberFragments;
+	}
+
+	/**
+	 * deepest tree depth whose estimated number of fragments and processing time fit into the given budgets
+	 * budgets not greater than zero are not checked, the returned tree depth is at least one
+	 *
+	 * @param maximumNumberFragments
+	 * @param maximumTimeMillis
+	 * @param nanosPerFragment processing time per fragment (ProcessingTimeCalibration)
+	 * @return
+	 */
+	public byte chooseTreeDepth(long maximumNumberFragments, long maximumTimeMillis, double nanosPerFragment) {
+		double[] numberFragments = this.estimateNumberFragments(MAXIMUM_ADAPTIVE_TREE_DEPTH);
+		byte treeDepth = 1;
+		for(int k = 1; k < numberFragments.length; k++) {
+			/*
+			 * no further fragments expected
+			 */
+			if(numberFragments[k] == numberFragments[k - 1]) break;
+			if(maximumNumberFragments > 0 && numberFragments[k] > maximumNumberFragments) break;
+			if(maximumTimeMillis > 0 && numberFragments[k] * nanosPerFragment > maximumTimeMillis * 1000000.0) break;
+			treeDepth = (byte)(k + 1);
+		}
+		return treeDepth;
+	}
+
+}
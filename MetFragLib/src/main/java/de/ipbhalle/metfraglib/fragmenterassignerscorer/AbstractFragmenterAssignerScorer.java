@@ -2,12 +2,15 @@ package de.ipbhalle.metfraglib.fragmenterassignerscorer;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
 
 import de.ipbhalle.metfraglib.collection.ScoreCollection;
 import de.ipbhalle.metfraglib.exceptions.AtomTypeNotKnownFromInputListException;
 import de.ipbhalle.metfraglib.fragmenter.AbstractTopDownFragmenter;
 import de.ipbhalle.metfraglib.interfaces.ICandidate;
 import de.ipbhalle.metfraglib.interfaces.IFragmenterAssignerScorer;
+import de.ipbhalle.metfraglib.interfaces.IMolecularStructure;
 import de.ipbhalle.metfraglib.interfaces.IScore;
 import de.ipbhalle.metfraglib.list.FragmentList;
 import de.ipbhalle.metfraglib.list.MatchList;
@@ -29,6 +32,8 @@ public abstract class AbstractFragmenterAssignerScorer implements IFragmenterAss
 	protected ScoreCollection scoreCollection;
 	//final scores is weighted sum of all scorecollection scores
 	protected double finalScore;
+	//true if the fragmentation was stopped as a processing budget was exceeded or the processing was cancelled
+	protected boolean budgetExceeded;
 
 	protected Logger logger = Logger.getLogger(AbstractFragmenterAssignerScorer.class);
 	
@@ -123,6 +128,106 @@ public abstract class AbstractFragmenterAssignerScorer implements IFragmenterAss
 		return this.matchList;
 	}
 
+	public boolean isBudgetExceeded() {
+		return this.budgetExceeded;
+	}
+
+	/**
+	 * true if the fragmentation results of the processed candidate can be taken by this candidate, 
+	 * i.e. the initialised precursors of both candidates have the same atoms and bonds with the same indeces
+	 * so that the matched fragments of the processed candidate are fragments of this candidate as well
+	 *
+	 * @param processedCandidate
+	 * @return
+	 */
+	public boolean canAdoptFragmentationResults(ICandidate processedCandidate) {
+		IMolecularStructure precursor = this.candidates[0].getPrecursorMolecule();
+		IMolecularStructure processedPrecursor = processedCandidate.getPrecursorMolecule();
+		if(precursor == null || processedPrecursor == null || processedCandidate.getMatchList() == null) return false;
+		if(!precursor.getMolecularFormula().compareTo(processedPrecursor.getMolecularFormula())) return false;
+		IAtomContainer structure = precursor.getStructureAsIAtomContainer();
+		IAtomContainer processedStructure = processedPrecursor.getStructureAsIAtomContainer();
+		if(structure.getAtomCount() != processedStructure.getAtomCount() || structure.getBondCount() != processedStructure.getBondCount()) return false;
+		for(int i = 0; i < structure.getAtomCount(); i++) {
+			if(!structure.getAtom(i).getSymbol().equals(processedStructure.getAtom(i).getSymbol())) return false;
+			Integer hydrogenCount = structure.getAtom(i).getImplicitHydrogenCount();
+			Integer processedHydrogenCount = processedStructure.getAtom(i).getImplicitHydrogenCount();
+			if(hydrogenCount == null ? processedHydrogenCount != null : !hydrogenCount.equals(processedHydrogenCount)) return false;
+		}
+		for(int i = 0; i < structure.getBondCount(); i++) {
+			IBond bond = structure.getBond(i);
+			IBond processedBond = processedStructure.getBond(i);
+			if(bond.getOrder() != processedBond.getOrder()) return false;
+			if(structure.getAtomNumber(bond.getAtom(0)) != processedStructure.getAtomNumber(processedBond.getAtom(0))) return false;
+			if(structure.getAtomNumber(bond.getAtom(1)) != processedStructure.getAtomNumber(processedBond.getAtom(1))) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * takes the fragmentation results of a processed candidate with the same first InChIKey block and precursor graph instead of fragmenting again
+	 * this candidate gets its own copy of the match list of the processed candidate, the matches are shared
+	 * the scores resulting from the matched fragments are copied from the processed candidate,
+	 * the scores calculated by 'calculate()' are calculated for this candidate with the copied match list
+	 * and assigned as in assignScores()
+	 *
+	 * @param processedCandidate
+	 * @throws Exception 
+	 */
+	public void adoptFragmentationResults(ICandidate processedCandidate) throws Exception {
+		MatchList processedMatchList = processedCandidate.getMatchList();
+		MatchList matchList = new MatchList();
+		for(int i = 0; i < processedMatchList.getNumberElements(); i++) matchList.addElement(processedMatchList.getElement(i));
+		this.settings.set(VariableNames.MATCH_LIST_NAME, matchList);
+		this.candidates[0].setMatchList(matchList);
+		String[] fragmentationProperties = {VariableNames.MAXIMUM_TREE_DEPTH_NAME, VariableNames.SKIPPED_MATCHING_FRACTION_NAME, VariableNames.PRUNED_SUBTREE_FRACTION_NAME, VariableNames.BUDGET_EXCEEDED_NAME};
+		for(int i = 0; i < fragmentationProperties.length; i++) {
+			Object value = processedCandidate.getProperty(fragmentationProperties[i]);
+			if(value != null) this.candidates[0].setProperty(fragmentationProperties[i], value);
+		}
+		this.budgetExceeded = Boolean.TRUE.equals(processedCandidate.getProperty(VariableNames.BUDGET_EXCEEDED_NAME));
+		try {
+			this.adoptScores(processedCandidate);
+		} catch(Exception e) {
+			/*
+			 * the matches are shared with the processed candidate and must not be nullified when this candidate is discarded
+			 */
+			this.candidates[0].setMatchList(null);
+			this.settings.remove(VariableNames.MATCH_LIST_NAME);
+			throw e;
+		}
+	}
+
+	/**
+	 * copies the scores of the matched fragments from the processed candidate and calculates the other scores
+	 * 
+	 * @param processedCandidate
+	 * @throws Exception 
+	 */
+	protected void adoptScores(ICandidate processedCandidate) throws Exception {
+		if(this.scoreCollection == null) return;
+		String[] score_types = (String[])this.settings.get(VariableNames.METFRAG_SCORE_TYPES_NAME);
+		for(int i = 0; i < score_types.length; i++) {
+			IScore score = this.scoreCollection.getScore(i);
+			if(score.isUserDefinedPropertyScore()) continue;
+			/*
+			 * score values summed up over the matched fragments
+			 */
+			if(score.calculationFinished()) {
+				Object value = processedCandidate.getProperty(score_types[i]);
+				if(value != null) this.candidates[0].setProperty(score_types[i], value);
+				Object optimalValues = processedCandidate.getProperty(score_types[i] + "_Values");
+				if(optimalValues != null) this.candidates[0].setProperty(score_types[i] + "_Values", optimalValues);
+				continue;
+			}
+			score.calculate();
+			if(score.getValue() == null) continue;
+			this.candidates[0].setProperty(score_types[i], score.getValue());
+			if(score.hasInterimResults())
+				this.candidates[0].setProperty(score_types[i] + "_Values", score.getOptimalValuesToString());
+		}
+	}
+
 	public void assignScores() {
 	//	this.settings.set(VariableNames.MATCH_LIST_NAME, this.matchList);
 	//	this.candidates[0].setMatchList(matchList);
@@ -0,0 +1,116 @@
+package de.ipbhalle.metfraglib.fragmenterassignerscorer;
+
+import de.ipbhalle.metfraglib.BitArray;
+import de.ipbhalle.metfraglib.fragment.AbstractTopDownBitArrayFragment;
+import de.ipbhalle.metfraglib.list.SortedTandemMassPeakList;
+import de.ipbhalle.metfraglib.match.MatchFragmentList;
+import de.ipbhalle.metfraglib.parameter.Constants;
+import de.ipbhalle.metfraglib.peak.PeakWindowIndex;
+import de.ipbhalle.metfraglib.precursor.BitArrayPrecursor;
+import de.ipbhalle.metfraglib.score.NewFragmenterScore;
+
+/**
+ * upper bound of the NewFragmenterScore any fragment of the subtree below a fragment can reach for each peak
+ *
+ * each descendant breaks at least one further bond of the fragment, so its energy is at least the broken bonds energy of the fragment
+ * plus the smallest energy of the bonds left in the fragment, and its mass is at most the fragment mass minus the lightest atom
+ * a subtree can be pruned if no peak reachable by its masses can get a better best fragment from it
+ *
+ * with a tolerance greater than zero subtrees are also pruned if their summed possible gain over the current best fragments
+ * is at most the given fraction of the current summed score (approximate mode)
+ *
+ */
+public class FragmentSubtreeBound {
+
+	private final NewFragmenterScore fragmenterScore;
+	private final PeakWindowIndex peakWindowIndex;
+	private final double[] bondEnergies;
+	/*
+	 * peak dependent part of the score of each peak
+	 */
+	private final double[] peakScores;
+	/*
+	 * greatest mass a descendant can gain compared to its ancestor including adducts and hydrogen shifts
+	 */
+	private final double maximumMassGain;
+	private final double tolerance;
+	/*
+	 * summed score of the best fragments of all peaks at the start of the current tree depth
+	 */
+	private double currentSummedScore;
+
+	public FragmentSubtreeBound(NewFragmenterScore fragmenterScore, BitArrayPrecursor precursor, SortedTandemMassPeakList peakList,
+			PeakWindowIndex peakWindowIndex, double maximumIonisationTypeMassCorrection, int maximumTreeDepth, double tolerance) {
+		this.fragmenterScore = fragmenterScore;
+		this.peakWindowIndex = peakWindowIndex;
+		this.bondEnergies = fragmenterScore.getBondEnergies();
+		this.tolerance = tolerance;
+		this.peakScores = new double[peakList.getNumberElements()];
+		for(int i = 0; i < this.peakScores.length; i++)
+			this.peakScores[i] = fragmenterScore.getPeakScore(peakList.getElement(i));
+		double minimumAtomMass = Double.MAX_VALUE;
+		for(int i = 0; i < precursor.getNonHydrogenAtomCount(); i++)
+			minimumAtomMass = Math.min(minimumAtomMass, precursor.getMonoisotopicMassOfAtomIndex(i));
+		this.maximumMassGain = maximumIonisationTypeMassCorrection + maximumTreeDepth * Constants.HYDROGEN_MASS - minimumAtomMass;
+	}
+
+	/**
+	 * true if only the exact bound is used so that the ranking doesn't change
+	 *
+	 * @return
+	 */
+	public boolean isExact() {
+		return this.tolerance <= 0.0;
+	}
+
+	/**
+	 * updates the summed score of the best fragments used by the approximate mode
+	 *
+	 * @param peakIndexToPeakMatch
+	 */
+	public void update(MatchFragmentList[] peakIndexToPeakMatch) {
+		if(this.isExact()) return;
+		this.currentSummedScore = 0.0;
+		for(int i = 0; i < peakIndexToPeakMatch.length; i++)
+			if(peakIndexToPeakMatch[i] != null) this.currentSummedScore += peakIndexToPeakMatch[i].getRootNode().getScore();
+	}
+
+	/**
+	 * checks whether the fragments below the given fragment can't improve the best fragment of any peak
+	 *
+	 * @param fragment fragment to be expanded
+	 * @param peakPointer greatest peak index the descendants of the fragment can match
+	 * @param peakIndexToPeakMatch current best fragments of the peaks
+	 * @return
+	 */
+	public boolean canPrune(AbstractTopDownBitArrayFragment fragment, int peakPointer, MatchFragmentList[] peakIndexToPeakMatch) {
+		if(peakPointer < 0) return true;
+		BitArray bonds = fragment.getBondsBitArray();
+		double minimumBondEnergy = Double.MAX_VALUE;
+		for(int i = bonds.nextSetBit(-1); i != -1; i = bonds.nextSetBit(i))
+			minimumBondEnergy = Math.min(minimumBondEnergy, this.bondEnergies[i]);
+		/*
+		 * nothing left to cleave
+		 */
+		if(minimumBondEnergy == Double.MAX_VALUE) return false;
+		double energyWeight = this.fragmenterScore.getEnergyWeight(fragment.getBrokenBondsEnergy(this.bondEnergies) + minimumBondEnergy);
+		int lastPeakPointer = this.peakWindowIndex.getLastPeakIndexReachedByMass(fragment.getMonoisotopicMass() + this.maximumMassGain, peakPointer);
+		if(this.isExact()) {
+			for(int i = lastPeakPointer; i >= 0; i--) {
+				if(peakIndexToPeakMatch[i] == null) return false;
+				if(this.peakScores[i] / energyWeight >= peakIndexToPeakMatch[i].getRootNode().getScore()) return false;
+			}
+			return true;
+		}
+		double maximumGain = this.tolerance * this.currentSummedScore;
+		double gain = 0.0;
+		for(int i = lastPeakPointer; i >= 0; i--) {
+			double bestScore = peakIndexToPeakMatch[i] == null ? 0.0 : peakIndexToPeakMatch[i].getRootNode().getScore();
+			double bound = this.peakScores[i] / energyWeight;
+			if(bound > bestScore) gain += bound - bestScore;
+			if(gain > maximumGain) return false;
+		}
+		return true;
+	}
+
+}
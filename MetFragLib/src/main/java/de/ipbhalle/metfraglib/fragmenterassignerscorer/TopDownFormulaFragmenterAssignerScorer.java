@@ -0,0 +1,121 @@
+package de.ipbhalle.metfraglib.fragmenterassignerscorer;
+
+import de.ipbhalle.metfraglib.fragment.AbstractTopDownBitArrayFragment;
+import de.ipbhalle.metfraglib.interfaces.ICandidate;
+import de.ipbhalle.metfraglib.list.SiriusNodePeakList;
+import de.ipbhalle.metfraglib.list.SortedTandemMassPeakList;
+import de.ipbhalle.metfraglib.match.FragmentFormulaToPeakMatch;
+import de.ipbhalle.metfraglib.molecularformula.ByteMolecularFormula;
+import de.ipbhalle.metfraglib.parameter.VariableNames;
+import de.ipbhalle.metfraglib.peak.PeakFormulaIndex;
+import de.ipbhalle.metfraglib.precursor.BitArrayPrecursor;
+import de.ipbhalle.metfraglib.settings.Settings;
+
+/**
+ * top down fragmentation constrained by the molecular formulas of a SIRIUS fragmentation tree (SiriusNodeListReader)
+ * fragments are matched to the peaks by a hash lookup of their element counts instead of mass windows,
+ * the hydrogen difference to the peak formula is limited by the tree depth as in FragmentToFormulaPeakAssigner
+ *
+ * a fragment is not expanded further if no unexplained peak formula is a subformula (without hydrogens) of it
+ * as none of its descendants can explain a peak then
+ *
+ * without a SiriusNodePeakList the fragments are matched by mass as in TopDownFragmenterAssignerScorer
+ * fragments are always kept as objects (no FragmentArena) and matched by one thread
+ *
+ */
+public class TopDownFormulaFragmenterAssignerScorer extends TopDownFragmenterAssignerScorer {
+
+	/*
+	 * peak formulas of the current candidate, null if the peak list has no formulas
+	 */
+	protected PeakFormulaIndex peakFormulaIndex;
+	protected long numberNotExpandedFragments;
+
+	public TopDownFormulaFragmenterAssignerScorer(Settings settings, ICandidate candidate) {
+		super(settings, candidate);
+		this.useFragmentArena = false;
+		this.numberThreads = 1;
+		/*
+		 * the bound of the branch and bound pruning relies on mass windows
+		 */
+		this.branchAndBoundPruning = false;
+	}
+
+	@Override
+	public void calculate() {
+		this.peakFormulaIndex = null;
+		this.numberNotExpandedFragments = 0;
+		Object peakList = this.settings.get(VariableNames.PEAK_LIST_NAME);
+		if(peakList instanceof SiriusNodePeakList) {
+			BitArrayPrecursor precursor = (BitArrayPrecursor)this.candidates[0].getPrecursorMolecule();
+			this.peakFormulaIndex = new PeakFormulaIndex((SiriusNodePeakList)peakList, precursor.getFormulaElementIndeces());
+		}
+		else logger.warn("no peak formulas available, fragments are matched by mass");
+		super.calculate();
+		if(this.peakFormulaIndex != null)
+			logger.debug(this.candidates[0].getIdentifier() + ": " + this.peakFormulaIndex.getNumberExplained() + " of " + this.peakFormulaIndex.getNumberFormulas()
+					+ " peak formulas explained, " + this.numberNotExpandedFragments + " fragments not expanded");
+		this.peakFormulaIndex = null;
+	}
+
+	/**
+	 * matches all assignments that are marked to be matched by their molecular formulas
+	 * afterwards fragments that can't lead to an unexplained peak formula are marked as not to be expanded
+	 *
+	 * @param assignments
+	 * @param tandemMassPeakList
+	 */
+	@Override
+	protected void matchFragmentsToPeaks(java.util.ArrayList<FragmentAssignment> assignments, SortedTandemMassPeakList tandemMassPeakList) {
+		if(this.peakFormulaIndex == null) {
+			super.matchFragmentsToPeaks(assignments, tandemMassPeakList);
+			return;
+		}
+		for(int i = 0; i < assignments.size(); i++) {
+			FragmentAssignment assignment = assignments.get(i);
+			if(assignment.toBeMatched) this.matchFragmentToFormulas(assignment, tandemMassPeakList);
+		}
+		/*
+		 * peaks explained in this tree depth are not considered for the expansion anymore
+		 */
+		for(int i = 0; i < assignments.size(); i++) {
+			FragmentAssignment assignment = assignments.get(i);
+			if(!assignment.toBeMatched || assignment.nextPeakPointer == -1) continue;
+			ByteMolecularFormula formula = (ByteMolecularFormula)assignment.fragment.getMolecularFormula();
+			if(!this.peakFormulaIndex.hasUnexplainedSubformula(formula.getNumberOfAtoms())) {
+				assignment.nextPeakPointer = -1;
+				this.numberNotExpandedFragments++;
+			}
+		}
+	}
+
+	/**
+	 * matches the fragment of the assignment to all peaks with equal element counts (without hydrogens)
+	 * and a hydrogen difference not greater than the tree depth of the fragment
+	 *
+	 * @param assignment
+	 * @param tandemMassPeakList
+	 */
+	protected void matchFragmentToFormulas(FragmentAssignment assignment, SortedTandemMassPeakList tandemMassPeakList) {
+		AbstractTopDownBitArrayFragment currentFragment = assignment.fragment;
+		assignment.matches = null;
+		assignment.nextPeakPointer = assignment.currentPeakPointer;
+		assignment.processed = true;
+		ByteMolecularFormula formula = (ByteMolecularFormula)currentFragment.getMolecularFormula();
+		int[] formulaIndeces = this.peakFormulaIndex.getFormulaIndeces(formula.getNumberOfAtoms());
+		if(formulaIndeces == null) return;
+		for(int i = 0; i < formulaIndeces.length; i++) {
+			int hydrogenDifference = this.peakFormulaIndex.getNumberHydrogens(formulaIndeces[i]) - formula.getNumberHydrogens();
+			if(Math.abs(hydrogenDifference) > currentFragment.getTreeDepth()) continue;
+			int peakIndex = this.peakFormulaIndex.getPeakIndex(formulaIndeces[i]);
+			/*
+			 * peak formulas are neutral so no adduct is added to the fragment
+			 */
+			FragmentFormulaToPeakMatch match = new FragmentFormulaToPeakMatch(tandemMassPeakList.getElement(peakIndex));
+			match.addMatchedFragment(currentFragment, (byte)hydrogenDifference, (byte)0);
+			assignment.addMatch(peakIndex, match, this.scoreCollection.calculateSingleMatch(match));
+			this.peakFormulaIndex.setExplained(formulaIndeces[i]);
+		}
+	}
+
+}
@@ -1,244 +1,230 @@
 package de.ipbhalle.metfraglib.fragmenterassignerscorer;
 
+import de.ipbhalle.metfraglib.BitArray;
+import de.ipbhalle.metfraglib.collection.FragmentIdentitySet;
+import de.ipbhalle.metfraglib.collection.IntObjectHashMap;
 import de.ipbhalle.metfraglib.interfaces.ICandidate;
 import de.ipbhalle.metfraglib.interfaces.IMatch;
+import de.ipbhalle.metfraglib.interfaces.IScore;
 import de.ipbhalle.metfraglib.list.FragmentList;
 import de.ipbhalle.metfraglib.list.MatchList;
 import de.ipbhalle.metfraglib.list.SortedTandemMassPeakList;
+import de.ipbhalle.metfraglib.match.FragmentMassToPeakMatcher;
 import de.ipbhalle.metfraglib.match.MatchFragmentList;
 import de.ipbhalle.metfraglib.match.MatchFragmentNode;
+import de.ipbhalle.metfraglib.match.MatchListCleaner;
 import de.ipbhalle.metfraglib.match.MatchPeakList;
 import de.ipbhalle.metfraglib.match.MatchPeakNode;
+import de.ipbhalle.metfraglib.peak.PeakWindowIndex;
+import de.ipbhalle.metfraglib.fragmenter.ProcessingTimeCalibration;
+import de.ipbhalle.metfraglib.fragmenter.TreeDepthCostModel;
 import de.ipbhalle.metfraglib.settings.Settings;
 import de.ipbhalle.metfraglib.parameter.Constants;
 import de.ipbhalle.metfraglib.parameter.VariableNames;
 import de.ipbhalle.metfraglib.precursor.AbstractTopDownBitArrayPrecursor;
+import de.ipbhalle.metfraglib.precursor.BitArrayPrecursor;
+import de.ipbhalle.metfraglib.precursor.PrecursorAutomorphisms;
+import de.ipbhalle.metfraglib.precursor.TopDownBitArrayPrecursor;
+import de.ipbhalle.metfraglib.process.ProcessingBudget;
+import de.ipbhalle.metfraglib.score.NewFragmenterScore;
 import de.ipbhalle.metfraglib.fragment.AbstractTopDownBitArrayFragment;
 import de.ipbhalle.metfraglib.fragment.AbstractTopDownBitArrayFragmentWrapper;
+import de.ipbhalle.metfraglib.fragment.FragmentArena;
+import de.ipbhalle.metfraglib.fragment.TopDownBitArrayFragment;
 
 public class TopDownFragmenterAssignerScorer extends AbstractFragmenterAssignerScorer {
 
 	protected boolean uniqueFragmentMatches;
 	/*
-	 * workaround
+	 * atom sets of all fragments generated so far
 	 */
-	protected java.util.Hashtable<String, Integer> bitArrayToFragment;
+	protected FragmentIdentitySet generatedFragments;
+	/*
+	 * keep the fragments to be processed in a FragmentArena instead of as objects
+	 */
+	protected boolean useFragmentArena;
+	/*
+	 * automorphisms of the precursor used to treat fragments equivalent by symmetry as already generated
+	 * null if symmetry aware fragmentation is switched off
+	 */
+	protected boolean symmetryAwareFragmentation;
+	protected PrecursorAutomorphisms automorphisms;
+	/*
+	 * bound to skip the matching (exact mode) or the generation (approximate mode) of subtrees that can't improve any peak match
+	 * null if branch and bound pruning is switched off or not applicable to the used scores
+	 */
+	protected boolean branchAndBoundPruning;
+	protected double branchAndBoundTolerance;
+	protected FragmentSubtreeBound subtreeBound;
+	protected long numberExpandedFragments;
+	protected long numberPrunedSubtrees;
+	/*
+	 * generated fragments that were matched and whose matching was skipped below a pruned fragment (exact mode)
+	 */
+	protected long numberMatchedFragments;
+	protected long numberUnmatchedFragments;
+	/*
+	 * budgets checked before each fragment expansion, null if none are set by the calling process
+	 */
+	protected ProcessingBudget processingBudget;
+	/*
+	 * processing time per fragment of the run, null if not set by the calling process
+	 */
+	protected ProcessingTimeCalibration processingTimeCalibration;
+	protected long calculationStartTime;
+	/*
+	 * match tables filled during the fragment tree generation
+	 */
+	protected MatchPeakList sortedScoredPeaks;
+	/*
+	 * fragment lists indexed by peak index, null if no fragment matched the peak
+	 */
+	protected MatchFragmentList[] peakIndexToPeakMatch;
+	protected IntObjectHashMap<MatchPeakList> fragmentIndexToPeakMatch;
+	/*
+	 * mass windows of the peaks shared by all candidates
+	 */
+	protected PeakWindowIndex peakWindowIndex;
+	protected FragmentMassToPeakMatcher fragmentMassToPeakMatcher;
+	protected FragmentMassToPeakMatcher.MatchBuffer matchBuffer;
+	/*
+	 * threads used to match the fragments of one tree depth in parallel
+	 * the executor is owned by the process (CombinedMetFragProcess) and shared by all candidates, 
+	 * without an executor the fragments are matched sequentially
+	 */
+	protected int numberThreads;
+	protected java.util.concurrent.ExecutorService executor;
+	/*
+	 * minimum number of fragments per thread of a tree depth to be processed in parallel
+	 */
+	protected static final int MINIMUM_NUMBER_FRAGMENTS_PER_THREAD = 8;
 	
 	public TopDownFragmenterAssignerScorer(Settings settings, ICandidate candidate) {
 		super(settings, candidate);
-		this.bitArrayToFragment = new java.util.Hashtable<String, Integer>();
 		this.uniqueFragmentMatches = (Boolean)this.settings.get(VariableNames.METFRAG_UNIQUE_FRAGMENT_MATCHES);
+		this.useFragmentArena = (Boolean)this.settings.get(VariableNames.METFRAG_USE_FRAGMENT_ARENA);
+		Boolean symmetryAwareFragmentation = (Boolean)this.settings.get(VariableNames.METFRAG_SYMMETRY_AWARE_FRAGMENTATION);
+		/*
+		 * with unique fragment matches each fragment explains one peak only so equivalent fragments can't be skipped
+		 */
+		this.symmetryAwareFragmentation = symmetryAwareFragmentation != null && symmetryAwareFragmentation && !this.uniqueFragmentMatches;
+		Boolean branchAndBoundPruning = (Boolean)this.settings.get(VariableNames.METFRAG_BRANCH_AND_BOUND_PRUNING);
+		this.branchAndBoundPruning = branchAndBoundPruning != null && branchAndBoundPruning;
+		Double branchAndBoundTolerance = (Double)this.settings.get(VariableNames.METFRAG_BRANCH_AND_BOUND_TOLERANCE);
+		this.branchAndBoundTolerance = branchAndBoundTolerance == null ? 0.0 : branchAndBoundTolerance;
+		Byte numberThreadsPerCandidate = (Byte)this.settings.get(VariableNames.NUMBER_THREADS_PER_CANDIDATE_NAME);
+		this.numberThreads = numberThreadsPerCandidate == null || numberThreadsPerCandidate < 1 ? 1 : numberThreadsPerCandidate;
+		this.executor = this.numberThreads > 1 ? (java.util.concurrent.ExecutorService)this.settings.get(VariableNames.FRAGMENT_MATCHING_EXECUTOR_OBJECT_NAME) : null;
+		this.processingBudget = (ProcessingBudget)this.settings.get(VariableNames.PROCESSING_BUDGET_OBJECT_NAME);
+		this.processingTimeCalibration = (ProcessingTimeCalibration)this.settings.get(VariableNames.PROCESSING_TIME_CALIBRATION_OBJECT_NAME);
 	}
 
 	@Override
 	public void calculate() {
+		this.calculationStartTime = System.nanoTime();
+		this.budgetExceeded = false;
 		AbstractTopDownBitArrayPrecursor candidatePrecursor = (AbstractTopDownBitArrayPrecursor)(this.candidates[0]).getPrecursorMolecule();
 		//generate root fragment to start fragmentation
 		AbstractTopDownBitArrayFragment root = candidatePrecursor.toFragment();
+		this.generatedFragments = new FragmentIdentitySet(candidatePrecursor.getNonHydrogenAtomCount());
+		this.automorphisms = null;
+		if(this.symmetryAwareFragmentation) {
+			this.automorphisms = candidatePrecursor.getAutomorphisms();
+			logger.debug(this.candidates[0].getIdentifier() + ": " + this.automorphisms.getNumberAutomorphisms() + " automorphisms, " 
+					+ this.automorphisms.getNumberEquivalenceClasses() + " atom equivalence classes");
+			if(this.automorphisms.getNumberAutomorphisms() == 0) this.automorphisms = null;
+		}
 		Byte maximumTreeDepth = (Byte)settings.get(VariableNames.MAXIMUM_TREE_DEPTH_NAME);
 		if(maximumTreeDepth == 0) {
-			maximumTreeDepth = candidatePrecursor.getNumNodeDegreeOne() >= 4 ? (byte)3 : (byte)2;
+			maximumTreeDepth = this.chooseMaximumTreeDepth(candidatePrecursor);
 		}
 		this.candidates[0].setProperty(VariableNames.MAXIMUM_TREE_DEPTH_NAME, maximumTreeDepth);
 		//read peaklist
 		SortedTandemMassPeakList tandemMassPeakList = (SortedTandemMassPeakList)settings.get(VariableNames.PEAK_LIST_NAME);
-		tandemMassPeakList.initialiseMassLimits((Double)settings.get(VariableNames.RELATIVE_MASS_DEVIATION_NAME), (Double)settings.get(VariableNames.ABSOLUTE_MASS_DEVIATION_NAME));
+		this.peakWindowIndex = tandemMassPeakList.getPeakWindowIndex((Double)settings.get(VariableNames.RELATIVE_MASS_DEVIATION_NAME), (Double)settings.get(VariableNames.ABSOLUTE_MASS_DEVIATION_NAME));
 		Integer precursorIonType = (Integer)settings.get(VariableNames.PRECURSOR_ION_MODE_NAME);
 		Boolean positiveMode = (Boolean)settings.get(VariableNames.IS_POSITIVE_ION_MODE_NAME);
 		int precursorIonTypeIndex = Constants.ADDUCT_NOMINAL_MASSES.indexOf(precursorIonType);
+		this.fragmentMassToPeakMatcher = new FragmentMassToPeakMatcher(this.peakWindowIndex, precursorIonTypeIndex, positiveMode);
+		this.matchBuffer = new FragmentMassToPeakMatcher.MatchBuffer();
 		
 		this.fragmenter.setMinimumFragmentMassLimit(this.fragmenter.getMinimumFragmentMassLimit() - Constants.ADDUCT_MASSES.get(precursorIonTypeIndex));
 		
+		this.peakIndexToPeakMatch = new MatchFragmentList[tandemMassPeakList.getNumberElements()];
+		this.fragmentIndexToPeakMatch = new IntObjectHashMap<MatchPeakList>();
+		this.sortedScoredPeaks = null;
+		
+		this.subtreeBound = this.branchAndBoundPruning ? this.createSubtreeBound(candidatePrecursor, tandemMassPeakList, maximumTreeDepth) : null;
+		this.numberExpandedFragments = 0;
+		this.numberPrunedSubtrees = 0;
+		this.numberMatchedFragments = 0;
+		this.numberUnmatchedFragments = 0;
+		
 		/*
-		 * prepare the processing
-		 */
-		java.util.Queue<AbstractTopDownBitArrayFragmentWrapper> toProcessFragments = new java.util.LinkedList<AbstractTopDownBitArrayFragmentWrapper>();
-		/*
-		 * wrap the root fragment
+		 * the fragment arena is processed sequentially
 		 */
-		AbstractTopDownBitArrayFragmentWrapper rootFragmentWrapper = new AbstractTopDownBitArrayFragmentWrapper(root, tandemMassPeakList.getNumberElements() - 1);
-		toProcessFragments.add(rootFragmentWrapper);
-		java.util.HashMap<Integer, MatchFragmentList> peakIndexToPeakMatch = new java.util.HashMap<Integer, MatchFragmentList>();
-		java.util.HashMap<Integer, MatchPeakList> fragmentIndexToPeakMatch = new java.util.HashMap<Integer, MatchPeakList>();
-		MatchPeakList sortedScoredPeaks = null;
+		if(this.useFragmentArena && this.numberThreads == 1 && root instanceof TopDownBitArrayFragment) 
+			this.processFragmentTreeInArena((TopDownBitArrayFragment)root, maximumTreeDepth, tandemMassPeakList);
+		else 
+			this.processFragmentTree(root, maximumTreeDepth, tandemMassPeakList);
+		
+		logger.debug(this.candidates[0].getIdentifier() + ": " + this.generatedFragments.getNumberHits() + " redundant of " 
+				+ (this.generatedFragments.getNumberHits() + this.generatedFragments.getNumberMisses()) + " generated fragments");
 		/*
-		 * iterate over the maximal allowed tree depth
+		 * in exact mode pruned subtrees are still generated and only their matching is skipped,
+		 * in approximate mode pruned subtrees are not generated at all
 		 */
-		for(int k = 1; k <= maximumTreeDepth; k++) {
-			java.util.Queue<AbstractTopDownBitArrayFragmentWrapper> newToProcessFragments = new java.util.LinkedList<AbstractTopDownBitArrayFragmentWrapper>();
-			/*
-			 * use each fragment that is marked as to be processed
-			 */
-			while(!toProcessFragments.isEmpty()) {
-				/*
-				 * generate fragments of new tree depth
-				 */
-				AbstractTopDownBitArrayFragmentWrapper wrappedPrecursorFragment = toProcessFragments.poll();
-				if(wrappedPrecursorFragment.getWrappedFragment().isDiscardedForFragmentation()) {
-					AbstractTopDownBitArrayFragment clonedFragment = (AbstractTopDownBitArrayFragment)wrappedPrecursorFragment.getWrappedFragment().clone();
-					clonedFragment.setAsDiscardedForFragmentation();
-					newToProcessFragments.add(new AbstractTopDownBitArrayFragmentWrapper(clonedFragment, wrappedPrecursorFragment.getCurrentPeakIndexPointer()));
-					continue;
-				}
-				/*
-				 * generate fragments of next tree depth
-				 */
-				java.util.Vector<AbstractTopDownBitArrayFragment> fragmentsOfCurrentTreeDepth = this.fragmenter.getFragmentsOfNextTreeDepth(wrappedPrecursorFragment.getWrappedFragment());
-				/*
-				 * get peak pointer of current precursor fragment
-				 */
-				int currentPeakPointer = wrappedPrecursorFragment.getCurrentPeakIndexPointer();
-				/*
-				 * start loop over all child fragments from precursor fragment
-				 * to try assigning them to the current peak
-				 */
-				for(int l = 0; l < fragmentsOfCurrentTreeDepth.size(); l++) {
-					AbstractTopDownBitArrayFragment currentFragment = fragmentsOfCurrentTreeDepth.get(l);
-					if(!fragmentsOfCurrentTreeDepth.get(l).isValidFragment()) {
-						newToProcessFragments.add(new AbstractTopDownBitArrayFragmentWrapper(fragmentsOfCurrentTreeDepth.get(l), currentPeakPointer));
-						continue;
-					}
-					/*
-					 * needs to be set
-					 * otherwise you get fragments generated by multiple cleavage in one chain
-					 */
-					if(this.wasAlreadyGeneratedByHashtable(currentFragment)) {
-						currentFragment.setAsDiscardedForFragmentation();
-						newToProcessFragments.add(new AbstractTopDownBitArrayFragmentWrapper(currentFragment, currentPeakPointer));
-						continue;
-					}
-					
-					byte matched = -1;
-					int tempPeakPointer = currentPeakPointer;
-					while(matched != 1 && tempPeakPointer >= 0) {
-						IMatch[] match = new IMatch[1];
-						/*
-						 * calculate match
-						 */
-						matched = currentFragment.matchToPeak(tandemMassPeakList.getElement(tempPeakPointer), precursorIonTypeIndex, positiveMode, match);
-						/*
-						 * check whether match has occurred
-						 */
-						if(matched == 0) {
-							currentFragment.setPrecursorFragments(true);
-							Double[][] currentScores = this.scoreCollection.calculateSingleMatch(match[0]);
-							if(sortedScoredPeaks == null) 
-							{
-								sortedScoredPeaks = new MatchPeakList(tandemMassPeakList.getElement(tempPeakPointer), currentScores[0][0], tempPeakPointer);
-							}
-							else {
-								/*
-								 * gives score and id of peak
-								 */
-								Double[] oldPeakValues = sortedScoredPeaks.contains(tempPeakPointer);
-								if(oldPeakValues != null && oldPeakValues[0] < currentScores[0][0]) {
-									sortedScoredPeaks.removeElementByID((int)Math.floor(oldPeakValues[1]));
-									sortedScoredPeaks.insert(tandemMassPeakList.getElement(tempPeakPointer), currentScores[0][0], tempPeakPointer);
-								}
-								else if(oldPeakValues == null) {
-									sortedScoredPeaks.insert(tandemMassPeakList.getElement(tempPeakPointer), currentScores[0][0], tempPeakPointer);
-								}
-							}	
-							/*
-							 * insert fragment into peak's fragment list 
-							 */
-							/*
-							 * first generate the new fragment node and set the score values
-							 */
-							MatchFragmentNode newNode = new MatchFragmentNode(match[0]);
-							newNode.setScore(currentScores[0][0]);
-							newNode.setFragmentScores(currentScores[0]);
-							newNode.setOptimalValues(currentScores[1]);
-
-						/*	MatchFragmentNode newNode = new MatchFragmentNode(currentFragment);
-							newNode.setScore(currentScores[0][0]);
-							newNode.setFragmentScores(currentScores[0]);
-							newNode.setOptimalValues(currentScores[1]);
-							newNode.setHydrogenDifference(((DefaultFragmentToPeakMatch)match[0]).getNumberOfHydrogensDifferToPeakMass(0));
-							newNode.setFragmentAdductTypeIndex(((DefaultFragmentToPeakMatch)match[0]).getFragmentsAdductTypeIndex(0));
-							*/
-							/*
-							 * find correct location in the fragment list
-							 */
-							boolean similarFragmentFound = false;
-							if(peakIndexToPeakMatch.containsKey(tempPeakPointer)) {
-								Double[] values = peakIndexToPeakMatch.get(tempPeakPointer).containsByFingerprint(currentFragment.getAtomsBitArray());
-								if(values == null) {
-									peakIndexToPeakMatch.get(tempPeakPointer).insert(newNode);
-								}
-								else {
-									if(values[0] < currentScores[0][0]) {
-										peakIndexToPeakMatch.get(tempPeakPointer).removeElementByID((int)Math.floor(values[1]));
-										fragmentIndexToPeakMatch.get((int)Math.floor(values[1])).removeElementByID(tempPeakPointer);
-										if(fragmentIndexToPeakMatch.get((int)Math.floor(values[1])).getRootNode() == null) {
-											fragmentIndexToPeakMatch.remove((int)Math.floor(values[1]));
-										}
-										peakIndexToPeakMatch.get(tempPeakPointer).insert(newNode);
-									}
-									else similarFragmentFound = true;
-								}
-							}
-							else {
-								MatchFragmentList newFragmentList = new MatchFragmentList(newNode);
-								peakIndexToPeakMatch.put(tempPeakPointer, newFragmentList);
-							}
-							/*
-							 * insert peak into fragment's peak list 
-							 */
-							if(!similarFragmentFound) {
-								if(fragmentIndexToPeakMatch.containsKey(currentFragment.getID())) {
-									fragmentIndexToPeakMatch.get(currentFragment.getID()).insert(tandemMassPeakList.getElement(tempPeakPointer), currentScores[0][0], tempPeakPointer);
-								}
-								else {
-									MatchPeakList newPeakList = new MatchPeakList(tandemMassPeakList.getElement(tempPeakPointer), currentScores[0][0], tempPeakPointer);
-									fragmentIndexToPeakMatch.put(currentFragment.getID(), newPeakList);
-								}
-							}
-						}
-						/*
-						 * if the mass of the current fragment was greater than the peak mass then assign the current peak ID to the peak IDs of the
-						 * child fragments as they have smaller masses 
-						 */
-						if(matched == 1 || tempPeakPointer == 0) {
-							/*
-							 * mark current fragment for further fragmentation
-							 */
-							newToProcessFragments.add(new AbstractTopDownBitArrayFragmentWrapper(currentFragment, tempPeakPointer));
-						}
-						/*
-						 * if the current fragment has matched to the current peak then set the current peak index to the next peak as the current fragment can 
-						 * also match to the next peak
-						 * if the current fragment mass was smaller than that of the current peak then set the current peak index to the next peak (reduce the index) 
-						 * as the next peak mass is smaller and could match the current smaller fragment mass 
-						 */
-						if(matched == 0 || matched == -1) tempPeakPointer--;
-					}
-				}
-			}
-			toProcessFragments = newToProcessFragments;
+		if(this.subtreeBound != null && this.subtreeBound.isExact()) {
+			long numberGeneratedFragments = this.numberMatchedFragments + this.numberUnmatchedFragments;
+			double skippedMatchingFraction = numberGeneratedFragments == 0 ? 0.0 : (double)this.numberUnmatchedFragments / (double)numberGeneratedFragments;
+			this.candidates[0].setProperty(VariableNames.SKIPPED_MATCHING_FRACTION_NAME, skippedMatchingFraction);
+			logger.debug(this.candidates[0].getIdentifier() + ": matching of " + this.numberUnmatchedFragments + " of " + numberGeneratedFragments 
+					+ " generated fragments skipped below " + this.numberPrunedSubtrees + " pruned fragments");
 		}
+		else if(this.subtreeBound != null) {
+			double prunedSubtreeFraction = this.numberExpandedFragments == 0 ? 0.0 : (double)this.numberPrunedSubtrees / (double)this.numberExpandedFragments;
+			this.candidates[0].setProperty(VariableNames.PRUNED_SUBTREE_FRACTION_NAME, prunedSubtreeFraction);
+			logger.debug(this.candidates[0].getIdentifier() + ": subtrees of " + this.numberPrunedSubtrees + " of " + this.numberExpandedFragments 
+					+ " expanded fragments not generated");
+		}
+		this.subtreeBound = null;
+		if(this.budgetExceeded) 
+			logger.debug(this.candidates[0].getIdentifier() + ": fragmentation stopped after " + ((System.nanoTime() - this.calculationStartTime) / 1000000) + " ms, processing budget exceeded");
+		if(this.processingBudget != null && this.processingBudget.isActive()) 
+			this.candidates[0].setProperty(VariableNames.BUDGET_EXCEEDED_NAME, this.budgetExceeded);
+		if(this.processingTimeCalibration != null)
+			this.processingTimeCalibration.recordProcessingTime(this.generatedFragments.getNumberHits() + this.generatedFragments.getNumberMisses(), System.nanoTime() - this.calculationStartTime);
+		
+		MatchFragmentList[] peakIndexToPeakMatch = this.peakIndexToPeakMatch;
+		IntObjectHashMap<MatchPeakList> fragmentIndexToPeakMatch = this.fragmentIndexToPeakMatch;
+		MatchPeakList sortedScoredPeaks = this.sortedScoredPeaks;
+		this.peakIndexToPeakMatch = null;
+		this.fragmentIndexToPeakMatch = null;
+		this.sortedScoredPeaks = null;
 		
 		this.matchList = new MatchList();
 		
 		if(this.uniqueFragmentMatches) this.cleanMatchLists(sortedScoredPeaks, peakIndexToPeakMatch, fragmentIndexToPeakMatch);
 
+		int numberMatchedPeaks = 0;
+		for(int i = 0; i < peakIndexToPeakMatch.length; i++)
+			if(peakIndexToPeakMatch[i] != null) numberMatchedPeaks++;
 		/*
 		 * collect score of all scores over all matches
 		 */
-		double[][] singleScores = new double[this.scoreCollection.getNumberScores()][peakIndexToPeakMatch.size()];
+		double[][] singleScores = new double[this.scoreCollection.getNumberScores()][numberMatchedPeaks];
 		/*
 		 * collect the sum of all scores over all matches
 		 */
 		double[] summedScores = new double[this.scoreCollection.getNumberScores()];
 
-		java.util.Iterator<Integer> it = peakIndexToPeakMatch.keySet().iterator();
 		int index = 0;
 		/*
-		 * go over peak matches
+		 * go over peak matches in ascending order of the peak index
 		 */
-		while(it.hasNext()) {
-			int key = it.next();
-			MatchFragmentList matchFragmentList = peakIndexToPeakMatch.get(key);
+		for(int key = 0; key < peakIndexToPeakMatch.length; key++) {
+			MatchFragmentList matchFragmentList = peakIndexToPeakMatch[key];
+			if(matchFragmentList == null) continue;
 			MatchFragmentNode bestFragment = matchFragmentList.getRootNode();
 			IMatch match = bestFragment.getMatch();
 			Double[] scoreValuesSingleMatch = null;
@@ -293,165 +279,551 @@ public class TopDownFragmenterAssignerScorer extends AbstractFragmenterAssignerS
 	}
 	
 	/**
+	 * checks the processing budgets before a fragment is expanded and whether the processing was cancelled
+	 * once exceeded no further fragments are generated and the candidate is scored by the fragments matched so far
 	 * 
-	 * @param sortedScoredPeaks
-	 * @param peakIndexToPeakMatch
-	 * @param fragmentIndexToPeakMatch
+	 * @return
+	 */
+	protected boolean checkBudget() {
+		if(this.budgetExceeded) return true;
+		if(Thread.currentThread().isInterrupted()) this.budgetExceeded = true;
+		else if(this.processingBudget != null) 
+			this.budgetExceeded = this.processingBudget.isExceeded(this.calculationStartTime, this.generatedFragments.getNumberHits() + this.generatedFragments.getNumberMisses());
+		return this.budgetExceeded;
+	}
+	
+	/**
+	 * true if the processing thread was interrupted or the whole processing was cancelled
+	 * 
+	 * @return
+	 */
+	protected boolean isProcessingCancelled() {
+		return Thread.currentThread().isInterrupted() || (this.processingBudget != null && this.processingBudget.isCancelled());
+	}
+	
+	/**
+	 * deepest tree depth whose estimated number of fragments and processing time fit into the budgets of a candidate
+	 * 
+	 * @param candidatePrecursor
+	 * @return
+	 */
+	protected byte chooseMaximumTreeDepth(AbstractTopDownBitArrayPrecursor candidatePrecursor) {
+		Byte maximumNumberOfAFragmentAddedToQueue = (Byte)this.settings.get(VariableNames.MAXIMUM_NUMBER_OF_TOPDOWN_FRAGMENT_ADDED_TO_QUEUE);
+		Integer fragmentBudget = (Integer)this.settings.get(VariableNames.METFRAG_TREE_DEPTH_FRAGMENT_BUDGET);
+		Integer timeBudget = (Integer)this.settings.get(VariableNames.METFRAG_TREE_DEPTH_TIME_BUDGET);
+		TreeDepthCostModel costModel = new TreeDepthCostModel(candidatePrecursor, maximumNumberOfAFragmentAddedToQueue == null ? 2 : maximumNumberOfAFragmentAddedToQueue);
+		double nanosPerFragment = this.processingTimeCalibration == null ? ProcessingTimeCalibration.DEFAULT_NANOS_PER_FRAGMENT : this.processingTimeCalibration.getNanosPerFragment();
+		byte maximumTreeDepth = costModel.chooseTreeDepth(fragmentBudget == null ? 0 : fragmentBudget, timeBudget == null ? 0 : timeBudget, nanosPerFragment);
+		logger.debug(this.candidates[0].getIdentifier() + ": tree depth " + maximumTreeDepth + " chosen for " 
+				+ Math.round(costModel.estimateNumberFragments(maximumTreeDepth)[maximumTreeDepth - 1]) + " estimated fragments");
+		return maximumTreeDepth;
+	}
+	
+	/**
+	 * breadth first generation of the fragment tree keeping all queued fragments as objects
+	 * the fragments of one tree depth are generated first, matched to the peaks (in parallel if multiple threads are used) and then 
+	 * inserted into the match tables in the order of their generation so that the result doesn't depend on the number of threads
+	 * 
+	 * @param root
+	 * @param maximumTreeDepth
+	 * @param tandemMassPeakList
 	 */
-	public void cleanMatchLists(MatchPeakList sortedScoredPeaks, java.util.HashMap<Integer, MatchFragmentList> peakIndexToPeakMatch, java.util.HashMap<Integer, MatchPeakList> fragmentIndexToPeakMatch) {
-		if(sortedScoredPeaks == null) return;
-		//	System.out.println(sortedScoredPeaks.countElements());
+	protected void processFragmentTree(AbstractTopDownBitArrayFragment root, byte maximumTreeDepth, SortedTandemMassPeakList tandemMassPeakList) {
 		/*
-		 * traverse matched peak list
-		 * 69 -> f1 -> f2 -> f3
-		 * 68 -> f1 -> f2 -> f3
-		 * 67 -> f1 -> f2 -> f3
+		 * prepare the processing
 		 */
-		
-	//	sortedScoredPeaks.printElements();
-		
-		//	this.printHashMapInfo(peakIndexToPeakMatch, fragmentIndexToPeakMatch);
-		
-		while(sortedScoredPeaks.getRootNode() != null) {
-			/*
-			 * get current peak index
-			 * 69 -> f1 -> f2 -> f3
-			 */
-			int currentPeakIndex = sortedScoredPeaks.getRootNode().getId();
-			//		System.out.println("best peak guy " + currentPeakIndex + " " + sortedScoredPeaks.getRootNode().getPeak().getMass());
-			sortedScoredPeaks.removeFirst();
+		java.util.Queue<AbstractTopDownBitArrayFragmentWrapper> toProcessFragments = new java.util.LinkedList<AbstractTopDownBitArrayFragmentWrapper>();
+		/*
+		 * wrap the root fragment
+		 */
+		AbstractTopDownBitArrayFragmentWrapper rootFragmentWrapper = new AbstractTopDownBitArrayFragmentWrapper(root, tandemMassPeakList.getNumberElements() - 1);
+		toProcessFragments.add(rootFragmentWrapper);
+		/*
+		 * iterate over the maximal allowed tree depth
+		 */
+		for(int k = 1; k <= maximumTreeDepth; k++) {
+			if(this.checkBudget()) break;
 			/*
-			 * get fragment list
-			 * f1 -> f2 -> f3
+			 * fragments of the new tree depth in the order of their generation
 			 */
-			MatchFragmentList currentFragmentList = peakIndexToPeakMatch.get(currentPeakIndex);
-			//	System.out.println("best fragment guy " + currentFragmentList.getRootNode().getElement().getID() + " " + currentFragmentList.getRootNode().getElement().getMonoisotopicMass());
+			java.util.ArrayList<FragmentAssignment> assignments = new java.util.ArrayList<FragmentAssignment>();
 			/*
-			 * get root node
-			 * f1
+			 * use each fragment that is marked as to be processed
 			 */
-			boolean processed = false;
-			while(!processed) {
-				MatchFragmentNode currentFragmentNode = currentFragmentList.getRootNode();
-				if(currentFragmentNode == null) {
-					//		System.out.println("removing peak index " + currentPeakIndex);
-					peakIndexToPeakMatch.remove(currentPeakIndex);
-					processed = true;
+			while(!toProcessFragments.isEmpty()) {
+				/*
+				 * the fragments generated so far are still matched
+				 */
+				if(this.checkBudget()) break;
+				/*
+				 * generate fragments of new tree depth
+				 */
+				AbstractTopDownBitArrayFragmentWrapper wrappedPrecursorFragment = toProcessFragments.poll();
+				if(wrappedPrecursorFragment.getWrappedFragment().isDiscardedForFragmentation()) {
+					AbstractTopDownBitArrayFragment clonedFragment = (AbstractTopDownBitArrayFragment)wrappedPrecursorFragment.getWrappedFragment().clone();
+					clonedFragment.setAsDiscardedForFragmentation();
+					assignments.add(new FragmentAssignment(clonedFragment, wrappedPrecursorFragment.getCurrentPeakIndexPointer(), false));
 					continue;
 				}
-				//	System.out.println("\t" + currentFragmentNode.getElement().getID() + " pointing to " + fragmentIndexToPeakMatch.get(currentFragmentNode.getElement().getID()).getRootNode().getId());
 				/*
-				 * check whether the best peak's best fragment also points to this peak
+				 * get peak pointer of current precursor fragment
+				 */
+				int currentPeakPointer = wrappedPrecursorFragment.getCurrentPeakIndexPointer();
+				boolean subtreePruned = this.isSubtreePruned(wrappedPrecursorFragment.getWrappedFragment(), wrappedPrecursorFragment.isSubtreePruned(), currentPeakPointer);
+				if(subtreePruned && !this.subtreeBound.isExact()) continue;
+				/*
+				 * generate fragments of next tree depth
 				 */
-				if(fragmentIndexToPeakMatch.get(currentFragmentNode.getFragment().getID()).getRootNode().getId() == currentPeakIndex) {
-					//		System.out.println("processed");
-					processed = true;
+				java.util.Vector<AbstractTopDownBitArrayFragment> fragmentsOfCurrentTreeDepth = this.fragmenter.getFragmentsOfNextTreeDepth(wrappedPrecursorFragment.getWrappedFragment());
+				/*
+				 * start loop over all child fragments from precursor fragment
+				 * to mark them for assigning them to the current peak
+				 */
+				for(int l = 0; l < fragmentsOfCurrentTreeDepth.size(); l++) {
+					AbstractTopDownBitArrayFragment currentFragment = fragmentsOfCurrentTreeDepth.get(l);
+					if(!fragmentsOfCurrentTreeDepth.get(l).isValidFragment()) {
+						assignments.add(new FragmentAssignment(currentFragment, currentPeakPointer, false, subtreePruned));
+						continue;
+					}
 					/*
-					 * traverse over fragment list from root
+					 * needs to be set
+					 * otherwise you get fragments generated by multiple cleavage in one chain
 					 */
-					MatchFragmentNode fragmentNodeToRemoveFrom = currentFragmentNode.getNext();
-					while(fragmentNodeToRemoveFrom != null) {
-						/*
-						 * remove peak index from fragment list
-						 */
-						//			System.out.println("removing " + fragmentNodeToRemoveFrom.getElement().getID() + " from " + currentPeakIndex);
-						fragmentIndexToPeakMatch.get(fragmentNodeToRemoveFrom.getFragment().getID()).removeElementByID(currentPeakIndex);		
-						fragmentNodeToRemoveFrom = fragmentNodeToRemoveFrom.getNext();
+					if(this.wasAlreadyGeneratedByHashtable(currentFragment)) {
+						currentFragment.setAsDiscardedForFragmentation();
+						assignments.add(new FragmentAssignment(currentFragment, currentPeakPointer, false, subtreePruned));
+						continue;
 					}
+					if(subtreePruned) this.numberUnmatchedFragments++;
+					else this.numberMatchedFragments++;
+					assignments.add(new FragmentAssignment(currentFragment, currentPeakPointer, true, subtreePruned));
+				}
+			}
+			/*
+			 * results of a cancelled processing are discarded anyway
+			 */
+			if(this.isProcessingCancelled()) return;
+			/*
+			 * try to assign the fragments to the peaks
+			 */
+			this.matchFragmentsToPeaks(assignments, tandemMassPeakList);
+			if(this.isProcessingCancelled()) return;
+			/*
+			 * insert the matches and mark fragments for further fragmentation
+			 */
+			java.util.Queue<AbstractTopDownBitArrayFragmentWrapper> newToProcessFragments = new java.util.LinkedList<AbstractTopDownBitArrayFragmentWrapper>();
+			for(int i = 0; i < assignments.size(); i++) {
+				FragmentAssignment assignment = assignments.get(i);
+				if(assignment.toBeMatched) {
+					this.insertFragmentAssignment(assignment, tandemMassPeakList);
+					if(assignment.nextPeakPointer == -1) continue;
+				}
+				AbstractTopDownBitArrayFragmentWrapper wrappedFragment = new AbstractTopDownBitArrayFragmentWrapper(assignment.fragment, assignment.nextPeakPointer);
+				wrappedFragment.setSubtreePruned(assignment.subtreePruned);
+				newToProcessFragments.add(wrappedFragment);
+			}
+			toProcessFragments = newToProcessFragments;
+			if(this.subtreeBound != null) this.subtreeBound.update(this.peakIndexToPeakMatch);
+		}
+	}
+	
+	/**
+	 * breadth first generation of the fragment tree keeping the fragments to be processed in a FragmentArena
+	 * fragment objects are created only for expansion, only matched fragments (and their precursor fragments) stay alive
+	 * fragments discarded for fragmentation are not carried to the next tree depth as they are never expanded
+	 * 
+	 * @param root
+	 * @param maximumTreeDepth
+	 * @param tandemMassPeakList
+	 */
+	protected void processFragmentTreeInArena(TopDownBitArrayFragment root, byte maximumTreeDepth, SortedTandemMassPeakList tandemMassPeakList) {
+		FragmentArena arena = new FragmentArena((TopDownBitArrayPrecursor)root.getPrecursorMolecule(), 256);
+		arena.add(root, -1, tandemMassPeakList.getNumberElements() - 1);
+		/*
+		 * fragments of one tree depth occupy consecutive arena ids
+		 */
+		int firstIdOfTreeDepth = 0;
+		for(int k = 1; k <= maximumTreeDepth; k++) {
+			if(this.checkBudget()) break;
+			int lastIdOfTreeDepth = arena.size();
+			boolean storeChildren = k < maximumTreeDepth;
+			for(int id = firstIdOfTreeDepth; id < lastIdOfTreeDepth; id++) {
+				if(this.checkBudget()) break;
+				TopDownBitArrayFragment precursorFragment = arena.getFragment(id);
+				int currentPeakPointer = arena.getPeakIndexPointer(id);
+				boolean subtreePruned = this.isSubtreePruned(precursorFragment, arena.isSubtreePruned(id), currentPeakPointer);
+				if(subtreePruned && !this.subtreeBound.isExact()) continue;
+				java.util.Vector<AbstractTopDownBitArrayFragment> fragmentsOfCurrentTreeDepth = this.fragmenter.getFragmentsOfNextTreeDepth(precursorFragment);
+				precursorFragment.removeChildren();
+				for(int l = 0; l < fragmentsOfCurrentTreeDepth.size(); l++) {
+					TopDownBitArrayFragment currentFragment = (TopDownBitArrayFragment)fragmentsOfCurrentTreeDepth.get(l);
 					/*
-					 * get root peak from peak list of the current matched fragment
-					 * f1 -> 69 -> 68 -> 67
-					 * 69
+					 * the fragmenter sets either the processed fragment or its precursor as precursor fragment
 					 */
-					MatchPeakNode currentPeakNode = fragmentIndexToPeakMatch.get(currentFragmentList.getRootNode().getFragment().getID()).getRootNode();
-					//		System.out.println(currentFragmentList.getRootNode().getElement().getID() + " currentPeakNode: " + currentPeakNode.getId());
-					//		if(!currentPeakNode.hasNext()) System.out.println("nothing next");
-					while(currentPeakNode.hasNext()) {
-						/*
-						 * get neighbour of peak node
-						 */
-						currentPeakNode = currentPeakNode.getNext();
-						//			System.out.println("\tremoving from list " + currentPeakNode.getId());
-						/*
-						 * remove fragment index from peak list
-						 * 68 -> f1 -> f2 -> f3
-						 * 67 -> f1 -> f2 -> f3
-						 * removed:
-						 * 68 -> f2 -> f3
-						 * 67 -> f2 -> f3
-						 */
-						try {
-							//	sortedScoredPeaks.printElements();
-							boolean toUpdate = false;
-							try {
-								peakIndexToPeakMatch.get(currentPeakNode.getId()).getRootNode().getFragment().getID();
-							}
-							catch(Exception e) {
-								System.out.println("fail " + this.candidates[0].getIdentifier());
-								System.out.println(currentFragmentNode);
-								System.out.println(currentFragmentNode.getFragment());
-								System.out.println(currentFragmentNode.getFragment().getID());
-								System.out.println();
-								System.out.println(peakIndexToPeakMatch.get(currentPeakNode.getId()));
-								System.out.println(currentPeakNode.getId());
-								System.exit(1);
-							}
-							if(peakIndexToPeakMatch.get(currentPeakNode.getId()).getRootNode().getFragment().getID() == currentFragmentNode.getFragment().getID()) {
-								toUpdate = true;
-							}
-							if(toUpdate) {
-								//		System.out.println("update1");
-								//		sortedScoredPeaks.printElements();
-									//		System.out.println("remove peak from sortedScoredPeaks by id " + currentPeakNode.getId());
-									sortedScoredPeaks.removeElementByID(currentPeakNode.getId());
-									//		sortedScoredPeaks.printElements();
-							}
-							//sortedScoredPeaks.printElements();
-							//	System.out.println("removing from " + currentPeakNode.getId() + " " + currentFragmentNode.getElement().getID());
-							peakIndexToPeakMatch.get(currentPeakNode.getId()).removeElementByID(currentFragmentNode.getFragment().getID());
-					
-							if(toUpdate) {
-								MatchFragmentNode fragmentRoot = peakIndexToPeakMatch.get(currentPeakNode.getId()).getRootNode();
-								//		System.out.println("update2 " + currentPeakNode.getId() + " " + fragmentRoot);
-								if(fragmentRoot != null) {
-									MatchPeakNode peakRoot = fragmentIndexToPeakMatch.get(fragmentRoot.getFragment().getID()).getElementById(currentPeakNode.getId());
-									//		System.out.println("\tpeakRoot " + peakRoot + " " + fragmentRoot.getElement().getID() + " " + currentPeakNode.getId());
-									if(peakRoot != null) {
-										//			System.out.print("\there2 " + peakRoot.getId() + " "); sortedScoredPeaks.printElements();
-										sortedScoredPeaks.insert(peakRoot.clone());
-									}
-								}
-								else {
-									//		System.out.println("\tremoving from peak hashmap " + currentPeakNode.getId());
-									peakIndexToPeakMatch.remove(currentPeakNode.getId());
-								}
-							}
-							//	sortedScoredPeaks.printElements();
+					int parentId = currentFragment.getPrecursorFragment() == precursorFragment ? id : arena.getParentId(id);
+					if(!currentFragment.isValidFragment()) {
+						if(storeChildren) {
+							int childId = arena.add(currentFragment, parentId, currentPeakPointer);
+							if(subtreePruned) arena.setSubtreePruned(childId);
 						}
-						catch(Exception e) {
-							e.printStackTrace();
-							System.out.println(this.candidates[0].getIdentifier() + " " + currentPeakNode.getId() + " " + peakIndexToPeakMatch.get(currentPeakNode.getId()) + " " + peakIndexToPeakMatch.size());
-							System.exit(1);
+						continue;
+					}
+					if(this.wasAlreadyGeneratedByHashtable(currentFragment)) continue;
+					
+					int nextPeakPointer = -1;
+					if(subtreePruned) {
+						nextPeakPointer = this.getNextPeakPointer(currentFragment, currentPeakPointer);
+						this.numberUnmatchedFragments++;
+					}
+					else {
+						nextPeakPointer = this.assignFragmentToPeaks(currentFragment, currentPeakPointer, tandemMassPeakList);
+						this.numberMatchedFragments++;
+					}
+					if(parentId != -1 && currentFragment.getPrecursorFragment().hasMatchedChild()) arena.setHasMatchedChild(parentId);
+					if(storeChildren && nextPeakPointer != -1 && !currentFragment.isDiscardedForFragmentation()) {
+						int childId = arena.add(currentFragment, parentId, nextPeakPointer);
+						if(subtreePruned) arena.setSubtreePruned(childId);
+					}
+				}
+			}
+			firstIdOfTreeDepth = lastIdOfTreeDepth;
+			if(this.subtreeBound != null) this.subtreeBound.update(this.peakIndexToPeakMatch);
+		}
+		logger.debug(this.candidates[0].getIdentifier() + ": " + arena.size() + " fragments stored in arena");
+		arena.nullify();
+	}
+	
+	/**
+	 * tries to assign the given fragment to the peaks starting at currentPeakPointer towards smaller peak masses
+	 * and inserts the matches into the match tables
+	 * returns the index of the peak the children of the fragment start matching at, -1 if no peak is left
+	 * 
+	 * @param currentFragment
+	 * @param currentPeakPointer
+	 * @param tandemMassPeakList
+	 * @return
+	 */
+	protected int assignFragmentToPeaks(AbstractTopDownBitArrayFragment currentFragment, int currentPeakPointer, SortedTandemMassPeakList tandemMassPeakList) {
+		FragmentAssignment assignment = new FragmentAssignment(currentFragment, currentPeakPointer, true);
+		this.matchFragmentToPeaks(assignment, tandemMassPeakList, this.matchBuffer);
+		this.insertFragmentAssignment(assignment, tandemMassPeakList);
+		return assignment.nextPeakPointer;
+	}
+	
+	/**
+	 * matches the fragment of the assignment to the peaks starting at its current peak pointer towards smaller peak masses
+	 * and scores each match
+	 * the range of peaks reachable by the fragment's masses is looked up by binary search in the peak window index
+	 * only the fragment and the match objects of the assignment are modified so that assignments of different 
+	 * fragments can be processed in parallel
+	 * 
+	 * @param assignment
+	 * @param tandemMassPeakList
+	 * @param buffer hit buffer of the calling thread
+	 */
+	protected void matchFragmentToPeaks(FragmentAssignment assignment, SortedTandemMassPeakList tandemMassPeakList, FragmentMassToPeakMatcher.MatchBuffer buffer) {
+		AbstractTopDownBitArrayFragment currentFragment = assignment.fragment;
+		assignment.nextPeakPointer = -1;
+		assignment.matches = null;
+		if(assignment.currentPeakPointer < 0) {
+			assignment.processed = true;
+			return;
+		}
+		/*
+		 * fragments below a pruned fragment can't improve a peak match, only the peak pointer for their children is needed
+		 */
+		if(assignment.subtreePruned) {
+			assignment.nextPeakPointer = this.getNextPeakPointer(currentFragment, assignment.currentPeakPointer);
+			assignment.processed = true;
+			return;
+		}
+		/*
+		 * smallest and greatest mass the fragment is compared with including adducts and hydrogen shifts
+		 */
+		double fragmentMass = currentFragment.getMonoisotopicMass();
+		double minimumFragmentMass = this.getMinimumFragmentMass(currentFragment);
+		double maximumFragmentMass = this.getMaximumFragmentMass(currentFragment);
+		/*
+		 * the first peak (searching towards smaller masses) that is exceeded by all fragment masses 
+		 * is where the children of the fragment start matching at
+		 * if there is none all peaks down to the first one are checked
+		 */
+		int lastPeakPointer = this.peakWindowIndex.getLastPeakIndexBelowMass(minimumFragmentMass, assignment.currentPeakPointer);
+		/*
+		 * peaks with lower mass limit greater than all fragment masses can't match
+		 */
+		int tempPeakPointer = this.peakWindowIndex.getLastPeakIndexReachedByMass(maximumFragmentMass, assignment.currentPeakPointer);
+		for(; tempPeakPointer > lastPeakPointer; tempPeakPointer--) {
+			IMatch[] match = new IMatch[1];
+			/*
+			 * calculate match
+			 */
+			byte matched = this.fragmentMassToPeakMatcher.matchToPeak(currentFragment, fragmentMass, tempPeakPointer, tandemMassPeakList.getElement(tempPeakPointer), buffer, match);
+			/*
+			 * check whether match has occurred
+			 */
+			if(matched == 0) {
+				assignment.addMatch(tempPeakPointer, match[0], this.scoreCollection.calculateSingleMatch(match[0]));
+			}
+		}
+		assignment.nextPeakPointer = lastPeakPointer == -1 ? 0 : lastPeakPointer;
+		assignment.processed = true;
+	}
+	
+	/**
+	 * index of the peak the children of the fragment start matching at without matching the fragment itself
+	 * -1 if no peak is left
+	 * 
+	 * @param fragment
+	 * @param currentPeakPointer
+	 * @return
+	 */
+	protected int getNextPeakPointer(AbstractTopDownBitArrayFragment fragment, int currentPeakPointer) {
+		if(currentPeakPointer < 0) return -1;
+		int lastPeakPointer = this.peakWindowIndex.getLastPeakIndexBelowMass(this.getMinimumFragmentMass(fragment), currentPeakPointer);
+		return lastPeakPointer == -1 ? 0 : lastPeakPointer;
+	}
+	
+	/**
+	 * checks whether the subtree below the fragment to be expanded is pruned
+	 * subtrees below pruned fragments stay pruned as the bound only decreases with the tree depth and the best peak matches only improve
+	 * 
+	 * @param fragment
+	 * @param precursorSubtreePruned
+	 * @param currentPeakPointer
+	 * @return
+	 */
+	protected boolean isSubtreePruned(AbstractTopDownBitArrayFragment fragment, boolean precursorSubtreePruned, int currentPeakPointer) {
+		if(this.subtreeBound == null) return false;
+		this.numberExpandedFragments++;
+		if(precursorSubtreePruned || this.subtreeBound.canPrune(fragment, currentPeakPointer, this.peakIndexToPeakMatch)) {
+			this.numberPrunedSubtrees++;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * creates the bound used for branch and bound pruning
+	 * returns null if the bound isn't valid for the used scores, i.e. if other scores than NewFragmenterScore are calculated per match
+	 * or unique fragment matches are used
+	 * 
+	 * @param precursor
+	 * @param tandemMassPeakList
+	 * @param maximumTreeDepth
+	 * @return
+	 */
+	protected FragmentSubtreeBound createSubtreeBound(BitArrayPrecursor precursor, SortedTandemMassPeakList tandemMassPeakList, byte maximumTreeDepth) {
+		if(this.uniqueFragmentMatches || this.scoreCollection == null) return null;
+		NewFragmenterScore fragmenterScore = null;
+		for(int i = 0; i < this.scoreCollection.getNumberScores(); i++) {
+			IScore score = this.scoreCollection.getScore(i);
+			if(!score.isUsesPiecewiseCalculation()) continue;
+			if(score.getClass() != NewFragmenterScore.class || fragmenterScore != null) {
+				logger.debug(this.candidates[0].getIdentifier() + ": branch and bound pruning not applicable with " + score.getClass().getSimpleName());
+				return null;
+			}
+			fragmenterScore = (NewFragmenterScore)score;
+		}
+		if(fragmenterScore == null) return null;
+		double maximumIonisationTypeMassCorrection = Math.max(this.fragmentMassToPeakMatcher.getIonisationTypeMassCorrection(0), 
+				this.fragmentMassToPeakMatcher.getIonisationTypeMassCorrection(1));
+		return new FragmentSubtreeBound(fragmenterScore, precursor, tandemMassPeakList, this.peakWindowIndex, 
+				maximumIonisationTypeMassCorrection, maximumTreeDepth, this.branchAndBoundTolerance);
+	}
+	
+	/**
+	 * smallest mass the fragment is compared with including adducts and hydrogen shifts
+	 * 
+	 * @param fragment
+	 * @return
+	 */
+	protected double getMinimumFragmentMass(AbstractTopDownBitArrayFragment fragment) {
+		double fragmentMass = fragment.getMonoisotopicMass();
+		double minimumFragmentMass = Math.min(fragmentMass + this.fragmentMassToPeakMatcher.getIonisationTypeMassCorrection(0), 
+				fragmentMass + this.fragmentMassToPeakMatcher.getIonisationTypeMassCorrection(1));
+		int maximalHydrogenShift = fragment.getTreeDepth();
+		if(maximalHydrogenShift > 0) 
+			minimumFragmentMass = minimumFragmentMass + (-1 * maximalHydrogenShift) * Constants.HYDROGEN_MASS;
+		return minimumFragmentMass;
+	}
+	
+	/**
+	 * greatest mass the fragment is compared with including adducts and hydrogen shifts
+	 * 
+	 * @param fragment
+	 * @return
+	 */
+	protected double getMaximumFragmentMass(AbstractTopDownBitArrayFragment fragment) {
+		double fragmentMass = fragment.getMonoisotopicMass();
+		double maximumFragmentMass = Math.max(fragmentMass + this.fragmentMassToPeakMatcher.getIonisationTypeMassCorrection(0), 
+				fragmentMass + this.fragmentMassToPeakMatcher.getIonisationTypeMassCorrection(1));
+		int maximalHydrogenShift = fragment.getTreeDepth();
+		if(maximalHydrogenShift > 0) 
+			maximumFragmentMass = maximumFragmentMass + maximalHydrogenShift * Constants.HYDROGEN_MASS;
+		return maximumFragmentMass;
+	}
+	
+	/**
+	 * inserts the scored matches of the assignment into the match tables
+	 * 
+	 * @param assignment
+	 * @param tandemMassPeakList
+	 */
+	protected void insertFragmentAssignment(FragmentAssignment assignment, SortedTandemMassPeakList tandemMassPeakList) {
+		MatchFragmentList[] peakIndexToPeakMatch = this.peakIndexToPeakMatch;
+		IntObjectHashMap<MatchPeakList> fragmentIndexToPeakMatch = this.fragmentIndexToPeakMatch;
+		AbstractTopDownBitArrayFragment currentFragment = assignment.fragment;
+		for(int i = 0; i < assignment.getNumberMatches(); i++) {
+			int peakIndex = assignment.peakIndeces.get(i);
+			IMatch match = assignment.matches.get(i);
+			Double[][] currentScores = assignment.scores.get(i);
+			currentFragment.setPrecursorFragments(true);
+			if(this.sortedScoredPeaks == null) 
+			{
+				this.sortedScoredPeaks = new MatchPeakList(tandemMassPeakList.getElement(peakIndex), currentScores[0][0], peakIndex);
+			}
+			else {
+				MatchPeakNode oldPeakNode = this.sortedScoredPeaks.getElementById(peakIndex);
+				if(oldPeakNode != null && oldPeakNode.getScore() < currentScores[0][0]) {
+					this.sortedScoredPeaks.removeElementByID(peakIndex);
+					this.sortedScoredPeaks.insert(tandemMassPeakList.getElement(peakIndex), currentScores[0][0], peakIndex);
+				}
+				else if(oldPeakNode == null) {
+					this.sortedScoredPeaks.insert(tandemMassPeakList.getElement(peakIndex), currentScores[0][0], peakIndex);
+				}
+			}	
+			/*
+			 * insert fragment into peak's fragment list 
+			 */
+			/*
+			 * first generate the new fragment node and set the score values
+			 */
+			MatchFragmentNode newNode = new MatchFragmentNode(match);
+			newNode.setScore(currentScores[0][0]);
+			newNode.setFragmentScores(currentScores[0]);
+			newNode.setOptimalValues(currentScores[1]);
+
+		/*	MatchFragmentNode newNode = new MatchFragmentNode(currentFragment);
+			newNode.setScore(currentScores[0][0]);
+			newNode.setFragmentScores(currentScores[0]);
+			newNode.setOptimalValues(currentScores[1]);
+			newNode.setHydrogenDifference(((DefaultFragmentToPeakMatch)match).getNumberOfHydrogensDifferToPeakMass(0));
+			newNode.setFragmentAdductTypeIndex(((DefaultFragmentToPeakMatch)match).getFragmentsAdductTypeIndex(0));
+			*/
+			/*
+			 * find correct location in the fragment list
+			 */
+			boolean similarFragmentFound = false;
+			if(peakIndexToPeakMatch[peakIndex] != null) {
+				MatchFragmentNode similarNode = peakIndexToPeakMatch[peakIndex].getElementByFingerprint(currentFragment.getAtomsBitArray());
+				if(similarNode == null) {
+					peakIndexToPeakMatch[peakIndex].insert(newNode);
+				}
+				else {
+					if(similarNode.getScore() < currentScores[0][0]) {
+						int similarFragmentID = similarNode.getFragment().getID();
+						peakIndexToPeakMatch[peakIndex].removeElementByID(similarFragmentID);
+						MatchPeakList similarFragmentPeakList = fragmentIndexToPeakMatch.get(similarFragmentID);
+						similarFragmentPeakList.removeElementByID(peakIndex);
+						if(similarFragmentPeakList.getRootNode() == null) {
+							fragmentIndexToPeakMatch.remove(similarFragmentID);
 						}
+						peakIndexToPeakMatch[peakIndex].insert(newNode);
 					}
-					//	currentFragmentList.removeAfterRoot();
+					else similarFragmentFound = true;
+				}
+			}
+			else {
+				peakIndexToPeakMatch[peakIndex] = new MatchFragmentList(newNode);
+			}
+			/*
+			 * insert peak into fragment's peak list 
+			 */
+			if(!similarFragmentFound) {
+				MatchPeakList fragmentPeakList = fragmentIndexToPeakMatch.get(currentFragment.getID());
+				if(fragmentPeakList != null) {
+					fragmentPeakList.insert(tandemMassPeakList.getElement(peakIndex), currentScores[0][0], peakIndex);
 				}
 				else {
-					//	System.out.println("remove " + currentFragmentList.getRootNode().getElement().getID());
-					currentFragmentList.removeFirst();
+					MatchPeakList newPeakList = new MatchPeakList(tandemMassPeakList.getElement(peakIndex), currentScores[0][0], peakIndex);
+					fragmentIndexToPeakMatch.put(currentFragment.getID(), newPeakList);
 				}
 			}
-			//	sortedScoredPeaks.printElements();
-			//	this.printHashMapInfo(peakIndexToPeakMatch, fragmentIndexToPeakMatch);
 		}
 	}
 	
-	protected void printHashMapInfo(java.util.HashMap<Integer, MatchFragmentList> peakIndexToPeakMatch, java.util.HashMap<Integer, MatchPeakList> fragmentIndexToPeakMatch) {
-		java.util.Iterator<Integer> it = peakIndexToPeakMatch.keySet().iterator();
-		while(it.hasNext()) {
-			int key = it.next();
+	/**
+	 * matches all assignments that are marked to be matched
+	 * with more than one thread per candidate the assignments are split into chunks that are processed in parallel
+	 * 
+	 * @param assignments
+	 * @param tandemMassPeakList
+	 */
+	protected void matchFragmentsToPeaks(final java.util.ArrayList<FragmentAssignment> assignments, final SortedTandemMassPeakList tandemMassPeakList) {
+		if(this.executor != null && assignments.size() >= MINIMUM_NUMBER_FRAGMENTS_PER_THREAD * this.numberThreads) {
+			/*
+			 * use more chunks than threads to balance differing fragment costs
+			 */
+			int numberChunks = this.numberThreads * 4;
+			int chunkSize = (assignments.size() + numberChunks - 1) / numberChunks;
+			java.util.ArrayList<java.util.concurrent.Callable<Object>> tasks = new java.util.ArrayList<java.util.concurrent.Callable<Object>>();
+			for(int start = 0; start < assignments.size(); start += chunkSize) {
+				final int from = start;
+				final int to = Math.min(start + chunkSize, assignments.size());
+				tasks.add(new java.util.concurrent.Callable<Object>() {
+					public Object call() {
+						FragmentMassToPeakMatcher.MatchBuffer buffer = new FragmentMassToPeakMatcher.MatchBuffer();
+						for(int i = from; i < to; i++) {
+							FragmentAssignment assignment = assignments.get(i);
+							if(assignment.toBeMatched) matchFragmentToPeaks(assignment, tandemMassPeakList, buffer);
+						}
+						return null;
+					}
+				});
+			}
+			try {
+				java.util.List<java.util.concurrent.Future<Object>> futures = this.executor.invokeAll(tasks);
+				for(java.util.concurrent.Future<Object> future : futures) future.get();
+			} catch (InterruptedException e) {
+				/*
+				 * the processing was cancelled, keep the interrupt for the fragmentation loops
+				 */
+				Thread.currentThread().interrupt();
+				return;
+			} catch (java.util.concurrent.ExecutionException e) {
+				/*
+				 * the candidate is discarded by its single process
+				 */
+				throw new IllegalStateException("Error when matching fragments of " + this.candidates[0].getIdentifier(), e.getCause());
+			}
+		}
+		/*
+		 * sequential processing
+		 */
+		for(int i = 0; i < assignments.size(); i++) {
+			FragmentAssignment assignment = assignments.get(i);
+			if(assignment.toBeMatched && !assignment.processed) 
+				this.matchFragmentToPeaks(assignment, tandemMassPeakList, this.matchBuffer);
+		}
+	}
+	
+	/**
+	 * keeps only unique fragment matches, each fragment is assigned to at most one peak
+	 * 
+	 * @param sortedScoredPeaks
+	 * @param peakIndexToPeakMatch
+	 * @param fragmentIndexToPeakMatch
+	 */
+	public void cleanMatchLists(MatchPeakList sortedScoredPeaks, MatchFragmentList[] peakIndexToPeakMatch, IntObjectHashMap<MatchPeakList> fragmentIndexToPeakMatch) {
+		new MatchListCleaner(sortedScoredPeaks, peakIndexToPeakMatch, fragmentIndexToPeakMatch).clean();
+	}
+	
+	protected void printHashMapInfo(MatchFragmentList[] peakIndexToPeakMatch, IntObjectHashMap<MatchPeakList> fragmentIndexToPeakMatch) {
+		for(int key = 0; key < peakIndexToPeakMatch.length; key++) {
+			if(peakIndexToPeakMatch[key] == null) continue;
 			System.out.print(key + " -> ");
-			peakIndexToPeakMatch.get(key).printElements();
+			peakIndexToPeakMatch[key].printElements();
 			/*
 			 * peakID -> fragments
 			0 -> 188:104.05002:C7H6N:9.148574830115374	202:104.05002:C7H6N:9.148574830115374	139:105.05784:C7H7N:8.339671410655502	
@@ -464,9 +836,9 @@ public class TopDownFragmenterAssignerScorer extends AbstractFragmenterAssignerS
 			*/
 		}
 		System.out.println("##### " + fragmentIndexToPeakMatch.size());
-		java.util.Iterator<Integer> it1 = fragmentIndexToPeakMatch.keySet().iterator();
-		while(it1.hasNext()) {
-			int key = it1.next();
+		int[] fragmentKeys = fragmentIndexToPeakMatch.getKeys();
+		for(int i = 0; i < fragmentKeys.length; i++) {
+			int key = fragmentKeys[i];
 			System.out.print(key + " -> ");
 			fragmentIndexToPeakMatch.get(key).printElements();
 			/*
@@ -502,16 +874,40 @@ public class TopDownFragmenterAssignerScorer extends AbstractFragmenterAssignerS
 		return false;
 	}
 
+	/**
+	 * checks whether a fragment with the same atoms has been generated before
+	 * the tree depth of the first occurrence is kept, any later occurrence is treated as redundant
+	 * with symmetry aware fragmentation a fragment mapped onto an earlier one by an automorphism of the precursor is redundant as well
+	 * 
+	 * @param currentFragment
+	 * @return
+	 */
 	protected boolean wasAlreadyGeneratedByHashtable(AbstractTopDownBitArrayFragment currentFragment) {
-		String currentHash = currentFragment.getAtomsBitArray().toString();
-		Integer minimalTreeDepth = this.bitArrayToFragment.get(currentHash);
-		if(minimalTreeDepth == null) {
-			this.bitArrayToFragment.put(currentHash, (int)currentFragment.getTreeDepth());
-			return false;
-		}
-		if(minimalTreeDepth.equals(currentFragment.getTreeDepth()))
-			return false;
-		else return true;
+		BitArray atoms = currentFragment.getAtomsBitArray();
+		/*
+		 * fragments equivalent by symmetry share the same canonical atom set
+		 */
+		if(this.automorphisms != null) atoms = this.automorphisms.getCanonicalAtoms(atoms);
+		byte minimalTreeDepth = this.generatedFragments.putIfAbsent(atoms, currentFragment.getTreeDepth());
+		return minimalTreeDepth != -1;
+	}
+	
+	/**
+	 * number of fragments found to be generated redundantly
+	 * 
+	 * @return
+	 */
+	public long getNumberRedundantFragments() {
+		return this.generatedFragments == null ? 0 : this.generatedFragments.getNumberHits();
+	}
+	
+	/**
+	 * number of distinct fragments
+	 * 
+	 * @return
+	 */
+	public long getNumberUniqueFragments() {
+		return this.generatedFragments == null ? 0 : this.generatedFragments.getNumberMisses();
 	}
 	
 	@Override
@@ -527,13 +923,68 @@ public class TopDownFragmenterAssignerScorer extends AbstractFragmenterAssignerS
 	@Override
 	public void nullify() {
 		super.nullify();
-		this.bitArrayToFragment = null;
+		if(this.generatedFragments != null) this.generatedFragments.nullify();
+		this.generatedFragments = null;
+		this.sortedScoredPeaks = null;
+		this.peakIndexToPeakMatch = null;
+		this.fragmentIndexToPeakMatch = null;
+		this.fragmentMassToPeakMatcher = null;
+		this.matchBuffer = null;
 	}
 
 	@Override
 	public void shallowNullify() {
 		super.shallowNullify();
-		this.bitArrayToFragment = null;
+		this.generatedFragments = null;
 	}
 	
+	/**
+	 * fragment of the currently processed tree depth together with the peak index to start matching at
+	 * and the scored matches found for it
+	 * 
+	 */
+	protected static class FragmentAssignment {
+		protected final AbstractTopDownBitArrayFragment fragment;
+		protected final int currentPeakPointer;
+		/*
+		 * false if the fragment is only passed to the next tree depth
+		 */
+		protected final boolean toBeMatched;
+		/*
+		 * true if the fragment is below a pruned fragment and isn't matched
+		 */
+		protected final boolean subtreePruned;
+		protected int nextPeakPointer;
+		protected boolean processed;
+		protected java.util.ArrayList<Integer> peakIndeces;
+		protected java.util.ArrayList<IMatch> matches;
+		protected java.util.ArrayList<Double[][]> scores;
+		
+		protected FragmentAssignment(AbstractTopDownBitArrayFragment fragment, int currentPeakPointer, boolean toBeMatched) {
+			this(fragment, currentPeakPointer, toBeMatched, false);
+		}
+		
+		protected FragmentAssignment(AbstractTopDownBitArrayFragment fragment, int currentPeakPointer, boolean toBeMatched, boolean subtreePruned) {
+			this.fragment = fragment;
+			this.currentPeakPointer = currentPeakPointer;
+			this.toBeMatched = toBeMatched;
+			this.subtreePruned = subtreePruned;
+			this.nextPeakPointer = currentPeakPointer;
+		}
+		
+		protected void addMatch(int peakIndex, IMatch match, Double[][] scores) {
+			if(this.matches == null) {
+				this.peakIndeces = new java.util.ArrayList<Integer>(2);
+				this.matches = new java.util.ArrayList<IMatch>(2);
+				this.scores = new java.util.ArrayList<Double[][]>(2);
+			}
+			this.peakIndeces.add(peakIndex);
+			this.matches.add(match);
+			this.scores.add(scores);
+		}
+		
+		protected int getNumberMatches() {
+			return this.matches == null ? 0 : this.matches.size();
+		}
+	}
 }
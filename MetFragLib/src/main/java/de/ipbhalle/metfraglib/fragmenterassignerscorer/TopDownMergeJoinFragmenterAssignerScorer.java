@@ -0,0 +1,97 @@
+package de.ipbhalle.metfraglib.fragmenterassignerscorer;
+
+import de.ipbhalle.metfraglib.interfaces.ICandidate;
+import de.ipbhalle.metfraglib.interfaces.IMatch;
+import de.ipbhalle.metfraglib.list.SortedTandemMassPeakList;
+import de.ipbhalle.metfraglib.match.FragmentMassMergeJoin;
+import de.ipbhalle.metfraglib.settings.Settings;
+
+/**
+ * top down fragmentation with two separate phases for each tree depth
+ * first all fragments of the tree depth are generated, then their masses (including adducts and hydrogen shifts)
+ * are sorted and merge joined with the peak windows in one pass instead of walking the peak list for each fragment
+ * the peak pointer inherited from the precursor fragment limits the matched peaks of a fragment as before
+ * so that the results equal those of TopDownFragmenterAssignerScorer
+ *
+ * fragments are always kept as objects (no FragmentArena) and matched by one thread
+ *
+ */
+public class TopDownMergeJoinFragmenterAssignerScorer extends TopDownFragmenterAssignerScorer {
+
+	protected FragmentMassMergeJoin mergeJoin;
+	/*
+	 * time spent in both phases of the matching
+	 */
+	protected long joinTime;
+	protected long matchTime;
+
+	public TopDownMergeJoinFragmenterAssignerScorer(Settings settings, ICandidate candidate) {
+		super(settings, candidate);
+		this.useFragmentArena = false;
+		this.numberThreads = 1;
+	}
+
+	@Override
+	public void calculate() {
+		this.mergeJoin = null;
+		this.joinTime = 0;
+		this.matchTime = 0;
+		super.calculate();
+		logger.debug(this.candidates[0].getIdentifier() + ": merge join " + (this.joinTime / 1000000) + " ms, match creation and scoring " + (this.matchTime / 1000000) + " ms");
+		this.mergeJoin = null;
+	}
+
+	/**
+	 * matches all assignments that are marked to be matched by a merge join of their sorted masses and the peak windows
+	 *
+	 * @param assignments
+	 * @param tandemMassPeakList
+	 */
+	@Override
+	protected void matchFragmentsToPeaks(java.util.ArrayList<FragmentAssignment> assignments, SortedTandemMassPeakList tandemMassPeakList) {
+		long time = System.nanoTime();
+		if(this.mergeJoin == null) this.mergeJoin = new FragmentMassMergeJoin(this.fragmentMassToPeakMatcher);
+		this.mergeJoin.clear();
+		/*
+		 * phase one: collect the masses of all fragments to be matched
+		 */
+		int[] fragmentIndexToAssignmentIndex = new int[assignments.size()];
+		for(int i = 0; i < assignments.size(); i++) {
+			FragmentAssignment assignment = assignments.get(i);
+			if(!assignment.toBeMatched) continue;
+			assignment.matches = null;
+			assignment.nextPeakPointer = -1;
+			assignment.processed = true;
+			if(assignment.currentPeakPointer < 0) continue;
+			/*
+			 * the first peak (searching towards smaller masses) that is exceeded by all fragment masses
+			 * is where the children of the fragment start matching at
+			 */
+			assignment.nextPeakPointer = this.getNextPeakPointer(assignment.fragment, assignment.currentPeakPointer);
+			/*
+			 * fragments below a pruned fragment are not matched
+			 */
+			if(assignment.subtreePruned) continue;
+			fragmentIndexToAssignmentIndex[this.mergeJoin.addFragment(assignment.fragment, assignment.currentPeakPointer)] = i;
+		}
+		/*
+		 * phase two: sort the masses and join them with the peak windows
+		 */
+		this.mergeJoin.join();
+		long joinedTime = System.nanoTime();
+		this.joinTime += joinedTime - time;
+		/*
+		 * create and score the matches ordered by fragment and descending peak index
+		 */
+		int hitIndex = 0;
+		while(hitIndex < this.mergeJoin.getNumberHits()) {
+			FragmentAssignment assignment = assignments.get(fragmentIndexToAssignmentIndex[this.mergeJoin.getHitFragmentIndex(hitIndex)]);
+			int peakIndex = this.mergeJoin.getHitPeakIndex(hitIndex);
+			IMatch[] match = new IMatch[1];
+			hitIndex = this.mergeJoin.createMatch(hitIndex, assignment.fragment, tandemMassPeakList.getElement(peakIndex), match);
+			assignment.addMatch(peakIndex, match[0], this.scoreCollection.calculateSingleMatch(match[0]));
+		}
+		this.matchTime += System.nanoTime() - joinedTime;
+	}
+
+}
@@ -3,6 +3,7 @@ package de.ipbhalle.metfraglib.list;
 import de.ipbhalle.metfraglib.BitArray;
 import de.ipbhalle.metfraglib.additionals.MathTools;
 import de.ipbhalle.metfraglib.peak.Peak;
+import de.ipbhalle.metfraglib.peak.PeakWindowIndex;
 import de.ipbhalle.metfraglib.peak.TandemMassPeak;
 
 /**
@@ -14,6 +15,10 @@ import de.ipbhalle.metfraglib.peak.TandemMassPeak;
 public class SortedTandemMassPeakList extends DefaultPeakList {
 	
 	protected Double measuredPrecursorMass;
+	/*
+	 * mass windows of the peaks, created once for all candidates
+	 */
+	protected PeakWindowIndex peakWindowIndex;
 	
 	public SortedTandemMassPeakList(Double measuredPrecursorMass) {
 		super();
@@ -28,7 +33,27 @@ public class SortedTandemMassPeakList extends DefaultPeakList {
 		return (TandemMassPeak)this.list.get(index);
 	}
 	
+	/**
+	 * returns the mass window index of the peaks for the given mass deviations
+	 * the index is created on first request and shared afterwards, mass limits of the peaks are initialised along with it
+	 * 
+	 * @param relativeMassDeviation
+	 * @param absoluteMassDeviation
+	 * @return
+	 */
+	public synchronized PeakWindowIndex getPeakWindowIndex(double relativeMassDeviation, double absoluteMassDeviation) {
+		if(this.peakWindowIndex == null 
+				|| this.peakWindowIndex.getNumberPeaks() != this.list.size()
+				|| this.peakWindowIndex.getRelativeMassDeviation() != relativeMassDeviation 
+				|| this.peakWindowIndex.getAbsoluteMassDeviation() != absoluteMassDeviation) {
+			this.initialiseMassLimits(relativeMassDeviation, absoluteMassDeviation);
+			this.peakWindowIndex = new PeakWindowIndex(this, relativeMassDeviation, absoluteMassDeviation);
+		}
+		return this.peakWindowIndex;
+	}
+	
 	public void addElement(TandemMassPeak tandemMassPeak) {
+		this.peakWindowIndex = null;
 		int index = 0;
 		double mass = tandemMassPeak.getMass();
 		while(index < this.list.size() && mass > ((TandemMassPeak)this.list.get(index)).getMass()) index++;
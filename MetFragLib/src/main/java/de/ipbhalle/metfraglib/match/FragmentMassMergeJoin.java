@@ -0,0 +1,234 @@
+package de.ipbhalle.metfraglib.match;
+
+import de.ipbhalle.metfraglib.interfaces.IFragment;
+import de.ipbhalle.metfraglib.interfaces.IMatch;
+import de.ipbhalle.metfraglib.interfaces.IPeak;
+import de.ipbhalle.metfraglib.peak.PeakWindowIndex;
+
+/**
+ * two phase matching of the fragments of one tree depth to the peaks of a PeakWindowIndex
+ * first the masses of all fragments including ionisation types and hydrogen shifts are collected in primitive arrays,
+ * then they are sorted and joined with the ascending peak windows in one linear pass
+ *
+ * each fragment only matches peaks up to its maximum peak index (the peak pointer inherited from its precursor fragment)
+ * the hits are ordered by fragment, descending peak index and in the order FragmentMassToPeakMatcher checks the masses
+ * so that the created matches equal those of FragmentMassToPeakMatcher.matchToPeak
+ *
+ * an instance is used by one thread only and can be reused after calling clear
+ *
+ */
+public class FragmentMassMergeJoin {
+
+	/*
+	 * bit layout of the hit keys: fragment index, inverted peak index, mass index of the fragment
+	 */
+	private static final int MASS_BITS = 12;
+	private static final int PEAK_BITS = 24;
+	private static final int MAXIMUM_PEAK_INDEX = (1 << PEAK_BITS) - 1;
+
+	private final FragmentMassToPeakMatcher matcher;
+	private final PeakWindowIndex peakWindowIndex;
+	private final FragmentMassToPeakMatcher.MatchBuffer buffer;
+	/*
+	 * masses of all fragments, the masses of one fragment are stored consecutively in the order they are checked
+	 */
+	private double[] masses;
+	private byte[] hydrogenShifts;
+	private byte[] adductTypeIndeces;
+	private int[] massIndexToFragmentIndex;
+	private int numberMasses;
+	private int[] firstMassIndeces;
+	private int[] maximumPeakIndeces;
+	private int numberFragments;
+	/*
+	 * mass indeces in ascending order of the masses
+	 */
+	private int[] sortedMassIndeces;
+	private long[] hits;
+	private int numberHits;
+
+	public FragmentMassMergeJoin(FragmentMassToPeakMatcher matcher) {
+		this.matcher = matcher;
+		this.peakWindowIndex = matcher.getPeakWindowIndex();
+		this.buffer = new FragmentMassToPeakMatcher.MatchBuffer();
+		this.masses = new double[256];
+		this.hydrogenShifts = new byte[256];
+		this.adductTypeIndeces = new byte[256];
+		this.massIndexToFragmentIndex = new int[256];
+		this.firstMassIndeces = new int[32];
+		this.maximumPeakIndeces = new int[32];
+		this.hits = new long[64];
+	}
+
+	public void clear() {
+		this.numberMasses = 0;
+		this.numberFragments = 0;
+		this.numberHits = 0;
+	}
+
+	/**
+	 * adds the masses of the fragment and returns its index
+	 *
+	 * @param fragment
+	 * @param maximumPeakIndex greatest peak index the fragment may match
+	 * @return
+	 */
+	public int addFragment(IFragment fragment, int maximumPeakIndex) {
+		if(this.numberFragments == this.firstMassIndeces.length) {
+			this.firstMassIndeces = java.util.Arrays.copyOf(this.firstMassIndeces, this.numberFragments << 1);
+			this.maximumPeakIndeces = java.util.Arrays.copyOf(this.maximumPeakIndeces, this.numberFragments << 1);
+		}
+		int fragmentIndex = this.numberFragments++;
+		this.firstMassIndeces[fragmentIndex] = this.numberMasses;
+		this.maximumPeakIndeces[fragmentIndex] = Math.min(maximumPeakIndex, MAXIMUM_PEAK_INDEX);
+		double fragmentMass = fragment.getMonoisotopicMass();
+		int maximalHydrogenShift = this.matcher.getMaximalHydrogenShift(fragment);
+		for(int i = 0; i < this.matcher.getNumberIonisationTypes(); i++) {
+			double currentFragmentMass = fragmentMass + this.matcher.getIonisationTypeMassCorrection(i);
+			byte adductTypeIndex = this.matcher.getAdductTypeIndex(i);
+			this.addMass(fragmentIndex, currentFragmentMass, (byte)0, adductTypeIndex);
+			for(int hydrogenShift = 1; hydrogenShift <= maximalHydrogenShift; hydrogenShift++) {
+				this.addMass(fragmentIndex, currentFragmentMass + this.matcher.getHydrogenShiftMass(hydrogenShift), (byte)hydrogenShift, adductTypeIndex);
+				this.addMass(fragmentIndex, currentFragmentMass + this.matcher.getHydrogenShiftMass(-hydrogenShift), (byte)(-1 * hydrogenShift), adductTypeIndex);
+			}
+		}
+		return fragmentIndex;
+	}
+
+	private void addMass(int fragmentIndex, double mass, byte hydrogenShift, byte adductTypeIndex) {
+		if(this.numberMasses == this.masses.length) {
+			this.masses = java.util.Arrays.copyOf(this.masses, this.numberMasses << 1);
+			this.hydrogenShifts = java.util.Arrays.copyOf(this.hydrogenShifts, this.numberMasses << 1);
+			this.adductTypeIndeces = java.util.Arrays.copyOf(this.adductTypeIndeces, this.numberMasses << 1);
+			this.massIndexToFragmentIndex = java.util.Arrays.copyOf(this.massIndexToFragmentIndex, this.numberMasses << 1);
+		}
+		this.masses[this.numberMasses] = mass;
+		this.hydrogenShifts[this.numberMasses] = hydrogenShift;
+		this.adductTypeIndeces[this.numberMasses] = adductTypeIndex;
+		this.massIndexToFragmentIndex[this.numberMasses] = fragmentIndex;
+		this.numberMasses++;
+	}
+
+	/**
+	 * sorts the added masses and joins them with the peak windows
+	 */
+	public void join() {
+		this.numberHits = 0;
+		if(this.sortedMassIndeces == null || this.sortedMassIndeces.length < this.numberMasses)
+			this.sortedMassIndeces = new int[this.masses.length];
+		for(int i = 0; i < this.numberMasses; i++) this.sortedMassIndeces[i] = i;
+		this.sort(0, this.numberMasses - 1);
+		int numberPeaks = this.peakWindowIndex.getNumberPeaks();
+		int firstPeakIndex = 0;
+		for(int i = 0; i < this.numberMasses; i++) {
+			int massIndex = this.sortedMassIndeces[i];
+			double mass = this.masses[massIndex];
+			/*
+			 * peaks with upper mass limit below the current mass can't match any of the following masses
+			 */
+			while(firstPeakIndex < numberPeaks && this.peakWindowIndex.getUpperMassLimit(firstPeakIndex) < mass) firstPeakIndex++;
+			int fragmentIndex = this.massIndexToFragmentIndex[massIndex];
+			int maximumPeakIndex = this.maximumPeakIndeces[fragmentIndex];
+			for(int peakIndex = firstPeakIndex; peakIndex < numberPeaks && peakIndex <= maximumPeakIndex; peakIndex++) {
+				if(this.peakWindowIndex.getLowerMassLimit(peakIndex) > mass) {
+					/*
+					 * lower limits of peaks with (almost) equal masses can differ in the last digit by rounding
+					 */
+					if(peakIndex + 1 < numberPeaks && this.peakWindowIndex.getLowerMassLimit(peakIndex + 1) <= mass) continue;
+					break;
+				}
+				if(mass > this.peakWindowIndex.getUpperMassLimit(peakIndex)) continue;
+				this.addHit(fragmentIndex, peakIndex, massIndex - this.firstMassIndeces[fragmentIndex]);
+			}
+		}
+		java.util.Arrays.sort(this.hits, 0, this.numberHits);
+	}
+
+	private void addHit(int fragmentIndex, int peakIndex, int massIndexOfFragment) {
+		if(this.numberHits == this.hits.length) this.hits = java.util.Arrays.copyOf(this.hits, this.numberHits << 1);
+		this.hits[this.numberHits++] = ((long)fragmentIndex << (PEAK_BITS + MASS_BITS))
+				| ((long)(MAXIMUM_PEAK_INDEX - peakIndex) << MASS_BITS) | massIndexOfFragment;
+	}
+
+	public int getNumberHits() {
+		return this.numberHits;
+	}
+
+	public int getHitFragmentIndex(int hitIndex) {
+		return (int)(this.hits[hitIndex] >>> (PEAK_BITS + MASS_BITS));
+	}
+
+	public int getHitPeakIndex(int hitIndex) {
+		return MAXIMUM_PEAK_INDEX - (int)((this.hits[hitIndex] >>> MASS_BITS) & MAXIMUM_PEAK_INDEX);
+	}
+
+	private int getHitMassIndex(int hitIndex) {
+		return this.firstMassIndeces[this.getHitFragmentIndex(hitIndex)] + (int)(this.hits[hitIndex] & ((1 << MASS_BITS) - 1));
+	}
+
+	/**
+	 * creates the match of all hits of the fragment and the peak of the given hit
+	 * returns the index of the first hit of the next fragment peak pair
+	 *
+	 * @param hitIndex first hit of the fragment peak pair
+	 * @param fragment
+	 * @param peak
+	 * @param fragmentPeakMatch the created match is stored at index 0
+	 * @return
+	 */
+	public int createMatch(int hitIndex, IFragment fragment, IPeak peak, IMatch[] fragmentPeakMatch) {
+		long fragmentPeakKey = this.hits[hitIndex] >>> MASS_BITS;
+		this.buffer.numberHits = 0;
+		for(; hitIndex < this.numberHits && (this.hits[hitIndex] >>> MASS_BITS) == fragmentPeakKey; hitIndex++) {
+			int massIndex = this.getHitMassIndex(hitIndex);
+			this.buffer.addHit(this.masses[massIndex], this.hydrogenShifts[massIndex], this.adductTypeIndeces[massIndex]);
+		}
+		fragmentPeakMatch[0] = this.matcher.createMatch(fragment, peak, this.buffer);
+		return hitIndex;
+	}
+
+	/**
+	 * quick sort of the mass indeces by their masses
+	 *
+	 * @param from
+	 * @param to
+	 */
+	private void sort(int from, int to) {
+		while(to - from > 16) {
+			double pivot = this.masses[this.sortedMassIndeces[(from + to) >>> 1]];
+			int i = from;
+			int j = to;
+			while(i <= j) {
+				while(this.masses[this.sortedMassIndeces[i]] < pivot) i++;
+				while(this.masses[this.sortedMassIndeces[j]] > pivot) j--;
+				if(i <= j) {
+					int temp = this.sortedMassIndeces[i];
+					this.sortedMassIndeces[i++] = this.sortedMassIndeces[j];
+					this.sortedMassIndeces[j--] = temp;
+				}
+			}
+			/*
+			 * recurse into the smaller part to limit the stack depth
+			 */
+			if(j - from < to - i) {
+				this.sort(from, j);
+				from = i;
+			}
+			else {
+				this.sort(i, to);
+				to = j;
+			}
+		}
+		for(int i = from + 1; i <= to; i++) {
+			int massIndex = this.sortedMassIndeces[i];
+			double mass = this.masses[massIndex];
+			int j = i - 1;
+			while(j >= from && this.masses[this.sortedMassIndeces[j]] > mass) {
+				this.sortedMassIndeces[j + 1] = this.sortedMassIndeces[j];
+				j--;
+			}
+			this.sortedMassIndeces[j + 1] = massIndex;
+		}
+	}
+
+}
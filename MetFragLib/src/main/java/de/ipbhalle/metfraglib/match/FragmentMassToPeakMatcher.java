@@ -0,0 +1,212 @@
+package de.ipbhalle.metfraglib.match;
+
+import de.ipbhalle.metfraglib.interfaces.IFragment;
+import de.ipbhalle.metfraglib.interfaces.IMatch;
+import de.ipbhalle.metfraglib.interfaces.IPeak;
+import de.ipbhalle.metfraglib.parameter.Constants;
+import de.ipbhalle.metfraglib.peak.PeakWindowIndex;
+
+/**
+ * matches fragment masses to the peaks of a PeakWindowIndex in the same way as DefaultBitArrayFragment.matchToPeak
+ * ionisation mass corrections and hydrogen shift masses are calculated once for a run (precursor ion type and ion mode)
+ * hits are collected in a reusable MatchBuffer, a match object is only created if the fragment matched the peak
+ *
+ * the matcher doesn't change after creation and can be shared by threads, each thread needs its own MatchBuffer
+ *
+ */
+public class FragmentMassToPeakMatcher {
+
+	/*
+	 * hydrogen shifts are limited by the tree depth of a fragment
+	 */
+	private static final int MAXIMUM_HYDROGEN_SHIFT = Byte.MAX_VALUE;
+
+	private final PeakWindowIndex peakWindowIndex;
+	private final boolean isPositive;
+	/*
+	 * index 0 relates to the precursor ion type, index 1 to the plain (de)protonation
+	 */
+	private final double[] ionisationTypeMassCorrections;
+	private final byte[] adductTypeIndeces;
+	/*
+	 * mass of h added and removed hydrogens at index h
+	 */
+	private final double[] addedHydrogenMasses;
+	private final double[] removedHydrogenMasses;
+
+	public FragmentMassToPeakMatcher(PeakWindowIndex peakWindowIndex, int precursorIonTypeIndex, boolean isPositive) {
+		this.peakWindowIndex = peakWindowIndex;
+		this.isPositive = isPositive;
+		this.ionisationTypeMassCorrections = new double[] {
+			Constants.getIonisationTypeMassCorrection(precursorIonTypeIndex, isPositive),
+			Constants.getIonisationTypeMassCorrection(0, isPositive)
+		};
+		this.adductTypeIndeces = new byte[] {(byte)precursorIonTypeIndex, (byte)0};
+		this.addedHydrogenMasses = new double[MAXIMUM_HYDROGEN_SHIFT + 1];
+		this.removedHydrogenMasses = new double[MAXIMUM_HYDROGEN_SHIFT + 1];
+		for(int hydrogenShift = 1; hydrogenShift <= MAXIMUM_HYDROGEN_SHIFT; hydrogenShift++) {
+			this.addedHydrogenMasses[hydrogenShift] = hydrogenShift * Constants.HYDROGEN_MASS;
+			this.removedHydrogenMasses[hydrogenShift] = -1 * hydrogenShift * Constants.HYDROGEN_MASS;
+		}
+	}
+
+	/**
+	 * ionisation mass correction of the given adduct (0 precursor ion type, 1 plain (de)protonation)
+	 *
+	 * @param adductIndex
+	 * @return
+	 */
+	public double getIonisationTypeMassCorrection(int adductIndex) {
+		return this.ionisationTypeMassCorrections[adductIndex];
+	}
+
+	/**
+	 * matches the fragment with the given neutral mass to the peak with peakIndex
+	 * returns 0 if the fragment matched, 1 if all checked masses were greater than the peak window and -1 otherwise
+	 * in case of a match the match object is created and stored in fragmentPeakMatch[0]
+	 *
+	 * @param fragment
+	 * @param fragmentMass
+	 * @param peakIndex
+	 * @param peak
+	 * @param buffer
+	 * @param fragmentPeakMatch
+	 * @return
+	 */
+	public byte matchToPeak(IFragment fragment, double fragmentMass, int peakIndex, IPeak peak, MatchBuffer buffer, IMatch[] fragmentPeakMatch) {
+		int maximalHydrogenShift = this.getMaximalHydrogenShift(fragment);
+		double lowerMassLimit = this.peakWindowIndex.getLowerMassLimit(peakIndex);
+		double upperMassLimit = this.peakWindowIndex.getUpperMassLimit(peakIndex);
+		buffer.numberHits = 0;
+		int numberComparisons = 0;
+		int numberCompareResultsEqualPlusOne = 0;
+		for(int i = 0; i < this.ionisationTypeMassCorrections.length; i++) {
+			double currentFragmentMass = fragmentMass + this.ionisationTypeMassCorrections[i];
+			boolean checkAddedHydrogens = true;
+			boolean checkRemovedHydrogens = true;
+			numberComparisons++;
+			if(currentFragmentMass < lowerMassLimit)
+				checkRemovedHydrogens = false;
+			else if(currentFragmentMass > upperMassLimit) {
+				checkAddedHydrogens = false;
+				numberCompareResultsEqualPlusOne++;
+			}
+			else buffer.addHit(currentFragmentMass, (byte)0, this.adductTypeIndeces[i]);
+			/*
+			 * iteration of hydrogen shift numbers to calculate adapted fragment masses
+			 * with added hydrogens stop as soon as the mass exceeds the window, with removed hydrogens as soon as it falls below
+			 */
+			for(int hydrogenShift = 1; hydrogenShift <= maximalHydrogenShift; hydrogenShift++) {
+				if(checkAddedHydrogens) {
+					double currentFragmentMassIonModeCorrected = currentFragmentMass + this.addedHydrogenMasses[hydrogenShift];
+					numberComparisons++;
+					if(currentFragmentMassIonModeCorrected > upperMassLimit) {
+						checkAddedHydrogens = false;
+						numberCompareResultsEqualPlusOne++;
+					}
+					else if(currentFragmentMassIonModeCorrected >= lowerMassLimit)
+						buffer.addHit(currentFragmentMassIonModeCorrected, (byte)hydrogenShift, this.adductTypeIndeces[i]);
+				}
+				if(checkRemovedHydrogens) {
+					double currentFragmentMassIonModeCorrected = currentFragmentMass + this.removedHydrogenMasses[hydrogenShift];
+					numberComparisons++;
+					if(currentFragmentMassIonModeCorrected < lowerMassLimit)
+						checkRemovedHydrogens = false;
+					else if(currentFragmentMassIonModeCorrected > upperMassLimit)
+						numberCompareResultsEqualPlusOne++;
+					else
+						buffer.addHit(currentFragmentMassIonModeCorrected, (byte)(-1 * hydrogenShift), this.adductTypeIndeces[i]);
+				}
+			}
+		}
+		if(buffer.numberHits != 0) {
+			fragmentPeakMatch[0] = this.createMatch(fragment, peak, buffer);
+			return 0;
+		}
+		else if(numberCompareResultsEqualPlusOne == numberComparisons) return 1;
+		return -1;
+	}
+
+	/**
+	 * creates the match of the fragment and the peak from the hits in the buffer
+	 *
+	 * @param fragment
+	 * @param peak
+	 * @param buffer
+	 * @return
+	 */
+	protected IMatch createMatch(IFragment fragment, IPeak peak, MatchBuffer buffer) {
+		FragmentMassToPeakMatch match = new FragmentMassToPeakMatch(peak);
+		match.setIsPositiveCharge(this.isPositive);
+		for(int k = 0; k < buffer.numberHits; k++)
+			match.addMatchedFragment(fragment, buffer.hydrogenShifts[k], buffer.masses[k], buffer.adductTypeIndeces[k]);
+		fragment.setHasMatched();
+		return match;
+	}
+
+	/**
+	 * maximal number of hydrogens added or removed for the given fragment
+	 *
+	 * @param fragment
+	 * @return
+	 */
+	public int getMaximalHydrogenShift(IFragment fragment) {
+		return Math.min(fragment.getTreeDepth(), MAXIMUM_HYDROGEN_SHIFT);
+	}
+
+	/**
+	 * mass of the given number of added (positive) or removed (negative) hydrogens
+	 *
+	 * @param hydrogenShift
+	 * @return
+	 */
+	public double getHydrogenShiftMass(int hydrogenShift) {
+		if(hydrogenShift < 0) return this.removedHydrogenMasses[-hydrogenShift];
+		return this.addedHydrogenMasses[hydrogenShift];
+	}
+
+	/**
+	 * adduct type index of the given adduct (0 precursor ion type, 1 plain (de)protonation)
+	 *
+	 * @param adductIndex
+	 * @return
+	 */
+	public byte getAdductTypeIndex(int adductIndex) {
+		return this.adductTypeIndeces[adductIndex];
+	}
+
+	public int getNumberIonisationTypes() {
+		return this.ionisationTypeMassCorrections.length;
+	}
+
+	public PeakWindowIndex getPeakWindowIndex() {
+		return this.peakWindowIndex;
+	}
+
+	/**
+	 * reusable storage of the hits of one fragment peak comparison
+	 *
+	 */
+	public static class MatchBuffer {
+		protected double[] masses = new double[8];
+		protected byte[] hydrogenShifts = new byte[8];
+		protected byte[] adductTypeIndeces = new byte[8];
+		protected int numberHits;
+
+		protected void addHit(double mass, byte hydrogenShift, byte adductTypeIndex) {
+			if(this.numberHits == this.masses.length) {
+				this.masses = java.util.Arrays.copyOf(this.masses, this.numberHits << 1);
+				this.hydrogenShifts = java.util.Arrays.copyOf(this.hydrogenShifts, this.numberHits << 1);
+				this.adductTypeIndeces = java.util.Arrays.copyOf(this.adductTypeIndeces, this.numberHits << 1);
+			}
+			this.masses[this.numberHits] = mass;
+			this.hydrogenShifts[this.numberHits] = hydrogenShift;
+			this.adductTypeIndeces[this.numberHits] = adductTypeIndex;
+			this.numberHits++;
+		}
+
+		public int getNumberHits() {
+			return this.numberHits;
+		}
+	}
+}
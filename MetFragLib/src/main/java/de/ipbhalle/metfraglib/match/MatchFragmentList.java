@@ -72,6 +72,21 @@ public class MatchFragmentList {
 		return null;
 	}
 	
+	/**
+	 * returns the first node whose fragment has the given atoms fingerprint, null if there is none
+	 * 
+	 * @param fingerprint
+	 * @return
+	 */
+	public MatchFragmentNode getElementByFingerprint(de.ipbhalle.metfraglib.BitArray fingerprint) {
+		MatchFragmentNode currentNode = this.rootNode;
+		while(currentNode != null) {
+			if(((DefaultBitArrayFragment)currentNode.getFragment()).getAtomsBitArray().equals(fingerprint)) return currentNode;
+			currentNode = currentNode.getNext();
+		}
+		return null;
+	}
+	
 	/**
 	 * 
 	 * @param newNode
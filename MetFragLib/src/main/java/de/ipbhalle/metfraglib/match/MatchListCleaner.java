@@ -0,0 +1,253 @@
+package de.ipbhalle.metfraglib.match;
+
+import de.ipbhalle.metfraglib.collection.IntObjectHashMap;
+
+/**
+ * assigns each fragment to at most one peak (unique fragment matches)
+ * peaks are processed in the order of their best score, the best fragment of a peak is assigned if the peak is also
+ * the best peak of the fragment, otherwise the fragment is dropped from the peak's list
+ *
+ * the peak queue is an indexed binary heap, the fragment lists of the peaks and the peak lists of the fragments are
+ * indexed by id and elements are removed lazily so that each update takes logarithmic time
+ * the linked lists are relinked at the end and hold the same elements as if the updates had been done on the linked lists
+ *
+ */
+public class MatchListCleaner {
+
+	private final MatchPeakList sortedScoredPeaks;
+	private final MatchFragmentList[] peakIndexToPeakMatch;
+	private final IntObjectHashMap<MatchPeakList> fragmentIndexToPeakMatch;
+
+	/**
+	 * 
+	 * @param sortedScoredPeaks
+	 * @param peakIndexToPeakMatch fragment lists indexed by peak index, null if no fragment matched the peak
+	 * @param fragmentIndexToPeakMatch
+	 */
+	public MatchListCleaner(MatchPeakList sortedScoredPeaks, MatchFragmentList[] peakIndexToPeakMatch, IntObjectHashMap<MatchPeakList> fragmentIndexToPeakMatch) {
+		this.sortedScoredPeaks = sortedScoredPeaks;
+		this.peakIndexToPeakMatch = peakIndexToPeakMatch;
+		this.fragmentIndexToPeakMatch = fragmentIndexToPeakMatch;
+	}
+
+	/**
+	 * removes the fragments that are not assigned to a peak from the match tables
+	 */
+	public void clean() {
+		if(this.sortedScoredPeaks == null) return;
+		/*
+		 * index the fragment lists of the peaks and the peak lists of the fragments
+		 */
+		int maximumPeakIndex = this.peakIndexToPeakMatch.length - 1;
+		int[] fragmentIndeces = this.fragmentIndexToPeakMatch.getKeys();
+		int maximumFragmentIndex = fragmentIndeces.length == 0 ? 0 : fragmentIndeces[fragmentIndeces.length - 1];
+		IndexedList[] fragmentToPeaks = new IndexedList[maximumFragmentIndex + 1];
+		java.util.ArrayList<IndexedList> lists = new java.util.ArrayList<IndexedList>();
+		for(int k = 0; k < fragmentIndeces.length; k++) {
+			int fragmentIndex = fragmentIndeces[k];
+			IndexedList peaks = new IndexedList(this.fragmentIndexToPeakMatch.get(fragmentIndex));
+			fragmentToPeaks[fragmentIndex] = peaks;
+			lists.add(peaks);
+			for(int i = 0; i < peaks.ids.length; i++) maximumPeakIndex = Math.max(maximumPeakIndex, peaks.ids[i]);
+		}
+		MatchPeakNode currentNode = this.sortedScoredPeaks.getRootNode();
+		while(currentNode != null) {
+			maximumPeakIndex = Math.max(maximumPeakIndex, currentNode.getId());
+			currentNode = currentNode.getNext();
+		}
+		IndexedList[] peakToFragments = new IndexedList[maximumPeakIndex + 1];
+		for(int peakIndex = 0; peakIndex < this.peakIndexToPeakMatch.length; peakIndex++) {
+			if(this.peakIndexToPeakMatch[peakIndex] == null) continue;
+			peakToFragments[peakIndex] = new IndexedList(this.peakIndexToPeakMatch[peakIndex]);
+			lists.add(peakToFragments[peakIndex]);
+		}
+		/*
+		 * peaks keep their order as the heap numbers equally scored peaks in the order of insertion
+		 */
+		MatchPeakHeap sortedPeaks = new MatchPeakHeap(maximumPeakIndex);
+		while(this.sortedScoredPeaks.getRootNode() != null) {
+			sortedPeaks.insert(this.sortedScoredPeaks.getRootNode().getId(), this.sortedScoredPeaks.getRootNode().getScore());
+			this.sortedScoredPeaks.removeFirst();
+		}
+
+		while(!sortedPeaks.isEmpty()) {
+			int currentPeakIndex = sortedPeaks.removeFirst();
+			IndexedList currentFragmentList = peakToFragments[currentPeakIndex];
+			boolean processed = false;
+			while(!processed) {
+				int fragmentPosition = currentFragmentList.getRootPosition();
+				if(fragmentPosition == -1) {
+					this.peakIndexToPeakMatch[currentPeakIndex] = null;
+					processed = true;
+					continue;
+				}
+				int currentFragmentIndex = currentFragmentList.ids[fragmentPosition];
+				IndexedList currentPeakList = fragmentToPeaks[currentFragmentIndex];
+				int peakPosition = currentPeakList.getRootPosition();
+				/*
+				 * check whether the best peak's best fragment also points to this peak
+				 */
+				if(currentPeakList.ids[peakPosition] == currentPeakIndex) {
+					processed = true;
+					/*
+					 * remove the peak from the lists of the other fragments of the peak
+					 */
+					for(int i = fragmentPosition + 1; i < currentFragmentList.ids.length; i++) {
+						if(currentFragmentList.removed[i]) continue;
+						fragmentToPeaks[currentFragmentList.ids[i]].removeElementByID(currentPeakIndex);
+					}
+					/*
+					 * remove the fragment from the lists of its other peaks
+					 */
+					for(int i = peakPosition + 1; i < currentPeakList.ids.length; i++) {
+						if(currentPeakList.removed[i]) continue;
+						int peakIndex = currentPeakList.ids[i];
+						IndexedList fragmentList = peakToFragments[peakIndex];
+						if(fragmentList == null || fragmentList.getRootPosition() == -1)
+							throw new IllegalStateException("no fragments left for peak " + peakIndex + " of fragment " + currentFragmentIndex);
+						boolean toUpdate = fragmentList.ids[fragmentList.getRootPosition()] == currentFragmentIndex;
+						if(toUpdate) sortedPeaks.removeElementByID(peakIndex);
+						fragmentList.removeElementByID(currentFragmentIndex);
+						if(toUpdate) {
+							int rootPosition = fragmentList.getRootPosition();
+							if(rootPosition != -1) {
+								IndexedList rootPeakList = fragmentList.ids[rootPosition] < fragmentToPeaks.length ? fragmentToPeaks[fragmentList.ids[rootPosition]] : null;
+								int position = rootPeakList == null ? -1 : rootPeakList.getPositionByID(peakIndex);
+								if(position != -1) sortedPeaks.insert(peakIndex, ((MatchPeakNode)rootPeakList.nodes[position]).getScore());
+							}
+							else this.peakIndexToPeakMatch[peakIndex] = null;
+						}
+					}
+				}
+				else currentFragmentList.removeFirst();
+			}
+		}
+		/*
+		 * relink the remaining elements
+		 */
+		for(int k = 0; k < lists.size(); k++) {
+			IndexedList indexedList = lists.get(k);
+			if(indexedList.list instanceof MatchFragmentList) {
+				MatchFragmentNode rootNode = null;
+				MatchFragmentNode previousNode = null;
+				for(int i = 0; i < indexedList.nodes.length; i++) {
+					if(indexedList.removed[i]) continue;
+					MatchFragmentNode node = (MatchFragmentNode)indexedList.nodes[i];
+					if(previousNode == null) rootNode = node;
+					else previousNode.setNext(node);
+					previousNode = node;
+				}
+				if(previousNode != null) previousNode.setNext(null);
+				((MatchFragmentList)indexedList.list).setRootNode(rootNode);
+			}
+			else {
+				MatchPeakNode rootNode = null;
+				MatchPeakNode previousNode = null;
+				for(int i = 0; i < indexedList.nodes.length; i++) {
+					if(indexedList.removed[i]) continue;
+					MatchPeakNode node = (MatchPeakNode)indexedList.nodes[i];
+					if(previousNode == null) rootNode = node;
+					else previousNode.setNext(node);
+					previousNode = node;
+				}
+				if(previousNode != null) previousNode.setNext(null);
+				((MatchPeakList)indexedList.list).setRootNode(rootNode);
+			}
+		}
+	}
+
+	/**
+	 * elements of a MatchFragmentList or MatchPeakList in list order with an id to position map
+	 * removed elements are flagged, the root position moves on lazily
+	 *
+	 */
+	private static class IndexedList {
+		private final Object list;
+		private final Object[] nodes;
+		private final int[] ids;
+		private final boolean[] removed;
+		/*
+		 * id and position of each element sorted by id and position (id in the upper, position in the lower 32 bits)
+		 */
+		private final long[] sortedIdPositions;
+		private int rootPosition;
+
+		private IndexedList(MatchFragmentList fragmentList) {
+			this.list = fragmentList;
+			int numberElements = fragmentList.countElements();
+			this.nodes = new Object[numberElements];
+			this.ids = new int[numberElements];
+			MatchFragmentNode currentNode = fragmentList.getRootNode();
+			for(int i = 0; i < numberElements; i++) {
+				this.nodes[i] = currentNode;
+				this.ids[i] = currentNode.getFragment().getID();
+				currentNode = currentNode.getNext();
+			}
+			this.removed = new boolean[numberElements];
+			this.sortedIdPositions = this.sortIdPositions();
+		}
+
+		private IndexedList(MatchPeakList peakList) {
+			this.list = peakList;
+			int numberElements = peakList.countElements();
+			this.nodes = new Object[numberElements];
+			this.ids = new int[numberElements];
+			MatchPeakNode currentNode = peakList.getRootNode();
+			for(int i = 0; i < numberElements; i++) {
+				this.nodes[i] = currentNode;
+				this.ids[i] = currentNode.getId();
+				currentNode = currentNode.getNext();
+			}
+			this.removed = new boolean[numberElements];
+			this.sortedIdPositions = this.sortIdPositions();
+		}
+
+		private long[] sortIdPositions() {
+			long[] idPositions = new long[this.ids.length];
+			for(int i = 0; i < this.ids.length; i++) idPositions[i] = ((long)this.ids[i] << 32) | i;
+			java.util.Arrays.sort(idPositions);
+			return idPositions;
+		}
+
+		/**
+		 * position of the first element not removed, -1 if the list is empty
+		 *
+		 * @return
+		 */
+		private int getRootPosition() {
+			while(this.rootPosition < this.removed.length && this.removed[this.rootPosition]) this.rootPosition++;
+			return this.rootPosition == this.removed.length ? -1 : this.rootPosition;
+		}
+
+		private void removeFirst() {
+			int position = this.getRootPosition();
+			if(position != -1) this.removed[position] = true;
+		}
+
+		/**
+		 * position of the first element with the given id not removed, -1 if there is none
+		 *
+		 * @param id
+		 * @return
+		 */
+		private int getPositionByID(int id) {
+			int low = 0;
+			int high = this.sortedIdPositions.length - 1;
+			while(low <= high) {
+				int middle = (low + high) >>> 1;
+				if((int)(this.sortedIdPositions[middle] >>> 32) < id) low = middle + 1;
+				else high = middle - 1;
+			}
+			for(int i = low; i < this.sortedIdPositions.length && (int)(this.sortedIdPositions[i] >>> 32) == id; i++) {
+				int position = (int)this.sortedIdPositions[i];
+				if(!this.removed[position]) return position;
+			}
+			return -1;
+		}
+
+		private void removeElementByID(int id) {
+			int position = this.getPositionByID(id);
+			if(position != -1) this.removed[position] = true;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package de.ipbhalle.metfraglib.match;
+
+/**
+ * indexed binary max heap of peak ids ordered by score
+ * peaks with equal scores are ordered by insertion, so the heap returns peaks in the same order as a MatchPeakList
+ * the position of each peak id in the heap is stored to update or remove peaks in logarithmic time
+ *
+ * peak ids are expected to be dense (peak indeces of the peak list)
+ *
+ */
+public class MatchPeakHeap {
+
+	private int[] ids;
+	private double[] scores;
+	private long[] sequences;
+	/*
+	 * heap position of each peak id, -1 if the id is not contained
+	 */
+	private int[] positions;
+	private int size;
+	private long nextSequence;
+
+	/**
+	 *
+	 * @param maximumId greatest peak id that will be inserted
+	 */
+	public MatchPeakHeap(int maximumId) {
+		this.ids = new int[16];
+		this.scores = new double[16];
+		this.sequences = new long[16];
+		this.positions = new int[maximumId + 1];
+		java.util.Arrays.fill(this.positions, -1);
+		this.size = 0;
+		this.nextSequence = 0;
+	}
+
+	/**
+	 * inserts the peak id with the given score
+	 * if the id is already contained its score is updated (increase or decrease key)
+	 * in both cases the peak is placed behind all peaks with equal score
+	 *
+	 * @param id
+	 * @param score
+	 */
+	public void insert(int id, double score) {
+		int position = this.positions[id];
+		if(position == -1) {
+			if(this.size == this.ids.length) {
+				this.ids = java.util.Arrays.copyOf(this.ids, this.size << 1);
+				this.scores = java.util.Arrays.copyOf(this.scores, this.size << 1);
+				this.sequences = java.util.Arrays.copyOf(this.sequences, this.size << 1);
+			}
+			position = this.size;
+			this.size++;
+			this.ids[position] = id;
+			this.positions[id] = position;
+		}
+		this.scores[position] = score;
+		this.sequences[position] = this.nextSequence++;
+		this.siftDown(this.siftUp(position));
+	}
+
+	/**
+	 * removes and returns the peak id with the greatest score
+	 *
+	 * @return
+	 */
+	public int removeFirst() {
+		int id = this.ids[0];
+		this.removeAt(0);
+		return id;
+	}
+
+	/**
+	 * removes the peak id if contained
+	 *
+	 * @param id
+	 */
+	public void removeElementByID(int id) {
+		if(id < this.positions.length && this.positions[id] != -1) this.removeAt(this.positions[id]);
+	}
+
+	public boolean contains(int id) {
+		return id < this.positions.length && this.positions[id] != -1;
+	}
+
+	public double getScore(int id) {
+		return this.scores[this.positions[id]];
+	}
+
+	public int getFirstId() {
+		return this.ids[0];
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	public int getNumberElements() {
+		return this.size;
+	}
+
+	private void removeAt(int position) {
+		this.positions[this.ids[position]] = -1;
+		this.size--;
+		if(position == this.size) return;
+		this.move(this.size, position);
+		this.siftDown(this.siftUp(position));
+	}
+
+	/*
+	 * returns true if the element at position a has to be placed before the element at position b
+	 */
+	private boolean isBefore(int a, int b) {
+		if(this.scores[a] != this.scores[b]) return this.scores[a] > this.scores[b];
+		return this.sequences[a] < this.sequences[b];
+	}
+
+	private int siftUp(int position) {
+		while(position > 0) {
+			int parent = (position - 1) >>> 1;
+			if(!this.isBefore(position, parent)) break;
+			this.swap(position, parent);
+			position = parent;
+		}
+		return position;
+	}
+
+	private int siftDown(int position) {
+		while(true) {
+			int child = (position << 1) + 1;
+			if(child >= this.size) break;
+			if(child + 1 < this.size && this.isBefore(child + 1, child)) child++;
+			if(!this.isBefore(child, position)) break;
+			this.swap(position, child);
+			position = child;
+		}
+		return position;
+	}
+
+	private void move(int from, int to) {
+		this.ids[to] = this.ids[from];
+		this.scores[to] = this.scores[from];
+		this.sequences[to] = this.sequences[from];
+		this.positions[this.ids[to]] = to;
+	}
+
+	private void swap(int a, int b) {
+		int id = this.ids[a];
+		double score = this.scores[a];
+		long sequence = this.sequences[a];
+		this.move(b, a);
+		this.ids[b] = id;
+		this.scores[b] = score;
+		this.sequences[b] = sequence;
+		this.positions[id] = b;
+	}
+}
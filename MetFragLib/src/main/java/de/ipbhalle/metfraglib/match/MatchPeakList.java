@@ -91,6 +91,10 @@ public class MatchPeakList {
 		return rootNode;
 	}
 
+	public void setRootNode(MatchPeakNode rootNode) {
+		this.rootNode = rootNode;
+	}
+
 	/**
 	 * 
 	 * @param node
@@ -4,6 +4,7 @@ import de.ipbhalle.metfraglib.BitArray;
 import de.ipbhalle.metfraglib.additionals.MathTools;
 import de.ipbhalle.metfraglib.exceptions.AtomTypeNotKnownFromInputListException;
 import de.ipbhalle.metfraglib.parameter.Constants;
+import de.ipbhalle.metfraglib.precursor.BitArrayPrecursor;
 import de.ipbhalle.metfraglib.precursor.DefaultPrecursor;
 
 public class BitArrayFragmentMolecularFormula extends ByteMolecularFormula {
@@ -14,8 +15,9 @@ public class BitArrayFragmentMolecularFormula extends ByteMolecularFormula {
 	 */
 	protected final DefaultPrecursor precursorMolecule;
 	/*
-	 * bit array marks precursor atoms as true that are set in the fragment
+	 * cached monoisotopic mass, negative if not calculated yet
 	 */
+	protected double monoisotopicMass = -1.0;
 	
 	public BitArrayFragmentMolecularFormula(DefaultPrecursor precursorMolecule) {
 		this.precursorMolecule = precursorMolecule;
@@ -26,6 +28,41 @@ public class BitArrayFragmentMolecularFormula extends ByteMolecularFormula {
 		this.precursorMolecule = precursorMolecule;
 		this.initialise(atomsBitArray);
 	}
+	
+	/**
+	 * counts the elements of the atoms set in atomsBitArray by the per atom properties of the precursor
+	 * 
+	 * @param precursorMolecule
+	 * @param atomsBitArray
+	 */
+	public BitArrayFragmentMolecularFormula(BitArrayPrecursor precursorMolecule, BitArray atomsBitArray) {
+		this.precursorMolecule = precursorMolecule;
+		this.atomsAsIndeces = precursorMolecule.getFormulaElementIndeces();
+		this.numberOfAtoms = new short[this.atomsAsIndeces.length];
+		this.containsC = precursorMolecule.containsC();
+		int numberHydrogens = 0;
+		for(int i = atomsBitArray.nextSetBit(-1); i != -1; i = atomsBitArray.nextSetBit(i)) {
+			this.numberOfAtoms[precursorMolecule.getFormulaElementIndexOfAtomIndex(i)]++;
+			numberHydrogens += precursorMolecule.getNumberHydrogensOfAtomIndex(i);
+		}
+		this.numberHydrogens = (short)numberHydrogens;
+	}
+	
+	/**
+	 * initialises the formula by given element counts
+	 * numberOfAtoms relates to the atomsAsIndeces array of the precursor's molecular formula and is not copied
+	 * 
+	 * @param precursorMolecule
+	 * @param numberOfAtoms
+	 * @param numberHydrogens
+	 */
+	public BitArrayFragmentMolecularFormula(BitArrayPrecursor precursorMolecule, short[] numberOfAtoms, short numberHydrogens) {
+		this.precursorMolecule = precursorMolecule;
+		this.atomsAsIndeces = precursorMolecule.getFormulaElementIndeces();
+		this.numberOfAtoms = numberOfAtoms;
+		this.numberHydrogens = numberHydrogens;
+		this.containsC = precursorMolecule.containsC();
+	}
 
 	/**
 	 * 
@@ -56,11 +93,31 @@ public class BitArrayFragmentMolecularFormula extends ByteMolecularFormula {
 	 * @return
 	 */
 	public double getMonoisotopicMass() {
+		if(this.monoisotopicMass >= 0.0) return this.monoisotopicMass;
 		double monoisotopicMass = 0.0;
 		for(int i = 0; i < this.atomsAsIndeces.length; i++)
 			monoisotopicMass += Constants.getMonoisotopicMassOfAtom(this.atomsAsIndeces[i]) * this.numberOfAtoms[i];
 		monoisotopicMass += Constants.HYDROGEN_MASS * this.numberHydrogens;
-		return MathTools.round(monoisotopicMass, Constants.DEFAULT_NUMBER_OF_DIGITS_AFTER_ROUNDING);
+		this.monoisotopicMass = MathTools.round(monoisotopicMass, Constants.DEFAULT_NUMBER_OF_DIGITS_AFTER_ROUNDING);
+		return this.monoisotopicMass;
+	}
+	
+	@Override
+	public void setNumberHydrogens(short numberHydrogens) {
+		super.setNumberHydrogens(numberHydrogens);
+		this.monoisotopicMass = -1.0;
+	}
+	
+	@Override
+	public void setNumberOfAtoms(short[] numberOfAtoms) {
+		super.setNumberOfAtoms(numberOfAtoms);
+		this.monoisotopicMass = -1.0;
+	}
+	
+	@Override
+	public void setAtomsAsIndeces(byte[] atomsAsIndeces) {
+		super.setAtomsAsIndeces(atomsAsIndeces);
+		this.monoisotopicMass = -1.0;
 	}
 	
 	/**
@@ -43,6 +43,7 @@ import de.ipbhalle.metfraglib.score.SmartsSubstructureExclusionScore;
 import de.ipbhalle.metfraglib.score.SmartsSubstructureInclusionScore;
 import de.ipbhalle.metfraglib.score.SuspectListScore;
 import de.ipbhalle.metfraglib.scoreinitialisation.DefaultScoreInitialiser;
+import de.ipbhalle.metfraglib.scoreinitialisation.FragmenterScoreInitialiser;
 import de.ipbhalle.metfraglib.scoreinitialisation.IndividualMoNASpectralSimilarityInitialiser;
 import de.ipbhalle.metfraglib.scoreinitialisation.OfflineMetFusionSpectralSimilarityScoreInitialiser;
 import de.ipbhalle.metfraglib.scoreinitialisation.RetentionTimeScoreInitialiser;
@@ -92,10 +93,10 @@ public class ClassNames {
 		 * each score needs its global init class to set shared objects once
 		 */
 		scoreNameToScoreInitialiserClassName = new java.util.HashMap<String, String>();
-		scoreNameToScoreInitialiserClassName.put(VariableNames.METFRAG_FRAGMENTER_SCORE_NAME, DefaultScoreInitialiser.class.getName());
-		scoreNameToScoreInitialiserClassName.put("FragmenterHierarchicalScore", DefaultScoreInitialiser.class.getName());
+		scoreNameToScoreInitialiserClassName.put(VariableNames.METFRAG_FRAGMENTER_SCORE_NAME, FragmenterScoreInitialiser.class.getName());
+		scoreNameToScoreInitialiserClassName.put("FragmenterHierarchicalScore", FragmenterScoreInitialiser.class.getName());
 		scoreNameToScoreInitialiserClassName.put("FragmenterScoreLipids", DefaultScoreInitialiser.class.getName());
-		scoreNameToScoreInitialiserClassName.put("FragmenterUniqueFormulaScore", DefaultScoreInitialiser.class.getName());
+		scoreNameToScoreInitialiserClassName.put("FragmenterUniqueFormulaScore", FragmenterScoreInitialiser.class.getName());
 		scoreNameToScoreInitialiserClassName.put("SmartsSubstructureInclusionScore", SmartsSubstructureInclusionScoreInitialiser.class.getName());
 		scoreNameToScoreInitialiserClassName.put("SmartsSubstructureExclusionScore", SmartsSubstructureExclusionScoreInitialiser.class.getName());
 		scoreNameToScoreInitialiserClassName.put("SuspectListScore", SuspectListScoreInitialiser.class.getName());
@@ -180,7 +180,8 @@ public class Constants {
 	public static final Integer 			DEFAULT_STRUCTURE_IMAGE_HEIGHT 								= 	200;
 	public static final Double 			DEFAULT_STRUCTURE_STROKE_RATIO 								=	1.0;
 	public static final Boolean 			DEFAULT_POSITIVE_IONISATION_MODE 							= 	true;
-	public static final Byte 				DEFAULT_NUMBER_THREADS 										= 	(byte)1;
+	public static final Integer 			DEFAULT_NUMBER_THREADS 										= 	0;
+	public static final Byte 				DEFAULT_NUMBER_THREADS_PER_CANDIDATE 						= 	(byte)0;
 
 	public static final String			DEFAULT_METFRAG_PEAK_LIST_READER							= 	FilteredTandemMassPeakListReader.class.getName();
 	public static final String			DEFAULT_METFRAG_ASSIGNER_SCORER								= 	TopDownFragmenterAssignerScorer.class.getName();
@@ -198,6 +199,20 @@ public class Constants {
 	public static final String 			DEFAULT_BOND_ENERGY_FILE_PATH								=	null;
 	public static final Level				DEFAULT_LOG_LEVEL											=	Level.INFO;
 	public static final Boolean			DEFAULT_METFRAG_UNIQUE_FRAGMENT_MATCHES						=	false;
+	public static final Boolean			DEFAULT_METFRAG_USE_FRAGMENT_ARENA							=	false;
+	public static final Boolean			DEFAULT_METFRAG_SYMMETRY_AWARE_FRAGMENTATION				=	false;
+	public static final Boolean			DEFAULT_METFRAG_BRANCH_AND_BOUND_PRUNING					=	false;
+	public static final Double			DEFAULT_METFRAG_BRANCH_AND_BOUND_TOLERANCE					=	0.0;
+	public static final Integer			DEFAULT_METFRAG_TREE_DEPTH_FRAGMENT_BUDGET					=	100000;
+	public static final Integer			DEFAULT_METFRAG_TREE_DEPTH_TIME_BUDGET						=	0;
+	public static final Integer			DEFAULT_METFRAG_CANDIDATE_TIME_BUDGET						=	0;
+	public static final Integer			DEFAULT_METFRAG_CANDIDATE_FRAGMENT_BUDGET					=	0;
+	public static final Integer			DEFAULT_METFRAG_PROCESSING_TIME_LIMIT						=	0;
+	public static final Integer			DEFAULT_METFRAG_RETAINED_MATCH_LISTS						=	0;
+	public static final Boolean			DEFAULT_METFRAG_REGENERATE_MATCH_LISTS						=	true;
+	public static final Double			DEFAULT_METFRAG_PRESCREEN_FRACTION							=	0.0;
+	public static final Integer			DEFAULT_METFRAG_PRESCREEN_NUMBER_CANDIDATES					=	0;
+	public static final Boolean			DEFAULT_METFRAG_COLLAPSE_INCHIKEY1_DUPLICATES				=	false;
 
 	/*
 	 * 
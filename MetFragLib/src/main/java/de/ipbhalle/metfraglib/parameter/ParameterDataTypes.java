@@ -41,10 +41,25 @@ public class ParameterDataTypes {
 		parameterDatatypes.put(	VariableNames.METFRAG_CANDIDATE_IMAGE_GENERATOR_NAME,					"String"	);
 		parameterDatatypes.put(	VariableNames.METFRAG_FRAGMENT_IMAGE_GENERATOR_NAME, 					"String"	);
 		parameterDatatypes.put(	VariableNames.METFRAG_UNIQUE_FRAGMENT_MATCHES,		 					"Boolean"	);
+		parameterDatatypes.put(	VariableNames.METFRAG_USE_FRAGMENT_ARENA,		 						"Boolean"	);
+		parameterDatatypes.put(	VariableNames.METFRAG_SYMMETRY_AWARE_FRAGMENTATION,		 				"Boolean"	);
+		parameterDatatypes.put(	VariableNames.METFRAG_BRANCH_AND_BOUND_PRUNING,		 					"Boolean"	);
+		parameterDatatypes.put(	VariableNames.METFRAG_BRANCH_AND_BOUND_TOLERANCE,		 				"Double"	);
+		parameterDatatypes.put(	VariableNames.METFRAG_TREE_DEPTH_FRAGMENT_BUDGET,		 				"Integer"	);
+		parameterDatatypes.put(	VariableNames.METFRAG_TREE_DEPTH_TIME_BUDGET,		 					"Integer"	);
+		parameterDatatypes.put(	VariableNames.METFRAG_CANDIDATE_TIME_BUDGET,		 					"Integer"	);
+		parameterDatatypes.put(	VariableNames.METFRAG_CANDIDATE_FRAGMENT_BUDGET,		 				"Integer"	);
+		parameterDatatypes.put(	VariableNames.METFRAG_PROCESSING_TIME_LIMIT,		 					"Integer"	);
+		parameterDatatypes.put(	VariableNames.METFRAG_RETAINED_MATCH_LISTS,		 						"Integer"	);
+		parameterDatatypes.put(	VariableNames.METFRAG_REGENERATE_MATCH_LISTS,		 					"Boolean"	);
+		parameterDatatypes.put(	VariableNames.METFRAG_PRESCREEN_FRACTION,		 						"Double"	);
+		parameterDatatypes.put(	VariableNames.METFRAG_PRESCREEN_NUMBER_CANDIDATES,		 				"Integer"	);
+		parameterDatatypes.put(	VariableNames.METFRAG_COLLAPSE_INCHIKEY1_DUPLICATES,		 			"Boolean"	);
 		
 		parameterDatatypes.put(	VariableNames.SAMPLE_NAME, 												"String"	);
 		parameterDatatypes.put(	VariableNames.STORE_RESULTS_PATH_NAME, 									"String"	);
-		parameterDatatypes.put(	VariableNames.NUMBER_THREADS_NAME, 										"Byte"		);
+		parameterDatatypes.put(	VariableNames.NUMBER_THREADS_NAME, 										"Integer"	);
+		parameterDatatypes.put(	VariableNames.NUMBER_THREADS_PER_CANDIDATE_NAME, 						"Byte"		);
 		parameterDatatypes.put(	VariableNames.MAXIMUM_NUMBER_OF_TOPDOWN_FRAGMENT_ADDED_TO_QUEUE, 		"Byte"		);
 		parameterDatatypes.put(	VariableNames.METFRAG_PEAK_LIST_READER_NAME, 							"String"	);
 		parameterDatatypes.put(	VariableNames.BOND_ENERGY_FILE_PATH_NAME, 								"String"	);
@@ -56,6 +56,7 @@ public class VariableNames {
 	public static final String STORE_RESULTS_PATH_NAME 						= 	"ResultsPath";
 	public static final String MINIMUM_FRAGMENT_MASS_LIMIT_NAME 				= 	"MinimumFragmentMassLimit";
 	public static final String NUMBER_THREADS_NAME 							= 	"NumberThreads";
+	public static final String NUMBER_THREADS_PER_CANDIDATE_NAME 				= 	"NumberThreadsPerCandidate";
 	public static final String MAXIMUM_NUMBER_OF_TOPDOWN_FRAGMENT_ADDED_TO_QUEUE = "MaximumNumberOfAFragmentAddedToQueue";
 	public static final String BOND_ENERGY_FILE_PATH_NAME 					= 	"BondEnergyFilePath"; 	
 	public static final String EXPERIMENTAL_RETENTION_TIME_VALUE_NAME		= 	"ExperimentalRetentionTimeValue"; 	
@@ -79,11 +80,15 @@ public class VariableNames {
 	public static final String MATCH_LIST_NAME 				= 	"matchList";
 	public static final String CANDIDATE_NAME					=	"candidate";			
 	public static final String BOND_ENERGY_OBJECT_NAME		=	"BondEnergyObject";
+	public static final String PEAK_SCORE_FACTORS_NAME		=	"PeakScoreFactors";
 	
 	/*
 	 * processing values
 	 */
 	public static final String PROCESS_STATUS_OBJECT_NAME		=	"ProcessStatusObject";
+	public static final String PROCESSING_BUDGET_OBJECT_NAME	=	"ProcessingBudgetObject";
+	public static final String FRAGMENT_MATCHING_EXECUTOR_OBJECT_NAME	=	"FragmentMatchingExecutorObject";
+	public static final String PROCESSING_TIME_CALIBRATION_OBJECT_NAME	=	"ProcessingTimeCalibrationObject";
 	
 	/*
 	 * parameters for local structure database connection
@@ -230,6 +235,23 @@ public class VariableNames {
 	public static final String SCORE_SMARTS_EXCLUSION_LIST_NAME			=	"ScoreSmartsExclusionList";
 	public static final String SCORE_SUSPECT_LISTS_NAME					=	"ScoreSuspectLists";
 	public static final String METFRAG_UNIQUE_FRAGMENT_MATCHES 			= 	"MetFragUniqueFragmentMatches";
+	public static final String METFRAG_USE_FRAGMENT_ARENA 				= 	"MetFragUseFragmentArena";
+	public static final String METFRAG_SYMMETRY_AWARE_FRAGMENTATION 	= 	"MetFragSymmetryAwareFragmentation";
+	public static final String METFRAG_BRANCH_AND_BOUND_PRUNING 		= 	"MetFragBranchAndBoundPruning";
+	public static final String METFRAG_BRANCH_AND_BOUND_TOLERANCE 		= 	"MetFragBranchAndBoundTolerance";
+	public static final String SKIPPED_MATCHING_FRACTION_NAME 			= 	"SkippedMatchingFraction";
+	public static final String PRUNED_SUBTREE_FRACTION_NAME 			= 	"PrunedSubtreeFraction";
+	public static final String METFRAG_TREE_DEPTH_FRAGMENT_BUDGET 		= 	"MetFragTreeDepthFragmentBudget";
+	public static final String METFRAG_TREE_DEPTH_TIME_BUDGET 			= 	"MetFragTreeDepthTimeBudget";
+	public static final String METFRAG_CANDIDATE_TIME_BUDGET 			= 	"MetFragCandidateTimeBudget";
+	public static final String METFRAG_CANDIDATE_FRAGMENT_BUDGET 		= 	"MetFragCandidateFragmentBudget";
+	public static final String METFRAG_PROCESSING_TIME_LIMIT 			= 	"MetFragProcessingTimeLimit";
+	public static final String BUDGET_EXCEEDED_NAME 					= 	"BudgetExceeded";
+	public static final String METFRAG_RETAINED_MATCH_LISTS 			= 	"MetFragRetainedMatchLists";
+	public static final String METFRAG_REGENERATE_MATCH_LISTS 			= 	"MetFragRegenerateMatchLists";
+	public static final String METFRAG_PRESCREEN_FRACTION 				= 	"MetFragPrescreenFraction";
+	public static final String METFRAG_PRESCREEN_NUMBER_CANDIDATES 		= 	"MetFragPrescreenNumberCandidates";
+	public static final String METFRAG_COLLAPSE_INCHIKEY1_DUPLICATES 	= 	"MetFragCollapseInChIKey1Duplicates";
 	public static final String SCORE_NAMES_NOT_TO_SCALE		 			= 	"ScoreNamesNotToScale";
 	
 	/*
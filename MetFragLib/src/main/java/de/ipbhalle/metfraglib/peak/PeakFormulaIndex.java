@@ -0,0 +1,169 @@
+package de.ipbhalle.metfraglib.peak;
+
+import de.ipbhalle.metfraglib.collection.IntObjectHashMap;
+import de.ipbhalle.metfraglib.list.SiriusNodePeakList;
+import de.ipbhalle.metfraglib.molecularformula.ByteMolecularFormula;
+
+/**
+ * index of the molecular formulas annotated to the peaks of a SiriusNodePeakList
+ * the element counts (without hydrogens) of each formula are stored in the element order of a precursor's molecular formula
+ * and looked up by their hash, formulas containing elements not present in the precursor can't be explained and are left out
+ * the precursor peak (root of the SIRIUS tree) is not indexed
+ *
+ * formulas are marked as explained once a fragment matched them, an instance is used for one candidate by one thread only
+ *
+ */
+public class PeakFormulaIndex {
+
+	private final int[] peakIndeces;
+	private final short[][] numberOfAtoms;
+	private final int[] numberNonHydrogenAtoms;
+	private final short[] numberHydrogens;
+	private final boolean[] explained;
+	private int numberExplained;
+	/*
+	 * formula indeces by the hash of their element counts
+	 */
+	private final IntObjectHashMap<int[]> hashToFormulaIndeces;
+
+	/**
+	 *
+	 * @param peakList
+	 * @param elementIndeces element indeces of the precursor's molecular formula
+	 */
+	public PeakFormulaIndex(SiriusNodePeakList peakList, byte[] elementIndeces) {
+		java.util.ArrayList<Integer> peakIndeces = new java.util.ArrayList<Integer>();
+		java.util.ArrayList<short[]> numberOfAtoms = new java.util.ArrayList<short[]>();
+		java.util.ArrayList<Short> numberHydrogens = new java.util.ArrayList<Short>();
+		for(int i = 0; i < peakList.getNumberElements(); i++) {
+			SiriusNodePeak peak = (SiriusNodePeak)peakList.getElement(i);
+			if(peak.isRoot()) continue;
+			short[] counts = this.getElementCounts((ByteMolecularFormula)peak.getMolecularFormula(), elementIndeces);
+			if(counts == null) continue;
+			peakIndeces.add(i);
+			numberOfAtoms.add(counts);
+			numberHydrogens.add(peak.getMolecularFormula().getNumberHydrogens());
+		}
+		this.peakIndeces = new int[peakIndeces.size()];
+		this.numberOfAtoms = new short[peakIndeces.size()][];
+		this.numberNonHydrogenAtoms = new int[peakIndeces.size()];
+		this.numberHydrogens = new short[peakIndeces.size()];
+		this.explained = new boolean[peakIndeces.size()];
+		this.hashToFormulaIndeces = new IntObjectHashMap<int[]>(peakIndeces.size());
+		for(int i = 0; i < this.peakIndeces.length; i++) {
+			this.peakIndeces[i] = peakIndeces.get(i);
+			this.numberOfAtoms[i] = numberOfAtoms.get(i);
+			this.numberHydrogens[i] = numberHydrogens.get(i);
+			for(int k = 0; k < this.numberOfAtoms[i].length; k++)
+				this.numberNonHydrogenAtoms[i] += this.numberOfAtoms[i][k];
+			int hash = java.util.Arrays.hashCode(this.numberOfAtoms[i]);
+			int[] formulaIndeces = this.hashToFormulaIndeces.get(hash);
+			if(formulaIndeces == null) formulaIndeces = new int[] {i};
+			else {
+				formulaIndeces = java.util.Arrays.copyOf(formulaIndeces, formulaIndeces.length + 1);
+				formulaIndeces[formulaIndeces.length - 1] = i;
+			}
+			this.hashToFormulaIndeces.put(hash, formulaIndeces);
+		}
+	}
+
+	/**
+	 * element counts of the formula in the given element order, null if the formula contains other elements
+	 *
+	 * @param formula
+	 * @param elementIndeces
+	 * @return
+	 */
+	private short[] getElementCounts(ByteMolecularFormula formula, byte[] elementIndeces) {
+		short[] counts = new short[elementIndeces.length];
+		byte[] atomsAsIndeces = formula.getAtomsAsIndeces();
+		short[] numberOfAtoms = formula.getNumberOfAtoms();
+		for(int i = 0; i < atomsAsIndeces.length; i++) {
+			if(numberOfAtoms[i] == 0) continue;
+			int index = -1;
+			for(int k = 0; k < elementIndeces.length; k++) {
+				if(elementIndeces[k] == atomsAsIndeces[i]) {
+					index = k;
+					break;
+				}
+			}
+			if(index == -1) return null;
+			counts[index] += numberOfAtoms[i];
+		}
+		return counts;
+	}
+
+	/**
+	 * indeces of the formulas with the given element counts (without hydrogens), null if there are none
+	 *
+	 * @param numberOfAtoms element counts in the element order of the precursor
+	 * @return
+	 */
+	public int[] getFormulaIndeces(short[] numberOfAtoms) {
+		int[] formulaIndeces = this.hashToFormulaIndeces.get(java.util.Arrays.hashCode(numberOfAtoms));
+		if(formulaIndeces == null) return null;
+		int numberEqual = 0;
+		for(int i = 0; i < formulaIndeces.length; i++)
+			if(java.util.Arrays.equals(this.numberOfAtoms[formulaIndeces[i]], numberOfAtoms)) numberEqual++;
+		if(numberEqual == formulaIndeces.length) return formulaIndeces;
+		if(numberEqual == 0) return null;
+		/*
+		 * hash collision of different formulas
+		 */
+		int[] equalFormulaIndeces = new int[numberEqual];
+		numberEqual = 0;
+		for(int i = 0; i < formulaIndeces.length; i++)
+			if(java.util.Arrays.equals(this.numberOfAtoms[formulaIndeces[i]], numberOfAtoms)) equalFormulaIndeces[numberEqual++] = formulaIndeces[i];
+		return equalFormulaIndeces;
+	}
+
+	/**
+	 * checks whether an unexplained formula is a true subformula (without hydrogens) of the given element counts
+	 * if not, no fragment generated by further cleavage can explain a peak formula
+	 *
+	 * @param numberOfAtoms element counts in the element order of the precursor
+	 * @return
+	 */
+	public boolean hasUnexplainedSubformula(short[] numberOfAtoms) {
+		int numberNonHydrogenAtoms = 0;
+		for(int k = 0; k < numberOfAtoms.length; k++) numberNonHydrogenAtoms += numberOfAtoms[k];
+		for(int i = 0; i < this.peakIndeces.length; i++) {
+			if(this.explained[i] || this.numberNonHydrogenAtoms[i] >= numberNonHydrogenAtoms) continue;
+			boolean isSubformula = true;
+			for(int k = 0; k < numberOfAtoms.length; k++) {
+				if(this.numberOfAtoms[i][k] > numberOfAtoms[k]) {
+					isSubformula = false;
+					break;
+				}
+			}
+			if(isSubformula) return true;
+		}
+		return false;
+	}
+
+	public int getPeakIndex(int formulaIndex) {
+		return this.peakIndeces[formulaIndex];
+	}
+
+	public short getNumberHydrogens(int formulaIndex) {
+		return this.numberHydrogens[formulaIndex];
+	}
+
+	public void setExplained(int formulaIndex) {
+		if(!this.explained[formulaIndex]) this.numberExplained++;
+		this.explained[formulaIndex] = true;
+	}
+
+	public boolean isExplained(int formulaIndex) {
+		return this.explained[formulaIndex];
+	}
+
+	public int getNumberExplained() {
+		return this.numberExplained;
+	}
+
+	public int getNumberFormulas() {
+		return this.peakIndeces.length;
+	}
+
+}
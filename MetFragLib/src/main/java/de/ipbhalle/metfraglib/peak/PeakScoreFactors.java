@@ -0,0 +1,105 @@
+package de.ipbhalle.metfraglib.peak;
+
+import de.ipbhalle.metfraglib.exceptions.RelativeIntensityNotDefinedException;
+import de.ipbhalle.metfraglib.interfaces.IPeak;
+import de.ipbhalle.metfraglib.list.DefaultList;
+
+/**
+ * immutable per peak factors of the fragmenter scores
+ * pow((mass / precursor mass) * 10, alpha) * pow(intensity, beta) and the same term with a scaling of 100
+ * are calculated once for each peak of the spectrum and stored by peak id
+ * the factors don't depend on the candidate so they can be shared by all threads processing the same spectrum
+ *
+ */
+public class PeakScoreFactors {
+
+	/*
+	 * exponents of mass and intensity used by the fragmenter scores
+	 */
+	public static final double ALPHA = 1.84;
+	public static final double BETA = 0.59;
+
+	private final IPeak[] peaks;
+	private final double[] factors;
+	private final double[] scaledFactors;
+	private final double precursorMass;
+	private final double alpha;
+	private final double beta;
+
+	/**
+	 *
+	 * @param peakList list of IPeak objects, their ids are used as index
+	 * @param precursorMass neutral precursor mass
+	 * @param alpha
+	 * @param beta
+	 */
+	public PeakScoreFactors(DefaultList peakList, double precursorMass, double alpha, double beta) {
+		this.precursorMass = precursorMass;
+		this.alpha = alpha;
+		this.beta = beta;
+		int maximumId = -1;
+		for(int i = 0; i < peakList.getNumberElements(); i++)
+			maximumId = Math.max(maximumId, ((IPeak)peakList.getElement(i)).getID());
+		this.peaks = new IPeak[maximumId + 1];
+		this.factors = new double[maximumId + 1];
+		this.scaledFactors = new double[maximumId + 1];
+		for(int i = 0; i < peakList.getNumberElements(); i++) {
+			IPeak peak = (IPeak)peakList.getElement(i);
+			if(peak.getID() < 0) continue;
+			this.peaks[peak.getID()] = peak;
+			this.factors[peak.getID()] = this.calculateFactor(peak, 10.0);
+			this.scaledFactors[peak.getID()] = this.calculateFactor(peak, 100.0);
+		}
+	}
+
+	/**
+	 * true if the factors were calculated with the given precursor mass and exponents
+	 *
+	 * @param precursorMass
+	 * @param alpha
+	 * @param beta
+	 * @return
+	 */
+	public boolean isApplicable(double precursorMass, double alpha, double beta) {
+		return this.precursorMass == precursorMass && this.alpha == alpha && this.beta == beta;
+	}
+
+	/**
+	 * returns pow((mass / precursor mass) * 10, alpha) * pow(intensity, beta) of the given peak
+	 * peaks not contained in the spectrum the factors were calculated for are calculated directly
+	 *
+	 * @param peak
+	 * @return
+	 */
+	public double getFactor(IPeak peak) {
+		if(this.contains(peak)) return this.factors[peak.getID()];
+		return this.calculateFactor(peak, 10.0);
+	}
+
+	/**
+	 * returns pow((mass / precursor mass) * 100, alpha) * pow(intensity, beta) of the given peak
+	 *
+	 * @param peak
+	 * @return
+	 */
+	public double getScaledFactor(IPeak peak) {
+		if(this.contains(peak)) return this.scaledFactors[peak.getID()];
+		return this.calculateFactor(peak, 100.0);
+	}
+
+	protected boolean contains(IPeak peak) {
+		int id = peak.getID();
+		return id >= 0 && id < this.peaks.length && this.peaks[id] == peak;
+	}
+
+	protected double calculateFactor(IPeak peak, double scale) {
+		try {
+			return Math.pow((peak.getMass() / this.precursorMass) * scale, this.alpha)
+					* Math.pow(peak.getIntensity(), this.beta);
+		} catch (RelativeIntensityNotDefinedException e) {
+			e.printStackTrace();
+		}
+		return 0.0;
+	}
+
+}
@@ -0,0 +1,119 @@
+package de.ipbhalle.metfraglib.peak;
+
+import de.ipbhalle.metfraglib.additionals.MathTools;
+import de.ipbhalle.metfraglib.list.SortedTandemMassPeakList;
+
+/**
+ * immutable index of the mass windows of a sorted tandem mass peak list
+ * lower and upper mass limits are stored in primitive arrays in the order of the peak list (ascending mass)
+ * and are calculated in the same way as the mass limits of TandemMassPeak
+ * the index doesn't change after creation and can be shared by all threads processing the same spectrum
+ *
+ */
+public class PeakWindowIndex {
+
+	private final double[] lowerMassLimits;
+	private final double[] upperMassLimits;
+	private final double relativeMassDeviation;
+	private final double absoluteMassDeviation;
+
+	public PeakWindowIndex(SortedTandemMassPeakList peakList, double relativeMassDeviation, double absoluteMassDeviation) {
+		this.relativeMassDeviation = relativeMassDeviation;
+		this.absoluteMassDeviation = absoluteMassDeviation;
+		this.lowerMassLimits = new double[peakList.getNumberElements()];
+		this.upperMassLimits = new double[peakList.getNumberElements()];
+		for(int i = 0; i < this.lowerMassLimits.length; i++) {
+			double mass = peakList.getElement(i).getMass();
+			this.lowerMassLimits[i] = mass - absoluteMassDeviation - MathTools.calculateAbsoluteDeviation(mass, relativeMassDeviation);
+			this.upperMassLimits[i] = mass + absoluteMassDeviation + MathTools.calculateAbsoluteDeviation(mass, relativeMassDeviation);
+		}
+	}
+
+	/**
+	 * returns 0 if mass matches the window of the peak with peakIndex
+	 * returns -1 if mass is smaller than the lower bound
+	 * returns 1 if mass is greater than the upper bound
+	 *
+	 * @param peakIndex
+	 * @param mass
+	 * @return
+	 */
+	public byte matchesToMass(int peakIndex, double mass) {
+		if(mass >= this.lowerMassLimits[peakIndex] && mass <= this.upperMassLimits[peakIndex]) return 0;
+		if(mass < this.lowerMassLimits[peakIndex]) return -1;
+		return 1;
+	}
+
+	/**
+	 * returns the greatest peak index not greater than toIndex whose upper mass limit is smaller than mass
+	 * this is the first peak (searching from toIndex towards smaller masses) that is exceeded by mass
+	 * returns -1 if there is no such peak
+	 *
+	 * @param mass
+	 * @param toIndex
+	 * @return
+	 */
+	public int getLastPeakIndexBelowMass(double mass, int toIndex) {
+		int low = 0;
+		int high = Math.min(toIndex, this.upperMassLimits.length - 1);
+		int index = -1;
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			if(this.upperMassLimits[middle] < mass) {
+				index = middle;
+				low = middle + 1;
+			}
+			else high = middle - 1;
+		}
+		return index;
+	}
+
+	/**
+	 * returns the greatest peak index not greater than toIndex whose lower mass limit is not greater than mass
+	 * peaks with greater indeces can't match mass or any smaller mass
+	 * returns -1 if there is no such peak
+	 *
+	 * @param mass
+	 * @param toIndex
+	 * @return
+	 */
+	public int getLastPeakIndexReachedByMass(double mass, int toIndex) {
+		toIndex = Math.min(toIndex, this.lowerMassLimits.length - 1);
+		int low = 0;
+		int high = toIndex;
+		int index = -1;
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			if(this.lowerMassLimits[middle] <= mass) {
+				index = middle;
+				low = middle + 1;
+			}
+			else high = middle - 1;
+		}
+		/*
+		 * lower limits of peaks with (almost) equal masses can differ in the last digit by rounding
+		 */
+		while(index < toIndex && this.lowerMassLimits[index + 1] <= mass) index++;
+		return index;
+	}
+
+	public double getLowerMassLimit(int peakIndex) {
+		return this.lowerMassLimits[peakIndex];
+	}
+
+	public double getUpperMassLimit(int peakIndex) {
+		return this.upperMassLimits[peakIndex];
+	}
+
+	public int getNumberPeaks() {
+		return this.lowerMassLimits.length;
+	}
+
+	public double getRelativeMassDeviation() {
+		return this.relativeMassDeviation;
+	}
+
+	public double getAbsoluteMassDeviation() {
+		return this.absoluteMassDeviation;
+	}
+}
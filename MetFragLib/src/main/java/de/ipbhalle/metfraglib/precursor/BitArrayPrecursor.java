@@ -6,21 +6,41 @@ import org.openscience.cdk.graph.Cycles;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IBond;
-import org.openscience.cdk.interfaces.IRingSet;
-import org.openscience.cdk.ringsearch.AllRingsFinder;
 
 import de.ipbhalle.metfraglib.BitArray;
 import de.ipbhalle.metfraglib.additionals.Bond;
+import de.ipbhalle.metfraglib.additionals.BondEnergies;
 import de.ipbhalle.metfraglib.exceptions.AtomTypeNotKnownFromInputListException;
 import de.ipbhalle.metfraglib.fragment.DefaultBitArrayFragment;
+import de.ipbhalle.metfraglib.molecularformula.ByteMolecularFormula;
+import de.ipbhalle.metfraglib.parameter.Constants;
 
 public class BitArrayPrecursor extends DefaultPrecursor {
 
 	protected java.util.Vector<short[]> atomIndexToConnectedAtomIndeces;
 	protected short[][] bondIndexToConnectedAtomIndeces;
-	protected BitArray[] ringBondToBelongingRingBondIndeces;
+	protected RingBondSystems ringBondSystems;
 	protected BitArray aromaticBonds;
 	protected short[] atomAdjacencyList;
+	protected boolean isConnected;
+	/*
+	 * per atom properties used for fast fragment formula and mass calculation
+	 * the element index relates to the position in the atomsAsIndeces array of the precursor's molecular formula
+	 */
+	protected byte[] atomIndexToFormulaElementIndex;
+	protected short[] atomIndexToNumberHydrogens;
+	protected double[] atomIndexToMonoisotopicMass;
+	protected boolean containsC;
+	/*
+	 * bond energies of the non-hydrogen bonds indexed by bond index
+	 * calculated once for the BondEnergies object they were retrieved from
+	 */
+	protected double[] bondEnergies;
+	protected BondEnergies bondEnergiesSource;
+	/*
+	 * automorphisms of the precursor calculated at the first request
+	 */
+	protected PrecursorAutomorphisms automorphisms;
 	
 	public BitArrayPrecursor(IAtomContainer precursorMolecule) {
 		super(precursorMolecule);
@@ -33,6 +53,8 @@ public class BitArrayPrecursor extends DefaultPrecursor {
 		this.initiliseBondIndexToConnectedAtomIndeces();
 		this.initialiseRingBondsBitArray();
 		this.initialiseAtomAdjacencyList();
+		this.initialiseIsConnected();
+		this.initialiseAtomProperties();
 	}
 	
 	public double getMeanNodeDegree() {
@@ -84,13 +106,13 @@ public class BitArrayPrecursor extends DefaultPrecursor {
 	
 	/**
 	 * initialise indeces belonging to a ring in the precursor molecule
+	 * ring bonds are determined by the ring systems (biconnected components) of the molecule in linear time
+	 * instead of enumerating all rings
 	 */
 	protected void initialiseRingBondsBitArray() throws Exception {
 		this.aromaticBonds = new BitArray(this.getNonHydrogenBondCount());
-		AllRingsFinder allRingsFinder = new AllRingsFinder();
-		IRingSet ringSet = allRingsFinder.findAllRings(this.precursorMolecule);
-		this.initialiseRingBondToBelongingRingBondIndecesBitArrays(ringSet);
-		if (ringSet.getAtomContainerCount() != 0) {
+		this.ringBondSystems = new RingBondSystems(this.bondIndexToConnectedAtomIndeces, this.getNonHydrogenAtomCount(), this.precursorMolecule.getBondCount() + 1);
+		if (this.ringBondSystems.getNumberRingSystems() != 0) {
 			Aromaticity arom = new Aromaticity(ElectronDonation.cdk(), Cycles.cdkAromaticSet());
 			java.util.Set<IBond> aromaticBonds = arom.findBonds(this.precursorMolecule);
 			java.util.Iterator<IBond> it = aromaticBonds.iterator();
@@ -101,29 +123,6 @@ public class BitArrayPrecursor extends DefaultPrecursor {
 		}
 	}
 	
-	/**
-	 * initialises ringBondToBelongingRingBondIndeces BitArray array
-	 * fast and easy way to retrieve all bond indeces belonging to a ring including the bond at specified index of that array 
-	 * 
-	 * @param ringSet
-	 */
-	protected void initialiseRingBondToBelongingRingBondIndecesBitArrays(IRingSet ringSet) {
-		this.ringBondToBelongingRingBondIndeces = new BitArray[this.precursorMolecule.getBondCount() + 1];
-		for (int i = 0; i < this.ringBondToBelongingRingBondIndeces.length; i++)
-			this.ringBondToBelongingRingBondIndeces[i] = new BitArray(
-					this.precursorMolecule.getBondCount() + 1);
-
-		for (int i = 0; i < ringSet.getAtomContainerCount(); i++) {
-			int[] indexes = new int[ringSet.getAtomContainer(i).getBondCount()];
-			for (int j = 0; j < ringSet.getAtomContainer(i).getBondCount(); j++) {
-				indexes[j] = this.precursorMolecule.getBondNumber(ringSet
-						.getAtomContainer(i).getBond(j));
-			}
-			for (int j = 0; j < indexes.length; j++)
-				this.ringBondToBelongingRingBondIndeces[indexes[j]].setBits(indexes);
-		}
-	}
-	
 	/**
 	 * initialise 1D atom adjacency list
 	 */
@@ -140,12 +139,136 @@ public class BitArrayPrecursor extends DefaultPrecursor {
 	}
 	
 	/**
+	 * initialises element index, number of implicit hydrogens and mass (including implicit hydrogens) of each atom
+	 * 
+	 * @throws AtomTypeNotKnownFromInputListException
+	 */
+	protected void initialiseAtomProperties() throws AtomTypeNotKnownFromInputListException {
+		ByteMolecularFormula formula = (ByteMolecularFormula)this.molecularFormula;
+		byte[] atomsAsIndeces = formula.getAtomsAsIndeces();
+		this.atomIndexToFormulaElementIndex = new byte[this.getNonHydrogenAtomCount()];
+		this.atomIndexToNumberHydrogens = new short[this.getNonHydrogenAtomCount()];
+		this.atomIndexToMonoisotopicMass = new double[this.getNonHydrogenAtomCount()];
+		this.containsC = false;
+		for(int i = 0; i < this.getNonHydrogenAtomCount(); i++) {
+			String currentAtomSymbol = formula.getAtomSymbol(this.precursorMolecule.getAtom(i));
+			byte atomNumber = (byte)Constants.ELEMENTS.indexOf(currentAtomSymbol);
+			if(atomNumber == -1) 
+				throw new AtomTypeNotKnownFromInputListException(currentAtomSymbol + " not found");
+			if(atomNumber == 0 || atomNumber == 1) this.containsC = true;
+			for(byte k = 0; k < atomsAsIndeces.length; k++) {
+				if(atomsAsIndeces[k] == atomNumber) {
+					this.atomIndexToFormulaElementIndex[i] = k;
+					break;
+				}
+			}
+			this.atomIndexToNumberHydrogens[i] = (short)this.getNumberHydrogensConnectedToAtomIndex(i);
+			this.atomIndexToMonoisotopicMass[i] = Constants.getMonoisotopicMassOfAtom(atomNumber) + this.atomIndexToNumberHydrogens[i] * Constants.HYDROGEN_MASS;
+		}
+	}
+	
+	/**
+	 * position of the atom's element in the atomsAsIndeces array of the precursor's molecular formula
+	 * 
+	 * @param atomIndex
+	 * @return
+	 */
+	public byte getFormulaElementIndexOfAtomIndex(int atomIndex) {
+		return this.atomIndexToFormulaElementIndex[atomIndex];
+	}
+	
+	/**
+	 * number of implicit hydrogens of the atom
+	 * 
+	 * @param atomIndex
+	 * @return
+	 */
+	public short getNumberHydrogensOfAtomIndex(int atomIndex) {
+		return this.atomIndexToNumberHydrogens[atomIndex];
+	}
+	
+	/**
+	 * monoisotopic mass of the atom including its implicit hydrogens
+	 * 
+	 * @param atomIndex
+	 * @return
+	 */
+	public double getMonoisotopicMassOfAtomIndex(int atomIndex) {
+		return this.atomIndexToMonoisotopicMass[atomIndex];
+	}
+	
+	/**
+	 * element indeces of the precursor's molecular formula
+	 * 
+	 * @return
+	 */
+	public byte[] getFormulaElementIndeces() {
+		return ((ByteMolecularFormula)this.molecularFormula).getAtomsAsIndeces();
+	}
+	
+	/**
+	 * true if the precursor contains a carbon atom
+	 * 
+	 * @return
+	 */
+	public boolean containsC() {
+		return this.containsC;
+	}
+	
+	/**
+	 * checks whether all atoms of the precursor are reachable from the first atom
+	 */
+	protected void initialiseIsConnected() {
+		int numberAtoms = this.getNonHydrogenAtomCount();
+		BitArray visited = new BitArray(numberAtoms);
+		int[] stack = new int[numberAtoms];
+		int stackSize = 0;
+		int numberVisited = 0;
+		if(numberAtoms != 0) {
+			visited.set(0);
+			stack[stackSize++] = 0;
+			numberVisited++;
+		}
+		while(stackSize != 0) {
+			short[] connectedAtoms = this.atomIndexToConnectedAtomIndeces.get(stack[--stackSize]);
+			for(int i = 0; i < connectedAtoms.length; i++) {
+				if(visited.get(connectedAtoms[i])) continue;
+				visited.set(connectedAtoms[i]);
+				stack[stackSize++] = connectedAtoms[i];
+				numberVisited++;
+			}
+		}
+		this.isConnected = numberVisited == numberAtoms;
+	}
+	
+	/**
+	 * returns true if the precursor consists of a single connected component
+	 * 
+	 * @return
+	 */
+	public boolean isConnected() {
+		return this.isConnected;
+	}
+	
+	/**
+	 * bonds of all rings containing the given bond
+	 * the returned BitArray is shared by all bonds of the ring system and must not be modified
 	 * 
 	 * @param bondIndex
 	 * @return
 	 */
 	public BitArray getBitArrayOfBondsBelongingtoRingLikeBondIndex(short bondIndex) {
-		return this.ringBondToBelongingRingBondIndeces[bondIndex];
+		return this.ringBondSystems.getRingBonds(bondIndex);
+	}
+	
+	/**
+	 * true if the bond is part of a ring
+	 * 
+	 * @param bondIndex
+	 * @return
+	 */
+	public boolean isRingBond(short bondIndex) {
+		return this.ringBondSystems.isRingBond(bondIndex);
 	}
 	
 	/**
@@ -212,14 +335,28 @@ public class BitArrayPrecursor extends DefaultPrecursor {
 		return this.precursorMolecule.getBond(bondIndex).getOrder().toString();
 	}
 	
+	/**
+	 * class of the bond used to look up its energy
+	 * aromatic bonds are treated as double bonds, unknown orders as single bonds
+	 * 
+	 * @param bondIndex
+	 * @return
+	 */
+	public byte getBondClass(short bondIndex) {
+		if(this.isAromaticBond(bondIndex)) return BondEnergies.DOUBLE_BOND;
+		IBond.Order order = this.precursorMolecule.getBond(bondIndex).getOrder();
+		if(order == IBond.Order.DOUBLE) return BondEnergies.DOUBLE_BOND;
+		if(order == IBond.Order.TRIPLE) return BondEnergies.TRIPLE_BOND;
+		return BondEnergies.SINGLE_BOND;
+	}
+	
 	public String getBondAsString(short index) {
-		String[] atoms = this.getBondAtomsAsString(index);
-		return this.getSingleBond(atoms[0], atoms[1], this.getBondOrder(index), this.isAromaticBond(index)).toString();
+		return this.getBond(index).toString();
 	}
 	
 	public Bond getBond(short index) {
 		String[] atoms = this.getBondAtomsAsString(index);
-		return this.getSingleBond(atoms[0], atoms[1], this.getBondOrder(index), this.isAromaticBond(index));
+		return new Bond(atoms[0], atoms[1], BondEnergies.BOND_TYPES[this.getBondClass(index)]);
 	}
 	
 	/**
@@ -232,19 +369,49 @@ public class BitArrayPrecursor extends DefaultPrecursor {
 		return bondAtomsAsString;
 	}
 	
-	protected Bond getSingleBond(String symbol1, String symbol2, String type, boolean isAromaticBond) {
-		char typeChar = '=';
-		if (!isAromaticBond) {
-			if (type.equals("SINGLE"))
-				typeChar = '-';
-			else if (type.equals("DOUBLE"))
-				typeChar = '=';
-			else if (type.equals("TRIPLE"))
-				typeChar = '~';
-			else typeChar = '-';
+	/**
+	 * energies of all non-hydrogen bonds indexed by bond index
+	 * the vector is calculated at the first call and shared by all following calls with the same BondEnergies object
+	 * 
+	 * @param bondEnergies
+	 * @return
+	 */
+	public synchronized double[] getBondEnergies(BondEnergies bondEnergies) {
+		if(this.bondEnergies != null && this.bondEnergiesSource == bondEnergies) 
+			return this.bondEnergies;
+		double[] energies = new double[this.getNonHydrogenBondCount()];
+		for(short i = 0; i < energies.length; i++) {
+			IBond bond = this.precursorMolecule.getBond(i);
+			int elementIndex1 = Constants.ELEMENTS.indexOf(bond.getAtom(0).getSymbol());
+			int elementIndex2 = Constants.ELEMENTS.indexOf(bond.getAtom(1).getSymbol());
+			if(elementIndex1 != -1 && elementIndex2 != -1) 
+				energies[i] = bondEnergies.get(elementIndex1, elementIndex2, this.getBondClass(i));
+			else 
+				energies[i] = bondEnergies.get(this.getBond(i));
+		}
+		this.bondEnergies = energies;
+		this.bondEnergiesSource = bondEnergies;
+		return this.bondEnergies;
+	}
+	
+	/**
+	 * automorphisms of the non-hydrogen graph respecting element, number of hydrogens, charge, bond class and aromaticity
+	 * calculated at the first call
+	 * 
+	 * @return
+	 */
+	public synchronized PrecursorAutomorphisms getAutomorphisms() {
+		if(this.automorphisms != null) return this.automorphisms;
+		int[] atomColours = new int[this.getNonHydrogenAtomCount()];
+		for(int i = 0; i < atomColours.length; i++) {
+			Integer formalCharge = this.precursorMolecule.getAtom(i).getFormalCharge();
+			atomColours[i] = ((this.atomIndexToFormulaElementIndex[i] << 8) + this.atomIndexToNumberHydrogens[i]) * 256 + (formalCharge == null ? 0 : formalCharge + 128);
 		}
-		Bond bond = new Bond(symbol1, symbol2, typeChar);
-		return bond;
+		int[] bondColours = new int[this.getNonHydrogenBondCount()];
+		for(short i = 0; i < bondColours.length; i++)
+			bondColours[i] = this.getBondClass(i) * 2 + (this.isAromaticBond(i) ? 1 : 0);
+		this.automorphisms = new PrecursorAutomorphisms(atomColours, this.bondIndexToConnectedAtomIndeces, bondColours);
+		return this.automorphisms;
 	}
 	
 	public void printBondsAndAtomIndeces() {
@@ -30,6 +30,8 @@ public class HDTopDownBitArrayPrecursor extends TopDownBitArrayPrecursor {
 		this.initiliseBondIndexToConnectedAtomIndeces();
 		this.initialiseRingBondsBitArray();
 		this.initialiseAtomAdjacencyList();
+		this.initialiseIsConnected();
+		this.initialiseAtomProperties();
 	}
 
 	protected void initialiseMolecularFormula() throws AtomTypeNotKnownFromInputListException {
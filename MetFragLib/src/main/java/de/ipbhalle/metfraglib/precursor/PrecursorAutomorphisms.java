@@ -0,0 +1,351 @@
+package de.ipbhalle.metfraglib.precursor;
+
+import de.ipbhalle.metfraglib.BitArray;
+
+/**
+ * automorphisms of the non-hydrogen graph of a precursor
+ * atoms are coloured by element, number of hydrogens and charge, bonds by bond class and aromaticity
+ * the atom colours are refined by the colours of the neighbours and automorphisms are searched by backtracking
+ * within the refined colour classes
+ *
+ * fragments whose atom sets are mapped onto each other by an automorphism have the same formula, mass and bond energies
+ * getCanonicalAtoms returns the same atom set for such fragments
+ *
+ * at most MAXIMUM_NUMBER_AUTOMORPHISMS automorphisms are kept and the search stops after MAXIMUM_NUMBER_SEARCH_STEPS
+ * in both cases some equivalent atom sets are just not detected as equivalent
+ *
+ */
+public class PrecursorAutomorphisms {
+
+	public static final int MAXIMUM_NUMBER_AUTOMORPHISMS = 64;
+	public static final int MAXIMUM_NUMBER_SEARCH_STEPS = 100000;
+	public static final int MAXIMUM_NUMBER_ATOMS = 1024;
+
+	private final int numberAtoms;
+	/*
+	 * automorphisms other than the identity, atom index to atom index of the image
+	 */
+	private final int[][] automorphisms;
+	private final int[] atomIndexToEquivalenceClass;
+	private final int numberEquivalenceClasses;
+	/*
+	 * atoms moved by at least one automorphism
+	 */
+	private final long[] movedAtoms;
+
+	/*
+	 * search state
+	 */
+	private int[] colours;
+	private int[][] neighbours;
+	private int[][] neighbourBondColours;
+	private int[] searchOrder;
+	private int[] searchParent;
+	private int[] mapping;
+	private int[] inverseMapping;
+	private java.util.ArrayList<int[]> foundAutomorphisms;
+	private int numberSearchSteps;
+
+	/**
+	 *
+	 * @param atomColours colour of each atom
+	 * @param bondIndexToConnectedAtomIndeces both atom indeces of each bond
+	 * @param bondColours colour of each bond
+	 */
+	public PrecursorAutomorphisms(int[] atomColours, short[][] bondIndexToConnectedAtomIndeces, int[] bondColours) {
+		this.numberAtoms = atomColours.length;
+		this.foundAutomorphisms = new java.util.ArrayList<int[]>();
+		if(this.numberAtoms > 1 && this.numberAtoms <= MAXIMUM_NUMBER_ATOMS) {
+			this.initialiseNeighbours(bondIndexToConnectedAtomIndeces, bondColours);
+			this.refineColours(atomColours);
+			this.initialiseSearchOrder();
+			this.mapping = new int[this.numberAtoms];
+			this.inverseMapping = new int[this.numberAtoms];
+			java.util.Arrays.fill(this.mapping, -1);
+			java.util.Arrays.fill(this.inverseMapping, -1);
+			this.numberSearchSteps = 0;
+			this.search(0);
+		}
+		this.automorphisms = this.foundAutomorphisms.toArray(new int[this.foundAutomorphisms.size()][]);
+		/*
+		 * equivalence classes as the orbits of the found automorphisms
+		 */
+		int[] representative = new int[this.numberAtoms];
+		for(int i = 0; i < this.numberAtoms; i++) representative[i] = i;
+		for(int k = 0; k < this.automorphisms.length; k++)
+			for(int i = 0; i < this.numberAtoms; i++)
+				this.union(representative, i, this.automorphisms[k][i]);
+		this.atomIndexToEquivalenceClass = new int[this.numberAtoms];
+		this.movedAtoms = new long[BitArray.numberOfWords(this.numberAtoms)];
+		int[] classOfRepresentative = new int[this.numberAtoms];
+		java.util.Arrays.fill(classOfRepresentative, -1);
+		int numberClasses = 0;
+		for(int i = 0; i < this.numberAtoms; i++) {
+			int root = this.find(representative, i);
+			if(classOfRepresentative[root] == -1) classOfRepresentative[root] = numberClasses++;
+			this.atomIndexToEquivalenceClass[i] = classOfRepresentative[root];
+		}
+		this.numberEquivalenceClasses = numberClasses;
+		for(int k = 0; k < this.automorphisms.length; k++)
+			for(int i = 0; i < this.numberAtoms; i++)
+				if(this.automorphisms[k][i] != i) this.movedAtoms[i >> 6] |= 1L << i;
+		/*
+		 * free search state
+		 */
+		this.colours = null;
+		this.neighbours = null;
+		this.neighbourBondColours = null;
+		this.searchOrder = null;
+		this.searchParent = null;
+		this.mapping = null;
+		this.inverseMapping = null;
+		this.foundAutomorphisms = null;
+	}
+
+	/**
+	 * number of found automorphisms other than the identity
+	 *
+	 * @return
+	 */
+	public int getNumberAutomorphisms() {
+		return this.automorphisms.length;
+	}
+
+	public int getNumberEquivalenceClasses() {
+		return this.numberEquivalenceClasses;
+	}
+
+	/**
+	 * index of the class of atoms equivalent to the given atom
+	 *
+	 * @param atomIndex
+	 * @return
+	 */
+	public int getEquivalenceClass(int atomIndex) {
+		return this.atomIndexToEquivalenceClass[atomIndex];
+	}
+
+	/**
+	 * returns the smallest image of the atom set under the found automorphisms
+	 * atom sets mapped onto each other by an automorphism give the same result
+	 * the given BitArray is returned if no automorphism results in a smaller image
+	 *
+	 * @param atoms
+	 * @return
+	 */
+	public BitArray getCanonicalAtoms(BitArray atoms) {
+		if(this.automorphisms.length == 0) return atoms;
+		long[] words = atoms.getWords();
+		boolean containsMovedAtom = false;
+		for(int i = 0; i < words.length && i < this.movedAtoms.length; i++) {
+			if((words[i] & this.movedAtoms[i]) != 0) {
+				containsMovedAtom = true;
+				break;
+			}
+		}
+		if(!containsMovedAtom) return atoms;
+		int[] setAtoms = atoms.getSetIndeces();
+		long[] smallestImage = words;
+		long[] image = new long[words.length];
+		for(int k = 0; k < this.automorphisms.length; k++) {
+			java.util.Arrays.fill(image, 0L);
+			int[] automorphism = this.automorphisms[k];
+			for(int i = 0; i < setAtoms.length; i++)
+				image[automorphism[setAtoms[i]] >> 6] |= 1L << automorphism[setAtoms[i]];
+			if(this.compare(image, smallestImage) < 0) {
+				long[] temp = smallestImage == words ? new long[words.length] : smallestImage;
+				smallestImage = image;
+				image = temp;
+			}
+		}
+		if(smallestImage == words) return atoms;
+		return new BitArray(atoms.getSize(), smallestImage, 0);
+	}
+
+	/**
+	 * compares the words as unsigned numbers starting at the highest word
+	 *
+	 * @param first
+	 * @param second
+	 * @return
+	 */
+	private int compare(long[] first, long[] second) {
+		for(int i = first.length - 1; i >= 0; i--) {
+			if(first[i] == second[i]) continue;
+			return (first[i] ^ Long.MIN_VALUE) < (second[i] ^ Long.MIN_VALUE) ? -1 : 1;
+		}
+		return 0;
+	}
+
+	private void initialiseNeighbours(short[][] bondIndexToConnectedAtomIndeces, int[] bondColours) {
+		int[] degrees = new int[this.numberAtoms];
+		for(int i = 0; i < bondIndexToConnectedAtomIndeces.length; i++) {
+			degrees[bondIndexToConnectedAtomIndeces[i][0]]++;
+			degrees[bondIndexToConnectedAtomIndeces[i][1]]++;
+		}
+		this.neighbours = new int[this.numberAtoms][];
+		this.neighbourBondColours = new int[this.numberAtoms][];
+		for(int i = 0; i < this.numberAtoms; i++) {
+			this.neighbours[i] = new int[degrees[i]];
+			this.neighbourBondColours[i] = new int[degrees[i]];
+			degrees[i] = 0;
+		}
+		for(int i = 0; i < bondIndexToConnectedAtomIndeces.length; i++) {
+			int first = bondIndexToConnectedAtomIndeces[i][0];
+			int second = bondIndexToConnectedAtomIndeces[i][1];
+			this.neighbours[first][degrees[first]] = second;
+			this.neighbourBondColours[first][degrees[first]++] = bondColours[i];
+			this.neighbours[second][degrees[second]] = first;
+			this.neighbourBondColours[second][degrees[second]++] = bondColours[i];
+		}
+	}
+
+	/**
+	 * refines the atom colours by the colours of the neighbours and the connecting bonds until the number of colours doesn't change
+	 *
+	 * @param atomColours
+	 */
+	private void refineColours(int[] atomColours) {
+		String[] signatures = new String[this.numberAtoms];
+		for(int i = 0; i < this.numberAtoms; i++) signatures[i] = String.valueOf(atomColours[i]);
+		int numberColours = this.rankSignatures(signatures);
+		while(true) {
+			for(int i = 0; i < this.numberAtoms; i++) {
+				String[] neighbourSignatures = new String[this.neighbours[i].length];
+				for(int k = 0; k < this.neighbours[i].length; k++)
+					neighbourSignatures[k] = this.neighbourBondColours[i][k] + ":" + this.colours[this.neighbours[i][k]];
+				java.util.Arrays.sort(neighbourSignatures);
+				StringBuilder signature = new StringBuilder(String.valueOf(this.colours[i]));
+				for(int k = 0; k < neighbourSignatures.length; k++) signature.append(",").append(neighbourSignatures[k]);
+				signatures[i] = signature.toString();
+			}
+			int newNumberColours = this.rankSignatures(signatures);
+			if(newNumberColours == numberColours) break;
+			numberColours = newNumberColours;
+		}
+	}
+
+	/**
+	 * sets the colours to the ranks of the signatures and returns the number of different colours
+	 *
+	 * @param signatures
+	 * @return
+	 */
+	private int rankSignatures(String[] signatures) {
+		java.util.TreeMap<String, Integer> ranks = new java.util.TreeMap<String, Integer>();
+		for(int i = 0; i < signatures.length; i++) ranks.put(signatures[i], 0);
+		int rank = 0;
+		java.util.Iterator<String> it = ranks.keySet().iterator();
+		while(it.hasNext()) ranks.put(it.next(), rank++);
+		this.colours = new int[signatures.length];
+		for(int i = 0; i < signatures.length; i++) this.colours[i] = ranks.get(signatures[i]);
+		return rank;
+	}
+
+	/**
+	 * breadth first order of the atoms so that each atom apart from the first one of a component has an already mapped neighbour
+	 */
+	private void initialiseSearchOrder() {
+		this.searchOrder = new int[this.numberAtoms];
+		this.searchParent = new int[this.numberAtoms];
+		boolean[] visited = new boolean[this.numberAtoms];
+		int size = 0;
+		for(int root = 0; root < this.numberAtoms; root++) {
+			if(visited[root]) continue;
+			visited[root] = true;
+			this.searchParent[size] = -1;
+			this.searchOrder[size++] = root;
+			for(int position = size - 1; position < size; position++) {
+				int atom = this.searchOrder[position];
+				for(int k = 0; k < this.neighbours[atom].length; k++) {
+					int neighbour = this.neighbours[atom][k];
+					if(visited[neighbour]) continue;
+					visited[neighbour] = true;
+					this.searchParent[size] = atom;
+					this.searchOrder[size++] = neighbour;
+				}
+			}
+		}
+	}
+
+	/**
+	 * maps the atom at the given position of the search order to all possible images
+	 * returns false if the search was stopped
+	 *
+	 * @param position
+	 * @return
+	 */
+	private boolean search(int position) {
+		if(++this.numberSearchSteps > MAXIMUM_NUMBER_SEARCH_STEPS) return false;
+		if(position == this.numberAtoms) {
+			boolean isIdentity = true;
+			for(int i = 0; i < this.numberAtoms && isIdentity; i++)
+				if(this.mapping[i] != i) isIdentity = false;
+			if(!isIdentity) this.foundAutomorphisms.add(this.mapping.clone());
+			return this.foundAutomorphisms.size() < MAXIMUM_NUMBER_AUTOMORPHISMS;
+		}
+		int atom = this.searchOrder[position];
+		/*
+		 * the image of an atom with a mapped neighbour has to be a neighbour of the neighbour's image
+		 */
+		int[] candidates = null;
+		if(this.searchParent[position] != -1) candidates = this.neighbours[this.mapping[this.searchParent[position]]];
+		int numberCandidates = candidates == null ? this.numberAtoms : candidates.length;
+		for(int k = 0; k < numberCandidates; k++) {
+			int image = candidates == null ? k : candidates[k];
+			if(this.inverseMapping[image] != -1 || this.colours[image] != this.colours[atom]) continue;
+			if(!this.isConsistent(atom, image)) continue;
+			this.mapping[atom] = image;
+			this.inverseMapping[image] = atom;
+			boolean proceed = this.search(position + 1);
+			this.mapping[atom] = -1;
+			this.inverseMapping[image] = -1;
+			if(!proceed) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * checks whether the bonds of the atom to the mapped atoms are preserved if the atom is mapped to image
+	 *
+	 * @param atom
+	 * @param image
+	 * @return
+	 */
+	private boolean isConsistent(int atom, int image) {
+		int numberMappedNeighbours = 0;
+		for(int k = 0; k < this.neighbours[atom].length; k++) {
+			int mappedNeighbour = this.mapping[this.neighbours[atom][k]];
+			if(mappedNeighbour == -1) continue;
+			numberMappedNeighbours++;
+			boolean found = false;
+			for(int l = 0; l < this.neighbours[image].length; l++) {
+				if(this.neighbours[image][l] == mappedNeighbour && this.neighbourBondColours[image][l] == this.neighbourBondColours[atom][k]) {
+					found = true;
+					break;
+				}
+			}
+			if(!found) return false;
+		}
+		int numberMappedNeighboursOfImage = 0;
+		for(int l = 0; l < this.neighbours[image].length; l++)
+			if(this.inverseMapping[this.neighbours[image][l]] != -1) numberMappedNeighboursOfImage++;
+		return numberMappedNeighbours == numberMappedNeighboursOfImage;
+	}
+
+	private int find(int[] representative, int i) {
+		while(representative[i] != i) {
+			representative[i] = representative[representative[i]];
+			i = representative[i];
+		}
+		return i;
+	}
+
+	private void union(int[] representative, int i, int j) {
+		int first = this.find(representative, i);
+		int second = this.find(representative, j);
+		if(first < second) representative[second] = first;
+		else if(second < first) representative[first] = second;
+	}
+
+}
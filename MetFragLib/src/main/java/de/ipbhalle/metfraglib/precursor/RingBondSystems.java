@@ -0,0 +1,152 @@
+package de.ipbhalle.metfraglib.precursor;
+
+import de.ipbhalle.metfraglib.BitArray;
+
+/**
+ * ring membership of the bonds of a molecular graph
+ *
+ * the bonds are partitioned into biconnected components by a single depth first search (Tarjan)
+ * a component consisting of a single bond is a bridge, all other components are ring systems
+ * any two bonds of a ring system lie on a common simple cycle, so the ring system of a bond equals the union
+ * of all rings containing that bond as found by the enumeration of all rings, but is found in linear time
+ *
+ * the bonds of each ring system are stored once and shared by all its bonds
+ *
+ */
+public class RingBondSystems {
+
+	/*
+	 * ring system index of each bond, -1 if the bond is not part of a ring
+	 */
+	private final short[] bondIndexToRingSystem;
+	private final BitArray[] ringSystemBonds;
+	private final BitArray emptyBonds;
+
+	/**
+	 *
+	 * @param bondIndexToConnectedAtomIndeces both atom indeces of each bond
+	 * @param numberAtoms
+	 * @param bitArraySize size of the returned bond BitArrays
+	 */
+	public RingBondSystems(short[][] bondIndexToConnectedAtomIndeces, int numberAtoms, int bitArraySize) {
+		int numberBonds = bondIndexToConnectedAtomIndeces.length;
+		this.bondIndexToRingSystem = new short[numberBonds];
+		java.util.Arrays.fill(this.bondIndexToRingSystem, (short)-1);
+		this.emptyBonds = new BitArray(bitArraySize);
+		/*
+		 * compressed adjacency lists holding the bond indeces of each atom
+		 */
+		int[] adjacencyStart = new int[numberAtoms + 1];
+		for(int i = 0; i < numberBonds; i++) {
+			adjacencyStart[bondIndexToConnectedAtomIndeces[i][0] + 1]++;
+			adjacencyStart[bondIndexToConnectedAtomIndeces[i][1] + 1]++;
+		}
+		for(int i = 0; i < numberAtoms; i++) adjacencyStart[i + 1] += adjacencyStart[i];
+		int[] adjacentBonds = new int[adjacencyStart[numberAtoms]];
+		int[] fill = adjacencyStart.clone();
+		for(int i = 0; i < numberBonds; i++) {
+			adjacentBonds[fill[bondIndexToConnectedAtomIndeces[i][0]]++] = i;
+			adjacentBonds[fill[bondIndexToConnectedAtomIndeces[i][1]]++] = i;
+		}
+		/*
+		 * iterative depth first search keeping discovery times, low points and the stack of visited bonds
+		 */
+		int[] discovery = new int[numberAtoms];
+		int[] low = new int[numberAtoms];
+		java.util.Arrays.fill(discovery, -1);
+		int[] atomStack = new int[numberAtoms];
+		int[] parentBondStack = new int[numberAtoms];
+		int[] adjacencyPositionStack = new int[numberAtoms];
+		int[] bondStack = new int[numberBonds];
+		int bondStackSize = 0;
+		int time = 0;
+		java.util.ArrayList<BitArray> ringSystems = new java.util.ArrayList<BitArray>();
+		for(int root = 0; root < numberAtoms; root++) {
+			if(discovery[root] != -1) continue;
+			int stackSize = 0;
+			discovery[root] = low[root] = time++;
+			atomStack[stackSize] = root;
+			parentBondStack[stackSize] = -1;
+			adjacencyPositionStack[stackSize] = adjacencyStart[root];
+			stackSize++;
+			while(stackSize != 0) {
+				int top = stackSize - 1;
+				int atom = atomStack[top];
+				if(adjacencyPositionStack[top] < adjacencyStart[atom + 1]) {
+					int bond = adjacentBonds[adjacencyPositionStack[top]++];
+					if(bond == parentBondStack[top]) continue;
+					int neighbour = bondIndexToConnectedAtomIndeces[bond][0] == atom ? bondIndexToConnectedAtomIndeces[bond][1] : bondIndexToConnectedAtomIndeces[bond][0];
+					if(discovery[neighbour] == -1) {
+						bondStack[bondStackSize++] = bond;
+						discovery[neighbour] = low[neighbour] = time++;
+						atomStack[stackSize] = neighbour;
+						parentBondStack[stackSize] = bond;
+						adjacencyPositionStack[stackSize] = adjacencyStart[neighbour];
+						stackSize++;
+					}
+					else if(discovery[neighbour] < discovery[atom]) {
+						/*
+						 * back bond closing a ring
+						 */
+						bondStack[bondStackSize++] = bond;
+						low[atom] = Math.min(low[atom], discovery[neighbour]);
+					}
+					continue;
+				}
+				stackSize--;
+				if(stackSize == 0) continue;
+				int parent = atomStack[stackSize - 1];
+				low[parent] = Math.min(low[parent], low[atom]);
+				if(low[atom] < discovery[parent]) continue;
+				/*
+				 * parent separates the bonds pushed since the parent bond of atom from the rest of the graph
+				 */
+				int parentBond = parentBondStack[stackSize];
+				int first = bondStackSize - 1;
+				while(bondStack[first] != parentBond) first--;
+				if(bondStackSize - first > 1) {
+					BitArray bonds = new BitArray(bitArraySize);
+					for(int i = first; i < bondStackSize; i++) {
+						bonds.set(bondStack[i]);
+						this.bondIndexToRingSystem[bondStack[i]] = (short)ringSystems.size();
+					}
+					ringSystems.add(bonds);
+				}
+				bondStackSize = first;
+			}
+		}
+		this.ringSystemBonds = ringSystems.toArray(new BitArray[ringSystems.size()]);
+	}
+
+	public boolean isRingBond(int bondIndex) {
+		return this.bondIndexToRingSystem[bondIndex] != -1;
+	}
+
+	/**
+	 * index of the ring system containing the bond, -1 if the bond is not part of a ring
+	 *
+	 * @param bondIndex
+	 * @return
+	 */
+	public int getRingSystemIndex(int bondIndex) {
+		return this.bondIndexToRingSystem[bondIndex];
+	}
+
+	public int getNumberRingSystems() {
+		return this.ringSystemBonds.length;
+	}
+
+	/**
+	 * bonds of all rings containing the given bond, empty if the bond is not part of a ring
+	 * the returned BitArray is shared and must not be modified
+	 *
+	 * @param bondIndex
+	 * @return
+	 */
+	public BitArray getRingBonds(int bondIndex) {
+		if(bondIndex < 0 || bondIndex >= this.bondIndexToRingSystem.length || this.bondIndexToRingSystem[bondIndex] == -1)
+			return this.emptyBonds;
+		return this.ringSystemBonds[this.bondIndexToRingSystem[bondIndex]];
+	}
+
+}
@@ -12,8 +12,12 @@ import de.ipbhalle.metfraglib.collection.PostProcessingCandidateFilterCollection
 import de.ipbhalle.metfraglib.collection.PreProcessingCandidateFilterCollection;
 import de.ipbhalle.metfraglib.database.LocalPropertyFileDatabase;
 import de.ipbhalle.metfraglib.exceptions.ScorePropertyNotDefinedException;
+import de.ipbhalle.metfraglib.fragmenter.ProcessingTimeCalibration;
+import de.ipbhalle.metfraglib.fragmenter.TreeDepthCostModel;
+import de.ipbhalle.metfraglib.fragmenterassignerscorer.AbstractFragmenterAssignerScorer;
 import de.ipbhalle.metfraglib.interfaces.ICandidate;
 import de.ipbhalle.metfraglib.interfaces.IDatabase;
+import de.ipbhalle.metfraglib.interfaces.IMolecularStructure;
 import de.ipbhalle.metfraglib.interfaces.IPeakListReader;
 import de.ipbhalle.metfraglib.interfaces.IPostProcessingCandidateFilter;
 import de.ipbhalle.metfraglib.interfaces.IPreProcessingCandidateFilter;
@@ -21,8 +25,10 @@ import de.ipbhalle.metfraglib.interfaces.IScoreInitialiser;
 import de.ipbhalle.metfraglib.list.AbstractPeakList;
 import de.ipbhalle.metfraglib.list.CandidateList;
 import de.ipbhalle.metfraglib.list.DefaultPeakList;
+import de.ipbhalle.metfraglib.list.MatchList;
 import de.ipbhalle.metfraglib.list.ScoredCandidateList;
 import de.ipbhalle.metfraglib.list.SortedScoredCandidateList;
+import de.ipbhalle.metfraglib.molecularformula.ByteMolecularFormula;
 import de.ipbhalle.metfraglib.parameter.ClassNames;
 import de.ipbhalle.metfraglib.parameter.VariableNames;
 import de.ipbhalle.metfraglib.settings.MetFragGlobalSettings;
@@ -44,22 +50,56 @@ public class CombinedMetFragProcess implements Runnable {
 	private CandidateList sortedScoredCandidateList;
 	private int numberCandidatesBeforeFilter;
 	private boolean threadStoppedExternally = false;
-	//threads to process single candidates
-	private CombinedSingleCandidateMetFragProcess[] processes;
+	//candidate indeces in the order they are dispatched to the worker threads
+	private Integer[] candidateOrder;
+	//position of the next candidate in candidateOrder to be processed by a worker thread
+	private java.util.concurrent.atomic.AtomicInteger nextCandidatePosition;
+	//index of the next candidate with the same first InChIKey block and molecular formula by candidate index, -1 for the last one, null if candidates aren't collapsed
+	private int[] nextGroupMembers;
+	//predicted processing times of the candidates in nanoseconds, -1 if unknown
+	private double[] predictedProcessingTimes;
+	//scored candidates of the successfully processed candidates by candidate index
+	private ICandidate[][] scoredCandidates;
+	//counted down by each worker thread when it stops
+	private java.util.concurrent.CountDownLatch finishedWorkers;
 	//process status object -> stores values about metfrag's processing status
 	private ProcessingStatus processingStatus;
+	//budgets checked inside the fragmentation loops, cancelled on termination
+	private ProcessingBudget processingBudget;
+	//processing time per fragment recorded by the candidates of the current run
+	private ProcessingTimeCalibration processingTimeCalibration;
+	//keeps the match lists of the best candidates only, null if all match lists are kept
+	private MatchListRetention matchListRetention;
+	private int numberReleasedMatchLists;
+	//candidates processed by the worker threads
+	private CandidateList candidatesToProcess;
+	private int numberCandidatesProcessed;
+	//candidates not taken by the worker threads before the processing time limit
+	private int numberUnprocessedCandidates;
+	//identifiers of the best candidates of the first stage, null if the candidates are processed in one stage
+	private java.util.Vector<String> stageOneTopCandidates;
 	
 	private ExecutorService executer;
+	//threads matching the fragments of single candidates in parallel, shared by all candidates of the current run
+	private ExecutorService fragmentMatchingExecuter;
 	
 	private Logger logger = Logger.getLogger(CombinedMetFragProcess.class);
 	
+	/*
+	 * tree depth of the first stage of the two stage processing
+	 */
+	public static final Byte PRESCREEN_TREE_DEPTH = (byte)1;
+	/*
+	 * number of best candidates compared between the first stage and the final ranking
+	 */
+	public static final int NUMBER_COMPARED_TOP_CANDIDATES = 10;
+	
 	/**
 	 * constructore needs settings object
 	 * 
 	 * @param globalSettings
 	 */
 	public CombinedMetFragProcess(MetFragGlobalSettings globalSettings) {
-		this.processes = null;
 		this.globalSettings = globalSettings;
 		//set log level
 		this.logger.setLevel((Level)this.globalSettings.get(VariableNames.LOG_LEVEL_NAME));
@@ -74,7 +114,6 @@ public class CombinedMetFragProcess implements Runnable {
 	 * retrieve the candidates from the database 
 	 */
 	public boolean retrieveCompounds() throws Exception {
-		this.processes = null;
 		java.util.Vector<String> databaseCandidateIdentifiers = this.database.getCandidateIdentifiers();
 		if(this.globalSettings.containsKey(VariableNames.MAXIMUM_CANDIDATE_LIMIT_TO_STOP_NAME) && this.globalSettings.get(VariableNames.MAXIMUM_CANDIDATE_LIMIT_TO_STOP_NAME) != null) {
 			int limit = (Integer)this.globalSettings.get(VariableNames.MAXIMUM_CANDIDATE_LIMIT_TO_STOP_NAME);
@@ -106,7 +145,6 @@ public class CombinedMetFragProcess implements Runnable {
 	 * @param globalSettings
 	 */
 	public void renewSettings(MetFragGlobalSettings globalSettings) {
-		this.processes = null;
 		this.globalSettings = globalSettings;
 		this.logger.setLevel((Level)this.globalSettings.get(VariableNames.LOG_LEVEL_NAME));
 		this.initialise();
@@ -119,7 +157,6 @@ public class CombinedMetFragProcess implements Runnable {
 	 * @see java.lang.Runnable#run()
 	 */
 	public void run() {
-		this.processes = null;
 		this.threadStoppedExternally = false;
 		/*
 		 * read peak list and store in settings object
@@ -133,77 +170,49 @@ public class CombinedMetFragProcess implements Runnable {
 		}
 		this.globalSettings.set(VariableNames.MINIMUM_FRAGMENT_MASS_LIMIT_NAME, ((DefaultPeakList)this.globalSettings.get(VariableNames.PEAK_LIST_NAME)).getMinimumMassValue());
 
-		this.processes = new CombinedSingleCandidateMetFragProcess[this.sortedScoredCandidateList.getNumberElements()];
-
 		//reset processing status
 		this.processingStatus.setProcessStatusString("Processing Candidates");
 		this.processingStatus.setNumberCandidates(this.sortedScoredCandidateList.getNumberElements());
 		this.processingStatus.setNumberFinishedCandidates(0);
 		this.processingStatus.setNextPercentageValue(1);
-		//initialise all necessary score parameters
-		//these parameters are shared over all single candidate thread instances
-		this.initialiseScoresGlobal(this.globalSettings);
+		this.processingStatus.setNumberBudgetExceededCandidates(0);
+		this.processingStatus.setNumberUnprocessedCandidates(0);
 		/*
-		 * prepare single MetFrag threads
+		 * budgets of the single candidates and the processing time limit of all candidates starting now
 		 */
-		for(int i = 0; i < this.sortedScoredCandidateList.getNumberElements(); i++) 
-		{
-			/*
-			 * local settings for each thread stores a reference to the global settings
-			 */
-			MetFragSingleProcessSettings singleProcessSettings = new MetFragSingleProcessSettings(this.globalSettings);
-			/*
-			 * necessary to define number of hydrogens and make the implicit
-			 */
-			CombinedSingleCandidateMetFragProcess scmfp = new CombinedSingleCandidateMetFragProcess(singleProcessSettings, this.sortedScoredCandidateList.getElement(i));
-			scmfp.setPreProcessingCandidateFilterCollection(this.preProcessingCandidateFilterCollection);
-			
-			this.processes[i] = scmfp;
-		}
-		
+		Integer candidateTimeBudget = (Integer)this.globalSettings.get(VariableNames.METFRAG_CANDIDATE_TIME_BUDGET);
+		Integer candidateFragmentBudget = (Integer)this.globalSettings.get(VariableNames.METFRAG_CANDIDATE_FRAGMENT_BUDGET);
+		Integer processingTimeLimit = (Integer)this.globalSettings.get(VariableNames.METFRAG_PROCESSING_TIME_LIMIT);
+		this.processingBudget = new ProcessingBudget(candidateTimeBudget == null ? 0 : candidateTimeBudget, 
+				candidateFragmentBudget == null ? 0 : candidateFragmentBudget, processingTimeLimit == null ? 0 : processingTimeLimit);
+		this.globalSettings.set(VariableNames.PROCESSING_BUDGET_OBJECT_NAME, this.processingBudget);
+		this.fragmentMatchingExecuter = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		this.globalSettings.set(VariableNames.FRAGMENT_MATCHING_EXECUTOR_OBJECT_NAME, this.fragmentMatchingExecuter);
 		/*
-		 * define executer thread to run MetFrag process
+		 * processing times per fragment are only recorded for the candidates of this run
 		 */
-		this.executer = Executors.newFixedThreadPool((Byte)this.globalSettings.get(VariableNames.NUMBER_THREADS_NAME));
-		/* 
-		 * ###############
-		 * 	run processes
-		 * ###############
+		this.processingTimeCalibration = new ProcessingTimeCalibration();
+		this.globalSettings.set(VariableNames.PROCESSING_TIME_CALIBRATION_OBJECT_NAME, this.processingTimeCalibration);
+		//initialise all necessary score parameters
+		//these parameters are shared over all single candidate thread instances
+		this.initialiseScoresGlobal(this.globalSettings);
+		this.numberReleasedMatchLists = 0;
+		this.stageOneTopCandidates = null;
+		/*
+		 * process all candidates with the configured tree depth or in two stages
 		 */
-		for(CombinedSingleCandidateMetFragProcess scmfp : this.processes) {
-			this.executer.execute(scmfp);
-		}
-		this.executer.shutdown(); 
-	    while(!this.executer.isTerminated())
-		{
-			try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
-		
-	    if(this.threadStoppedExternally) {
-	    	return;
-	    }
-	    /*
-	     * retrieve the result
-	     */
-	    ScoredCandidateList scoredCandidateList = new ScoredCandidateList();
-	    if(this.processes == null) return;
-	    int numberCandidatesProcessed = 0;
-		for(CombinedSingleCandidateMetFragProcess scmfp : this.processes) {
-			/*
-			 * check whether the single run was successful
-			 */
-			if(scmfp.wasSuccessful()) {
-				numberCandidatesProcessed++;
-				ICandidate[] candidates = scmfp.getScoredPrecursorCandidates();
-				for(int i = 0; i < candidates.length; i++) scoredCandidateList.addElement(candidates[i]);
-				//important to eliminate static variables
-				scmfp.getFragmenterAssignerScorer().nullifyScoresCollection();
-			}
+		ScoredCandidateList scoredCandidateList = null;
+		int numberShortlistedCandidates = this.getNumberShortlistedCandidates(this.sortedScoredCandidateList.getNumberElements());
+		if(numberShortlistedCandidates < this.sortedScoredCandidateList.getNumberElements())
+			scoredCandidateList = this.processCandidatesInTwoStages(this.sortedScoredCandidateList, numberShortlistedCandidates);
+		else 
+			scoredCandidateList = this.processCandidates(this.sortedScoredCandidateList, null);
+		if(scoredCandidateList == null) {
+			this.shutdownFragmentMatchingExecuter();
+			return;
 		}
+		int numberCandidatesProcessed = this.numberCandidatesProcessed;
+		this.processingStatus.setNumberUnprocessedCandidates(this.numberUnprocessedCandidates);
 		/*
 		 * normalise scores of the candidate list 
 		 */
@@ -216,6 +225,10 @@ public class CombinedMetFragProcess implements Runnable {
 		} catch (ScorePropertyNotDefinedException e) {
 			this.logger.error(e.getMessage());
 		}
+		if(this.stageOneTopCandidates != null) {
+			this.logPrescreenChanges(this.stageOneTopCandidates);
+			this.stageOneTopCandidates = null;
+		}
 		
 		/*
 		 * filter candidates by post processing filter
@@ -228,35 +241,320 @@ public class CombinedMetFragProcess implements Runnable {
 		 * set number of peaks used for processing
 		 */
 		((ScoredCandidateList)this.sortedScoredCandidateList).setNumberPeaksUsed(((AbstractPeakList)this.globalSettings.get(VariableNames.PEAK_LIST_NAME)).getNumberPeaksUsed());
+		/*
+		 * generate the released match lists of the final best candidates again
+		 */
+		if(this.numberReleasedMatchLists != 0) {
+			this.logger.info(this.numberReleasedMatchLists + " match list(s) released during processing");
+			Boolean regenerateMatchLists = (Boolean)this.globalSettings.get(VariableNames.METFRAG_REGENERATE_MATCH_LISTS);
+			if(regenerateMatchLists != null && regenerateMatchLists) 
+				this.regenerateMatchLists((Integer)this.globalSettings.get(VariableNames.METFRAG_RETAINED_MATCH_LISTS));
+		}
+		this.shutdownFragmentMatchingExecuter();
 		
 		this.logger.info(this.processingStatus.getNumberPreFilteredCandidates().get() + " candidate(s) were discarded before processing due to pre-filtering");
 		this.logger.info(this.processingStatus.getNumberErrorCandidates().get() + " candidate(s) discarded during processing due to errors");
+		if(this.processingBudget.isActive())
+			this.logger.info(this.processingStatus.getNumberBudgetExceededCandidates().get() + " candidate(s) stopped during processing due to exceeded budgets");
+		if(this.processingStatus.getNumberUnprocessedCandidates().get() != 0)
+			this.logger.info(this.processingStatus.getNumberUnprocessedCandidates().get() + " candidate(s) not processed due to the processing time limit");
 		this.logger.info(this.postProcessingCandidateFilterCollection.getNumberPostFilteredCandidates() + " candidate(s) discarded after processing due to post-filtering");
 		this.logger.info("Stored " + this.sortedScoredCandidateList.getNumberElements() + " candidate(s)");
 		
 		this.processingStatus.setProcessStatusString("Processing Candidates");
 		
-		this.processes = null;
 	}
 	
 	/**
-	 * terminate processing thread
+	 * processes the given candidates by the worker threads and returns the successfully scored candidates
+	 * in the order of the given list, null if the processing was terminated
+	 * 
+	 * @param candidateList
+	 * @param maximumTreeDepth tree depth used for all candidates, null to use the configured tree depth
+	 * @return
 	 */
-	public void terminate() {
-		if(this.processes != null) {
-			for(int i = 0; i < this.processes.length; i++) {
-				if(this.processes[i] != null) {
-					this.processes[i].nullify();
-					this.processes[i] = null;
-				}
+	protected ScoredCandidateList processCandidates(CandidateList candidateList, Byte maximumTreeDepth) {
+		int numberCandidates = candidateList.getNumberElements();
+		int numberThreads = this.getNumberThreads(numberCandidates);
+		/*
+		 * if there are less candidates than available processors the idle processors are used 
+		 * to process the fragments of each candidate in parallel
+		 */
+		Byte numberThreadsPerCandidate = (Byte)this.globalSettings.get(VariableNames.NUMBER_THREADS_PER_CANDIDATE_NAME);
+		if(numberThreadsPerCandidate == null || numberThreadsPerCandidate == 0) {
+			numberThreadsPerCandidate = this.getAutomaticNumberThreadsPerCandidate(numberCandidates, numberThreads);
+			if(numberThreadsPerCandidate > 1) this.logger.info("Using " + numberThreadsPerCandidate + " threads per candidate");
+		}
+		/*
+		 * each worker thread takes the next unprocessed candidate as soon as it finished the previous one
+		 * so that only the single processes of the running candidates are alive
+		 * all workers are started at once as core threads of the pool, none of them is queued
+		 */
+		this.candidatesToProcess = candidateList;
+		this.predictedProcessingTimes = this.predictProcessingTimes(candidateList, maximumTreeDepth);
+		this.candidateOrder = this.getCandidateOrder(this.predictedProcessingTimes);
+		/*
+		 * only the first candidate of each group is dispatched, the other group members are processed 
+		 * by the same worker thread afterwards taking its fragmentation results
+		 */
+		this.nextGroupMembers = null;
+		Boolean collapseDuplicates = (Boolean)this.globalSettings.get(VariableNames.METFRAG_COLLAPSE_INCHIKEY1_DUPLICATES);
+		if(collapseDuplicates != null && collapseDuplicates) {
+			this.nextGroupMembers = this.getInChIKey1Groups(candidateList);
+			boolean[] isGroupMember = new boolean[numberCandidates];
+			for(int i = 0; i < numberCandidates; i++) 
+				if(this.nextGroupMembers[i] != -1) isGroupMember[this.nextGroupMembers[i]] = true;
+			java.util.ArrayList<Integer> groupOrder = new java.util.ArrayList<Integer>();
+			for(int i = 0; i < this.candidateOrder.length; i++) 
+				if(!isGroupMember[this.candidateOrder[i]]) groupOrder.add(this.candidateOrder[i]);
+			this.logger.info("Collapsed " + numberCandidates + " candidate(s) into " + groupOrder.size() + " group(s) by the first InChIKey block and molecular formula (dedup ratio " 
+					+ (numberCandidates == 0 ? 1.0 : Math.round((double)groupOrder.size() / (double)numberCandidates * 1000.0) / 1000.0) + ")");
+			this.candidateOrder = groupOrder.toArray(new Integer[groupOrder.size()]);
+		}
+		this.nextCandidatePosition = new java.util.concurrent.atomic.AtomicInteger(0);
+		this.scoredCandidates = new ICandidate[numberCandidates][];
+		Integer retainedMatchLists = (Integer)this.globalSettings.get(VariableNames.METFRAG_RETAINED_MATCH_LISTS);
+		this.matchListRetention = null;
+		if(retainedMatchLists != null && retainedMatchLists > 0 && retainedMatchLists < numberCandidates)
+			this.matchListRetention = new MatchListRetention(retainedMatchLists, (Double[])this.globalSettings.get(VariableNames.METFRAG_SCORE_WEIGHTS_NAME), 
+					(String[])this.globalSettings.get(VariableNames.METFRAG_SCORE_TYPES_NAME));
+		this.finishedWorkers = new java.util.concurrent.CountDownLatch(numberThreads);
+		this.executer = Executors.newFixedThreadPool(numberThreads);
+		/* 
+		 * ###############
+		 * 	run processes
+		 * ###############
+		 */
+		for(int i = 0; i < numberThreads; i++) {
+			this.executer.execute(new CandidateWorker(numberThreadsPerCandidate, maximumTreeDepth));
+		}
+		this.executer.shutdown();
+		/*
+		 * wait until all candidates are processed or the processing was terminated
+		 */
+		try {
+			this.finishedWorkers.await();
+		} catch (InterruptedException e) {
+			/*
+			 * the calling thread was interrupted, stop the workers and keep the interrupt status for the caller
+			 */
+			Thread.currentThread().interrupt();
+			this.logger.warn("Candidate processing interrupted");
+			this.processingBudget.cancel();
+			this.threadStoppedExternally = true;
+			this.executer.shutdownNow();
+		}
+		
+		/*
+		 * candidates left when the processing time limit was reached aren't part of the result
+		 */
+		this.numberUnprocessedCandidates = this.threadStoppedExternally ? 0 : this.getNumberUnprocessedCandidates();
+		this.candidateOrder = null;
+		this.nextGroupMembers = null;
+		this.predictedProcessingTimes = null;
+		this.candidatesToProcess = null;
+		if(this.matchListRetention != null) this.numberReleasedMatchLists += this.matchListRetention.getNumberReleasedMatchLists();
+		this.matchListRetention = null;
+	    if(this.threadStoppedExternally) {
+	    	this.scoredCandidates = null;
+	    	return null;
+	    }
+	    /*
+	     * retrieve the result in the order of the candidates
+	     */
+	    ScoredCandidateList scoredCandidateList = new ScoredCandidateList();
+	    this.numberCandidatesProcessed = 0;
+		for(int i = 0; i < this.scoredCandidates.length; i++) {
+			if(this.scoredCandidates[i] == null) continue;
+			this.numberCandidatesProcessed++;
+			for(int k = 0; k < this.scoredCandidates[i].length; k++) scoredCandidateList.addElement(this.scoredCandidates[i][k]);
+		}
+		this.scoredCandidates = null;
+		return scoredCandidateList;
+	}
+	
+	/**
+	 * number of candidates including their group members that weren't taken by any worker thread
+	 * the workers stop taking candidates once the deadline of the processing budget has passed
+	 * 
+	 * @return
+	 */
+	protected int getNumberUnprocessedCandidates() {
+		int numberUnprocessedCandidates = 0;
+		for(int position = this.nextCandidatePosition.get(); position < this.candidateOrder.length; position++) {
+			int index = this.candidateOrder[position];
+			while(index != -1) {
+				numberUnprocessedCandidates++;
+				index = this.nextGroupMembers == null ? -1 : this.nextGroupMembers[index];
 			}
 		}
-		this.processes = null;
+		return numberUnprocessedCandidates;
+	}
+	
+	/**
+	 * first all candidates are processed with a tree depth of one (PRESCREEN_TREE_DEPTH) and ranked by their normalised scores, 
+	 * the non-fragmenter scores are calculated as usual
+	 * then only the best candidates are processed again with the configured tree depth, all other candidates keep 
+	 * the scores of the first stage (their MaximumTreeDepth property stays 1)
+	 * 
+	 * @param candidateList
+	 * @param numberShortlistedCandidates number of best candidates processed in the second stage
+	 * @return
+	 */
+	protected ScoredCandidateList processCandidatesInTwoStages(CandidateList candidateList, int numberShortlistedCandidates) {
+		ScoredCandidateList stageOneCandidateList = this.processCandidates(candidateList, PRESCREEN_TREE_DEPTH);
+		if(stageOneCandidateList == null) return null;
+		int numberCandidatesProcessed = this.numberCandidatesProcessed;
+		int numberUnprocessedCandidates = this.numberUnprocessedCandidates;
+		SortedScoredCandidateList sortedStageOneCandidateList = null;
+		try {
+			sortedStageOneCandidateList = stageOneCandidateList.normaliseScores(
+				(Double[])this.globalSettings.get(VariableNames.METFRAG_SCORE_WEIGHTS_NAME), 
+				(String[])this.globalSettings.get(VariableNames.METFRAG_SCORE_TYPES_NAME),
+				(String[])this.globalSettings.get(VariableNames.SCORE_NAMES_NOT_TO_SCALE)
+			);
+		} catch (ScorePropertyNotDefinedException e) {
+			this.logger.error(e.getMessage());
+			return stageOneCandidateList;
+		}
+		this.stageOneTopCandidates = new java.util.Vector<String>();
+		for(int i = 0; i < Math.min(NUMBER_COMPARED_TOP_CANDIDATES, sortedStageOneCandidateList.getNumberElements()); i++)
+			this.stageOneTopCandidates.add(sortedStageOneCandidateList.getElement(i).getIdentifier());
+		CandidateList shortlistedCandidates = new CandidateList();
+		for(int i = 0; i < Math.min(numberShortlistedCandidates, sortedStageOneCandidateList.getNumberElements()); i++)
+			shortlistedCandidates.addElement(sortedStageOneCandidateList.getElement(i));
+		this.logger.info("Processing " + shortlistedCandidates.getNumberElements() + " of " + sortedStageOneCandidateList.getNumberElements() + " candidate(s) with full tree depth");
+		/*
+		 * progress of the second stage
+		 */
+		this.processingStatus.setNumberCandidates(shortlistedCandidates.getNumberElements());
+		this.processingStatus.setNumberFinishedCandidates(0);
+		this.processingStatus.setNextPercentageValue(1);
+		/*
+		 * first stage results restored for shortlisted candidates failing in the second stage,
+		 * the match lists are detached as a failing candidate is nullified with its match list
+		 */
+		java.util.ArrayList<java.util.Hashtable<String, Object>> stageOneProperties = new java.util.ArrayList<java.util.Hashtable<String, Object>>();
+		MatchList[] stageOneMatchLists = new MatchList[shortlistedCandidates.getNumberElements()];
+		IMolecularStructure[] stageOnePrecursors = new IMolecularStructure[shortlistedCandidates.getNumberElements()];
+		for(int i = 0; i < shortlistedCandidates.getNumberElements(); i++) {
+			ICandidate candidate = shortlistedCandidates.getElement(i);
+			stageOneProperties.add(new java.util.Hashtable<String, Object>(candidate.getProperties()));
+			stageOneMatchLists[i] = candidate.getMatchList();
+			stageOnePrecursors[i] = candidate.getPrecursorMolecule();
+			candidate.setMatchList(null);
+		}
+		int numberErrorCandidates = this.processingStatus.getNumberErrorCandidates().get();
+		int numberPreFilteredCandidates = this.processingStatus.getNumberPreFilteredCandidates().get();
+		/*
+		 * the shortlisted candidates are the same objects as in the first stage list and get their new scores in place
+		 */
+		ScoredCandidateList stageTwoCandidateList = this.processCandidates(shortlistedCandidates, null);
+		if(stageTwoCandidateList == null) return null;
+		java.util.IdentityHashMap<ICandidate, Boolean> stageTwoCandidates = new java.util.IdentityHashMap<ICandidate, Boolean>();
+		for(int i = 0; i < stageTwoCandidateList.getNumberElements(); i++) stageTwoCandidates.put(stageTwoCandidateList.getElement(i), Boolean.TRUE);
+		for(int i = 0; i < shortlistedCandidates.getNumberElements(); i++) {
+			ICandidate candidate = shortlistedCandidates.getElement(i);
+			if(!stageTwoCandidates.containsKey(candidate)) 
+				this.restoreStageOneResults(candidate, stageOneProperties.get(i), stageOneMatchLists[i], stageOnePrecursors[i]);
+		}
+		/*
+		 * each candidate is counted once by its final outcome, failing shortlisted candidates aren't discarded
+		 */
+		int numberFailedCandidates = this.processingStatus.getNumberErrorCandidates().get() - numberErrorCandidates
+				+ this.processingStatus.getNumberPreFilteredCandidates().get() - numberPreFilteredCandidates;
+		this.processingStatus.getNumberErrorCandidates().set(numberErrorCandidates);
+		this.processingStatus.setNumberPreFilteredCandidates(numberPreFilteredCandidates);
+		int numberBudgetExceededCandidates = 0;
+		for(int i = 0; i < stageOneCandidateList.getNumberElements(); i++)
+			if(Boolean.TRUE.equals(stageOneCandidateList.getElement(i).getProperty(VariableNames.BUDGET_EXCEEDED_NAME))) numberBudgetExceededCandidates++;
+		this.processingStatus.setNumberBudgetExceededCandidates(numberBudgetExceededCandidates);
+		if(numberFailedCandidates != 0)
+			this.logger.info(numberFailedCandidates + " shortlisted candidate(s) keep their first stage scores due to errors in the second stage");
+		if(this.numberUnprocessedCandidates != 0)
+			this.logger.info(this.numberUnprocessedCandidates + " shortlisted candidate(s) keep their first stage scores due to the processing time limit");
+		this.numberCandidatesProcessed = numberCandidatesProcessed;
+		this.numberUnprocessedCandidates = numberUnprocessedCandidates;
+		return stageOneCandidateList;
+	}
+
+	/**
+	 * sets the properties, the match list and the precursor of the candidate back to the ones of its first stage processing
+	 *
+	 * @param candidate
+	 * @param properties
+	 * @param matchList
+	 * @param precursor
+	 */
+	private void restoreStageOneResults(ICandidate candidate, java.util.Hashtable<String, Object> properties, MatchList matchList, IMolecularStructure precursor) {
+		String[] propertyNames = candidate.getPropertyNames();
+		for(int i = 0; i < propertyNames.length; i++)
+			if(!properties.containsKey(propertyNames[i])) candidate.removeProperty(propertyNames[i]);
+		java.util.Enumeration<String> keys = properties.keys();
+		while(keys.hasMoreElements()) {
+			String key = keys.nextElement();
+			candidate.setProperty(key, properties.get(key));
+		}
+		candidate.setMatchList(matchList);
+		candidate.setPrecursorMolecule(precursor);
+	}
+	
+	/**
+	 * number of candidates processed with full tree depth, all candidates if the two stage processing is switched off
+	 * 
+	 * @param numberCandidates
+	 * @return
+	 */
+	protected int getNumberShortlistedCandidates(int numberCandidates) {
+		Double prescreenFraction = (Double)this.globalSettings.get(VariableNames.METFRAG_PRESCREEN_FRACTION);
+		Integer prescreenNumberCandidates = (Integer)this.globalSettings.get(VariableNames.METFRAG_PRESCREEN_NUMBER_CANDIDATES);
+		int numberShortlistedCandidates = 0;
+		if(prescreenFraction != null && prescreenFraction > 0.0) 
+			numberShortlistedCandidates = (int)Math.ceil(prescreenFraction * numberCandidates);
+		if(prescreenNumberCandidates != null && prescreenNumberCandidates > 0) 
+			numberShortlistedCandidates = Math.max(numberShortlistedCandidates, prescreenNumberCandidates);
+		if(numberShortlistedCandidates == 0) return numberCandidates;
+		return Math.min(numberShortlistedCandidates, numberCandidates);
+	}
+	
+	/**
+	 * logs how many of the final best candidates haven't been among the best candidates of the first stage
+	 * 
+	 * @param stageOneTopCandidates
+	 */
+	protected void logPrescreenChanges(java.util.Vector<String> stageOneTopCandidates) {
+		int numberTopCandidates = Math.min(NUMBER_COMPARED_TOP_CANDIDATES, this.sortedScoredCandidateList.getNumberElements());
+		int numberChangedCandidates = 0;
+		for(int i = 0; i < numberTopCandidates; i++) 
+			if(!stageOneTopCandidates.contains(this.sortedScoredCandidateList.getElement(i).getIdentifier())) numberChangedCandidates++;
+		this.logger.info(numberChangedCandidates + " of the final top " + numberTopCandidates + " candidate(s) changed by the second stage");
+	}
+	
+	/**
+	 * terminate processing thread
+	 */
+	public void terminate() {
+		/*
+		 * stops the fragmentation of running candidates at their next fragment
+		 */
+		if(this.processingBudget != null) this.processingBudget.cancel();
+		ExecutorService fragmentMatchingExecuter = this.fragmentMatchingExecuter;
+		if(fragmentMatchingExecuter != null) fragmentMatchingExecuter.shutdownNow();
 		if(this.executer == null) return;
 		this.threadStoppedExternally = true;
 		this.executer.shutdownNow();
 	}
 	
+	/**
+	 * stops the threads of the parallel fragment matching after all candidates of the run are processed
+	 */
+	protected void shutdownFragmentMatchingExecuter() {
+		if(this.fragmentMatchingExecuter == null) return;
+		this.fragmentMatchingExecuter.shutdown();
+		this.fragmentMatchingExecuter = null;
+		this.globalSettings.remove(VariableNames.FRAGMENT_MATCHING_EXECUTOR_OBJECT_NAME);
+	}
+	
 	public CandidateList getCandidateList() {
 		return this.sortedScoredCandidateList;
 	}
@@ -406,6 +704,182 @@ public class CombinedMetFragProcess implements Runnable {
 		this.sortedScoredCandidateList = null;
 	}
 	
+	/**
+	 * number of threads used to process a single candidate if there are less candidates than available processors
+	 * 
+	 * @param numberCandidates
+	 * @param numberThreads threads processing candidates in parallel
+	 * @return
+	 */
+	protected byte getAutomaticNumberThreadsPerCandidate(int numberCandidates, int numberThreads) {
+		int numberProcessors = Runtime.getRuntime().availableProcessors();
+		int numberParallelCandidates = Math.max(1, Math.min(numberCandidates, numberThreads));
+		if(numberCandidates >= numberProcessors) return (byte)1;
+		return (byte)Math.max(1, Math.min(Byte.MAX_VALUE, numberProcessors / numberParallelCandidates));
+	}
+	
+	/**
+	 * number of threads processing candidates in parallel, at most one per candidate
+	 * if NumberThreads is not greater than zero all available processors are used
+	 * 
+	 * @param numberCandidates
+	 * @return
+	 */
+	protected int getNumberThreads(int numberCandidates) {
+		Number numberThreads = (Number)this.globalSettings.get(VariableNames.NUMBER_THREADS_NAME);
+		int numberProcessors = Runtime.getRuntime().availableProcessors();
+		int threads = numberThreads == null || numberThreads.intValue() <= 0 ? numberProcessors : numberThreads.intValue();
+		return Math.max(1, Math.min(threads, numberCandidates));
+	}
+	
+	/**
+	 * fragments the best candidates of the final candidate list again whose match lists were released during processing
+	 * the score properties of the first processing are kept so that the ranking doesn't change
+	 * candidates whose first processing exceeded a budget are skipped as their fragmentation can't be repeated
+	 * 
+	 * @param numberCandidates number of best candidates
+	 */
+	protected void regenerateMatchLists(int numberCandidates) {
+		int numberRegeneratedMatchLists = 0;
+		Integer candidateFragmentBudget = (Integer)this.globalSettings.get(VariableNames.METFRAG_CANDIDATE_FRAGMENT_BUDGET);
+		for(int i = 0; i < Math.min(numberCandidates, this.sortedScoredCandidateList.getNumberElements()); i++) {
+			ICandidate candidate = this.sortedScoredCandidateList.getElement(i);
+			if(candidate.getMatchList() != null) continue;
+			if(Boolean.TRUE.equals(candidate.getProperty(VariableNames.BUDGET_EXCEEDED_NAME))) {
+				this.logger.info("Match list of " + candidate.getIdentifier() + " not regenerated, processing budget exceeded");
+				continue;
+			}
+			java.util.Hashtable<String, Object> properties = new java.util.Hashtable<String, Object>(candidate.getProperties());
+			MetFragSingleProcessSettings singleProcessSettings = new MetFragSingleProcessSettings(this.globalSettings);
+			singleProcessSettings.set(VariableNames.NUMBER_THREADS_PER_CANDIDATE_NAME, this.getAutomaticNumberThreadsPerCandidate(1, 1));
+			singleProcessSettings.set(VariableNames.CANDIDATE_NAME, candidate);
+			/*
+			 * the candidate was processed within its budgets before, the fragment budget of the first processing bounds it again
+			 */
+			singleProcessSettings.set(VariableNames.PROCESSING_BUDGET_OBJECT_NAME, new ProcessingBudget(0, candidateFragmentBudget == null ? 0 : candidateFragmentBudget, 0));
+			/*
+			 * use the tree depth of the first processing
+			 */
+			if(properties.get(VariableNames.MAXIMUM_TREE_DEPTH_NAME) instanceof Byte)
+				singleProcessSettings.set(VariableNames.MAXIMUM_TREE_DEPTH_NAME, properties.get(VariableNames.MAXIMUM_TREE_DEPTH_NAME));
+			try {
+				AbstractFragmenterAssignerScorer fas = (AbstractFragmenterAssignerScorer) Class.forName((String)singleProcessSettings.get(VariableNames.METFRAG_ASSIGNER_SCORER_NAME))
+						.getConstructor(Settings.class, ICandidate.class).newInstance(singleProcessSettings, candidate);
+				fas.initialise();
+				fas.calculate();
+				fas.shallowNullify();
+				fas.nullifyScoresCollection();
+				numberRegeneratedMatchLists++;
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			java.util.Enumeration<String> keys = properties.keys();
+			while(keys.hasMoreElements()) {
+				String key = keys.nextElement();
+				candidate.setProperty(key, properties.get(key));
+			}
+		}
+		this.logger.info("Regenerated " + numberRegeneratedMatchLists + " match list(s)");
+	}
+	
+	/**
+	 * predicts the processing time of each candidate by the number of fragments estimated from its molecular formula
+	 * and the processing time per fragment recorded so far in this run (ProcessingTimeCalibration)
+	 * candidates without a molecular formula get -1
+	 * 
+	 * @param candidateList
+	 * @param maximumTreeDepth tree depth used for all candidates, null to use the configured tree depth
+	 * @return
+	 */
+	protected double[] predictProcessingTimes(CandidateList candidateList, Byte maximumTreeDepth) {
+		if(maximumTreeDepth == null) maximumTreeDepth = (Byte)this.globalSettings.get(VariableNames.MAXIMUM_TREE_DEPTH_NAME);
+		Byte maximumNumberOfAFragmentAddedToQueue = (Byte)this.globalSettings.get(VariableNames.MAXIMUM_NUMBER_OF_TOPDOWN_FRAGMENT_ADDED_TO_QUEUE);
+		Integer fragmentBudget = (Integer)this.globalSettings.get(VariableNames.METFRAG_TREE_DEPTH_FRAGMENT_BUDGET);
+		Integer timeBudget = (Integer)this.globalSettings.get(VariableNames.METFRAG_TREE_DEPTH_TIME_BUDGET);
+		double nanosPerFragment = this.processingTimeCalibration.getNanosPerFragment();
+		double[] predictedProcessingTimes = new double[candidateList.getNumberElements()];
+		for(int i = 0; i < predictedProcessingTimes.length; i++) {
+			predictedProcessingTimes[i] = -1;
+			Object formula = candidateList.getElement(i).getProperty(VariableNames.MOLECULAR_FORMULA_NAME);
+			if(formula == null) continue;
+			try {
+				TreeDepthCostModel costModel = new TreeDepthCostModel(new ByteMolecularFormula(formula.toString()), 
+						maximumNumberOfAFragmentAddedToQueue == null ? 2 : maximumNumberOfAFragmentAddedToQueue);
+				byte treeDepth = maximumTreeDepth == null || maximumTreeDepth == 0 ? 
+						costModel.chooseTreeDepth(fragmentBudget == null ? 0 : fragmentBudget, timeBudget == null ? 0 : timeBudget, nanosPerFragment) : maximumTreeDepth;
+				predictedProcessingTimes[i] = costModel.estimateNumberFragments(treeDepth)[treeDepth - 1] * nanosPerFragment;
+			} catch (Exception e) {
+				/*
+				 * unknown elements, cost stays unknown
+				 */
+			}
+		}
+		return predictedProcessingTimes;
+	}
+	
+	/**
+	 * candidate indeces in descending order of the predicted processing times (longest processing time first)
+	 * so that no long running candidate is started when the other threads are about to finish
+	 * candidates with unknown processing time are dispatched first
+	 * 
+	 * @param predictedProcessingTimes
+	 * @return
+	 */
+	protected Integer[] getCandidateOrder(final double[] predictedProcessingTimes) {
+		Integer[] candidateOrder = new Integer[predictedProcessingTimes.length];
+		for(int i = 0; i < candidateOrder.length; i++) candidateOrder[i] = i;
+		java.util.Arrays.sort(candidateOrder, new java.util.Comparator<Integer>() {
+			public int compare(Integer index1, Integer index2) {
+				double time1 = predictedProcessingTimes[index1] < 0 ? Double.MAX_VALUE : predictedProcessingTimes[index1];
+				double time2 = predictedProcessingTimes[index2] < 0 ? Double.MAX_VALUE : predictedProcessingTimes[index2];
+				return Double.compare(time2, time1);
+			}
+		});
+		return candidateOrder;
+	}
+	
+	/**
+	 * groups the candidates by the first block of their InChIKeys (stereoisomers and duplicates) which have the same fragments,
+	 * the molecular formula and the charge layers of the InChI (if present) have to be equal as well
+	 * candidates without InChIKey or molecular formula form groups of their own
+	 * for each candidate the index of the next candidate in its group is returned, -1 for the last one
+	 * 
+	 * @param candidateList
+	 * @return
+	 */
+	protected int[] getInChIKey1Groups(CandidateList candidateList) {
+		int[] nextGroupMembers = new int[candidateList.getNumberElements()];
+		java.util.HashMap<String, Integer> lastGroupMembers = new java.util.HashMap<String, Integer>();
+		for(int i = 0; i < nextGroupMembers.length; i++) {
+			nextGroupMembers[i] = -1;
+			String groupKey = this.getGroupKey(candidateList.getElement(i));
+			if(groupKey == null) continue;
+			Integer lastGroupMember = lastGroupMembers.put(groupKey, i);
+			if(lastGroupMember != null) nextGroupMembers[lastGroupMember] = i;
+		}
+		return nextGroupMembers;
+	}
+	
+	/**
+	 * first InChIKey block, molecular formula and the charge (q) and protonation (p) layers of the InChI separated by '|'
+	 * 
+	 * @param candidate
+	 * @return null if the candidate has no InChIKey or molecular formula
+	 */
+	protected String getGroupKey(ICandidate candidate) {
+		Object inChIKey1 = candidate.getProperty(VariableNames.INCHI_KEY_1_NAME);
+		Object formula = candidate.getProperty(VariableNames.MOLECULAR_FORMULA_NAME);
+		if(inChIKey1 == null || inChIKey1.toString().trim().length() == 0) return null;
+		if(formula == null || formula.toString().trim().length() == 0) return null;
+		String groupKey = inChIKey1.toString().trim() + "|" + formula.toString().trim();
+		Object inChI = candidate.getProperty(VariableNames.INCHI_NAME);
+		if(inChI == null) return groupKey;
+		String[] layers = inChI.toString().trim().split("/");
+		for(int i = 2; i < layers.length; i++) 
+			if(layers[i].startsWith("q") || layers[i].startsWith("p")) groupKey += "|" + layers[i];
+		return groupKey;
+	}
+	
 	public boolean isThreadStoppedExternally() {
 		return this.threadStoppedExternally;
 	}
@@ -497,4 +971,103 @@ public class CombinedMetFragProcess implements Runnable {
 		}
 		return true;
 	}
+	/**
+	 * processes candidates until all candidates are taken, the processing was cancelled or the processing time limit was reached
+	 * the single process of a finished candidate is released, only its scored candidates are kept
+	 *
+	 */
+	private class CandidateWorker implements Runnable {
+		
+		private final byte numberThreadsPerCandidate;
+		private final Byte maximumTreeDepth;
+		
+		public CandidateWorker(byte numberThreadsPerCandidate, Byte maximumTreeDepth) {
+			this.numberThreadsPerCandidate = numberThreadsPerCandidate;
+			this.maximumTreeDepth = maximumTreeDepth;
+		}
+		
+		public void run() {
+			try {
+				/*
+				 * a candidate is only taken before the deadline, so that all taken candidates are processed
+				 * and the ones left can be counted afterwards
+				 */
+				int position;
+				while(!processingBudget.isCancelled() && !processingBudget.isDeadlinePassed() && (position = nextCandidatePosition.getAndIncrement()) < candidateOrder.length) {
+					int index = candidateOrder[position];
+					ICandidate processedCandidate = this.processCandidate(index, null);
+					/*
+					 * the other candidates of the group take the fragmentation results of the first successfully processed one
+					 */
+					int memberIndex = nextGroupMembers == null ? -1 : nextGroupMembers[index];
+					while(memberIndex != -1 && !processingBudget.isCancelled()) {
+						ICandidate scoredCandidate = this.processCandidate(memberIndex, processedCandidate);
+						if(processedCandidate == null) processedCandidate = scoredCandidate;
+						memberIndex = nextGroupMembers[memberIndex];
+					}
+					/*
+					 * match lists are released after all group members took their copies
+					 */
+					if(matchListRetention != null) {
+						memberIndex = index;
+						while(memberIndex != -1) {
+							if(scoredCandidates[memberIndex] != null) {
+								for(int i = 0; i < scoredCandidates[memberIndex].length; i++) 
+									if(scoredCandidates[memberIndex][i].getMatchList() != null) matchListRetention.add(scoredCandidates[memberIndex][i]);
+							}
+							memberIndex = nextGroupMembers == null ? -1 : nextGroupMembers[memberIndex];
+						}
+					}
+				}
+			}
+			finally {
+				finishedWorkers.countDown();
+			}
+		}
+		
+		/**
+		 * processes a single candidate and stores its scored candidates
+		 * 
+		 * @param index candidate index
+		 * @param processedCandidate candidate whose fragmentation results are taken, null to fragment the candidate
+		 * @return the scored candidate, null if the processing failed or was cancelled
+		 */
+		private ICandidate processCandidate(int index, ICandidate processedCandidate) {
+			long startTime = System.nanoTime();
+			/*
+			 * local settings for each candidate stores a reference to the global settings
+			 */
+			MetFragSingleProcessSettings singleProcessSettings = new MetFragSingleProcessSettings(globalSettings);
+			singleProcessSettings.set(VariableNames.NUMBER_THREADS_PER_CANDIDATE_NAME, this.numberThreadsPerCandidate);
+			if(this.maximumTreeDepth != null) singleProcessSettings.set(VariableNames.MAXIMUM_TREE_DEPTH_NAME, this.maximumTreeDepth);
+			CombinedSingleCandidateMetFragProcess scmfp = new CombinedSingleCandidateMetFragProcess(singleProcessSettings, candidatesToProcess.getElement(index));
+			scmfp.setPreProcessingCandidateFilterCollection(preProcessingCandidateFilterCollection);
+			scmfp.setProcessedCandidate(processedCandidate);
+			/*
+			 * a failing candidate doesn't stop the worker
+			 */
+			try {
+				scmfp.run();
+			} catch(Exception e) {
+				e.printStackTrace();
+			}
+			if(processingBudget.isCancelled()) {
+				scmfp.nullify();
+				return null;
+			}
+			/*
+			 * predicted and actual processing time to refit the cost model
+			 */
+			if(logger.isDebugEnabled() && processedCandidate == null) {
+				logger.debug(candidatesToProcess.getElement(index).getIdentifier() + " processed in " + ((System.nanoTime() - startTime) / 1000000) 
+						+ " ms, predicted " + (predictedProcessingTimes[index] < 0 ? "unknown" : Math.round(predictedProcessingTimes[index] / 1000000.0) + " ms"));
+			}
+			if(!scmfp.wasSuccessful()) return null;
+			scoredCandidates[index] = scmfp.getScoredPrecursorCandidates();
+			//important to eliminate static variables
+			scmfp.getFragmenterAssignerScorer().nullifyScoresCollection();
+			return scmfp.getScoredPrecursorCandidate();
+		}
+	}
+	
 }
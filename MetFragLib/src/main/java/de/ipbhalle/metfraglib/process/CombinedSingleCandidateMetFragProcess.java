@@ -21,6 +21,8 @@ public class CombinedSingleCandidateMetFragProcess implements Runnable {
 	private boolean wasSuccessful;
 	//reference to settings object
 	private Settings settings;
+	//processed candidate with the same first InChIKey block whose fragmentation results are taken, null to fragment the candidate
+	private ICandidate processedCandidate;
 	
 	private Logger logger = Logger.getLogger(CombinedSingleCandidateMetFragProcess.class);
 	
@@ -55,19 +57,7 @@ public class CombinedSingleCandidateMetFragProcess implements Runnable {
 			this.fas.initialise();
 		} catch (Exception e) {
 			//if there's an error processing fails
-			String errorMessage = e.getMessage();
-			if(errorMessage == null && e.getCause() != null) 
-				errorMessage = e.getCause().getMessage();
-			if(logger.isDebugEnabled()) {
-				logger.debug(this.scoredPrecursorCandidates[0].getIdentifier() + " discarded reasoned by -> " + errorMessage);
-			}
-			if(logger.isTraceEnabled()) {
-				e.printStackTrace();
-			}
-			ProcessingStatus processCandidates = (ProcessingStatus)this.settings.get(VariableNames.PROCESS_STATUS_OBJECT_NAME);
-			processCandidates.increaseNumberErrorCandidates();
-			processCandidates.checkNumberFinishedCandidates();
-			this.shallowNullify();
+			this.discardCandidate(e);
 			return;
 		}
 		/*
@@ -102,8 +92,34 @@ public class CombinedSingleCandidateMetFragProcess implements Runnable {
 		 * do the actual work
 		 * fragment candidate, assign fragments and score
 		 */
-		this.fas.calculate();
-		this.fas.assignScores();
+		try {
+			if(this.processedCandidate != null && this.fas.canAdoptFragmentationResults(this.processedCandidate)) {
+				if(logger.isTraceEnabled()) {
+					logger.trace("\t\ttaking fragments of " + this.processedCandidate.getIdentifier());
+				}
+				this.fas.adoptFragmentationResults(this.processedCandidate);
+			}
+			else {
+				if(this.processedCandidate != null && logger.isDebugEnabled()) {
+					logger.debug(this.scoredPrecursorCandidates[0].getIdentifier() + " fragmented, fragments of " + this.processedCandidate.getIdentifier() + " not applicable");
+				}
+				this.fas.calculate();
+				this.fas.assignScores();
+			}
+		} catch (Exception e) {
+			//e.g. inconsistent match tables
+			this.discardCandidate(e);
+			return;
+		}
+		/*
+		 * candidates stopped by a processing budget are kept with the fragments matched so far
+		 */
+		if(this.fas.isBudgetExceeded()) {
+			if(logger.isDebugEnabled()) {
+				logger.debug(this.scoredPrecursorCandidates[0].getIdentifier() + " exceeded the processing budget");
+			}
+			((ProcessingStatus)this.settings.get(VariableNames.PROCESS_STATUS_OBJECT_NAME)).increaseNumberBudgetExceededCandidates();
+		}
 
 		//set the reference to the scored candidate(s)
 		this.scoredPrecursorCandidates = this.fas.getCandidates();
@@ -123,6 +139,27 @@ public class CombinedSingleCandidateMetFragProcess implements Runnable {
 		this.wasSuccessful = true;
 	}
 	
+	/**
+	 * counts the candidate as discarded due to an error during its processing
+	 * 
+	 * @param e
+	 */
+	private void discardCandidate(Exception e) {
+		String errorMessage = e.getMessage();
+		if(errorMessage == null && e.getCause() != null) 
+			errorMessage = e.getCause().getMessage();
+		if(logger.isDebugEnabled()) {
+			logger.debug(this.scoredPrecursorCandidates[0].getIdentifier() + " discarded reasoned by -> " + errorMessage);
+		}
+		if(logger.isTraceEnabled()) {
+			e.printStackTrace();
+		}
+		ProcessingStatus processCandidates = (ProcessingStatus)this.settings.get(VariableNames.PROCESS_STATUS_OBJECT_NAME);
+		processCandidates.increaseNumberErrorCandidates();
+		processCandidates.checkNumberFinishedCandidates();
+		this.shallowNullify();
+	}
+	
 	public AbstractFragmenterAssignerScorer getFragmenterAssignerScorer() {
 		return this.fas;
 	}
@@ -139,6 +176,16 @@ public class CombinedSingleCandidateMetFragProcess implements Runnable {
 		return this.wasSuccessful;
 	}
 	
+	/**
+	 * the candidate is not fragmented but takes the fragmentation results of the given candidate
+	 * if the precursors of both candidates differ in their atoms or bonds the candidate is fragmented nevertheless
+	 * 
+	 * @param processedCandidate successfully processed candidate of the same group (CombinedMetFragProcess)
+	 */
+	public void setProcessedCandidate(ICandidate processedCandidate) {
+		this.processedCandidate = processedCandidate;
+	}
+	
 	public void setPreProcessingCandidateFilterCollection(PreProcessingCandidateFilterCollection preProcessingCandidateFilterCollection) {
 		this.preProcessingCandidateFilterCollection = preProcessingCandidateFilterCollection;
 	}
@@ -0,0 +1,98 @@
+package de.ipbhalle.metfraglib.process;
+
+import de.ipbhalle.metfraglib.interfaces.ICandidate;
+
+/**
+ * keeps the match lists (and through them the matched fragments) only of the best processed candidates
+ * candidates are compared by the weighted sum of their raw score values as the maxima used for the normalisation
+ * are not known before all candidates are processed, the match lists of all other candidates are released
+ * while their score properties are kept so that the scores can still be normalised
+ *
+ * the final best candidates can differ from the retained ones after the normalisation, their match lists
+ * can be generated again afterwards (CombinedMetFragProcess)
+ *
+ */
+public class MatchListRetention {
+
+	private final int maximumNumberMatchLists;
+	private final Double[] weights;
+	private final String[] scoreNames;
+	/*
+	 * retained candidates, worst candidate first
+	 */
+	private final java.util.PriorityQueue<RetainedCandidate> retainedCandidates;
+	private int numberReleasedMatchLists;
+
+	/**
+	 *
+	 * @param maximumNumberMatchLists number of candidates keeping their match lists
+	 * @param weights
+	 * @param scoreNames
+	 */
+	public MatchListRetention(int maximumNumberMatchLists, Double[] weights, String[] scoreNames) {
+		this.maximumNumberMatchLists = maximumNumberMatchLists;
+		this.weights = weights;
+		this.scoreNames = scoreNames;
+		this.retainedCandidates = new java.util.PriorityQueue<RetainedCandidate>(maximumNumberMatchLists + 1);
+		this.numberReleasedMatchLists = 0;
+	}
+
+	/**
+	 * adds a processed candidate, if it isn't among the best candidates so far either its match list
+	 * or the one of the worst retained candidate is released
+	 *
+	 * @param candidate
+	 */
+	public synchronized void add(ICandidate candidate) {
+		this.retainedCandidates.add(new RetainedCandidate(candidate, this.getRawScore(candidate)));
+		if(this.retainedCandidates.size() <= this.maximumNumberMatchLists) return;
+		RetainedCandidate worstCandidate = this.retainedCandidates.poll();
+		worstCandidate.candidate.setMatchList(null);
+		this.numberReleasedMatchLists++;
+	}
+
+	/**
+	 * weighted sum of the raw score values of the candidate
+	 *
+	 * @param candidate
+	 * @return
+	 */
+	protected double getRawScore(ICandidate candidate) {
+		double rawScore = 0.0;
+		for(int i = 0; i < this.scoreNames.length; i++) {
+			Object value = candidate.getProperty(this.scoreNames[i]);
+			if(value == null) continue;
+			try {
+				rawScore += Double.parseDouble(value.toString()) * this.weights[i];
+			} catch(NumberFormatException e) {
+				continue;
+			}
+		}
+		return rawScore;
+	}
+
+	public synchronized int getNumberReleasedMatchLists() {
+		return this.numberReleasedMatchLists;
+	}
+
+	public int getMaximumNumberMatchLists() {
+		return this.maximumNumberMatchLists;
+	}
+
+	private static class RetainedCandidate implements Comparable<RetainedCandidate> {
+
+		private final ICandidate candidate;
+		private final double rawScore;
+
+		private RetainedCandidate(ICandidate candidate, double rawScore) {
+			this.candidate = candidate;
+			this.rawScore = rawScore;
+		}
+
+		public int compareTo(RetainedCandidate retainedCandidate) {
+			return Double.compare(this.rawScore, retainedCandidate.rawScore);
+		}
+
+	}
+
+}
@@ -0,0 +1,70 @@
+package de.ipbhalle.metfraglib.process;
+
+/**
+ * budgets of the candidate processing checked cooperatively inside the fragmentation loops
+ * each candidate has a wall time and a fragment budget, all candidates of one run share a deadline
+ * and are stopped at once if the run is cancelled (CombinedMetFragProcess.terminate())
+ *
+ * budgets not greater than zero are not checked
+ *
+ */
+public class ProcessingBudget {
+
+	private final long maximumCandidateNanos;
+	private final long maximumNumberFragments;
+	/*
+	 * System.nanoTime() based deadline of the run, Long.MAX_VALUE if there is none
+	 */
+	private final long deadline;
+	private volatile boolean cancelled;
+
+	/**
+	 *
+	 * @param maximumCandidateMillis wall time of a single candidate in milliseconds
+	 * @param maximumNumberFragments number of generated fragments of a single candidate
+	 * @param maximumProcessingMillis wall time of all candidates in milliseconds starting now
+	 */
+	public ProcessingBudget(long maximumCandidateMillis, long maximumNumberFragments, long maximumProcessingMillis) {
+		this.maximumCandidateNanos = maximumCandidateMillis > 0 ? maximumCandidateMillis * 1000000L : 0;
+		this.maximumNumberFragments = maximumNumberFragments;
+		this.deadline = maximumProcessingMillis > 0 ? System.nanoTime() + maximumProcessingMillis * 1000000L : Long.MAX_VALUE;
+		this.cancelled = false;
+	}
+
+	/**
+	 * checks whether a candidate exceeded its budgets, the deadline of the run has passed or the run was cancelled
+	 *
+	 * @param candidateStartNanos System.nanoTime() at the start of the candidate processing
+	 * @param numberFragments fragments generated so far for the candidate
+	 * @return
+	 */
+	public boolean isExceeded(long candidateStartNanos, long numberFragments) {
+		if(this.cancelled) return true;
+		if(this.maximumNumberFragments > 0 && numberFragments > this.maximumNumberFragments) return true;
+		long now = System.nanoTime();
+		if(this.maximumCandidateNanos > 0 && now - candidateStartNanos > this.maximumCandidateNanos) return true;
+		return this.deadline != Long.MAX_VALUE && now - this.deadline > 0;
+	}
+
+	/**
+	 * true if any budget is checked
+	 *
+	 * @return
+	 */
+	public boolean isActive() {
+		return this.maximumCandidateNanos > 0 || this.maximumNumberFragments > 0 || this.deadline != Long.MAX_VALUE;
+	}
+
+	public boolean isDeadlinePassed() {
+		return this.deadline != Long.MAX_VALUE && System.nanoTime() - this.deadline > 0;
+	}
+
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+}
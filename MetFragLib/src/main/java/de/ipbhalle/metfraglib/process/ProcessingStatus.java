@@ -17,6 +17,8 @@ public class ProcessingStatus {
 	protected AtomicInteger numberFinishedCandidates;
 	protected AtomicInteger numberErrorCandidates;
 	protected AtomicInteger numberPreFilteredCandidates;
+	protected AtomicInteger numberBudgetExceededCandidates;
+	protected AtomicInteger numberUnprocessedCandidates;
 	protected AtomicInteger percentageValue;
 	protected Logger logger = Logger.getLogger(ProcessingStatus.class);
 	
@@ -29,6 +31,8 @@ public class ProcessingStatus {
 		this.numberFinishedCandidates = new AtomicInteger(0);
 		this.numberErrorCandidates = new AtomicInteger(0);
 		this.numberPreFilteredCandidates = new AtomicInteger(0);
+		this.numberBudgetExceededCandidates = new AtomicInteger(0);
+		this.numberUnprocessedCandidates = new AtomicInteger(0);
 		this.logger.setLevel((Level)settings.get(VariableNames.LOG_LEVEL_NAME));
 	}
 
@@ -51,6 +55,10 @@ public class ProcessingStatus {
 	public synchronized void increaseNumberPreFilteredCandidates() {
 		this.numberPreFilteredCandidates.incrementAndGet();
 	}
+
+	public synchronized void increaseNumberBudgetExceededCandidates() {
+		this.numberBudgetExceededCandidates.incrementAndGet();
+	}
 	
 	public AtomicInteger getNextPercentageValue() {
 		return nextPercentageValue;
@@ -100,6 +108,22 @@ public class ProcessingStatus {
 		this.numberPreFilteredCandidates.set(numberPreFilteredCandidates);
 	}
 
+	public AtomicInteger getNumberBudgetExceededCandidates() {
+		return numberBudgetExceededCandidates;
+	}
+
+	public void setNumberBudgetExceededCandidates(int numberBudgetExceededCandidates) {
+		this.numberBudgetExceededCandidates.set(numberBudgetExceededCandidates);
+	}
+
+	public AtomicInteger getNumberUnprocessedCandidates() {
+		return numberUnprocessedCandidates;
+	}
+
+	public void setNumberUnprocessedCandidates(int numberUnprocessedCandidates) {
+		this.numberUnprocessedCandidates.set(numberUnprocessedCandidates);
+	}
+
 	public String getRetrievingStatusString() {
 		return retrievingStatusString;
 	}
@@ -121,5 +145,7 @@ public class ProcessingStatus {
 		this.numberFinishedCandidates = new AtomicInteger(0);
 		this.numberErrorCandidates = new AtomicInteger(0);
 		this.numberPreFilteredCandidates = new AtomicInteger(0);
+		this.numberBudgetExceededCandidates = new AtomicInteger(0);
+		this.numberUnprocessedCandidates = new AtomicInteger(0);
 	}
 }
@@ -1,7 +1,5 @@
 package de.ipbhalle.metfraglib.score;
 
-import de.ipbhalle.metfraglib.BitArray;
-import de.ipbhalle.metfraglib.additionals.Bond;
 import de.ipbhalle.metfraglib.additionals.BondEnergies;
 import de.ipbhalle.metfraglib.exceptions.RelativeIntensityNotDefinedException;
 import de.ipbhalle.metfraglib.fragment.AbstractTopDownBitArrayFragment;
@@ -14,6 +12,7 @@ import de.ipbhalle.metfraglib.match.DefaultFragmentToPeakMatch;
 import de.ipbhalle.metfraglib.match.FragmentFormulaToPeakMatch;
 import de.ipbhalle.metfraglib.match.FragmentMassToPeakMatch;
 import de.ipbhalle.metfraglib.parameter.VariableNames;
+import de.ipbhalle.metfraglib.peak.PeakScoreFactors;
 import de.ipbhalle.metfraglib.precursor.BitArrayPrecursor;
 import de.ipbhalle.metfraglib.settings.Settings;
 
@@ -38,6 +37,7 @@ public class NewFragmenterHierarchicalScore extends AbstractScore {
 	protected MatchList matchList;
 	
 	protected Double measuredPrecursorMass;
+	protected PeakScoreFactors peakScoreFactors;
 	
 	public NewFragmenterHierarchicalScore(Settings settings) {
 		super(settings);
@@ -47,6 +47,9 @@ public class NewFragmenterHierarchicalScore extends AbstractScore {
 		this.interimResultsCalculated = false;
 		this.usesPiecewiseCalculation = true;
 		this.initialise();
+		this.peakScoreFactors = (PeakScoreFactors)settings.get(VariableNames.PEAK_SCORE_FACTORS_NAME);
+		if(this.peakScoreFactors != null && (this.measuredPrecursorMass == null || !this.peakScoreFactors.isApplicable(this.measuredPrecursorMass, this.ALPHA, this.BETA)))
+			this.peakScoreFactors = null;
 	}
 	
 	public void calculate() {
@@ -64,11 +67,15 @@ public class NewFragmenterHierarchicalScore extends AbstractScore {
 			FragmentList currentFragmentList = currentMatch.getMatchedFragmentList();
 			double minimumEnergyPerMatch = (double)Integer.MAX_VALUE;
 			double peakScore = 0.0;
-			try {
-				peakScore = Math.pow((currentMatch.getMatchedPeak().getMass() / this.measuredPrecursorMass) * 10.0, this.parameters[0]) 
-						* Math.pow(currentMatch.getMatchedPeak().getIntensity(), this.parameters[1]);
-			} catch (RelativeIntensityNotDefinedException e) {
-				e.printStackTrace();
+			if(this.peakScoreFactors != null && this.parameters[0] == this.ALPHA && this.parameters[1] == this.BETA)
+				peakScore = this.peakScoreFactors.getFactor(currentMatch.getMatchedPeak());
+			else {
+				try {
+					peakScore = Math.pow((currentMatch.getMatchedPeak().getMass() / this.measuredPrecursorMass) * 10.0, this.parameters[0]) 
+							* Math.pow(currentMatch.getMatchedPeak().getIntensity(), this.parameters[1]);
+				} catch (RelativeIntensityNotDefinedException e) {
+					e.printStackTrace();
+				}
 			}
 			for(int ii = 0; ii < currentFragmentList.getNumberElements(); ii++) {
 				IFragment currentFragment = currentFragmentList.getElement(ii);
@@ -76,11 +83,7 @@ public class NewFragmenterHierarchicalScore extends AbstractScore {
 				 * check if current fragment is valid based on the tree depth
 				 */
 				if(currentFragment.getTreeDepth() > this.maximumTreeDepth) continue;
-				int[] brokenBondIndeces = currentFragment.getBrokenBondIndeces();
-				double energyOfFragment = 0.0;
-				for(int bondIndex : brokenBondIndeces) {
-					energyOfFragment += this.bondEnergies[bondIndex];
-				}
+				double energyOfFragment = this.getBrokenBondsEnergy(currentFragment);
 				energyOfFragment += Math.abs(currentMatch.getNumberOfHydrogensDifferToPeakMass(ii)) * this.WEIGHT_HYDROGEN_PENALTY;
 				/*
 				 * assign optimal bondenergy and store best fragment
@@ -113,11 +116,15 @@ public class NewFragmenterHierarchicalScore extends AbstractScore {
 		FragmentList currentFragmentList = currentMatch.getMatchedFragmentList();
 		double minimumEnergyPerMatch = (double)Integer.MAX_VALUE;
 		double peakScore = 0.0;
-		try {
-			peakScore = Math.pow((currentMatch.getMatchedPeak().getMass() / this.measuredPrecursorMass) * 10.0, this.ALPHA) 
-					* Math.pow(currentMatch.getMatchedPeak().getIntensity(), this.BETA);
-		} catch (RelativeIntensityNotDefinedException e) {
-			e.printStackTrace();
+		if(this.peakScoreFactors != null)
+			peakScore = this.peakScoreFactors.getFactor(currentMatch.getMatchedPeak());
+		else {
+			try {
+				peakScore = Math.pow((currentMatch.getMatchedPeak().getMass() / this.measuredPrecursorMass) * 10.0, this.ALPHA) 
+						* Math.pow(currentMatch.getMatchedPeak().getIntensity(), this.BETA);
+			} catch (RelativeIntensityNotDefinedException e) {
+				e.printStackTrace();
+			}
 		}
 		for(int ii = 0; ii < currentFragmentList.getNumberElements(); ii++) {
 			IFragment currentFragment = currentFragmentList.getElement(ii);
@@ -125,11 +132,7 @@ public class NewFragmenterHierarchicalScore extends AbstractScore {
 			 * check if current fragment is valid based on the tree depth
 			 */
 			if(currentFragment.getTreeDepth() > this.maximumTreeDepth) continue;
-			int[] brokenBondIndeces = this.getBrokenBondIndeces(currentFragment);
-			double energyOfFragment = 0.0;
-			for(int bondIndex : brokenBondIndeces) {
-				energyOfFragment += this.bondEnergies[bondIndex];
-			}
+			double energyOfFragment = this.getNotConsideredBrokenBondsEnergy(currentFragment);
 			energyOfFragment += Math.abs(currentMatch.getNumberOfHydrogensDifferToPeakMass(ii)) * this.WEIGHT_HYDROGEN_PENALTY;
 			/*
 			 * assign optimal bondenergy and store best fragment
@@ -147,58 +150,50 @@ public class NewFragmenterHierarchicalScore extends AbstractScore {
 	}
 	
 	/**
-	 * retrieve broken bonds of given fragment that haven't been considered yet
+	 * summed energy of the broken bonds of the given fragment
+	 * top down fragments carry the energy accumulated during fragment generation
 	 * 
 	 * @param currentFragment
 	 * @return
 	 */
-	protected int[] getBrokenBondIndeces(IFragment currentFragment) {
-		AbstractTopDownBitArrayFragment castFragment = null;
-		BitArray currentBrokenBondIndeces = null;
-		try {
-			castFragment = ((AbstractTopDownBitArrayFragment)currentFragment);
-		}
-		catch(ClassCastException e) {
-			return currentFragment.getBrokenBondIndeces();
+	protected double getBrokenBondsEnergy(IFragment currentFragment) {
+		if(currentFragment instanceof AbstractTopDownBitArrayFragment) 
+			return ((AbstractTopDownBitArrayFragment)currentFragment).getBrokenBondsEnergy(this.bondEnergies);
+		double energyOfFragment = 0.0;
+		int[] brokenBondIndeces = currentFragment.getBrokenBondIndeces();
+		for(int bondIndex : brokenBondIndeces) {
+			energyOfFragment += this.bondEnergies[bondIndex];
 		}
-		currentBrokenBondIndeces = castFragment.getBrokenBondsBitArray();
+		return energyOfFragment;
+	}
+	
+	/**
+	 * retrieve energy of the broken bonds of given fragment that haven't been considered yet
+	 * the broken bonds of a precursor fragment are a subset of the fragment's broken bonds 
+	 * so the energy of the first matched precursor fragment can be subtracted
+	 * 
+	 * @param currentFragment
+	 * @return
+	 */
+	protected double getNotConsideredBrokenBondsEnergy(IFragment currentFragment) {
+		if(!(currentFragment instanceof AbstractTopDownBitArrayFragment)) 
+			return this.getBrokenBondsEnergy(currentFragment);
+		AbstractTopDownBitArrayFragment castFragment = (AbstractTopDownBitArrayFragment)currentFragment;
+		double energyOfFragment = castFragment.getBrokenBondsEnergy(this.bondEnergies);
 		AbstractTopDownBitArrayFragment father = castFragment.getPrecursorFragment();
 		while (father != null) {
 			if(father.hasMatched()) {
-				currentBrokenBondIndeces = currentBrokenBondIndeces.getDiff(father.getBrokenBondsBitArray());
-				
+				energyOfFragment -= father.getBrokenBondsEnergy(this.bondEnergies);
 				break;
 			}
 			father = father.getPrecursorFragment();
 		}
-		return currentBrokenBondIndeces.getSetIndeces();
+		return energyOfFragment;
 	}
 	
 	protected void initialise() {
-		this.bondEnergies = new double[((BitArrayPrecursor)this.scoredCandidate.getPrecursorMolecule()).getNonHydrogenBondCount()];
-		BitArrayPrecursor bitArrayPrecursor = (BitArrayPrecursor)this.scoredCandidate.getPrecursorMolecule();
-		for(short i = 0; i < bitArrayPrecursor.getNonHydrogenBondCount(); i++) {
-			String[] bondAtomsAsString = bitArrayPrecursor.getBondAtomsAsString(i);
-			this.bondEnergies[i] = 
-					this.getSingleBondEnergy(
-							bondAtomsAsString[0], bondAtomsAsString[1], 
-							bitArrayPrecursor.getBondOrder(i), bitArrayPrecursor.isAromaticBond(i));
-		}
-	}
-	
-	protected double getSingleBondEnergy(String symbol1, String symbol2, String type, boolean isAromaticBond) {
-		char typeChar = '=';
-		if (!isAromaticBond) {
-			if (type.equals("SINGLE"))
-				typeChar = '-';
-			else if (type.equals("DOUBLE"))
-				typeChar = '=';
-			else if (type.equals("TRIPLE"))
-				typeChar = '~';
-			else typeChar = '-';
-		}
-		BondEnergies be = (BondEnergies)this.settings.get(VariableNames.BOND_ENERGY_OBJECT_NAME);
-		return be.get(new Bond(symbol1, symbol2, typeChar));
+		BondEnergies bondEnergies = (BondEnergies)this.settings.get(VariableNames.BOND_ENERGY_OBJECT_NAME);
+		this.bondEnergies = ((BitArrayPrecursor)this.scoredCandidate.getPrecursorMolecule()).getBondEnergies(bondEnergies);
 	}
 	
 	public void shallowNullify() {
@@ -209,5 +204,6 @@ public class NewFragmenterHierarchicalScore extends AbstractScore {
 		super.nullify();
 		this.bondEnergies = null;
 		this.optimalValues = null;
+		this.peakScoreFactors = null;
 	}
 }
@@ -1,16 +1,17 @@
 package de.ipbhalle.metfraglib.score;
 
-import de.ipbhalle.metfraglib.additionals.Bond;
 import de.ipbhalle.metfraglib.additionals.BondEnergies;
 import de.ipbhalle.metfraglib.exceptions.RelativeIntensityNotDefinedException;
 import de.ipbhalle.metfraglib.fragment.AbstractTopDownBitArrayFragment;
 import de.ipbhalle.metfraglib.interfaces.ICandidate;
 import de.ipbhalle.metfraglib.interfaces.IFragment;
 import de.ipbhalle.metfraglib.interfaces.IMatch;
+import de.ipbhalle.metfraglib.interfaces.IPeak;
 import de.ipbhalle.metfraglib.list.FragmentList;
 import de.ipbhalle.metfraglib.list.MatchList;
 import de.ipbhalle.metfraglib.match.HDFragmentMassToPeakMatch;
 import de.ipbhalle.metfraglib.parameter.VariableNames;
+import de.ipbhalle.metfraglib.peak.PeakScoreFactors;
 import de.ipbhalle.metfraglib.precursor.BitArrayPrecursor;
 import de.ipbhalle.metfraglib.settings.Settings;
 
@@ -35,6 +36,7 @@ public class NewFragmenterScore extends AbstractScore {
 	protected MatchList matchList;
 	
 	protected Double measuredPrecursorMass;
+	protected PeakScoreFactors peakScoreFactors;
 	
 	public NewFragmenterScore(Settings settings) {
 		super(settings);
@@ -46,6 +48,12 @@ public class NewFragmenterScore extends AbstractScore {
 		this.calculationFinished = true;
 		this.usesPiecewiseCalculation = true;
 		this.initialise();
+		/*
+		 * peak factors calculated once for the spectrum are only used if they fit the precursor mass and exponents of this score
+		 */
+		this.peakScoreFactors = (PeakScoreFactors)settings.get(VariableNames.PEAK_SCORE_FACTORS_NAME);
+		if(this.peakScoreFactors != null && (this.measuredPrecursorMass == null || !this.peakScoreFactors.isApplicable(this.measuredPrecursorMass, this.ALPHA, this.BETA)))
+			this.peakScoreFactors = null;
 	}
 	
 	public void calculate() {
@@ -58,11 +66,15 @@ public class NewFragmenterScore extends AbstractScore {
 			FragmentList currentFragmentList = currentMatch.getMatchedFragmentList();
 			double minimumEnergyPerMatch = (double)Integer.MAX_VALUE;
 			double peakScore = 0.0;
-			try {
-				peakScore = Math.pow((currentMatch.getMatchedPeak().getMass() / this.measuredPrecursorMass) * 100.0, this.parameters[0]) 
-						* Math.pow(currentMatch.getMatchedPeak().getIntensity(), this.parameters[1]);
-			} catch (RelativeIntensityNotDefinedException e) {
-				e.printStackTrace();
+			if(this.peakScoreFactors != null && this.parameters[0] == this.ALPHA && this.parameters[1] == this.BETA)
+				peakScore = this.peakScoreFactors.getScaledFactor(currentMatch.getMatchedPeak());
+			else {
+				try {
+					peakScore = Math.pow((currentMatch.getMatchedPeak().getMass() / this.measuredPrecursorMass) * 100.0, this.parameters[0]) 
+							* Math.pow(currentMatch.getMatchedPeak().getIntensity(), this.parameters[1]);
+				} catch (RelativeIntensityNotDefinedException e) {
+					e.printStackTrace();
+				}
 			}
 			for(int ii = 0; ii < currentFragmentList.getNumberElements(); ii++) {
 				IFragment currentFragment = currentFragmentList.getElement(ii);
@@ -70,11 +82,7 @@ public class NewFragmenterScore extends AbstractScore {
 				 * check if current fragment is valid based on the tree depth
 				 */
 //				if(currentFragment.getTreeDepth() > this.maximumTreeDepth) continue;
-				int[] brokenBondIndeces = currentFragment.getBrokenBondIndeces();
-				double energyOfFragment = 0.0;
-				for(int bondIndex : brokenBondIndeces) {
-					energyOfFragment += this.bondEnergies[bondIndex];
-				}
+				double energyOfFragment = this.getBrokenBondsEnergy(currentFragment);
 				energyOfFragment += Math.abs(currentMatch.getNumberOfOverallHydrogensDifferToPeakMass(ii)) * this.WEIGHT_HYDROGEN_PENALTY;
 				/*
 				 * assign optimal bondenergy and store best fragment
@@ -102,13 +110,7 @@ public class NewFragmenterScore extends AbstractScore {
 		if(currentMatch instanceof HDFragmentMassToPeakMatch) return new Double[] {0.0, null};
 		FragmentList currentFragmentList = currentMatch.getMatchedFragmentList();
 		double minimumEnergyPerMatch = (double)Integer.MAX_VALUE;
-		double peakScore = 0.0;
-		try {
-			peakScore = Math.pow((currentMatch.getMatchedPeak().getMass() / this.measuredPrecursorMass) * 10.0, this.ALPHA) 
-					* Math.pow(currentMatch.getMatchedPeak().getIntensity(), this.BETA);
-		} catch (RelativeIntensityNotDefinedException e) {
-			e.printStackTrace();
-		}
+		double peakScore = this.getPeakScore(currentMatch.getMatchedPeak());
 		int indexOfBestFragment = -1;
 		for(int ii = 0; ii < currentFragmentList.getNumberElements(); ii++) {
 			IFragment currentFragment = currentFragmentList.getElement(ii);
@@ -116,11 +118,7 @@ public class NewFragmenterScore extends AbstractScore {
 			 * check if current fragment is valid based on the tree depth
 			 */
 //			if(currentFragment.getTreeDepth() > this.maximumTreeDepth) continue;
-			int[] brokenBondIndeces = ((AbstractTopDownBitArrayFragment)currentFragment).getBrokenBondsBitArray().getSetIndeces();
-			double energyOfFragment = 0.0;
-			for(int bondIndex : brokenBondIndeces) {
-				energyOfFragment += this.bondEnergies[bondIndex];
-			}
+			double energyOfFragment = ((AbstractTopDownBitArrayFragment)currentFragment).getBrokenBondsEnergy(this.bondEnergies);
 			energyOfFragment += Math.abs(currentMatch.getNumberOfOverallHydrogensDifferToPeakMass(ii)) * this.WEIGHT_HYDROGEN_PENALTY;
 			/*
 			 * assign optimal bondenergy and store best fragment
@@ -140,30 +138,64 @@ public class NewFragmenterScore extends AbstractScore {
 	}
 	
 	protected void initialise() {
-		this.bondEnergies = new double[((BitArrayPrecursor)this.scoredCandidate.getPrecursorMolecule()).getNonHydrogenBondCount()];
-		BitArrayPrecursor bitArrayPrecursor = (BitArrayPrecursor)this.scoredCandidate.getPrecursorMolecule();
-		for(short i = 0; i < bitArrayPrecursor.getNonHydrogenBondCount(); i++) {
-			String[] bondAtomsAsString = bitArrayPrecursor.getBondAtomsAsString(i);
-			this.bondEnergies[i] = 
-					this.getSingleBondEnergy(
-							bondAtomsAsString[0], bondAtomsAsString[1], 
-							bitArrayPrecursor.getBondOrder(i), bitArrayPrecursor.isAromaticBond(i));
+		BondEnergies bondEnergies = (BondEnergies)this.settings.get(VariableNames.BOND_ENERGY_OBJECT_NAME);
+		this.bondEnergies = ((BitArrayPrecursor)this.scoredCandidate.getPrecursorMolecule()).getBondEnergies(bondEnergies);
+	}
+	
+	/**
+	 * peak dependent part of the score
+	 * taken from the factors calculated once for the spectrum if available
+	 * 
+	 * @param peak
+	 * @return
+	 */
+	public double getPeakScore(IPeak peak) {
+		if(this.peakScoreFactors != null) return this.peakScoreFactors.getFactor(peak);
+		double peakScore = 0.0;
+		try {
+			peakScore = Math.pow((peak.getMass() / this.measuredPrecursorMass) * 10.0, this.ALPHA) 
+					* Math.pow(peak.getIntensity(), this.BETA);
+		} catch (RelativeIntensityNotDefinedException e) {
+			e.printStackTrace();
 		}
+		return peakScore;
+	}
+	
+	/**
+	 * energy dependent divisor of the score of a single match
+	 * 
+	 * @param energy broken bonds energy including the hydrogen penalty
+	 * @return
+	 */
+	public double getEnergyWeight(double energy) {
+		return Math.pow(energy, this.GAMMA);
 	}
 	
-	protected double getSingleBondEnergy(String symbol1, String symbol2, String type, boolean isAromaticBond) {
-		char typeChar = '=';
-		if (!isAromaticBond) {
-			if (type.equals("SINGLE"))
-				typeChar = '-';
-			else if (type.equals("DOUBLE"))
-				typeChar = '=';
-			else if (type.equals("TRIPLE"))
-				typeChar = '~';
-			else typeChar = '-';
+	/**
+	 * bond energies of the scored candidate indexed by bond index
+	 * 
+	 * @return
+	 */
+	public double[] getBondEnergies() {
+		return this.bondEnergies;
+	}
+	
+	/**
+	 * summed energy of the broken bonds of the given fragment
+	 * top down fragments carry the energy accumulated during fragment generation
+	 * 
+	 * @param fragment
+	 * @return
+	 */
+	protected double getBrokenBondsEnergy(IFragment fragment) {
+		if(fragment instanceof AbstractTopDownBitArrayFragment) 
+			return ((AbstractTopDownBitArrayFragment)fragment).getBrokenBondsEnergy(this.bondEnergies);
+		double energyOfFragment = 0.0;
+		int[] brokenBondIndeces = fragment.getBrokenBondIndeces();
+		for(int bondIndex : brokenBondIndeces) {
+			energyOfFragment += this.bondEnergies[bondIndex];
 		}
-		BondEnergies be = (BondEnergies)this.settings.get(VariableNames.BOND_ENERGY_OBJECT_NAME);
-		return be.get(new Bond(symbol1, symbol2, typeChar));
+		return energyOfFragment;
 	}
 
 	public void shallowNullify() {
@@ -173,5 +205,6 @@ public class NewFragmenterScore extends AbstractScore {
 	public void nullify() {
 		this.bondEnergies = null;
 		this.optimalValues = null;
+		this.peakScoreFactors = null;
 	}
 }
@@ -1,6 +1,5 @@
 package de.ipbhalle.metfraglib.score;
 
-import de.ipbhalle.metfraglib.exceptions.RelativeIntensityNotDefinedException;
 import de.ipbhalle.metfraglib.interfaces.ICandidate;
 import de.ipbhalle.metfraglib.interfaces.IFragment;
 import de.ipbhalle.metfraglib.interfaces.IMatch;
@@ -45,21 +44,11 @@ public class NewFragmenterUniqueFormulaScore extends NewFragmenterScore {
 			else 
 				currentMatch = (FragmentFormulaToPeakMatch)this.matchList.getElement(i);
 			FragmentList currentFragmentList = currentMatch.getMatchedFragmentList();
-			double peakScore = 0.0;
-			try {
-				peakScore = Math.pow((currentMatch.getMatchedPeak().getMass() / this.measuredPrecursorMass) * 10.0, this.ALPHA) 
-						* Math.pow(currentMatch.getMatchedPeak().getIntensity(), this.BETA);
-			} catch (RelativeIntensityNotDefinedException e) {
-				e.printStackTrace();
-			}
+			double peakScore = this.getPeakScore(currentMatch.getMatchedPeak());
 			for(int ii = 0; ii < currentFragmentList.getNumberElements(); ii++) {
 				IFragment currentFragment = currentFragmentList.getElement(ii);
 //				if(currentFragment.getTreeDepth() > this.maximumTreeDepth) continue;
-				int[] brokenBondIndeces = currentFragment.getBrokenBondIndeces();
-				double energyOfFragment = 0.0;
-				for(int bondIndex : brokenBondIndeces) {
-					energyOfFragment += this.bondEnergies[bondIndex];
-				}
+				double energyOfFragment = this.getBrokenBondsEnergy(currentFragment);
 				energyOfFragment += Math.abs(currentMatch.getNumberOfHydrogensDifferToPeakMass(ii)) * this.WEIGHT_HYDROGEN_PENALTY;
 				double currentScore = peakScore / Math.pow(energyOfFragment, this.GAMMA);
 				int index = fragmentIds.indexOf(currentFragment.getID());
@@ -150,24 +139,14 @@ public class NewFragmenterUniqueFormulaScore extends NewFragmenterScore {
 			currentMatch = (FragmentFormulaToPeakMatch)match;
 		FragmentList currentFragmentList = currentMatch.getMatchedFragmentList();
 		double minimumEnergyPerMatch = (double)Integer.MAX_VALUE;
-		double peakScore = 0.0;
-		try {
-			peakScore = Math.pow((currentMatch.getMatchedPeak().getMass() / this.measuredPrecursorMass) * 10.0, this.ALPHA) 
-					* Math.pow(currentMatch.getMatchedPeak().getIntensity(), this.BETA);
-		} catch (RelativeIntensityNotDefinedException e) {
-			e.printStackTrace();
-		}
+		double peakScore = this.getPeakScore(currentMatch.getMatchedPeak());
 		for(int ii = 0; ii < currentFragmentList.getNumberElements(); ii++) {
 			IFragment currentFragment = currentFragmentList.getElement(ii);
 			/*
 			 * check if current fragment is valid based on the tree depth
 			 */
 //			if(currentFragment.getTreeDepth() > this.maximumTreeDepth) continue;
-			int[] brokenBondIndeces = currentFragment.getBrokenBondIndeces();
-			double energyOfFragment = 0.0;
-			for(int bondIndex : brokenBondIndeces) {
-				energyOfFragment += this.bondEnergies[bondIndex];
-			}
+			double energyOfFragment = this.getBrokenBondsEnergy(currentFragment);
 			energyOfFragment += Math.abs(currentMatch.getNumberOfHydrogensDifferToPeakMass(ii)) * this.WEIGHT_HYDROGEN_PENALTY;
 			/*
 			 * assign optimal bondenergy and store best fragment
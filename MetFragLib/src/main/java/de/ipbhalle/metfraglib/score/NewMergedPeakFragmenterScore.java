@@ -76,11 +76,7 @@ public class NewMergedPeakFragmenterScore extends NewFragmenterScore {
 				 * check if current fragment is valid based on the tree depth
 				 */
 //				if(currentFragment.getTreeDepth() > this.maximumTreeDepth) continue;
-				int[] brokenBondIndeces = currentFragment.getBrokenBondIndeces();
-				double energyOfFragment = 0.0;
-				for(int bondIndex : brokenBondIndeces) {
-					energyOfFragment += this.bondEnergies[bondIndex];
-				}
+				double energyOfFragment = this.getBrokenBondsEnergy(currentFragment);
 				energyOfFragment += Math.abs(currentMatch.getNumberOfHydrogensDifferToPeakMass(ii)) * this.WEIGHT_HYDROGEN_PENALTY;
 				/*
 				 * assign optimal bondenergy and store best fragment
@@ -0,0 +1,24 @@
+package de.ipbhalle.metfraglib.scoreinitialisation;
+
+import de.ipbhalle.metfraglib.interfaces.IScoreInitialiser;
+import de.ipbhalle.metfraglib.list.DefaultList;
+import de.ipbhalle.metfraglib.parameter.VariableNames;
+import de.ipbhalle.metfraglib.peak.PeakScoreFactors;
+import de.ipbhalle.metfraglib.settings.Settings;
+
+/*
+ *
+ * calculates the peak dependent factors of the fragmenter scores once for the spectrum
+ *
+ */
+public class FragmenterScoreInitialiser implements IScoreInitialiser {
+
+	@Override
+	public void initScoreParameters(Settings settings) {
+		DefaultList peakList = (DefaultList)settings.get(VariableNames.PEAK_LIST_NAME);
+		Double precursorMass = (Double)settings.get(VariableNames.PRECURSOR_NEUTRAL_MASS_NAME);
+		if(peakList == null || precursorMass == null) return;
+		settings.set(VariableNames.PEAK_SCORE_FACTORS_NAME, new PeakScoreFactors(peakList, precursorMass, PeakScoreFactors.ALPHA, PeakScoreFactors.BETA));
+	}
+
+}
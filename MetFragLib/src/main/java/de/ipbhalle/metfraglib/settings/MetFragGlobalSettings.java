@@ -22,6 +22,7 @@ public class MetFragGlobalSettings extends Settings {
 		this.defaults.put(VariableNames.CONSIDER_HYDROGEN_SHIFTS_NAME, Constants.DEFAULT_CONSIDER_HYDROGEN_MASS_DIFFERENCE);
 		this.defaults.put(VariableNames.PRECURSOR_ION_MODE_NAME, Constants.DEFAULT_PRECURSOR_ION_TYPE);
 		this.defaults.put(VariableNames.NUMBER_THREADS_NAME, Constants.DEFAULT_NUMBER_THREADS);
+		this.defaults.put(VariableNames.NUMBER_THREADS_PER_CANDIDATE_NAME, Constants.DEFAULT_NUMBER_THREADS_PER_CANDIDATE);
 		this.defaults.put(VariableNames.NUMBER_OF_DIGITS_AFTER_ROUNDING_NAME, Constants.DEFAULT_NUMBER_OF_DIGITS_AFTER_ROUNDING);
 		this.defaults.put(VariableNames.SCORE_NAMES_NOT_TO_SCALE, Constants.DEFAULT_SCORE_NAMES_NOT_TO_SCALE);
 		/*
@@ -50,6 +51,20 @@ public class MetFragGlobalSettings extends Settings {
 		this.defaults.put(VariableNames.LOG_LEVEL_NAME, Constants.DEFAULT_LOG_LEVEL);
 		this.defaults.put(VariableNames.MAXIMUM_NUMBER_OF_TOPDOWN_FRAGMENT_ADDED_TO_QUEUE, Constants.DEFAULT_MAXIMUM_NUMBER_OF_TOPDOWN_FRAGMENT_ADDED_TO_QUEUE);
 		this.defaults.put(VariableNames.METFRAG_UNIQUE_FRAGMENT_MATCHES, Constants.DEFAULT_METFRAG_UNIQUE_FRAGMENT_MATCHES);
+		this.defaults.put(VariableNames.METFRAG_USE_FRAGMENT_ARENA, Constants.DEFAULT_METFRAG_USE_FRAGMENT_ARENA);
+		this.defaults.put(VariableNames.METFRAG_SYMMETRY_AWARE_FRAGMENTATION, Constants.DEFAULT_METFRAG_SYMMETRY_AWARE_FRAGMENTATION);
+		this.defaults.put(VariableNames.METFRAG_BRANCH_AND_BOUND_PRUNING, Constants.DEFAULT_METFRAG_BRANCH_AND_BOUND_PRUNING);
+		this.defaults.put(VariableNames.METFRAG_BRANCH_AND_BOUND_TOLERANCE, Constants.DEFAULT_METFRAG_BRANCH_AND_BOUND_TOLERANCE);
+		this.defaults.put(VariableNames.METFRAG_TREE_DEPTH_FRAGMENT_BUDGET, Constants.DEFAULT_METFRAG_TREE_DEPTH_FRAGMENT_BUDGET);
+		this.defaults.put(VariableNames.METFRAG_TREE_DEPTH_TIME_BUDGET, Constants.DEFAULT_METFRAG_TREE_DEPTH_TIME_BUDGET);
+		this.defaults.put(VariableNames.METFRAG_CANDIDATE_TIME_BUDGET, Constants.DEFAULT_METFRAG_CANDIDATE_TIME_BUDGET);
+		this.defaults.put(VariableNames.METFRAG_CANDIDATE_FRAGMENT_BUDGET, Constants.DEFAULT_METFRAG_CANDIDATE_FRAGMENT_BUDGET);
+		this.defaults.put(VariableNames.METFRAG_PROCESSING_TIME_LIMIT, Constants.DEFAULT_METFRAG_PROCESSING_TIME_LIMIT);
+		this.defaults.put(VariableNames.METFRAG_RETAINED_MATCH_LISTS, Constants.DEFAULT_METFRAG_RETAINED_MATCH_LISTS);
+		this.defaults.put(VariableNames.METFRAG_REGENERATE_MATCH_LISTS, Constants.DEFAULT_METFRAG_REGENERATE_MATCH_LISTS);
+		this.defaults.put(VariableNames.METFRAG_PRESCREEN_FRACTION, Constants.DEFAULT_METFRAG_PRESCREEN_FRACTION);
+		this.defaults.put(VariableNames.METFRAG_PRESCREEN_NUMBER_CANDIDATES, Constants.DEFAULT_METFRAG_PRESCREEN_NUMBER_CANDIDATES);
+		this.defaults.put(VariableNames.METFRAG_COLLAPSE_INCHIKEY1_DUPLICATES, Constants.DEFAULT_METFRAG_COLLAPSE_INCHIKEY1_DUPLICATES);
 
 		this.defaults.put(VariableNames.USER_LOG_P_VALUE_NAME, Constants.DEFAULT_LOG_P_VALUE_NAME);
 
@@ -0,0 +1,99 @@
+package de.ipbhalle.metfraglib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import de.ipbhalle.metfraglib.interfaces.ICandidate;
+import de.ipbhalle.metfraglib.interfaces.IMatch;
+import de.ipbhalle.metfraglib.list.MatchList;
+import de.ipbhalle.metfraglib.list.ScoredCandidateList;
+import de.ipbhalle.metfraglib.parameter.VariableNames;
+import de.ipbhalle.metfraglib.process.CombinedMetFragProcess;
+import de.ipbhalle.metfraglib.settings.MetFragGlobalSettings;
+
+/**
+ * runs the candidates and the peak list of example 1 (RunExample1_Test) with different settings
+ * and compares the results candidate by candidate
+ * used to check that a processing variant gives the same results as the default processing
+ *
+ */
+public class RunExample1Comparison {
+
+	/**
+	 * settings of example 1
+	 *
+	 * @return
+	 */
+	public static MetFragGlobalSettings getSettings() {
+		MetFragGlobalSettings settings = new MetFragGlobalSettings();
+		settings.set(VariableNames.PEAK_LIST_PATH_NAME, ClassLoader.getSystemResource("peaklist_file_example_1.txt").getFile());
+		settings.set(VariableNames.LOCAL_DATABASE_PATH_NAME, ClassLoader.getSystemResource("candidate_file_example_1.txt").getFile());
+		settings.set(VariableNames.RELATIVE_MASS_DEVIATION_NAME, 5.0);
+		settings.set(VariableNames.ABSOLUTE_MASS_DEVIATION_NAME, 0.001);
+		settings.set(VariableNames.PRECURSOR_NEUTRAL_MASS_NAME, 253.966126);
+		settings.set(VariableNames.METFRAG_DATABASE_TYPE_NAME, "LocalCSV");
+		return settings;
+	}
+
+	/**
+	 * processes all candidates and returns the scored candidates by their identifiers
+	 *
+	 * @param settings
+	 * @return
+	 * @throws Exception
+	 */
+	public static java.util.Hashtable<String, ICandidate> run(MetFragGlobalSettings settings) throws Exception {
+		CombinedMetFragProcess metfragProcess = new CombinedMetFragProcess(settings);
+		metfragProcess.retrieveCompounds();
+		metfragProcess.run();
+		ScoredCandidateList scoredCandidateList = (ScoredCandidateList)metfragProcess.getCandidateList();
+		java.util.Hashtable<String, ICandidate> candidates = new java.util.Hashtable<String, ICandidate>();
+		for(int i = 0; i < scoredCandidateList.getNumberElements(); i++)
+			candidates.put(scoredCandidateList.getElement(i).getIdentifier(), scoredCandidateList.getElement(i));
+		return candidates;
+	}
+
+	/**
+	 * compares the scores, the explained peaks and the best matched fragments of the candidates
+	 *
+	 * @param expectedCandidates
+	 * @param candidates
+	 * @param scoreTypes
+	 * @param compareFragmentAtoms if false only the formulas of the best matched fragments are compared
+	 */
+	public static void assertEqualResults(java.util.Hashtable<String, ICandidate> expectedCandidates, java.util.Hashtable<String, ICandidate> candidates,
+			String[] scoreTypes, boolean compareFragmentAtoms) {
+		assertEquals("Error: Different number of candidates", expectedCandidates.size(), candidates.size());
+		java.util.Enumeration<String> identifiers = expectedCandidates.keys();
+		while(identifiers.hasMoreElements()) {
+			String identifier = identifiers.nextElement();
+			ICandidate expectedCandidate = expectedCandidates.get(identifier);
+			ICandidate candidate = candidates.get(identifier);
+			assertNotNull("Error: Candidate " + identifier + " not found", candidate);
+			for(int i = 0; i < scoreTypes.length; i++) {
+				assertEquals("Error: Different " + scoreTypes[i] + " of candidate " + identifier,
+						String.valueOf(expectedCandidate.getProperty(scoreTypes[i])), String.valueOf(candidate.getProperty(scoreTypes[i])));
+				assertEquals("Error: Different " + scoreTypes[i] + "_Values of candidate " + identifier,
+						String.valueOf(expectedCandidate.getProperty(scoreTypes[i] + "_Values")), String.valueOf(candidate.getProperty(scoreTypes[i] + "_Values")));
+			}
+			assertEquals("Error: Different Score of candidate " + identifier,
+					String.valueOf(expectedCandidate.getProperty(VariableNames.FINAL_SCORE_COLUMN_NAME)), String.valueOf(candidate.getProperty(VariableNames.FINAL_SCORE_COLUMN_NAME)));
+			MatchList expectedMatchList = expectedCandidate.getMatchList();
+			MatchList matchList = candidate.getMatchList();
+			assertNotNull("Error: No match list of candidate " + identifier, expectedMatchList);
+			assertNotNull("Error: No match list of candidate " + identifier, matchList);
+			assertEquals("Error: Different number of explained peaks of candidate " + identifier, expectedMatchList.getNumberElements(), matchList.getNumberElements());
+			for(int k = 0; k < expectedMatchList.getNumberElements(); k++) {
+				IMatch expectedMatch = expectedMatchList.getElement(k);
+				IMatch match = matchList.getElement(k);
+				assertEquals("Error: Different explained peak of candidate " + identifier, expectedMatch.getMatchedPeak().getMass(), match.getMatchedPeak().getMass(), 0.0);
+				assertEquals("Error: Different best fragment formula of candidate " + identifier,
+						expectedMatch.getModifiedFormulaStringOfBestMatchedFragment(), match.getModifiedFormulaStringOfBestMatchedFragment());
+				if(compareFragmentAtoms)
+					assertEquals("Error: Different best fragment of candidate " + identifier,
+							expectedMatch.getBestMatchedFragment().getAtomsInfo(), match.getBestMatchedFragment().getAtomsInfo());
+			}
+		}
+	}
+
+}
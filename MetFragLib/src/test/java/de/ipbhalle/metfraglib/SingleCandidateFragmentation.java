@@ -0,0 +1,167 @@
+package de.ipbhalle.metfraglib;
+
+import de.ipbhalle.metfraglib.additionals.BondEnergies;
+import de.ipbhalle.metfraglib.candidate.TopDownPrecursorCandidate;
+import de.ipbhalle.metfraglib.fragment.AbstractTopDownBitArrayFragment;
+import de.ipbhalle.metfraglib.fragmenterassignerscorer.AbstractFragmenterAssignerScorer;
+import de.ipbhalle.metfraglib.interfaces.ICandidate;
+import de.ipbhalle.metfraglib.interfaces.IMatch;
+import de.ipbhalle.metfraglib.list.MatchList;
+import de.ipbhalle.metfraglib.list.SiriusNodePeakList;
+import de.ipbhalle.metfraglib.list.SortedTandemMassPeakList;
+import de.ipbhalle.metfraglib.molecularformula.ByteMolecularFormula;
+import de.ipbhalle.metfraglib.parameter.Constants;
+import de.ipbhalle.metfraglib.parameter.VariableNames;
+import de.ipbhalle.metfraglib.peak.TandemMassPeak;
+import de.ipbhalle.metfraglib.precursor.AbstractTopDownBitArrayPrecursor;
+import de.ipbhalle.metfraglib.scoreinitialisation.FragmenterScoreInitialiser;
+import de.ipbhalle.metfraglib.settings.MetFragGlobalSettings;
+import de.ipbhalle.metfraglib.settings.MetFragSingleProcessSettings;
+import de.ipbhalle.metfraglib.settings.Settings;
+
+/**
+ * fragments a single candidate with a synthetic spectrum built from the masses of its own fragments
+ * used to check the fragmenter assigner scorers without running the whole process (RunExample1Comparison)
+ *
+ */
+public class SingleCandidateFragmentation {
+
+	public static final String INCHI = "InChI=1S/C9H10O4/c10-7-3-1-6(5-8(7)11)2-4-9(12)13/h1,3,5,10-11H,2,4H2,(H,12,13)";
+	public static final double RELATIVE_MASS_DEVIATION = 5.0;
+	public static final double ABSOLUTE_MASS_DEVIATION = 0.001;
+
+	/**
+	 * [M+H]+ peaks of the fragments of the first two tree depths of the candidate
+	 * and random peaks that aren't explained by any fragment most likely
+	 *
+	 * @param inchi
+	 * @param numberRandomPeaks
+	 * @param seed
+	 * @return
+	 * @throws Exception
+	 */
+	public static SortedTandemMassPeakList getPeakList(String inchi, int numberRandomPeaks, long seed) throws Exception {
+		TopDownPrecursorCandidate candidate = new TopDownPrecursorCandidate(inchi, "peaks");
+		candidate.initialisePrecursorCandidate();
+		AbstractTopDownBitArrayPrecursor precursor = (AbstractTopDownBitArrayPrecursor)candidate.getPrecursorMolecule();
+		AbstractTopDownBitArrayFragment root = precursor.toFragment();
+		double ionisationMassCorrection = Constants.getIonisationTypeMassCorrection(Constants.ADDUCT_NOMINAL_MASSES.indexOf(Constants.DEFAULT_PRECURSOR_ION_TYPE), true);
+		java.util.Random random = new java.util.Random(seed);
+		SortedTandemMassPeakList peakList = new SortedTandemMassPeakList(root.getMonoisotopicMass() + ionisationMassCorrection);
+		java.util.HashSet<Double> masses = new java.util.HashSet<Double>();
+		for(short i = 0; i < precursor.getNonHydrogenBondCount(); i++) {
+			AbstractTopDownBitArrayFragment[] fragments = root.traverseMolecule(i, precursor.getConnectedAtomIndecesOfBondIndex(i));
+			for(int k = 0; k < fragments.length; k++) {
+				masses.add(fragments[k].getMonoisotopicMass());
+				for(short j = 0; j < precursor.getNonHydrogenBondCount(); j++) {
+					if(!fragments[k].getBondsBitArray().get(j)) continue;
+					AbstractTopDownBitArrayFragment[] childFragments = fragments[k].traverseMolecule(j, precursor.getConnectedAtomIndecesOfBondIndex(j));
+					for(int l = 0; l < childFragments.length; l++) masses.add(childFragments[l].getMonoisotopicMass());
+				}
+			}
+		}
+		Double[] sortedMasses = masses.toArray(new Double[masses.size()]);
+		java.util.Arrays.sort(sortedMasses);
+		for(int i = 0; i < sortedMasses.length + numberRandomPeaks; i++) {
+			double mass = i < sortedMasses.length ? sortedMasses[i] + ionisationMassCorrection : 20.0 + random.nextDouble() * root.getMonoisotopicMass();
+			double intensity = 10.0 + random.nextInt(990);
+			peakList.addElement(new TandemMassPeak(mass, intensity, intensity / 10.0, RELATIVE_MASS_DEVIATION, ABSOLUTE_MASS_DEVIATION));
+		}
+		return peakList;
+	}
+
+	/**
+	 * SIRIUS fragmentation tree (as read by SiriusNodeListReader) with the precursor formula as root
+	 * and one peak for each given formula as its children
+	 *
+	 * @param precursorFormula
+	 * @param formulas
+	 * @return
+	 * @throws Exception
+	 */
+	public static SiriusNodePeakList getSiriusNodePeakList(String precursorFormula, String[] formulas) throws Exception {
+		java.io.File dotFile = java.io.File.createTempFile("sirius_tree", ".dot");
+		dotFile.deleteOnExit();
+		java.io.PrintWriter writer = new java.io.PrintWriter(dotFile);
+		writer.println("strict digraph {");
+		writer.println("v0 [label=\"" + precursorFormula + "\\n" + new ByteMolecularFormula(precursorFormula).getMonoisotopicMass() + " Da, 100.00 %\\nIntensity=100.0\"];");
+		for(int i = 0; i < formulas.length; i++)
+			writer.println("v" + (i + 1) + " [label=\"" + formulas[i] + "\\n" + new ByteMolecularFormula(formulas[i]).getMonoisotopicMass() + " Da, 50.00 %\\nIntensity=" + (10.0 * (i + 1)) + "\"];");
+		for(int i = 0; i < formulas.length; i++)
+			writer.println("v0 -> v" + (i + 1) + " [label=\"H\"];");
+		writer.println("}");
+		writer.close();
+		double ionisationMassCorrection = Constants.getIonisationTypeMassCorrection(Constants.ADDUCT_NOMINAL_MASSES.indexOf(Constants.DEFAULT_PRECURSOR_ION_TYPE), true);
+		return new SiriusNodePeakList(new ByteMolecularFormula(precursorFormula).getMonoisotopicMass() + ionisationMassCorrection, dotFile.getAbsolutePath());
+	}
+
+	/**
+	 * settings the process would set up for the given peak list
+	 *
+	 * @param peakList
+	 * @return
+	 */
+	public static MetFragGlobalSettings getSettings(SortedTandemMassPeakList peakList) {
+		MetFragGlobalSettings settings = new MetFragGlobalSettings();
+		settings.set(VariableNames.RELATIVE_MASS_DEVIATION_NAME, RELATIVE_MASS_DEVIATION);
+		settings.set(VariableNames.ABSOLUTE_MASS_DEVIATION_NAME, ABSOLUTE_MASS_DEVIATION);
+		settings.set(VariableNames.PEAK_LIST_NAME, peakList);
+		settings.set(VariableNames.PRECURSOR_NEUTRAL_MASS_NAME, peakList.getMeasuredPrecursorMass()
+				- Constants.getIonisationTypeMassCorrection(Constants.ADDUCT_NOMINAL_MASSES.indexOf(Constants.DEFAULT_PRECURSOR_ION_TYPE), true));
+		settings.set(VariableNames.MINIMUM_FRAGMENT_MASS_LIMIT_NAME, peakList.getMinimumMassValue());
+		settings.set(VariableNames.BOND_ENERGY_OBJECT_NAME, new BondEnergies());
+		new FragmenterScoreInitialiser().initScoreParameters(settings);
+		return settings;
+	}
+
+	/**
+	 * fragments the candidate with the given fragmenter assigner scorer and assigns its scores
+	 *
+	 * @param globalSettings
+	 * @param inchi
+	 * @param assignerScorerClassName
+	 * @return
+	 * @throws Exception
+	 */
+	public static ICandidate process(Settings globalSettings, String inchi, String assignerScorerClassName) throws Exception {
+		return calculate(globalSettings, inchi, assignerScorerClassName).getCandidates()[0];
+	}
+
+	/**
+	 * fragments the candidate with the given fragmenter assigner scorer and assigns its scores
+	 *
+	 * @param globalSettings
+	 * @param inchi
+	 * @param assignerScorerClassName
+	 * @return the fragmenter assigner scorer after the calculation
+	 * @throws Exception
+	 */
+	public static AbstractFragmenterAssignerScorer calculate(Settings globalSettings, String inchi, String assignerScorerClassName) throws Exception {
+		MetFragSingleProcessSettings settings = new MetFragSingleProcessSettings(globalSettings);
+		TopDownPrecursorCandidate candidate = new TopDownPrecursorCandidate(inchi, "candidate");
+		settings.set(VariableNames.CANDIDATE_NAME, candidate);
+		AbstractFragmenterAssignerScorer fas = (AbstractFragmenterAssignerScorer)Class.forName(assignerScorerClassName)
+				.getConstructor(Settings.class, ICandidate.class).newInstance(settings, candidate);
+		fas.initialise();
+		fas.calculate();
+		fas.assignScores();
+		return fas;
+	}
+
+	/**
+	 * explained peaks of the candidate with the best matched fragments and their formulas
+	 *
+	 * @param candidate
+	 * @return
+	 */
+	public static java.util.ArrayList<String> getMatches(ICandidate candidate) {
+		java.util.ArrayList<String> matches = new java.util.ArrayList<String>();
+		MatchList matchList = candidate.getMatchList();
+		for(int i = 0; i < matchList.getNumberElements(); i++) {
+			IMatch match = matchList.getElement(i);
+			matches.add(match.getMatchedPeak().getMass() + " " + match.getModifiedFormulaStringOfBestMatchedFragment() + " " + match.getBestMatchedFragment().getAtomsInfo());
+		}
+		return matches;
+	}
+
+}
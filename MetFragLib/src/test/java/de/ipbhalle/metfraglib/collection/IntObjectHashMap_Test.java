@@ -0,0 +1,50 @@
+package de.ipbhalle.metfraglib.collection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * checks that IntObjectHashMap holds the same entries as the java.util.HashMap it replaces
+ * in the match tables of the top down assigner for random put, remove and get sequences
+ *
+ */
+public class IntObjectHashMap_Test {
+
+	@Test
+	public void test() {
+		for(long seed = 1; seed <= 5; seed++) {
+			java.util.Random random = new java.util.Random(seed);
+			IntObjectHashMap<Integer> map = new IntObjectHashMap<Integer>();
+			java.util.HashMap<Integer, Integer> expectedMap = new java.util.HashMap<Integer, Integer>();
+			/*
+			 * small key range so that keys are removed and put again and probe sequences collide,
+			 * multiples of the capacity end up in the same slots and check the backward shift
+			 */
+			for(int i = 0; i < 20000; i++) {
+				int key = random.nextBoolean() ? random.nextInt(2000) : random.nextInt(50) * 1024;
+				int operation = random.nextInt(3);
+				if(operation == 0) {
+					map.put(key, i);
+					expectedMap.put(key, i);
+				}
+				else if(operation == 1) {
+					map.remove(key);
+					expectedMap.remove(key);
+				}
+				assertEquals("Error: Different value of key " + key + " with seed " + seed, expectedMap.get(key), map.get(key));
+				assertEquals("Error: Different contained key " + key + " with seed " + seed, expectedMap.containsKey(key), map.containsKey(key));
+				assertEquals("Error: Different size with seed " + seed, expectedMap.size(), map.size());
+			}
+			int[] expectedKeys = new int[expectedMap.size()];
+			int index = 0;
+			for(Integer key : expectedMap.keySet()) expectedKeys[index++] = key;
+			java.util.Arrays.sort(expectedKeys);
+			assertArrayEquals("Error: Different keys with seed " + seed, expectedKeys, map.getKeys());
+			for(int i = 0; i < expectedKeys.length; i++)
+				assertEquals("Error: Different value of key " + expectedKeys[i] + " with seed " + seed, expectedMap.get(expectedKeys[i]), map.get(expectedKeys[i]));
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+package de.ipbhalle.metfraglib.fragment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.ipbhalle.metfraglib.candidate.TopDownPrecursorCandidate;
+import de.ipbhalle.metfraglib.precursor.TopDownBitArrayPrecursor;
+
+/**
+ * fragments added to a FragmentArena have to be returned as the same objects as long as they are alive
+ * and materialised with the same state (including their precursor fragment chain) after they were collected
+ *
+ */
+public class FragmentArena_Test {
+
+	private final String INCHI = "InChI=1S/C9H10O4/c10-7-3-1-6(5-8(7)11)2-4-9(12)13/h1,3,5,10-11H,2,4H2,(H,12,13)";
+
+	@Test
+	public void test() throws Exception {
+		TopDownPrecursorCandidate candidate = new TopDownPrecursorCandidate(INCHI, "test");
+		candidate.initialisePrecursorCandidate();
+		TopDownBitArrayPrecursor precursor = (TopDownBitArrayPrecursor)candidate.getPrecursorMolecule();
+		/*
+		 * expected capacity below the number of added fragments so that the arena grows
+		 */
+		FragmentArena arena = new FragmentArena(precursor, 1);
+		TopDownBitArrayFragment root = (TopDownBitArrayFragment)precursor.toFragment();
+		root.setID(0);
+		int rootId = arena.add(root, -1, 0);
+		String expectedRoot = this.getState(root);
+		/*
+		 * all fragments of the first tree depth
+		 */
+		java.util.ArrayList<TopDownBitArrayFragment> fragments = new java.util.ArrayList<TopDownBitArrayFragment>();
+		java.util.ArrayList<String> expectedStates = new java.util.ArrayList<String>();
+		java.util.ArrayList<Integer> ids = new java.util.ArrayList<Integer>();
+		java.util.ArrayList<Integer> peakIndexPointers = new java.util.ArrayList<Integer>();
+		for(short i = 0; i < precursor.getNonHydrogenBondCount(); i++) {
+			AbstractTopDownBitArrayFragment[] newFragments = root.traverseMolecule(i, precursor.getConnectedAtomIndecesOfBondIndex(i));
+			for(int k = 0; k < newFragments.length; k++) {
+				TopDownBitArrayFragment fragment = (TopDownBitArrayFragment)newFragments[k];
+				fragment.setPrecursorFragment(root);
+				fragment.setID(fragments.size() + 1);
+				ids.add(arena.add(fragment, rootId, i + k));
+				peakIndexPointers.add(i + k);
+				fragments.add(fragment);
+				expectedStates.add(this.getState(fragment));
+			}
+		}
+		assertTrue("Error: Arena didn't grow", arena.size() > 16);
+		assertEquals("Error: Wrong arena size", fragments.size() + 1, arena.size());
+		/*
+		 * living fragments are returned as they are
+		 */
+		for(int i = 0; i < fragments.size(); i++) {
+			assertSame("Error: Living fragment not returned", fragments.get(i), arena.getFragment(ids.get(i)));
+			assertEquals("Error: Wrong parent id", rootId, arena.getParentId(ids.get(i)));
+			assertEquals("Error: Wrong peak index pointer", peakIndexPointers.get(i).intValue(), arena.getPeakIndexPointer(ids.get(i)));
+		}
+		arena.setHasMatchedChild(ids.get(0));
+		assertTrue("Error: Matched child flag not set on the living fragment", root.hasMatchedChild());
+		/*
+		 * materialise the fragments after their objects were collected
+		 */
+		java.lang.ref.WeakReference<TopDownBitArrayFragment> collectedFragment = new java.lang.ref.WeakReference<TopDownBitArrayFragment>(fragments.get(0));
+		fragments.clear();
+		for(int i = 0; i < 50 && collectedFragment.get() != null; i++) System.gc();
+		assertNull("Error: Fragment not collected", collectedFragment.get());
+		for(int i = 0; i < ids.size(); i++) {
+			TopDownBitArrayFragment fragment = arena.getFragment(ids.get(i));
+			assertEquals("Error: Different materialised fragment " + ids.get(i), expectedStates.get(i), this.getState(fragment));
+			assertSame("Error: Living precursor fragment not shared", root, fragment.getPrecursorFragment());
+			assertSame("Error: Materialised fragment not returned again", fragment, arena.getFragment(ids.get(i)));
+			assertEquals("Error: Wrong matched child flag", i == 0, fragment.hasMatchedChild());
+		}
+		/*
+		 * materialise a fragment together with its collected precursor fragment
+		 */
+		java.lang.ref.WeakReference<TopDownBitArrayFragment> collectedRoot = new java.lang.ref.WeakReference<TopDownBitArrayFragment>(root);
+		root = null;
+		for(int i = 0; i < 50 && collectedRoot.get() != null; i++) System.gc();
+		assertNull("Error: Root fragment not collected", collectedRoot.get());
+		TopDownBitArrayFragment fragment = arena.getFragment(ids.get(ids.size() - 1));
+		assertEquals("Error: Different materialised fragment", expectedStates.get(ids.size() - 1), this.getState(fragment));
+		TopDownBitArrayFragment materialisedRoot = (TopDownBitArrayFragment)fragment.getPrecursorFragment();
+		assertEquals("Error: Different materialised root", expectedRoot, this.getState(materialisedRoot));
+		assertTrue("Error: Matched child flag of the root lost", materialisedRoot.hasMatchedChild());
+		assertSame("Error: Materialised precursor fragment not shared", materialisedRoot, arena.getFragment(rootId));
+	}
+
+	/**
+	 * state of a fragment stored in the arena
+	 *
+	 * @param fragment
+	 * @return
+	 */
+	private String getState(TopDownBitArrayFragment fragment) {
+		return fragment.getID() + " " + fragment.getAtomsBitArray().toString() + " " + fragment.getBondsBitArray().toString() + " "
+				+ fragment.getBrokenBondsBitArray().toString() + " " + fragment.getMolecularFormula().toString() + " "
+				+ fragment.getMonoisotopicMass() + " " + fragment.getNumberHydrogens() + " " + fragment.getTreeDepth() + " "
+				+ fragment.getBrokenBondsEnergy() + " " + fragment.isValidFragment() + " " + fragment.isDiscardedForFragmentation() + " "
+				+ fragment.hasMatched() + " " + fragment.isWasRingCleavedFragment() + " " + fragment.getAddedToQueueCounts() + " " + fragment.getLastSkippedBond();
+	}
+
+}
@@ -0,0 +1,93 @@
+package de.ipbhalle.metfraglib.fragmenter;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.ipbhalle.metfraglib.molecularformula.ByteMolecularFormula;
+
+/**
+ * estimated numbers of fragments and chosen tree depths of bond graphs estimated from molecular formulas
+ * the expected values are calculated by hand
+ *
+ */
+public class TreeDepthCostModel_Test {
+
+	private final double DELTA = 0.000001;
+
+	@Test
+	public void testValence() {
+		assertEquals("Error: Wrong valence", 4, TreeDepthCostModel.getValence("C"));
+		assertEquals("Error: Wrong valence", 4, TreeDepthCostModel.getValence("[13C]"));
+		assertEquals("Error: Wrong valence", 3, TreeDepthCostModel.getValence("N"));
+		assertEquals("Error: Wrong valence", 2, TreeDepthCostModel.getValence("S"));
+		assertEquals("Error: Wrong valence", 1, TreeDepthCostModel.getValence("Cl"));
+	}
+
+	/**
+	 * butane, three chain bonds without terminal atoms
+	 * each cleavage keeps half of the two other bonds, no bonds are left after the second tree depth
+	 */
+	@Test
+	public void testChain() throws Exception {
+		TreeDepthCostModel costModel = new TreeDepthCostModel(new ByteMolecularFormula("C4H10"), 2);
+		this.assertNumberFragments(new double[] {6.0, 18.0, 18.0}, costModel.estimateNumberFragments(3));
+		/*
+		 * chloromethane, the only bond is terminal
+		 */
+		costModel = new TreeDepthCostModel(new ByteMolecularFormula("CH3Cl"), 2);
+		this.assertNumberFragments(new double[] {2.0, 2.0}, costModel.estimateNumberFragments(2));
+		/*
+		 * fluoropropane, one of three bonds is terminal, the fragments keep 2 * 1/3 + 1 * 2/3 = 4/3 bonds
+		 */
+		costModel = new TreeDepthCostModel(new ByteMolecularFormula("C3H7F"), 2);
+		this.assertNumberFragments(new double[] {6.0, 6.0 + 6.0 * 2.0 * 4.0 / 3.0}, costModel.estimateNumberFragments(2));
+	}
+
+	/**
+	 * benzene, four double bond equivalents give two rings of the seven estimated bonds
+	 */
+	@Test
+	public void testRing() throws Exception {
+		/*
+		 * pairs of bonds of the ring system are cleaved, 7 * (6 - 1) and 3 * (3 - 1) fragments per expanded fragment
+		 */
+		TreeDepthCostModel costModel = new TreeDepthCostModel(new ByteMolecularFormula("C6H6"), 2);
+		this.assertNumberFragments(new double[] {35.0, 35.0 + 35.0 * 6.0, 35.0 + 35.0 * 6.0}, costModel.estimateNumberFragments(3));
+		/*
+		 * single ring bond cleavages, 7, 3 and 1 fragments per expanded fragment
+		 */
+		costModel = new TreeDepthCostModel(new ByteMolecularFormula("C6H6"), 1);
+		this.assertNumberFragments(new double[] {7.0, 28.0, 49.0, 49.0}, costModel.estimateNumberFragments(4));
+	}
+
+	@Test
+	public void testChooseTreeDepth() throws Exception {
+		/*
+		 * 6 and 18 fragments up to tree depth 1 and 2, no further fragments below
+		 */
+		TreeDepthCostModel costModel = new TreeDepthCostModel(new ByteMolecularFormula("C4H10"), 2);
+		assertEquals("Error: Wrong tree depth without budgets", 2, costModel.chooseTreeDepth(0, 0, 1000000.0));
+		assertEquals("Error: Wrong tree depth within fragment budget", 2, costModel.chooseTreeDepth(18, 0, 1000000.0));
+		assertEquals("Error: Wrong tree depth beyond fragment budget", 1, costModel.chooseTreeDepth(17, 0, 1000000.0));
+		assertEquals("Error: Wrong tree depth within time budget", 2, costModel.chooseTreeDepth(0, 18, 1000000.0));
+		assertEquals("Error: Wrong tree depth beyond time budget", 1, costModel.chooseTreeDepth(0, 17, 1000000.0));
+		/*
+		 * the tree depth is at least one even if the first tree depth exceeds the budgets
+		 */
+		assertEquals("Error: Wrong minimum tree depth", 1, costModel.chooseTreeDepth(1, 1, 1000000000.0));
+		/*
+		 * 7, 28 and 49 fragments up to tree depth 3
+		 */
+		costModel = new TreeDepthCostModel(new ByteMolecularFormula("C6H6"), 1);
+		assertEquals("Error: Wrong tree depth without budgets", 3, costModel.chooseTreeDepth(0, 0, 1000000.0));
+		assertEquals("Error: Wrong tree depth beyond fragment budget", 2, costModel.chooseTreeDepth(48, 0, 1000000.0));
+	}
+
+	private void assertNumberFragments(double[] expectedNumberFragments, double[] numberFragments) {
+		assertEquals("Error: Wrong number of tree depths", expectedNumberFragments.length, numberFragments.length);
+		for(int i = 0; i < numberFragments.length; i++)
+			assertEquals("Error: Wrong number of fragments up to tree depth " + (i + 1), expectedNumberFragments[i], numberFragments[i], DELTA);
+	}
+
+}
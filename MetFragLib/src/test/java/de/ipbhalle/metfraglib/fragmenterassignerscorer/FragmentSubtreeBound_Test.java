@@ -0,0 +1,131 @@
+package de.ipbhalle.metfraglib.fragmenterassignerscorer;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.ipbhalle.metfraglib.BitArray;
+import de.ipbhalle.metfraglib.RunExample1Comparison;
+import de.ipbhalle.metfraglib.SingleCandidateFragmentation;
+import de.ipbhalle.metfraglib.candidate.TopDownPrecursorCandidate;
+import de.ipbhalle.metfraglib.fragment.AbstractTopDownBitArrayFragment;
+import de.ipbhalle.metfraglib.interfaces.ICandidate;
+import de.ipbhalle.metfraglib.list.SortedTandemMassPeakList;
+import de.ipbhalle.metfraglib.match.MatchFragmentList;
+import de.ipbhalle.metfraglib.parameter.Constants;
+import de.ipbhalle.metfraglib.parameter.VariableNames;
+import de.ipbhalle.metfraglib.peak.PeakWindowIndex;
+import de.ipbhalle.metfraglib.peak.TandemMassPeak;
+import de.ipbhalle.metfraglib.precursor.AbstractTopDownBitArrayPrecursor;
+import de.ipbhalle.metfraglib.score.NewFragmenterScore;
+import de.ipbhalle.metfraglib.settings.MetFragGlobalSettings;
+
+/**
+ * exact branch and bound pruning (tolerance 0) has to give the same scores and best matched fragments
+ * as the fragmentation without pruning, the bound itself is checked on a hand-built peak list
+ *
+ */
+public class FragmentSubtreeBound_Test {
+
+	@Test
+	public void test() throws Exception {
+		MetFragGlobalSettings settings = RunExample1Comparison.getSettings();
+		settings.set(VariableNames.MAXIMUM_TREE_DEPTH_NAME, (byte)3);
+		settings.set(VariableNames.METFRAG_BRANCH_AND_BOUND_PRUNING, false);
+		java.util.Hashtable<String, ICandidate> expectedCandidates = RunExample1Comparison.run(settings);
+
+		settings = RunExample1Comparison.getSettings();
+		settings.set(VariableNames.MAXIMUM_TREE_DEPTH_NAME, (byte)3);
+		settings.set(VariableNames.METFRAG_BRANCH_AND_BOUND_PRUNING, true);
+		settings.set(VariableNames.METFRAG_BRANCH_AND_BOUND_TOLERANCE, 0.0);
+		java.util.Hashtable<String, ICandidate> candidates = RunExample1Comparison.run(settings);
+
+		RunExample1Comparison.assertEqualResults(expectedCandidates, candidates, (String[])settings.get(VariableNames.METFRAG_SCORE_TYPES_NAME), true);
+		/*
+		 * otherwise the comparison above doesn't check anything
+		 */
+		boolean matchingSkipped = false;
+		java.util.Iterator<ICandidate> iterator = candidates.values().iterator();
+		while(iterator.hasNext()) {
+			Object skippedMatchingFraction = iterator.next().getProperty(VariableNames.SKIPPED_MATCHING_FRACTION_NAME);
+			if(skippedMatchingFraction != null && (Double)skippedMatchingFraction > 0.0) matchingSkipped = true;
+		}
+		assertTrue("Error: No matching skipped by pruning", matchingSkipped);
+	}
+
+	/**
+	 * peaks 0 to 2 can be reached by the descendants of the fragment, peak 3 is heavier than the fragment
+	 */
+	@Test
+	public void testBound() throws Exception {
+		TopDownPrecursorCandidate candidate = new TopDownPrecursorCandidate(SingleCandidateFragmentation.INCHI, "candidate");
+		candidate.initialisePrecursorCandidate();
+		AbstractTopDownBitArrayPrecursor precursor = (AbstractTopDownBitArrayPrecursor)candidate.getPrecursorMolecule();
+		AbstractTopDownBitArrayFragment[] fragments = precursor.toFragment().traverseMolecule((short)0, precursor.getConnectedAtomIndecesOfBondIndex((short)0));
+		AbstractTopDownBitArrayFragment fragment = fragments[0];
+		for(int i = 1; i < fragments.length; i++)
+			if(fragments[i].getMonoisotopicMass() > fragment.getMonoisotopicMass()) fragment = fragments[i];
+		assertTrue("Error: No bonds left in the fragment", fragment.getBondsBitArray().nextSetBit(-1) != -1);
+
+		double ionisationMassCorrection = Constants.getIonisationTypeMassCorrection(Constants.ADDUCT_NOMINAL_MASSES.indexOf(Constants.DEFAULT_PRECURSOR_ION_TYPE), true);
+		double fragmentMass = fragment.getMonoisotopicMass() + ionisationMassCorrection;
+		SortedTandemMassPeakList peakList = new SortedTandemMassPeakList(precursor.toFragment().getMonoisotopicMass() + ionisationMassCorrection);
+		double[] masses = {30.0, 60.0, fragmentMass - 20.0, fragmentMass + 2.0};
+		for(int i = 0; i < masses.length; i++)
+			peakList.addElement(new TandemMassPeak(masses[i], 100.0 * (i + 1), 10.0 * (i + 1), SingleCandidateFragmentation.RELATIVE_MASS_DEVIATION, SingleCandidateFragmentation.ABSOLUTE_MASS_DEVIATION));
+		MetFragGlobalSettings settings = SingleCandidateFragmentation.getSettings(peakList);
+		settings.set(VariableNames.CANDIDATE_NAME, candidate);
+		NewFragmenterScore fragmenterScore = new NewFragmenterScore(settings);
+		PeakWindowIndex peakWindowIndex = peakList.getPeakWindowIndex(SingleCandidateFragmentation.RELATIVE_MASS_DEVIATION, SingleCandidateFragmentation.ABSOLUTE_MASS_DEVIATION);
+		FragmentSubtreeBound bound = new FragmentSubtreeBound(fragmenterScore, precursor, peakList, peakWindowIndex, ionisationMassCorrection, 3, 0.0);
+		assertTrue("Error: Tolerance 0 not exact", bound.isExact());
+
+		/*
+		 * best possible score of each peak, the descendants break at least the weakest bond left in the fragment
+		 */
+		double[] bondEnergies = fragmenterScore.getBondEnergies();
+		BitArray bonds = fragment.getBondsBitArray();
+		double minimumBondEnergy = Double.MAX_VALUE;
+		for(int i = bonds.nextSetBit(-1); i != -1; i = bonds.nextSetBit(i)) minimumBondEnergy = Math.min(minimumBondEnergy, bondEnergies[i]);
+		double energyWeight = fragmenterScore.getEnergyWeight(fragment.getBrokenBondsEnergy(bondEnergies) + minimumBondEnergy);
+		double[] bestScores = new double[masses.length];
+		for(int i = 0; i < masses.length; i++) bestScores[i] = fragmenterScore.getPeakScore(peakList.getElement(i)) / energyWeight;
+
+		MatchFragmentList[] peakIndexToPeakMatch = new MatchFragmentList[masses.length];
+		assertTrue("Error: Fragment without reachable peaks not pruned", bound.canPrune(fragment, -1, peakIndexToPeakMatch));
+		assertFalse("Error: Fragment pruned with unexplained peaks", bound.canPrune(fragment, masses.length - 1, peakIndexToPeakMatch));
+		/*
+		 * better best fragments for all reachable peaks, the unexplained peak 3 can't be reached by lighter descendants
+		 */
+		for(int i = 0; i < 3; i++) peakIndexToPeakMatch[i] = new MatchFragmentList(null, bestScores[i] * 1.5);
+		assertTrue("Error: Fragment not pruned with better best fragments", bound.canPrune(fragment, masses.length - 1, peakIndexToPeakMatch));
+		/*
+		 * a descendant could give a best fragment as good as the current one
+		 */
+		peakIndexToPeakMatch[1] = new MatchFragmentList(null, bestScores[1]);
+		assertFalse("Error: Fragment pruned although a best fragment could be reached", bound.canPrune(fragment, masses.length - 1, peakIndexToPeakMatch));
+		/*
+		 * peaks above the peak pointer can't be matched anymore
+		 */
+		peakIndexToPeakMatch[1] = new MatchFragmentList(null, bestScores[1] * 1.5);
+		peakIndexToPeakMatch[2] = null;
+		assertFalse("Error: Fragment pruned with unexplained peaks", bound.canPrune(fragment, 2, peakIndexToPeakMatch));
+		assertTrue("Error: Fragment not pruned below the peak pointer", bound.canPrune(fragment, 1, peakIndexToPeakMatch));
+
+		/*
+		 * approximate mode, the possible gain is half of the best score of peak 0
+		 */
+		peakIndexToPeakMatch[0] = new MatchFragmentList(null, bestScores[0] * 0.5);
+		peakIndexToPeakMatch[1] = new MatchFragmentList(null, bestScores[1]);
+		peakIndexToPeakMatch[2] = new MatchFragmentList(null, bestScores[2]);
+		double gainFraction = (bestScores[0] * 0.5) / (bestScores[0] * 0.5 + bestScores[1] + bestScores[2]);
+		FragmentSubtreeBound approximateBound = new FragmentSubtreeBound(fragmenterScore, precursor, peakList, peakWindowIndex, ionisationMassCorrection, 3, gainFraction * 1.01);
+		approximateBound.update(peakIndexToPeakMatch);
+		assertTrue("Error: Fragment not pruned with gain within the tolerance", approximateBound.canPrune(fragment, masses.length - 1, peakIndexToPeakMatch));
+		approximateBound = new FragmentSubtreeBound(fragmenterScore, precursor, peakList, peakWindowIndex, ionisationMassCorrection, 3, gainFraction * 0.99);
+		approximateBound.update(peakIndexToPeakMatch);
+		assertFalse("Error: Fragment pruned with gain beyond the tolerance", approximateBound.canPrune(fragment, masses.length - 1, peakIndexToPeakMatch));
+	}
+
+}
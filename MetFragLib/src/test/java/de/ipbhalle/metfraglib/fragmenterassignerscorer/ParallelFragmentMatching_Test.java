@@ -0,0 +1,113 @@
+package de.ipbhalle.metfraglib.fragmenterassignerscorer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import de.ipbhalle.metfraglib.SingleCandidateFragmentation;
+import de.ipbhalle.metfraglib.interfaces.ICandidate;
+import de.ipbhalle.metfraglib.list.SortedTandemMassPeakList;
+import de.ipbhalle.metfraglib.match.FragmentMassToPeakMatcher;
+import de.ipbhalle.metfraglib.parameter.VariableNames;
+import de.ipbhalle.metfraglib.settings.MetFragGlobalSettings;
+import de.ipbhalle.metfraglib.settings.Settings;
+
+/**
+ * matching the fragments of a candidate with the executor of the process has to give the same matches as matching them sequentially
+ * and a failing parallel matching has to stop the processing of the candidate
+ *
+ */
+public class ParallelFragmentMatching_Test {
+
+	@Test
+	public void test() throws Exception {
+		SortedTandemMassPeakList peakList = SingleCandidateFragmentation.getPeakList(SingleCandidateFragmentation.INCHI, 50, 1);
+		MetFragGlobalSettings settings = SingleCandidateFragmentation.getSettings(peakList);
+		settings.set(VariableNames.NUMBER_THREADS_PER_CANDIDATE_NAME, (byte)1);
+		ICandidate expectedCandidate = SingleCandidateFragmentation.process(settings, SingleCandidateFragmentation.INCHI, TopDownFragmenterAssignerScorer.class.getName());
+
+		CountingExecutor executor = new CountingExecutor(4);
+		try {
+			settings.set(VariableNames.NUMBER_THREADS_PER_CANDIDATE_NAME, (byte)4);
+			settings.set(VariableNames.FRAGMENT_MATCHING_EXECUTOR_OBJECT_NAME, executor);
+			ICandidate candidate = SingleCandidateFragmentation.process(settings, SingleCandidateFragmentation.INCHI, TopDownFragmenterAssignerScorer.class.getName());
+			assertTrue("Error: Fragments not matched in parallel", executor.getNumberTasks() > 0);
+			assertTrue("Error: No explained peaks to compare", expectedCandidate.getMatchList().getNumberElements() > 0);
+			assertEquals("Error: Different matches", SingleCandidateFragmentation.getMatches(expectedCandidate), SingleCandidateFragmentation.getMatches(candidate));
+			assertEquals("Error: Different " + VariableNames.METFRAG_FRAGMENTER_SCORE_NAME,
+					String.valueOf(expectedCandidate.getProperty(VariableNames.METFRAG_FRAGMENTER_SCORE_NAME)), String.valueOf(candidate.getProperty(VariableNames.METFRAG_FRAGMENTER_SCORE_NAME)));
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testFailingMatching() throws Exception {
+		MetFragGlobalSettings settings = SingleCandidateFragmentation.getSettings(SingleCandidateFragmentation.getPeakList(SingleCandidateFragmentation.INCHI, 50, 1));
+		java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(4);
+		try {
+			settings.set(VariableNames.NUMBER_THREADS_PER_CANDIDATE_NAME, (byte)4);
+			settings.set(VariableNames.FRAGMENT_MATCHING_EXECUTOR_OBJECT_NAME, executor);
+			SingleCandidateFragmentation.process(settings, SingleCandidateFragmentation.INCHI, FailingParallelMatchingAssignerScorer.class.getName());
+			fail("Error: Failed parallel matching not passed on");
+		} catch(IllegalStateException e) {
+			assertNotNull("Error: Cause of the failed matching lost", e.getCause());
+			assertEquals("Error: Wrong cause of the failed matching", FailingParallelMatchingAssignerScorer.MESSAGE, e.getCause().getMessage());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * counts the tasks run by the pool
+	 */
+	private static class CountingExecutor extends java.util.concurrent.ThreadPoolExecutor {
+
+		private final java.util.concurrent.atomic.AtomicInteger numberTasks = new java.util.concurrent.atomic.AtomicInteger();
+
+		public CountingExecutor(int numberThreads) {
+			super(numberThreads, numberThreads, 0L, java.util.concurrent.TimeUnit.MILLISECONDS, new java.util.concurrent.LinkedBlockingQueue<Runnable>());
+		}
+
+		@Override
+		protected void beforeExecute(Thread thread, Runnable runnable) {
+			this.numberTasks.incrementAndGet();
+		}
+
+		public int getNumberTasks() {
+			return this.numberTasks.get();
+		}
+	}
+
+	/**
+	 * fails to match fragments in all threads other than the one processing the candidate
+	 */
+	public static class FailingParallelMatchingAssignerScorer extends TopDownFragmenterAssignerScorer {
+
+		public static final String MESSAGE = "matching failed";
+
+		private Thread candidateThread;
+
+		public FailingParallelMatchingAssignerScorer(Settings settings, ICandidate candidate) {
+			super(settings, candidate);
+		}
+
+		@Override
+		public void calculate() {
+			this.candidateThread = Thread.currentThread();
+			super.calculate();
+		}
+
+		@Override
+		protected void matchFragmentToPeaks(FragmentAssignment assignment, SortedTandemMassPeakList tandemMassPeakList, FragmentMassToPeakMatcher.MatchBuffer buffer) {
+			if(Thread.currentThread() != this.candidateThread) throw new RuntimeException(MESSAGE);
+			super.matchFragmentToPeaks(assignment, tandemMassPeakList, buffer);
+		}
+	}
+
+}
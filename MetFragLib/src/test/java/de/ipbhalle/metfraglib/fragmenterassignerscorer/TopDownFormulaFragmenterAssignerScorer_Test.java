@@ -0,0 +1,83 @@
+package de.ipbhalle.metfraglib.fragmenterassignerscorer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.ipbhalle.metfraglib.SingleCandidateFragmentation;
+import de.ipbhalle.metfraglib.candidate.TopDownPrecursorCandidate;
+import de.ipbhalle.metfraglib.fragment.AbstractTopDownBitArrayFragment;
+import de.ipbhalle.metfraglib.interfaces.ICandidate;
+import de.ipbhalle.metfraglib.list.MatchList;
+import de.ipbhalle.metfraglib.list.SiriusNodePeakList;
+import de.ipbhalle.metfraglib.list.SortedTandemMassPeakList;
+import de.ipbhalle.metfraglib.parameter.VariableNames;
+import de.ipbhalle.metfraglib.precursor.AbstractTopDownBitArrayPrecursor;
+import de.ipbhalle.metfraglib.settings.MetFragGlobalSettings;
+import de.ipbhalle.metfraglib.settings.Settings;
+
+/**
+ * not expanding fragments without an unexplained peak formula as subformula must not lose any explained peak
+ * checked against the expansion of all fragments on a SIRIUS tree built from fragment formulas of the first two tree depths
+ *
+ */
+public class TopDownFormulaFragmenterAssignerScorer_Test {
+
+	@Test
+	public void test() throws Exception {
+		TopDownPrecursorCandidate candidate = new TopDownPrecursorCandidate(SingleCandidateFragmentation.INCHI, "peaks");
+		candidate.initialisePrecursorCandidate();
+		AbstractTopDownBitArrayPrecursor precursor = (AbstractTopDownBitArrayPrecursor)candidate.getPrecursorMolecule();
+		AbstractTopDownBitArrayFragment root = precursor.toFragment();
+		String precursorFormula = root.getMolecularFormula().toString();
+		/*
+		 * formulas of the fragments of the first bond and of one fragment of the second tree depth below each of them
+		 */
+		java.util.LinkedHashSet<String> formulas = new java.util.LinkedHashSet<String>();
+		AbstractTopDownBitArrayFragment[] fragments = root.traverseMolecule((short)0, precursor.getConnectedAtomIndecesOfBondIndex((short)0));
+		for(int i = 0; i < fragments.length; i++) {
+			formulas.add(fragments[i].getMolecularFormula().toString());
+			short bondIndex = (short)fragments[i].getBondsBitArray().nextSetBit(-1);
+			if(bondIndex == -1) continue;
+			AbstractTopDownBitArrayFragment[] childFragments = fragments[i].traverseMolecule(bondIndex, precursor.getConnectedAtomIndecesOfBondIndex(bondIndex));
+			formulas.add(childFragments[childFragments.length - 1].getMolecularFormula().toString());
+		}
+		formulas.remove(precursorFormula);
+		SiriusNodePeakList peakList = SingleCandidateFragmentation.getSiriusNodePeakList(precursorFormula, formulas.toArray(new String[formulas.size()]));
+		MetFragGlobalSettings settings = SingleCandidateFragmentation.getSettings(peakList);
+		settings.set(VariableNames.MAXIMUM_TREE_DEPTH_NAME, (byte)2);
+
+		ICandidate expectedCandidate = SingleCandidateFragmentation.process(settings, SingleCandidateFragmentation.INCHI, ExpandingFormulaFragmenterAssignerScorer.class.getName());
+		TopDownFormulaFragmenterAssignerScorer fas = (TopDownFormulaFragmenterAssignerScorer)SingleCandidateFragmentation.calculate(settings,
+				SingleCandidateFragmentation.INCHI, TopDownFormulaFragmenterAssignerScorer.class.getName());
+		assertTrue("Error: No fragments without unexplained subformulas", fas.numberNotExpandedFragments > 0);
+		assertEquals("Error: Not all peak formulas explained", formulas.size(), expectedCandidate.getMatchList().getNumberElements());
+		assertEquals("Error: Different explained peaks", this.getExplainedPeakMasses(expectedCandidate), this.getExplainedPeakMasses(fas.getCandidates()[0]));
+	}
+
+	private java.util.ArrayList<Double> getExplainedPeakMasses(ICandidate candidate) {
+		java.util.ArrayList<Double> masses = new java.util.ArrayList<Double>();
+		MatchList matchList = candidate.getMatchList();
+		for(int i = 0; i < matchList.getNumberElements(); i++) masses.add(matchList.getElement(i).getMatchedPeak().getMass());
+		java.util.Collections.sort(masses);
+		return masses;
+	}
+
+	/**
+	 * matches the fragments by their formulas but expands all of them
+	 */
+	public static class ExpandingFormulaFragmenterAssignerScorer extends TopDownFormulaFragmenterAssignerScorer {
+
+		public ExpandingFormulaFragmenterAssignerScorer(Settings settings, ICandidate candidate) {
+			super(settings, candidate);
+		}
+
+		@Override
+		protected void matchFragmentsToPeaks(java.util.ArrayList<FragmentAssignment> assignments, SortedTandemMassPeakList tandemMassPeakList) {
+			for(int i = 0; i < assignments.size(); i++)
+				if(assignments.get(i).toBeMatched) this.matchFragmentToFormulas(assignments.get(i), tandemMassPeakList);
+		}
+	}
+
+}
@@ -0,0 +1,33 @@
+package de.ipbhalle.metfraglib.fragmenterassignerscorer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.ipbhalle.metfraglib.SingleCandidateFragmentation;
+import de.ipbhalle.metfraglib.interfaces.ICandidate;
+import de.ipbhalle.metfraglib.parameter.VariableNames;
+import de.ipbhalle.metfraglib.settings.MetFragGlobalSettings;
+
+/**
+ * matching the fragments of a tree depth by a merge join has to give the same matches as matching
+ * each fragment by the TopDownFragmenterAssignerScorer, the join itself is checked by FragmentMassMergeJoin_Test
+ *
+ */
+public class TopDownMergeJoinFragmenterAssignerScorer_Test {
+
+	@Test
+	public void test() throws Exception {
+		MetFragGlobalSettings settings = SingleCandidateFragmentation.getSettings(SingleCandidateFragmentation.getPeakList(SingleCandidateFragmentation.INCHI, 50, 1));
+		settings.set(VariableNames.NUMBER_THREADS_PER_CANDIDATE_NAME, (byte)1);
+		settings.set(VariableNames.METFRAG_USE_FRAGMENT_ARENA, false);
+		ICandidate expectedCandidate = SingleCandidateFragmentation.process(settings, SingleCandidateFragmentation.INCHI, TopDownFragmenterAssignerScorer.class.getName());
+		ICandidate candidate = SingleCandidateFragmentation.process(settings, SingleCandidateFragmentation.INCHI, TopDownMergeJoinFragmenterAssignerScorer.class.getName());
+		assertTrue("Error: No explained peaks to compare", expectedCandidate.getMatchList().getNumberElements() > 0);
+		assertEquals("Error: Different matches", SingleCandidateFragmentation.getMatches(expectedCandidate), SingleCandidateFragmentation.getMatches(candidate));
+		assertEquals("Error: Different " + VariableNames.METFRAG_FRAGMENTER_SCORE_NAME,
+				String.valueOf(expectedCandidate.getProperty(VariableNames.METFRAG_FRAGMENTER_SCORE_NAME)), String.valueOf(candidate.getProperty(VariableNames.METFRAG_FRAGMENTER_SCORE_NAME)));
+	}
+
+}
@@ -0,0 +1,175 @@
+package de.ipbhalle.metfraglib.match;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.ipbhalle.metfraglib.additionals.MathTools;
+import de.ipbhalle.metfraglib.candidate.TopDownPrecursorCandidate;
+import de.ipbhalle.metfraglib.fragment.AbstractTopDownBitArrayFragment;
+import de.ipbhalle.metfraglib.interfaces.IMatch;
+import de.ipbhalle.metfraglib.list.SortedTandemMassPeakList;
+import de.ipbhalle.metfraglib.parameter.Constants;
+import de.ipbhalle.metfraglib.peak.PeakWindowIndex;
+import de.ipbhalle.metfraglib.peak.TandemMassPeak;
+import de.ipbhalle.metfraglib.precursor.AbstractTopDownBitArrayPrecursor;
+
+/**
+ * FragmentMassMergeJoin has to find the same fragment peak matches as FragmentMassToPeakMatcher.matchToPeak
+ * checked on the fragments of the first tree depth of a fixed candidate and a synthetic spectrum
+ * with peaks whose mass windows end right at or right before fragment masses and with peaks of equal masses
+ *
+ */
+public class FragmentMassMergeJoin_Test {
+
+	private final String INCHI = "InChI=1S/C9H10O4/c10-7-3-1-6(5-8(7)11)2-4-9(12)13/h1,3,5,10-11H,2,4H2,(H,12,13)";
+	private final double RELATIVE_MASS_DEVIATION = 5.0;
+	private final double ABSOLUTE_MASS_DEVIATION = 0.001;
+
+	@Test
+	public void test() throws Exception {
+		TopDownPrecursorCandidate candidate = new TopDownPrecursorCandidate(INCHI, "test");
+		candidate.initialisePrecursorCandidate();
+		AbstractTopDownBitArrayPrecursor precursor = (AbstractTopDownBitArrayPrecursor)candidate.getPrecursorMolecule();
+		/*
+		 * root and first tree depth, fragments of symmetric bonds have equal masses
+		 * the root is added twice to get equal masses of different fragment indeces in any case
+		 */
+		java.util.ArrayList<AbstractTopDownBitArrayFragment> fragments = new java.util.ArrayList<AbstractTopDownBitArrayFragment>();
+		AbstractTopDownBitArrayFragment root = precursor.toFragment();
+		fragments.add(root);
+		fragments.add(root);
+		for(short i = 0; i < precursor.getNonHydrogenBondCount(); i++) {
+			AbstractTopDownBitArrayFragment[] newFragments = root.traverseMolecule(i, precursor.getConnectedAtomIndecesOfBondIndex(i));
+			for(int k = 0; k < newFragments.length; k++) fragments.add(newFragments[k]);
+		}
+		int[] precursorIonTypeIndeces = {0, 0, Constants.ADDUCT_NOMINAL_MASSES.indexOf(1)};
+		boolean[] positiveIonisations = {true, false, true};
+		for(int i = 0; i < positiveIonisations.length; i++) {
+			java.util.Random random = new java.util.Random(i + 1);
+			double ionisationMassCorrection = Constants.getIonisationTypeMassCorrection(precursorIonTypeIndeces[i], positiveIonisations[i]);
+			/*
+			 * for every second fragment peaks whose windows just reach and just miss its mass from both sides
+			 * and two peaks of equal mass at its mass
+			 */
+			java.util.HashSet<Double> edgePeakMasses = new java.util.HashSet<Double>();
+			SortedTandemMassPeakList peakList = new SortedTandemMassPeakList(root.getMonoisotopicMass() + ionisationMassCorrection);
+			for(int k = 0; k < fragments.size(); k += 2) {
+				double mass = fragments.get(k).getMonoisotopicMass() + ionisationMassCorrection;
+				double upperEdgePeakMass = this.getSmallestPeakMassReachingMass(mass);
+				double lowerEdgePeakMass = this.getGreatestPeakMassReachingMass(mass);
+				edgePeakMasses.add(upperEdgePeakMass);
+				edgePeakMasses.add(lowerEdgePeakMass);
+				this.addPeak(peakList, upperEdgePeakMass);
+				this.addPeak(peakList, Math.nextAfter(upperEdgePeakMass, Double.NEGATIVE_INFINITY));
+				this.addPeak(peakList, lowerEdgePeakMass);
+				this.addPeak(peakList, Math.nextUp(lowerEdgePeakMass));
+				this.addPeak(peakList, mass);
+				this.addPeak(peakList, mass);
+			}
+			for(int k = 0; k < 30; k++) this.addPeak(peakList, 20.0 + random.nextDouble() * root.getMonoisotopicMass());
+			PeakWindowIndex peakWindowIndex = peakList.getPeakWindowIndex(RELATIVE_MASS_DEVIATION, ABSOLUTE_MASS_DEVIATION);
+			int numberPeaks = peakList.getNumberElements();
+			/*
+			 * the greatest peak index a fragment may match, all peaks, none and random ones
+			 */
+			int[] maximumPeakIndeces = new int[fragments.size()];
+			for(int k = 0; k < fragments.size(); k++) maximumPeakIndeces[k] = k < 4 ? numberPeaks - 1 : random.nextInt(numberPeaks + 1) - 1;
+			FragmentMassToPeakMatcher matcher = new FragmentMassToPeakMatcher(peakWindowIndex, precursorIonTypeIndeces[i], positiveIonisations[i]);
+			/*
+			 * matches of each fragment by descending peak index
+			 */
+			java.util.ArrayList<String> expectedMatches = new java.util.ArrayList<String>();
+			FragmentMassToPeakMatcher.MatchBuffer buffer = new FragmentMassToPeakMatcher.MatchBuffer();
+			int numberEdgeMatches = 0;
+			for(int k = 0; k < fragments.size(); k++) {
+				AbstractTopDownBitArrayFragment fragment = fragments.get(k);
+				for(int peakIndex = maximumPeakIndeces[k]; peakIndex >= 0; peakIndex--) {
+					IMatch[] match = new IMatch[1];
+					if(matcher.matchToPeak(fragment, fragment.getMonoisotopicMass(), peakIndex, peakList.getElement(peakIndex), buffer, match) != 0) continue;
+					expectedMatches.add(this.toString(k, peakIndex, match[0]));
+					if(edgePeakMasses.contains(peakList.getElement(peakIndex).getMass())) numberEdgeMatches++;
+				}
+			}
+			FragmentMassMergeJoin mergeJoin = new FragmentMassMergeJoin(matcher);
+			java.util.ArrayList<String> matches = new java.util.ArrayList<String>();
+			/*
+			 * the join is used twice to check that it is cleared
+			 */
+			for(int repetition = 0; repetition < 2; repetition++) {
+				mergeJoin.clear();
+				matches.clear();
+				for(int k = 0; k < fragments.size(); k++)
+					assertEquals("Error: Wrong fragment index", k, mergeJoin.addFragment(fragments.get(k), maximumPeakIndeces[k]));
+				mergeJoin.join();
+				int hitIndex = 0;
+				while(hitIndex < mergeJoin.getNumberHits()) {
+					int fragmentIndex = mergeJoin.getHitFragmentIndex(hitIndex);
+					int peakIndex = mergeJoin.getHitPeakIndex(hitIndex);
+					IMatch[] match = new IMatch[1];
+					hitIndex = mergeJoin.createMatch(hitIndex, fragments.get(fragmentIndex), peakList.getElement(peakIndex), match);
+					matches.add(this.toString(fragmentIndex, peakIndex, match[0]));
+				}
+				assertEquals("Error: Different matches with ionisation " + i, expectedMatches, matches);
+			}
+			assertTrue("Error: No matches at the edges of peak windows", numberEdgeMatches > 0);
+		}
+	}
+
+	private void addPeak(SortedTandemMassPeakList peakList, double mass) {
+		peakList.addElement(new TandemMassPeak(mass, 100.0, 100.0, RELATIVE_MASS_DEVIATION, ABSOLUTE_MASS_DEVIATION));
+	}
+
+	/**
+	 * smallest peak mass whose upper mass limit (as calculated by PeakWindowIndex) isn't smaller than the given mass
+	 *
+	 * @param mass
+	 * @return
+	 */
+	private double getSmallestPeakMassReachingMass(double mass) {
+		double peakMass = (mass - ABSOLUTE_MASS_DEVIATION) / (1.0 + RELATIVE_MASS_DEVIATION / 1000000.0);
+		while(this.getUpperMassLimit(peakMass) < mass) peakMass = Math.nextUp(peakMass);
+		while(this.getUpperMassLimit(Math.nextAfter(peakMass, Double.NEGATIVE_INFINITY)) >= mass) peakMass = Math.nextAfter(peakMass, Double.NEGATIVE_INFINITY);
+		return peakMass;
+	}
+
+	/**
+	 * greatest peak mass whose lower mass limit (as calculated by PeakWindowIndex) isn't greater than the given mass
+	 *
+	 * @param mass
+	 * @return
+	 */
+	private double getGreatestPeakMassReachingMass(double mass) {
+		double peakMass = (mass + ABSOLUTE_MASS_DEVIATION) / (1.0 - RELATIVE_MASS_DEVIATION / 1000000.0);
+		while(this.getLowerMassLimit(peakMass) > mass) peakMass = Math.nextAfter(peakMass, Double.NEGATIVE_INFINITY);
+		while(this.getLowerMassLimit(Math.nextUp(peakMass)) <= mass) peakMass = Math.nextUp(peakMass);
+		return peakMass;
+	}
+
+	private double getUpperMassLimit(double peakMass) {
+		return peakMass + ABSOLUTE_MASS_DEVIATION + MathTools.calculateAbsoluteDeviation(peakMass, RELATIVE_MASS_DEVIATION);
+	}
+
+	private double getLowerMassLimit(double peakMass) {
+		return peakMass - ABSOLUTE_MASS_DEVIATION - MathTools.calculateAbsoluteDeviation(peakMass, RELATIVE_MASS_DEVIATION);
+	}
+
+	/**
+	 * fragment and peak index with the hydrogen shift, adduct and mass of all matched fragment masses
+	 *
+	 * @param fragmentIndex
+	 * @param peakIndex
+	 * @param match
+	 * @return
+	 */
+	private String toString(int fragmentIndex, int peakIndex, IMatch match) {
+		FragmentMassToPeakMatch fragmentMassToPeakMatch = (FragmentMassToPeakMatch)match;
+		StringBuilder string = new StringBuilder(fragmentIndex + " " + peakIndex + " " + match.getMatchedPeak().getMass());
+		for(int i = 0; i < fragmentMassToPeakMatch.getMatchedFragmentsSize(); i++)
+			string.append(" ").append(fragmentMassToPeakMatch.getNumberOfHydrogensDifferToPeakMass(i)).append(":").append(fragmentMassToPeakMatch.getFragmentsAdductTypeIndex(i))
+				.append(":").append(fragmentMassToPeakMatch.getMatchedFragmentMassToTandemMassPeak(i));
+		return string.toString();
+	}
+
+}
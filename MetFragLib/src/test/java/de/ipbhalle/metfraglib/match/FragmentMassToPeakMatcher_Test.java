@@ -0,0 +1,72 @@
+package de.ipbhalle.metfraglib.match;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.ipbhalle.metfraglib.candidate.TopDownPrecursorCandidate;
+import de.ipbhalle.metfraglib.fragment.AbstractTopDownBitArrayFragment;
+import de.ipbhalle.metfraglib.interfaces.IMatch;
+import de.ipbhalle.metfraglib.list.SortedTandemMassPeakList;
+import de.ipbhalle.metfraglib.parameter.Constants;
+import de.ipbhalle.metfraglib.peak.PeakWindowIndex;
+import de.ipbhalle.metfraglib.peak.TandemMassPeak;
+import de.ipbhalle.metfraglib.precursor.AbstractTopDownBitArrayPrecursor;
+
+/**
+ * FragmentMassToPeakMatcher.matchToPeak has to give the same results as DefaultBitArrayFragment.matchToPeak
+ * checked on a fixed candidate and a fixed spectrum with peaks around the mass of its root fragment
+ *
+ */
+public class FragmentMassToPeakMatcher_Test {
+
+	private final String INCHI = "InChI=1S/C9H10O4/c10-7-3-1-6(5-8(7)11)2-4-9(12)13/h1,3,5,10-11H,2,4H2,(H,12,13)";
+	private final int NUMBER_PEAKS = 200;
+	private final double RELATIVE_MASS_DEVIATION = 5.0;
+	private final double ABSOLUTE_MASS_DEVIATION = 0.001;
+
+	@Test
+	public void test() throws Exception {
+		TopDownPrecursorCandidate candidate = new TopDownPrecursorCandidate(INCHI, "test");
+		candidate.initialisePrecursorCandidate();
+		AbstractTopDownBitArrayFragment fragment = ((AbstractTopDownBitArrayPrecursor)candidate.getPrecursorMolecule()).toFragment();
+		double fragmentMass = fragment.getMonoisotopicMass();
+		boolean[] positiveIonisations = {true, false};
+		for(int i = 0; i < positiveIonisations.length; i++) {
+			boolean isPositive = positiveIonisations[i];
+			double ionisationMassCorrection = Constants.getIonisationTypeMassCorrection(0, isPositive);
+			/*
+			 * peaks spread around the fragment mass, every tenth peak is hit by a hydrogen shifted mass of the fragment
+			 */
+			java.util.Random random = new java.util.Random(1);
+			SortedTandemMassPeakList peakList = new SortedTandemMassPeakList(fragmentMass + ionisationMassCorrection);
+			for(int k = 0; k < NUMBER_PEAKS; k++) {
+				double mass = fragmentMass - 5.0 + random.nextDouble() * 10.0;
+				if(k % 10 == 0) mass = fragmentMass + ionisationMassCorrection + (random.nextInt(7) - 3) * Constants.HYDROGEN_MASS;
+				peakList.addElement(new TandemMassPeak(mass, 100.0, 100.0, RELATIVE_MASS_DEVIATION, ABSOLUTE_MASS_DEVIATION));
+			}
+			PeakWindowIndex peakWindowIndex = peakList.getPeakWindowIndex(RELATIVE_MASS_DEVIATION, ABSOLUTE_MASS_DEVIATION);
+			FragmentMassToPeakMatcher matcher = new FragmentMassToPeakMatcher(peakWindowIndex, 0, isPositive);
+			FragmentMassToPeakMatcher.MatchBuffer buffer = new FragmentMassToPeakMatcher.MatchBuffer();
+			int numberMatches = 0;
+			for(byte treeDepth = 0; treeDepth <= 3; treeDepth++) {
+				fragment.setTreeDepth(treeDepth);
+				for(int k = 0; k < peakList.getNumberElements(); k++) {
+					IMatch[] expectedMatch = new IMatch[1];
+					IMatch[] match = new IMatch[1];
+					byte expected = fragment.matchToPeak(peakList.getElement(k), 0, isPositive, expectedMatch);
+					byte result = matcher.matchToPeak(fragment, fragmentMass, k, peakList.getElement(k), buffer, match);
+					assertEquals("Error: Different result for peak " + k + " and tree depth " + treeDepth, expected, result);
+					if(expected != 0) continue;
+					numberMatches++;
+					assertEquals("Error: Different matched peak", expectedMatch[0].getMatchedPeak().getMass(), match[0].getMatchedPeak().getMass(), 0.0);
+					assertEquals("Error: Different hydrogen difference", expectedMatch[0].getBestMatchedFragmentHydrogenDifference(), match[0].getBestMatchedFragmentHydrogenDifference());
+					assertEquals("Error: Different fragment formula", expectedMatch[0].getModifiedFormulaStringOfBestMatchedFragment(), match[0].getModifiedFormulaStringOfBestMatchedFragment());
+				}
+			}
+			assertTrue("Error: No matches to compare", numberMatches > 0);
+		}
+	}
+
+}
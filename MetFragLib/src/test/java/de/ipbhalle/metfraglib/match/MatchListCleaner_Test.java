@@ -0,0 +1,163 @@
+package de.ipbhalle.metfraglib.match;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.ipbhalle.metfraglib.candidate.TopDownPrecursorCandidate;
+import de.ipbhalle.metfraglib.collection.IntObjectHashMap;
+import de.ipbhalle.metfraglib.interfaces.IFragment;
+import de.ipbhalle.metfraglib.peak.TandemMassPeak;
+import de.ipbhalle.metfraglib.precursor.AbstractTopDownBitArrayPrecursor;
+
+/**
+ * MatchListCleaner.clean has to keep the same fragment peak matches as the cleaning done directly on the linked lists
+ * (cleanByLinkedLists, the implementation used before the indexed peak heap)
+ * the match tables are filled with random matches in the same way as by TopDownFragmenterAssignerScorer
+ *
+ */
+public class MatchListCleaner_Test {
+
+	private final String INCHI = "InChI=1S/C9H10O4/c10-7-3-1-6(5-8(7)11)2-4-9(12)13/h1,3,5,10-11H,2,4H2,(H,12,13)";
+	private final int NUMBER_FRAGMENTS = 2000;
+	private final int NUMBER_PEAKS = 300;
+	private final int MAXIMUM_PEAKS_PER_FRAGMENT = 20;
+	private final int NUMBER_SEEDS = 5;
+
+	private MatchPeakList sortedScoredPeaks;
+	private MatchFragmentList[] peakIndexToPeakMatch;
+	private IntObjectHashMap<MatchPeakList> fragmentIndexToPeakMatch;
+
+	@Test
+	public void test() throws Exception {
+		TopDownPrecursorCandidate candidate = new TopDownPrecursorCandidate(INCHI, "test");
+		candidate.initialisePrecursorCandidate();
+		AbstractTopDownBitArrayPrecursor precursor = (AbstractTopDownBitArrayPrecursor)candidate.getPrecursorMolecule();
+		IFragment[] fragments = new IFragment[NUMBER_FRAGMENTS];
+		for(int i = 0; i < fragments.length; i++) {
+			fragments[i] = precursor.toFragment();
+			fragments[i].setID(i);
+		}
+		TandemMassPeak[] peaks = new TandemMassPeak[NUMBER_PEAKS];
+		for(int i = 0; i < peaks.length; i++) peaks[i] = new TandemMassPeak(50.0 + i, 100.0);
+
+		for(long seed = 1; seed <= NUMBER_SEEDS; seed++) {
+			MatchListCleaner_Test expected = new MatchListCleaner_Test();
+			expected.fillMatchTables(fragments, peaks, MAXIMUM_PEAKS_PER_FRAGMENT, seed);
+			expected.cleanByLinkedLists();
+			MatchListCleaner_Test result = new MatchListCleaner_Test();
+			result.fillMatchTables(fragments, peaks, MAXIMUM_PEAKS_PER_FRAGMENT, seed);
+			new MatchListCleaner(result.sortedScoredPeaks, result.peakIndexToPeakMatch, result.fragmentIndexToPeakMatch).clean();
+
+			assertEquals("Error: Different fragments of the peaks with seed " + seed, expected.getFragmentsOfPeaks(), result.getFragmentsOfPeaks());
+		}
+	}
+
+	/**
+	 * inserts random matches into the match tables
+	 * scores are rounded to get equally scored matches
+	 *
+	 * @param fragments
+	 * @param peaks
+	 * @param maximumPeaksPerFragment
+	 * @param seed
+	 */
+	private void fillMatchTables(IFragment[] fragments, TandemMassPeak[] peaks, int maximumPeaksPerFragment, long seed) {
+		java.util.Random random = new java.util.Random(seed);
+		this.peakIndexToPeakMatch = new MatchFragmentList[peaks.length];
+		this.fragmentIndexToPeakMatch = new IntObjectHashMap<MatchPeakList>();
+		for(int i = 0; i < fragments.length; i++) {
+			int numberPeaksOfFragment = 1 + random.nextInt(maximumPeaksPerFragment);
+			for(int k = 0; k < numberPeaksOfFragment; k++) {
+				int peakIndex = random.nextInt(peaks.length);
+				if(this.fragmentIndexToPeakMatch.containsKey(i) && this.fragmentIndexToPeakMatch.get(i).getElementById(peakIndex) != null) continue;
+				double score = Math.round(random.nextDouble() * 100.0) / 10.0;
+				FragmentMassToPeakMatch match = new FragmentMassToPeakMatch(peaks[peakIndex]);
+				match.addMatchedFragment(fragments[i], (byte)0, peaks[peakIndex].getMass());
+				if(this.sortedScoredPeaks == null) this.sortedScoredPeaks = new MatchPeakList(peaks[peakIndex], score, peakIndex);
+				else {
+					MatchPeakNode oldPeakNode = this.sortedScoredPeaks.getElementById(peakIndex);
+					if(oldPeakNode != null && oldPeakNode.getScore() < score) {
+						this.sortedScoredPeaks.removeElementByID(peakIndex);
+						this.sortedScoredPeaks.insert(peaks[peakIndex], score, peakIndex);
+					}
+					else if(oldPeakNode == null) this.sortedScoredPeaks.insert(peaks[peakIndex], score, peakIndex);
+				}
+				MatchFragmentNode newNode = new MatchFragmentNode(match);
+				newNode.setScore(score);
+				if(this.peakIndexToPeakMatch[peakIndex] != null) this.peakIndexToPeakMatch[peakIndex].insert(newNode);
+				else this.peakIndexToPeakMatch[peakIndex] = new MatchFragmentList(newNode);
+				if(this.fragmentIndexToPeakMatch.containsKey(i)) this.fragmentIndexToPeakMatch.get(i).insert(peaks[peakIndex], score, peakIndex);
+				else this.fragmentIndexToPeakMatch.put(i, new MatchPeakList(peaks[peakIndex], score, peakIndex));
+			}
+		}
+	}
+
+	/**
+	 * remaining fragment ids of each peak in list order
+	 *
+	 * @return
+	 */
+	private java.util.TreeMap<Integer, java.util.ArrayList<Integer>> getFragmentsOfPeaks() {
+		java.util.TreeMap<Integer, java.util.ArrayList<Integer>> fragmentsOfPeaks = new java.util.TreeMap<Integer, java.util.ArrayList<Integer>>();
+		for(int peakIndex = 0; peakIndex < this.peakIndexToPeakMatch.length; peakIndex++) {
+			if(this.peakIndexToPeakMatch[peakIndex] == null) continue;
+			java.util.ArrayList<Integer> fragmentIds = new java.util.ArrayList<Integer>();
+			MatchFragmentNode currentNode = this.peakIndexToPeakMatch[peakIndex].getRootNode();
+			while(currentNode != null) {
+				fragmentIds.add(currentNode.getFragment().getID());
+				currentNode = currentNode.getNext();
+			}
+			fragmentsOfPeaks.put(peakIndex, fragmentIds);
+		}
+		return fragmentsOfPeaks;
+	}
+
+	/**
+	 * reference implementation working directly on the linked lists
+	 */
+	private void cleanByLinkedLists() {
+		while(this.sortedScoredPeaks.getRootNode() != null) {
+			int currentPeakIndex = this.sortedScoredPeaks.getRootNode().getId();
+			this.sortedScoredPeaks.removeFirst();
+			MatchFragmentList currentFragmentList = this.peakIndexToPeakMatch[currentPeakIndex];
+			boolean processed = false;
+			while(!processed) {
+				MatchFragmentNode currentFragmentNode = currentFragmentList.getRootNode();
+				if(currentFragmentNode == null) {
+					this.peakIndexToPeakMatch[currentPeakIndex] = null;
+					processed = true;
+					continue;
+				}
+				if(this.fragmentIndexToPeakMatch.get(currentFragmentNode.getFragment().getID()).getRootNode().getId() == currentPeakIndex) {
+					processed = true;
+					MatchFragmentNode fragmentNodeToRemoveFrom = currentFragmentNode.getNext();
+					while(fragmentNodeToRemoveFrom != null) {
+						this.fragmentIndexToPeakMatch.get(fragmentNodeToRemoveFrom.getFragment().getID()).removeElementByID(currentPeakIndex);
+						fragmentNodeToRemoveFrom = fragmentNodeToRemoveFrom.getNext();
+					}
+					MatchPeakNode currentPeakNode = this.fragmentIndexToPeakMatch.get(currentFragmentList.getRootNode().getFragment().getID()).getRootNode();
+					while(currentPeakNode.hasNext()) {
+						currentPeakNode = currentPeakNode.getNext();
+						int peakIndex = currentPeakNode.getId();
+						if(this.peakIndexToPeakMatch[peakIndex] == null || this.peakIndexToPeakMatch[peakIndex].getRootNode() == null)
+							throw new IllegalStateException("no fragments left for peak " + peakIndex + " of fragment " + currentFragmentNode.getFragment().getID());
+						boolean toUpdate = this.peakIndexToPeakMatch[peakIndex].getRootNode().getFragment().getID() == currentFragmentNode.getFragment().getID();
+						if(toUpdate) this.sortedScoredPeaks.removeElementByID(peakIndex);
+						this.peakIndexToPeakMatch[peakIndex].removeElementByID(currentFragmentNode.getFragment().getID());
+						if(toUpdate) {
+							MatchFragmentNode fragmentRoot = this.peakIndexToPeakMatch[peakIndex].getRootNode();
+							if(fragmentRoot != null) {
+								MatchPeakNode peakRoot = this.fragmentIndexToPeakMatch.get(fragmentRoot.getFragment().getID()).getElementById(peakIndex);
+								if(peakRoot != null) this.sortedScoredPeaks.insert(peakRoot.clone());
+							}
+							else this.peakIndexToPeakMatch[peakIndex] = null;
+						}
+					}
+				}
+				else currentFragmentList.removeFirst();
+			}
+		}
+	}
+
+}
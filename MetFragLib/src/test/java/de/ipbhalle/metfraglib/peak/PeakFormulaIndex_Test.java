@@ -0,0 +1,83 @@
+package de.ipbhalle.metfraglib.peak;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.ipbhalle.metfraglib.SingleCandidateFragmentation;
+import de.ipbhalle.metfraglib.list.SiriusNodePeakList;
+import de.ipbhalle.metfraglib.molecularformula.ByteMolecularFormula;
+import de.ipbhalle.metfraglib.parameter.Constants;
+
+/**
+ * lookup of peak formulas by their element counts (without hydrogens) in the element order C, O
+ * the counts {2, 0}, {1, 31} and {0, 62} have equal hashes (java.util.Arrays.hashCode)
+ *
+ */
+public class PeakFormulaIndex_Test {
+
+	@Test
+	public void test() throws Exception {
+		/*
+		 * C2H3N contains an element not present in the precursor, the precursor peak itself isn't indexed
+		 */
+		SiriusNodePeakList peakList = SingleCandidateFragmentation.getSiriusNodePeakList("C3H8O62", new String[] {"C2H6", "C2H4", "CH2O31", "CO", "C2H3N"});
+		byte[] elementIndeces = {(byte)Constants.ELEMENTS.indexOf("C"), (byte)Constants.ELEMENTS.indexOf("O")};
+		PeakFormulaIndex peakFormulaIndex = new PeakFormulaIndex(peakList, elementIndeces);
+		assertEquals("Error: Wrong number of formulas", 4, peakFormulaIndex.getNumberFormulas());
+		assertEquals("Error: Colliding hashes expected", java.util.Arrays.hashCode(new short[] {2, 0}), java.util.Arrays.hashCode(new short[] {1, 31}));
+		assertEquals("Error: Colliding hashes expected", java.util.Arrays.hashCode(new short[] {2, 0}), java.util.Arrays.hashCode(new short[] {0, 62}));
+
+		/*
+		 * formulas of equal element counts are both found, the colliding formula isn't
+		 */
+		assertArrayEquals("Error: Wrong formulas", new short[] {4, 6}, this.getNumberHydrogens(peakFormulaIndex, new short[] {2, 0}));
+		assertArrayEquals("Error: Wrong formulas", new short[] {2}, this.getNumberHydrogens(peakFormulaIndex, new short[] {1, 31}));
+		assertArrayEquals("Error: Wrong formulas", new short[] {0}, this.getNumberHydrogens(peakFormulaIndex, new short[] {1, 1}));
+		assertNull("Error: Colliding formula found", peakFormulaIndex.getFormulaIndeces(new short[] {0, 62}));
+		assertNull("Error: Missing formula found", peakFormulaIndex.getFormulaIndeces(new short[] {3, 0}));
+		int[] formulaIndeces = peakFormulaIndex.getFormulaIndeces(new short[] {1, 31});
+		assertEquals("Error: Wrong peak", new ByteMolecularFormula("CH2O31").getMonoisotopicMass(), peakList.getElement(peakFormulaIndex.getPeakIndex(formulaIndeces[0])).getMass(), 0.0);
+
+		/*
+		 * only formulas with less atoms are true subformulas
+		 */
+		assertTrue("Error: Subformula not found", peakFormulaIndex.hasUnexplainedSubformula(new short[] {3, 1}));
+		assertFalse("Error: Formula of equal atoms taken as subformula", peakFormulaIndex.hasUnexplainedSubformula(new short[] {1, 1}));
+		assertTrue("Error: Subformula not found", peakFormulaIndex.hasUnexplainedSubformula(new short[] {1, 32}));
+
+		/*
+		 * explained formulas aren't subformulas anymore
+		 */
+		formulaIndeces = peakFormulaIndex.getFormulaIndeces(new short[] {2, 0});
+		for(int i = 0; i < formulaIndeces.length; i++) peakFormulaIndex.setExplained(formulaIndeces[i]);
+		peakFormulaIndex.setExplained(formulaIndeces[0]);
+		assertEquals("Error: Wrong number of explained formulas", 2, peakFormulaIndex.getNumberExplained());
+		assertTrue("Error: Subformula not found", peakFormulaIndex.hasUnexplainedSubformula(new short[] {3, 1}));
+		peakFormulaIndex.setExplained(peakFormulaIndex.getFormulaIndeces(new short[] {1, 1})[0]);
+		assertFalse("Error: Explained formula taken as subformula", peakFormulaIndex.hasUnexplainedSubformula(new short[] {3, 1}));
+		assertTrue("Error: Subformula not found", peakFormulaIndex.hasUnexplainedSubformula(new short[] {1, 32}));
+		assertEquals("Error: Wrong number of explained formulas", 3, peakFormulaIndex.getNumberExplained());
+	}
+
+	/**
+	 * sorted hydrogen counts of the formulas with the given element counts
+	 *
+	 * @param peakFormulaIndex
+	 * @param numberOfAtoms
+	 * @return
+	 */
+	private short[] getNumberHydrogens(PeakFormulaIndex peakFormulaIndex, short[] numberOfAtoms) {
+		int[] formulaIndeces = peakFormulaIndex.getFormulaIndeces(numberOfAtoms);
+		if(formulaIndeces == null) return null;
+		short[] numberHydrogens = new short[formulaIndeces.length];
+		for(int i = 0; i < formulaIndeces.length; i++) numberHydrogens[i] = peakFormulaIndex.getNumberHydrogens(formulaIndeces[i]);
+		java.util.Arrays.sort(numberHydrogens);
+		return numberHydrogens;
+	}
+
+}
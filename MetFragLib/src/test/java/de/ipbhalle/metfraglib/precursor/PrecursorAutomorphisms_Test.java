@@ -0,0 +1,138 @@
+package de.ipbhalle.metfraglib.precursor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.ipbhalle.metfraglib.BitArray;
+import de.ipbhalle.metfraglib.RunExample1Comparison;
+import de.ipbhalle.metfraglib.interfaces.ICandidate;
+import de.ipbhalle.metfraglib.parameter.VariableNames;
+import de.ipbhalle.metfraglib.settings.MetFragGlobalSettings;
+
+/**
+ * skipping fragments equivalent by precursor symmetry has to give the same results as the full fragmentation
+ * the skipped fragments are replaced by an equivalent one so only the formulas of the best matched fragments are compared
+ * the automorphisms themselves are checked on hand-built graphs of symmetric precursors
+ *
+ */
+public class PrecursorAutomorphisms_Test {
+
+	/*
+	 * atom colours of the hand-built graphs
+	 */
+	private final int C = 0;
+	private final int CH = 1;
+	private final int CH3 = 3;
+	private final int OH = 4;
+	private final int F = 5;
+	private final int S = 6;
+	/*
+	 * bond colours of the hand-built graphs
+	 */
+	private final int SINGLE = 0;
+	private final int AROMATIC = 1;
+
+	@Test
+	public void test() throws Exception {
+		MetFragGlobalSettings settings = RunExample1Comparison.getSettings();
+		settings.set(VariableNames.METFRAG_UNIQUE_FRAGMENT_MATCHES, false);
+		settings.set(VariableNames.METFRAG_SYMMETRY_AWARE_FRAGMENTATION, false);
+		java.util.Hashtable<String, ICandidate> expectedCandidates = RunExample1Comparison.run(settings);
+
+		settings = RunExample1Comparison.getSettings();
+		settings.set(VariableNames.METFRAG_UNIQUE_FRAGMENT_MATCHES, false);
+		settings.set(VariableNames.METFRAG_SYMMETRY_AWARE_FRAGMENTATION, true);
+		java.util.Hashtable<String, ICandidate> candidates = RunExample1Comparison.run(settings);
+
+		RunExample1Comparison.assertEqualResults(expectedCandidates, candidates, (String[])settings.get(VariableNames.METFRAG_SCORE_TYPES_NAME), false);
+	}
+
+	/**
+	 * p-xylene, methyl carbons 0 and 7 at the ring carbons 1 and 4
+	 */
+	@Test
+	public void testPXylene() {
+		int[] atomColours = {CH3, C, CH, CH, C, CH, CH, CH3};
+		short[][] bonds = {{0, 1}, {1, 2}, {2, 3}, {3, 4}, {4, 5}, {5, 6}, {6, 1}, {4, 7}};
+		int[] bondColours = {SINGLE, AROMATIC, AROMATIC, AROMATIC, AROMATIC, AROMATIC, AROMATIC, SINGLE};
+		PrecursorAutomorphisms automorphisms = new PrecursorAutomorphisms(atomColours, bonds, bondColours);
+		/*
+		 * the four symmetries of the para substituted ring without the identity
+		 */
+		assertEquals("Error: Wrong number of automorphisms", 3, automorphisms.getNumberAutomorphisms());
+		assertEquals("Error: Wrong number of equivalence classes", 3, automorphisms.getNumberEquivalenceClasses());
+		this.assertEquivalent(automorphisms, new int[] {0, 7});
+		this.assertEquivalent(automorphisms, new int[] {1, 4});
+		this.assertEquivalent(automorphisms, new int[] {2, 3, 5, 6});
+		assertTrue("Error: Methyl and ring carbon equivalent", automorphisms.getEquivalenceClass(0) != automorphisms.getEquivalenceClass(1));
+		assertTrue("Error: Substituted and unsubstituted ring carbon equivalent", automorphisms.getEquivalenceClass(1) != automorphisms.getEquivalenceClass(2));
+		/*
+		 * both toluyl fragments and all four fragments of a methyl and its neighbouring ring carbon respectively are equivalent
+		 */
+		assertEquals("Error: Different canonical atoms of the toluyl fragments",
+				automorphisms.getCanonicalAtoms(this.getAtoms(8, new int[] {0, 1, 2, 3, 4, 5, 6})),
+				automorphisms.getCanonicalAtoms(this.getAtoms(8, new int[] {1, 2, 3, 4, 5, 6, 7})));
+		BitArray canonicalAtoms = automorphisms.getCanonicalAtoms(this.getAtoms(8, new int[] {0, 1, 2}));
+		assertEquals("Error: Different canonical atoms", canonicalAtoms, automorphisms.getCanonicalAtoms(this.getAtoms(8, new int[] {0, 1, 6})));
+		assertEquals("Error: Different canonical atoms", canonicalAtoms, automorphisms.getCanonicalAtoms(this.getAtoms(8, new int[] {3, 4, 7})));
+		assertEquals("Error: Different canonical atoms", canonicalAtoms, automorphisms.getCanonicalAtoms(this.getAtoms(8, new int[] {4, 5, 7})));
+		assertTrue("Error: Non-equivalent atoms with same canonical atoms",
+				!canonicalAtoms.equals(automorphisms.getCanonicalAtoms(this.getAtoms(8, new int[] {1, 2, 3}))));
+	}
+
+	/**
+	 * tert-butanol, central carbon 0 with the methyl carbons 1 to 3 and the hydroxy group 4
+	 */
+	@Test
+	public void testTertButyl() {
+		int[] atomColours = {C, CH3, CH3, CH3, OH};
+		short[][] bonds = {{0, 1}, {0, 2}, {0, 3}, {0, 4}};
+		int[] bondColours = {SINGLE, SINGLE, SINGLE, SINGLE};
+		PrecursorAutomorphisms automorphisms = new PrecursorAutomorphisms(atomColours, bonds, bondColours);
+		/*
+		 * all permutations of the three methyl groups without the identity
+		 */
+		assertEquals("Error: Wrong number of automorphisms", 5, automorphisms.getNumberAutomorphisms());
+		assertEquals("Error: Wrong number of equivalence classes", 3, automorphisms.getNumberEquivalenceClasses());
+		this.assertEquivalent(automorphisms, new int[] {1, 2, 3});
+		assertTrue("Error: Central and methyl carbon equivalent", automorphisms.getEquivalenceClass(0) != automorphisms.getEquivalenceClass(1));
+		assertTrue("Error: Methyl carbon and hydroxy group equivalent", automorphisms.getEquivalenceClass(1) != automorphisms.getEquivalenceClass(4));
+		assertEquals("Error: Different canonical atoms of the methyl losses",
+				automorphisms.getCanonicalAtoms(this.getAtoms(5, new int[] {0, 1, 2, 4})), automorphisms.getCanonicalAtoms(this.getAtoms(5, new int[] {0, 2, 3, 4})));
+	}
+
+	/**
+	 * sulfur hexafluoride has 6! - 1 automorphisms, only MAXIMUM_NUMBER_AUTOMORPHISMS are kept
+	 */
+	@Test
+	public void testMaximumNumberAutomorphisms() {
+		int[] atomColours = {S, F, F, F, F, F, F};
+		short[][] bonds = {{0, 1}, {0, 2}, {0, 3}, {0, 4}, {0, 5}, {0, 6}};
+		int[] bondColours = {SINGLE, SINGLE, SINGLE, SINGLE, SINGLE, SINGLE};
+		PrecursorAutomorphisms automorphisms = new PrecursorAutomorphisms(atomColours, bonds, bondColours);
+		assertEquals("Error: Wrong number of automorphisms", PrecursorAutomorphisms.MAXIMUM_NUMBER_AUTOMORPHISMS, automorphisms.getNumberAutomorphisms());
+		/*
+		 * the automorphisms are found in search order, all kept ones map the first fluorine onto itself
+		 * so it isn't detected as equivalent to the other ones
+		 */
+		assertEquals("Error: Wrong number of equivalence classes", 3, automorphisms.getNumberEquivalenceClasses());
+		this.assertEquivalent(automorphisms, new int[] {2, 3, 4, 5, 6});
+		assertTrue("Error: Sulfur and fluorine equivalent", automorphisms.getEquivalenceClass(0) != automorphisms.getEquivalenceClass(2));
+		assertTrue("Error: First fluorine equivalent beyond the kept automorphisms", automorphisms.getEquivalenceClass(1) != automorphisms.getEquivalenceClass(2));
+	}
+
+	private void assertEquivalent(PrecursorAutomorphisms automorphisms, int[] atomIndeces) {
+		for(int i = 1; i < atomIndeces.length; i++)
+			assertEquals("Error: Atoms " + atomIndeces[0] + " and " + atomIndeces[i] + " not equivalent",
+					automorphisms.getEquivalenceClass(atomIndeces[0]), automorphisms.getEquivalenceClass(atomIndeces[i]));
+	}
+
+	private BitArray getAtoms(int numberAtoms, int[] atomIndeces) {
+		BitArray atoms = new BitArray(numberAtoms);
+		for(int i = 0; i < atomIndeces.length; i++) atoms.set(atomIndeces[i]);
+		return atoms;
+	}
+
+}
@@ -0,0 +1,113 @@
+package de.ipbhalle.metfraglib.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.ipbhalle.metfraglib.RunExample1Comparison;
+import de.ipbhalle.metfraglib.SingleCandidateFragmentation;
+import de.ipbhalle.metfraglib.interfaces.ICandidate;
+import de.ipbhalle.metfraglib.list.CandidateList;
+import de.ipbhalle.metfraglib.list.ScoredCandidateList;
+import de.ipbhalle.metfraglib.parameter.VariableNames;
+import de.ipbhalle.metfraglib.settings.MetFragGlobalSettings;
+import de.ipbhalle.metfraglib.writer.CandidateListWriterCSV;
+
+/**
+ * a candidate collapsed with another one of the same first InChIKey block takes its fragmentation results
+ * both candidates have their own match lists and the explained peaks are written for both of them
+ *
+ */
+public class InChIKey1Collapse_Test {
+
+	private final String DUPLICATE_IDENTIFIER_SUFFIX = "_duplicate";
+
+	@Test
+	public void test() throws Exception {
+		/*
+		 * candidate file of example 1 with the first candidate added again under another identifier
+		 */
+		java.io.File candidateFile = java.io.File.createTempFile("candidate_file_collapse", ".txt");
+		candidateFile.deleteOnExit();
+		java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.FileReader(ClassLoader.getSystemResource("candidate_file_example_1.txt").getFile()));
+		java.io.BufferedWriter writer = new java.io.BufferedWriter(new java.io.FileWriter(candidateFile));
+		String header = reader.readLine();
+		String firstCandidate = reader.readLine();
+		writer.write(header + "\n" + firstCandidate + "\n");
+		String line = null;
+		while((line = reader.readLine()) != null) writer.write(line + "\n");
+		String[] columns = header.split(",");
+		/*
+		 * quoted values before the identifier contain commas, the identifier column is counted from the end
+		 */
+		String[] values = firstCandidate.split(",");
+		int identifierColumn = values.length - columns.length + java.util.Arrays.asList(columns).indexOf(VariableNames.IDENTIFIER_NAME);
+		String identifier = values[identifierColumn];
+		values[identifierColumn] = identifier + DUPLICATE_IDENTIFIER_SUFFIX;
+		StringBuilder duplicateCandidate = new StringBuilder(values[0]);
+		for(int i = 1; i < values.length; i++) duplicateCandidate.append(",").append(values[i]);
+		writer.write(duplicateCandidate.toString() + "\n");
+		writer.close();
+		reader.close();
+
+		MetFragGlobalSettings settings = RunExample1Comparison.getSettings();
+		settings.set(VariableNames.LOCAL_DATABASE_PATH_NAME, candidateFile.getAbsolutePath());
+		settings.set(VariableNames.METFRAG_COLLAPSE_INCHIKEY1_DUPLICATES, true);
+		CombinedMetFragProcess metfragProcess = new CombinedMetFragProcess(settings);
+		metfragProcess.retrieveCompounds();
+		metfragProcess.run();
+		ScoredCandidateList candidateList = (ScoredCandidateList)metfragProcess.getCandidateList();
+		ICandidate candidate = null;
+		ICandidate duplicate = null;
+		for(int i = 0; i < candidateList.getNumberElements(); i++) {
+			if(candidateList.getElement(i).getIdentifier().equals(identifier)) candidate = candidateList.getElement(i);
+			if(candidateList.getElement(i).getIdentifier().equals(identifier + DUPLICATE_IDENTIFIER_SUFFIX)) duplicate = candidateList.getElement(i);
+		}
+		assertNotNull("Error: Candidate " + identifier + " not found", candidate);
+		assertNotNull("Error: Duplicate of candidate " + identifier + " not found", duplicate);
+		assertNotNull("Error: No match list of candidate " + identifier, candidate.getMatchList());
+		assertNotNull("Error: No match list of the duplicate of candidate " + identifier, duplicate.getMatchList());
+		assertTrue("Error: Shared match list object", candidate.getMatchList() != duplicate.getMatchList());
+		assertTrue("Error: No explained peaks", candidate.getMatchList().getNumberElements() > 0);
+		assertEquals("Error: Different matches of the duplicate", SingleCandidateFragmentation.getMatches(candidate), SingleCandidateFragmentation.getMatches(duplicate));
+		assertEquals("Error: Different Score of the duplicate",
+				String.valueOf(candidate.getProperty(VariableNames.FINAL_SCORE_COLUMN_NAME)), String.valueOf(duplicate.getProperty(VariableNames.FINAL_SCORE_COLUMN_NAME)));
+
+		/*
+		 * the header of the written file is taken from the first candidate, either candidate may be the first one
+		 */
+		ICandidate[][] orders = {{candidate, duplicate}, {duplicate, candidate}};
+		String[] explainedPeaksColumns = {VariableNames.EXPLAINED_PEAKS_COLUMN, VariableNames.FORMULAS_OF_PEAKS_EXPLAINED_COLUMN,
+				VariableNames.NUMBER_EXPLAINED_PEAKS_COLUMN, VariableNames.NUMBER_PEAKS_USED_COLUMN};
+		for(int k = 0; k < orders.length; k++) {
+			ScoredCandidateList writtenCandidates = new ScoredCandidateList();
+			for(int i = 0; i < orders[k].length; i++) writtenCandidates.addElement(orders[k][i]);
+			writtenCandidates.setNumberPeaksUsed(candidateList.getNumberPeaksUsed());
+			java.io.File resultFile = this.write(writtenCandidates);
+			reader = new java.io.BufferedReader(new java.io.FileReader(resultFile));
+			java.util.List<String> writtenColumns = java.util.Arrays.asList(reader.readLine().split(","));
+			reader.close();
+			for(int i = 0; i < explainedPeaksColumns.length; i++)
+				assertTrue("Error: Column " + explainedPeaksColumns[i] + " missing", writtenColumns.contains(explainedPeaksColumns[i]));
+			for(int i = 0; i < orders[k].length; i++) {
+				Object explainedPeaks = orders[k][i].getProperty(VariableNames.EXPLAINED_PEAKS_COLUMN);
+				assertNotNull("Error: No explained peaks written for " + orders[k][i].getIdentifier(), explainedPeaks);
+				assertTrue("Error: No explained peaks written for " + orders[k][i].getIdentifier(), !explainedPeaks.equals("NA"));
+			}
+			assertEquals("Error: Different explained peaks written for the duplicate",
+					candidate.getProperty(VariableNames.EXPLAINED_PEAKS_COLUMN), duplicate.getProperty(VariableNames.EXPLAINED_PEAKS_COLUMN));
+		}
+	}
+
+	private java.io.File write(CandidateList candidateList) throws Exception {
+		java.io.File resultFile = java.io.File.createTempFile("collapse_result", ".csv");
+		resultFile.delete();
+		String filename = resultFile.getName().substring(0, resultFile.getName().length() - 4);
+		new CandidateListWriterCSV().write(candidateList, filename, resultFile.getParent());
+		resultFile.deleteOnExit();
+		return resultFile;
+	}
+
+}
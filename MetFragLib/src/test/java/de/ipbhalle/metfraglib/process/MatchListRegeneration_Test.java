@@ -0,0 +1,80 @@
+package de.ipbhalle.metfraglib.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.ipbhalle.metfraglib.RunExample1Comparison;
+import de.ipbhalle.metfraglib.SingleCandidateFragmentation;
+import de.ipbhalle.metfraglib.interfaces.ICandidate;
+import de.ipbhalle.metfraglib.list.CandidateList;
+import de.ipbhalle.metfraglib.parameter.VariableNames;
+import de.ipbhalle.metfraglib.settings.MetFragGlobalSettings;
+
+/**
+ * with match lists retained for the best candidates only, the final best candidates have to get
+ * the same match lists as in a processing keeping all match lists, the other candidates lose theirs
+ * candidates whose processing exceeded a budget aren't fragmented again
+ *
+ */
+public class MatchListRegeneration_Test {
+
+	private final int NUMBER_RETAINED_MATCH_LISTS = 5;
+
+	@Test
+	public void test() throws Exception {
+		java.util.Hashtable<String, ICandidate> expectedCandidates = RunExample1Comparison.run(RunExample1Comparison.getSettings());
+
+		MetFragGlobalSettings settings = RunExample1Comparison.getSettings();
+		settings.set(VariableNames.METFRAG_RETAINED_MATCH_LISTS, NUMBER_RETAINED_MATCH_LISTS);
+		settings.set(VariableNames.METFRAG_REGENERATE_MATCH_LISTS, true);
+		CombinedMetFragProcess metfragProcess = new CombinedMetFragProcess(settings);
+		metfragProcess.retrieveCompounds();
+		metfragProcess.run();
+		CandidateList candidateList = metfragProcess.getCandidateList();
+		assertEquals("Error: Different number of candidates", expectedCandidates.size(), candidateList.getNumberElements());
+		assertTrue("Error: Too few candidates", candidateList.getNumberElements() > 2 * NUMBER_RETAINED_MATCH_LISTS);
+		this.assertEqualMatchLists(expectedCandidates, candidateList, -1);
+		/*
+		 * at most the best candidates by their raw scores keep their match lists in addition
+		 */
+		int numberMatchLists = 0;
+		for(int i = NUMBER_RETAINED_MATCH_LISTS; i < candidateList.getNumberElements(); i++)
+			if(candidateList.getElement(i).getMatchList() != null) numberMatchLists++;
+		assertTrue("Error: Match lists not released", numberMatchLists <= NUMBER_RETAINED_MATCH_LISTS);
+
+		/*
+		 * generate the match lists of the best candidates again, the second one exceeded a budget
+		 */
+		for(int i = 0; i < NUMBER_RETAINED_MATCH_LISTS; i++) candidateList.getElement(i).setMatchList(null);
+		candidateList.getElement(1).setProperty(VariableNames.BUDGET_EXCEEDED_NAME, true);
+		metfragProcess.regenerateMatchLists(NUMBER_RETAINED_MATCH_LISTS);
+		assertNull("Error: Match list of a budget exceeded candidate regenerated", candidateList.getElement(1).getMatchList());
+		this.assertEqualMatchLists(expectedCandidates, candidateList, 1);
+	}
+
+	/**
+	 * compares the match lists and the scores of the best candidates
+	 *
+	 * @param expectedCandidates
+	 * @param candidateList
+	 * @param skippedIndex index of a candidate not compared, -1 to compare all
+	 */
+	private void assertEqualMatchLists(java.util.Hashtable<String, ICandidate> expectedCandidates, CandidateList candidateList, int skippedIndex) {
+		for(int i = 0; i < NUMBER_RETAINED_MATCH_LISTS; i++) {
+			if(i == skippedIndex) continue;
+			ICandidate candidate = candidateList.getElement(i);
+			ICandidate expectedCandidate = expectedCandidates.get(candidate.getIdentifier());
+			assertNotNull("Error: Candidate " + candidate.getIdentifier() + " not found", expectedCandidate);
+			assertNotNull("Error: No match list of candidate " + candidate.getIdentifier(), candidate.getMatchList());
+			assertEquals("Error: Different matches of candidate " + candidate.getIdentifier(),
+					SingleCandidateFragmentation.getMatches(expectedCandidate), SingleCandidateFragmentation.getMatches(candidate));
+			assertEquals("Error: Different Score of candidate " + candidate.getIdentifier(),
+					String.valueOf(expectedCandidate.getProperty(VariableNames.FINAL_SCORE_COLUMN_NAME)), String.valueOf(candidate.getProperty(VariableNames.FINAL_SCORE_COLUMN_NAME)));
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+package de.ipbhalle.metfraglib.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.ipbhalle.metfraglib.RunExample1Comparison;
+import de.ipbhalle.metfraglib.fragmenterassignerscorer.TopDownFragmenterAssignerScorer;
+import de.ipbhalle.metfraglib.interfaces.ICandidate;
+import de.ipbhalle.metfraglib.list.CandidateList;
+import de.ipbhalle.metfraglib.parameter.VariableNames;
+import de.ipbhalle.metfraglib.settings.MetFragGlobalSettings;
+import de.ipbhalle.metfraglib.settings.Settings;
+
+/**
+ * once the processing time limit has passed no further candidates are taken by the worker threads
+ * the candidates left are counted as unprocessed and aren't part of the result
+ *
+ */
+public class ProcessingTimeLimit_Test {
+
+	@Test
+	public void test() throws Exception {
+		MetFragGlobalSettings settings = RunExample1Comparison.getSettings();
+		settings.set(VariableNames.NUMBER_THREADS_NAME, (byte)1);
+		settings.set(VariableNames.METFRAG_PROCESSING_TIME_LIMIT, 1);
+		settings.set(VariableNames.METFRAG_ASSIGNER_SCORER_NAME, SlowAssignerScorer.class.getName());
+		CombinedMetFragProcess metfragProcess = new CombinedMetFragProcess(settings);
+		metfragProcess.retrieveCompounds();
+		int numberCandidates = metfragProcess.getCandidateList().getNumberElements();
+		assertTrue("Error: Too few candidates", numberCandidates > 1);
+		metfragProcess.run();
+
+		CandidateList candidateList = metfragProcess.getCandidateList();
+		ProcessingStatus processingStatus = (ProcessingStatus)settings.get(VariableNames.PROCESS_STATUS_OBJECT_NAME);
+		int numberUnprocessedCandidates = processingStatus.getNumberUnprocessedCandidates().get();
+		/*
+		 * the single worker takes at most one candidate before the limit, it takes longer than the limit itself
+		 */
+		assertTrue("Error: Candidates taken after the processing time limit", numberUnprocessedCandidates >= numberCandidates - 1);
+		assertEquals("Error: Unprocessed candidates in the result", numberCandidates - numberUnprocessedCandidates - processingStatus.getNumberErrorCandidates().get()
+				- processingStatus.getNumberPreFilteredCandidates().get(), candidateList.getNumberElements());
+		for(int i = 0; i < candidateList.getNumberElements(); i++) {
+			ICandidate candidate = candidateList.getElement(i);
+			assertEquals("Error: Candidate " + candidate.getIdentifier() + " processed beyond the processing time limit", Boolean.TRUE, candidate.getProperty(VariableNames.BUDGET_EXCEEDED_NAME));
+		}
+	}
+
+	/**
+	 * takes longer than the processing time limit before the fragmentation starts
+	 */
+	public static class SlowAssignerScorer extends TopDownFragmenterAssignerScorer {
+
+		public SlowAssignerScorer(Settings settings, ICandidate candidate) {
+			super(settings, candidate);
+		}
+
+		@Override
+		public void calculate() {
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			super.calculate();
+		}
+	}
+
+}
@@ -0,0 +1,138 @@
+package de.ipbhalle.metfraglib.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.ipbhalle.metfraglib.RunExample1Comparison;
+import de.ipbhalle.metfraglib.fragmenterassignerscorer.TopDownFragmenterAssignerScorer;
+import de.ipbhalle.metfraglib.interfaces.ICandidate;
+import de.ipbhalle.metfraglib.list.CandidateList;
+import de.ipbhalle.metfraglib.parameter.VariableNames;
+import de.ipbhalle.metfraglib.settings.MetFragGlobalSettings;
+import de.ipbhalle.metfraglib.settings.Settings;
+
+/**
+ * the shortlisted candidates of the two stage processing get the scores of the full tree depth, the other ones keep
+ * the scores of the first stage
+ * each candidate is counted once by its final outcome
+ *
+ */
+public class TwoStageProcessing_Test {
+
+	private final int NUMBER_SHORTLISTED_CANDIDATES = 5;
+	private int numberRetrievedCandidates;
+
+	@Test
+	public void test() throws Exception {
+		java.util.Hashtable<String, ICandidate> fullTreeDepthCandidates = RunExample1Comparison.run(RunExample1Comparison.getSettings());
+		MetFragGlobalSettings stageOneSettings = RunExample1Comparison.getSettings();
+		stageOneSettings.set(VariableNames.MAXIMUM_TREE_DEPTH_NAME, CombinedMetFragProcess.PRESCREEN_TREE_DEPTH);
+		java.util.Hashtable<String, ICandidate> stageOneCandidates = RunExample1Comparison.run(stageOneSettings);
+
+		MetFragGlobalSettings settings = RunExample1Comparison.getSettings();
+		settings.set(VariableNames.METFRAG_PRESCREEN_NUMBER_CANDIDATES, NUMBER_SHORTLISTED_CANDIDATES);
+		CandidateList candidateList = this.run(settings);
+		assertEquals("Error: Different number of candidates", stageOneCandidates.size(), candidateList.getNumberElements());
+		assertTrue("Error: Too few candidates", candidateList.getNumberElements() > NUMBER_SHORTLISTED_CANDIDATES);
+		Byte maximumTreeDepth = (Byte)settings.get(VariableNames.MAXIMUM_TREE_DEPTH_NAME);
+		assertTrue("Error: Full tree depth equals the first stage tree depth", maximumTreeDepth > CombinedMetFragProcess.PRESCREEN_TREE_DEPTH);
+		int numberShortlistedCandidates = 0;
+		for(int i = 0; i < candidateList.getNumberElements(); i++) {
+			ICandidate candidate = candidateList.getElement(i);
+			boolean isShortlisted = maximumTreeDepth.equals(candidate.getProperty(VariableNames.MAXIMUM_TREE_DEPTH_NAME));
+			if(isShortlisted) numberShortlistedCandidates++;
+			ICandidate expectedCandidate = isShortlisted ? fullTreeDepthCandidates.get(candidate.getIdentifier()) : stageOneCandidates.get(candidate.getIdentifier());
+			assertNotNull("Error: Candidate " + candidate.getIdentifier() + " not found", expectedCandidate);
+			this.assertEqualScores(expectedCandidate, candidate);
+		}
+		assertEquals("Error: Wrong number of shortlisted candidates", NUMBER_SHORTLISTED_CANDIDATES, numberShortlistedCandidates);
+		this.assertCountedOnce(settings, candidateList);
+	}
+
+	/**
+	 * all shortlisted candidates fail in the second stage and keep the results of the first stage
+	 */
+	@Test
+	public void testStageTwoErrors() throws Exception {
+		MetFragGlobalSettings stageOneSettings = RunExample1Comparison.getSettings();
+		stageOneSettings.set(VariableNames.MAXIMUM_TREE_DEPTH_NAME, CombinedMetFragProcess.PRESCREEN_TREE_DEPTH);
+		java.util.Hashtable<String, ICandidate> stageOneCandidates = RunExample1Comparison.run(stageOneSettings);
+
+		MetFragGlobalSettings settings = RunExample1Comparison.getSettings();
+		settings.set(VariableNames.METFRAG_PRESCREEN_NUMBER_CANDIDATES, NUMBER_SHORTLISTED_CANDIDATES);
+		settings.set(VariableNames.METFRAG_ASSIGNER_SCORER_NAME, StageTwoFailingAssignerScorer.class.getName());
+		CandidateList candidateList = this.run(settings);
+		assertEquals("Error: Shortlisted candidates discarded", stageOneCandidates.size(), candidateList.getNumberElements());
+		for(int i = 0; i < candidateList.getNumberElements(); i++) {
+			ICandidate candidate = candidateList.getElement(i);
+			assertEquals("Error: Candidate " + candidate.getIdentifier() + " lost its first stage tree depth",
+					CombinedMetFragProcess.PRESCREEN_TREE_DEPTH, candidate.getProperty(VariableNames.MAXIMUM_TREE_DEPTH_NAME));
+			assertNotNull("Error: Candidate " + candidate.getIdentifier() + " lost its match list", candidate.getMatchList());
+			this.assertEqualScores(stageOneCandidates.get(candidate.getIdentifier()), candidate);
+		}
+		this.assertCountedOnce(settings, candidateList);
+	}
+
+	/**
+	 * all candidates exceed the fragment budget in both stages
+	 */
+	@Test
+	public void testBudgetExceeded() throws Exception {
+		MetFragGlobalSettings settings = RunExample1Comparison.getSettings();
+		settings.set(VariableNames.METFRAG_PRESCREEN_NUMBER_CANDIDATES, NUMBER_SHORTLISTED_CANDIDATES);
+		settings.set(VariableNames.METFRAG_CANDIDATE_FRAGMENT_BUDGET, 1);
+		CandidateList candidateList = this.run(settings);
+		int numberBudgetExceededCandidates = 0;
+		for(int i = 0; i < candidateList.getNumberElements(); i++)
+			if(Boolean.TRUE.equals(candidateList.getElement(i).getProperty(VariableNames.BUDGET_EXCEEDED_NAME))) numberBudgetExceededCandidates++;
+		assertTrue("Error: Too few candidates exceeded the fragment budget", numberBudgetExceededCandidates > NUMBER_SHORTLISTED_CANDIDATES);
+		ProcessingStatus processingStatus = (ProcessingStatus)settings.get(VariableNames.PROCESS_STATUS_OBJECT_NAME);
+		assertEquals("Error: Budget exceeded candidates counted more than once", numberBudgetExceededCandidates, processingStatus.getNumberBudgetExceededCandidates().get());
+		this.assertCountedOnce(settings, candidateList);
+	}
+
+	private CandidateList run(MetFragGlobalSettings settings) throws Exception {
+		CombinedMetFragProcess metfragProcess = new CombinedMetFragProcess(settings);
+		metfragProcess.retrieveCompounds();
+		this.numberRetrievedCandidates = metfragProcess.getCandidateList().getNumberElements();
+		metfragProcess.run();
+		return metfragProcess.getCandidateList();
+	}
+
+	/**
+	 * the retrieved candidates are either part of the result or counted as discarded
+	 */
+	private void assertCountedOnce(MetFragGlobalSettings settings, CandidateList candidateList) {
+		ProcessingStatus processingStatus = (ProcessingStatus)settings.get(VariableNames.PROCESS_STATUS_OBJECT_NAME);
+		assertEquals("Error: Candidates counted more than once", this.numberRetrievedCandidates, candidateList.getNumberElements()
+				+ processingStatus.getNumberErrorCandidates().get() + processingStatus.getNumberPreFilteredCandidates().get() + processingStatus.getNumberUnprocessedCandidates().get());
+	}
+
+	private void assertEqualScores(ICandidate expectedCandidate, ICandidate candidate) {
+		assertEquals("Error: Different " + VariableNames.METFRAG_FRAGMENTER_SCORE_NAME + " of candidate " + candidate.getIdentifier(),
+				String.valueOf(expectedCandidate.getProperty(VariableNames.METFRAG_FRAGMENTER_SCORE_NAME)), String.valueOf(candidate.getProperty(VariableNames.METFRAG_FRAGMENTER_SCORE_NAME)));
+		assertEquals("Error: Different number of explained peaks of candidate " + candidate.getIdentifier(),
+				expectedCandidate.getMatchList().getNumberElements(), candidate.getMatchList().getNumberElements());
+	}
+
+	/**
+	 * fails for all candidates processed with a tree depth beyond the one of the first stage
+	 */
+	public static class StageTwoFailingAssignerScorer extends TopDownFragmenterAssignerScorer {
+
+		public StageTwoFailingAssignerScorer(Settings settings, ICandidate candidate) {
+			super(settings, candidate);
+		}
+
+		@Override
+		public void calculate() {
+			if(!CombinedMetFragProcess.PRESCREEN_TREE_DEPTH.equals(this.settings.get(VariableNames.MAXIMUM_TREE_DEPTH_NAME)))
+				throw new IllegalStateException("second stage not supported");
+			super.calculate();
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+package de.ipbhalle.metfraglib.tools;
+
+import de.ipbhalle.metfraglib.candidate.TopDownPrecursorCandidate;
+import de.ipbhalle.metfraglib.fragment.AbstractTopDownBitArrayFragment;
+import de.ipbhalle.metfraglib.interfaces.IMatch;
+import de.ipbhalle.metfraglib.list.SortedTandemMassPeakList;
+import de.ipbhalle.metfraglib.match.FragmentMassToPeakMatcher;
+import de.ipbhalle.metfraglib.parameter.Constants;
+import de.ipbhalle.metfraglib.peak.PeakWindowIndex;
+import de.ipbhalle.metfraglib.peak.TandemMassPeak;
+import de.ipbhalle.metfraglib.precursor.AbstractTopDownBitArrayPrecursor;
+
+/**
+ * compares the run time of DefaultBitArrayFragment.matchToPeak and FragmentMassToPeakMatcher.matchToPeak
+ * on a synthetic spectrum with peaks around the mass of a candidate's root fragment
+ * the equality of the results is checked by FragmentMassToPeakMatcher_Test
+ * kept with the tests as a plain main method, it isn't part of the library and needs no benchmark framework
+ *
+ * usage: BenchmarkFragmentPeakMatching [InChI] [number peaks] [number iterations]
+ *
+ */
+public class BenchmarkFragmentPeakMatching {
+
+	public static void main(String[] args) throws Exception {
+		String inchi = args.length > 0 ? args[0] : "InChI=1S/C9H10O4/c10-7-3-1-6(5-8(7)11)2-4-9(12)13/h1,3,5,10-11H,2,4H2,(H,12,13)";
+		int numberPeaks = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int numberIterations = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+		double relativeMassDeviation = 5.0;
+		double absoluteMassDeviation = 0.001;
+		int precursorIonTypeIndex = 0;
+		boolean isPositive = true;
+
+		TopDownPrecursorCandidate candidate = new TopDownPrecursorCandidate(inchi, "benchmark");
+		candidate.initialisePrecursorCandidate();
+		AbstractTopDownBitArrayFragment fragment = ((AbstractTopDownBitArrayPrecursor)candidate.getPrecursorMolecule()).toFragment();
+		double fragmentMass = fragment.getMonoisotopicMass();
+		/*
+		 * peaks spread around the fragment mass so that the hydrogen shifted masses hit some of them
+		 */
+		java.util.Random random = new java.util.Random(1);
+		SortedTandemMassPeakList peakList = new SortedTandemMassPeakList(fragmentMass + Constants.getIonisationTypeMassCorrection(precursorIonTypeIndex, isPositive));
+		for(int i = 0; i < numberPeaks; i++) {
+			double mass = fragmentMass - 5.0 + random.nextDouble() * 10.0;
+			if(i % 10 == 0) mass = fragmentMass + Constants.getIonisationTypeMassCorrection(0, isPositive) + (random.nextInt(7) - 3) * Constants.HYDROGEN_MASS;
+			peakList.addElement(new TandemMassPeak(mass, 100.0, 100.0, relativeMassDeviation, absoluteMassDeviation));
+		}
+		PeakWindowIndex peakWindowIndex = peakList.getPeakWindowIndex(relativeMassDeviation, absoluteMassDeviation);
+		FragmentMassToPeakMatcher matcher = new FragmentMassToPeakMatcher(peakWindowIndex, precursorIonTypeIndex, isPositive);
+		FragmentMassToPeakMatcher.MatchBuffer buffer = new FragmentMassToPeakMatcher.MatchBuffer();
+		IMatch[] match = new IMatch[1];
+
+		for(int round = 0; round < 3; round++) {
+			long time = System.nanoTime();
+			int numberMatches = 0;
+			for(int i = 0; i < numberIterations; i++) {
+				fragment.setTreeDepth((byte)(i & 3));
+				for(int k = 0; k < peakList.getNumberElements(); k++)
+					if(fragment.matchToPeak(peakList.getElement(k), precursorIonTypeIndex, isPositive, match) == 0) numberMatches++;
+			}
+			long fragmentTime = System.nanoTime() - time;
+			time = System.nanoTime();
+			for(int i = 0; i < numberIterations; i++) {
+				fragment.setTreeDepth((byte)(i & 3));
+				for(int k = 0; k < peakList.getNumberElements(); k++)
+					if(matcher.matchToPeak(fragment, fragmentMass, k, peakList.getElement(k), buffer, match) == 0) numberMatches--;
+			}
+			long matcherTime = System.nanoTime() - time;
+			System.out.println("round " + round + ": fragment " + (fragmentTime / 1000000) + " ms, matcher " + (matcherTime / 1000000) + " ms, match balance " + numberMatches);
+		}
+	}
+
+}
@@ -0,0 +1,113 @@
+package de.ipbhalle.metfraglib.tools;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IRingSet;
+import org.openscience.cdk.ringsearch.AllRingsFinder;
+
+import de.ipbhalle.metfraglib.BitArray;
+import de.ipbhalle.metfraglib.additionals.MoleculeFunctions;
+import de.ipbhalle.metfraglib.precursor.RingBondSystems;
+
+/**
+ * compares the ring bond perception by AllRingsFinder with RingBondSystems
+ * for each candidate the bonds of all rings containing a bond are calculated by both methods and checked to be equal
+ * by default a small set of steroids, alkaloids and fused polycyclic structures is used
+ * kept with the tests, it isn't part of the library
+ *
+ * usage: BenchmarkRingPerception [file with one SMILES per line] [number iterations]
+ *
+ */
+public class BenchmarkRingPerception {
+
+	public static final String[] DEFAULT_SMILES = {
+		"CC(C)CCCC(C)C1CCC2C1(CCC3C2CC=C4C3(CCC(C4)O)C)C",
+		"CC12CCC3C(C1CCC2O)CCC4=CC(=O)CCC34C",
+		"CC12CCC(CC1CCC3C2CCC4(C3(CCC4C5=CC(=O)OC5)O)C)O",
+		"CN1CCC23C4C1CC5=C2C(=C(C=C5)O)OC3C(C=C4)O",
+		"O=C7N2c1ccccc1C64C2C3C(OCC=C5C3CC6N(CC4)C5)C7",
+		"COC1C(CC2CN3CCC4=C(C3CC2C1C(=O)OC)NC5=C4C=CC(=C5)OC)OC(=O)C6=CC(=C(C(=C6)OC)OC)OC",
+		"C12C3C4C1C5C2C3C45"
+	};
+
+	public static void main(String[] args) throws Exception {
+		java.util.Vector<String> smiles = new java.util.Vector<String>();
+		if(args.length > 0) {
+			BufferedReader breader = new BufferedReader(new FileReader(args[0]));
+			String line = "";
+			while((line = breader.readLine()) != null) {
+				line = line.trim();
+				if(line.length() != 0 && !line.startsWith("#")) smiles.add(line.split("\\s+")[0]);
+			}
+			breader.close();
+		}
+		else {
+			for(String current : DEFAULT_SMILES) smiles.add(current);
+		}
+		int numberIterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		long allRingsFinderTime = 0;
+		long ringBondSystemsTime = 0;
+		int numberDifferences = 0;
+		int numberAllRingsFinderFailures = 0;
+		for(int i = 0; i < smiles.size(); i++) {
+			IAtomContainer molecule = MoleculeFunctions.parseSmilesImplicitHydrogen(smiles.get(i));
+			if(molecule == null) continue;
+			short[][] bondIndexToConnectedAtomIndeces = new short[molecule.getBondCount()][2];
+			for(int k = 0; k < molecule.getBondCount(); k++) {
+				bondIndexToConnectedAtomIndeces[k][0] = (short)molecule.getAtomNumber(molecule.getBond(k).getAtom(0));
+				bondIndexToConnectedAtomIndeces[k][1] = (short)molecule.getAtomNumber(molecule.getBond(k).getAtom(1));
+			}
+			BitArray[] expected = null;
+			long time = System.nanoTime();
+			try {
+				for(int k = 0; k < numberIterations; k++) expected = getRingBondsByAllRingsFinder(molecule);
+			} catch (Exception e) {
+				numberAllRingsFinderFailures++;
+				System.err.println("AllRingsFinder failed for " + smiles.get(i) + ": " + e.getMessage());
+			}
+			long currentAllRingsFinderTime = System.nanoTime() - time;
+			RingBondSystems ringBondSystems = null;
+			time = System.nanoTime();
+			for(int k = 0; k < numberIterations; k++)
+				ringBondSystems = new RingBondSystems(bondIndexToConnectedAtomIndeces, molecule.getAtomCount(), molecule.getBondCount() + 1);
+			long currentRingBondSystemsTime = System.nanoTime() - time;
+			if(expected != null) {
+				allRingsFinderTime += currentAllRingsFinderTime;
+				ringBondSystemsTime += currentRingBondSystemsTime;
+				for(int k = 0; k < molecule.getBondCount(); k++)
+					if(!expected[k].equals(ringBondSystems.getRingBonds(k))) numberDifferences++;
+			}
+			System.out.println(smiles.get(i) + "\t" + ringBondSystems.getNumberRingSystems() + " ring systems\tAllRingsFinder "
+					+ (expected == null ? "failed" : (currentAllRingsFinderTime / 1000) + " us") + "\tRingBondSystems " + (currentRingBondSystemsTime / 1000) + " us");
+		}
+		System.out.println("AllRingsFinder " + (allRingsFinderTime / 1000000) + " ms, RingBondSystems " + (ringBondSystemsTime / 1000000) + " ms");
+		System.out.println("AllRingsFinder failures: " + numberAllRingsFinderFailures);
+		System.out.println("differing ring bonds: " + numberDifferences);
+	}
+
+	/**
+	 * ring bonds as calculated by the former BitArrayPrecursor
+	 *
+	 * @param molecule
+	 * @return
+	 * @throws Exception
+	 */
+	protected static BitArray[] getRingBondsByAllRingsFinder(IAtomContainer molecule) throws Exception {
+		IRingSet ringSet = new AllRingsFinder().findAllRings(molecule);
+		BitArray[] ringBonds = new BitArray[molecule.getBondCount() + 1];
+		for (int i = 0; i < ringBonds.length; i++)
+			ringBonds[i] = new BitArray(molecule.getBondCount() + 1);
+		for (int i = 0; i < ringSet.getAtomContainerCount(); i++) {
+			BitArray bonds = new BitArray(molecule.getBondCount() + 1);
+			for (int j = 0; j < ringSet.getAtomContainer(i).getBondCount(); j++)
+				bonds.set(molecule.getBondNumber(ringSet.getAtomContainer(i).getBond(j)));
+			for (int j = bonds.nextSetBit(-1); j != -1; j = bonds.nextSetBit(j))
+				ringBonds[j].or(bonds);
+		}
+		return ringBonds;
+	}
+
+}